@@ -12,6 +12,7 @@ package org.erlide.backend.api;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.eclipse.core.resources.IMarker;
@@ -44,6 +45,7 @@ import org.erlide.util.HostnameUtils;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public final class BackendData extends RuntimeData {
 
@@ -107,6 +109,32 @@ public final class BackendData extends RuntimeData {
         projects = Lists.newArrayList();
     }
 
+    /**
+     * A copy of the settings of another backend, without its launch.
+     */
+    public BackendData(final BackendData other) {
+        super(other.runtimeInfo, other.debug ? "debug" : "run");
+        internal = other.internal;
+        managed = other.managed;
+        restartable = other.restartable;
+        startShell = other.startShell;
+        console = other.console;
+        cookie = other.cookie;
+        nodeName = other.nodeName;
+        longName = other.longName;
+        extraArgs = other.extraArgs;
+        workingDir = other.workingDir;
+        env = other.env == null ? null : Maps.newHashMap(other.env);
+        initialCall = other.initialCall;
+        loadOnAllNodes = other.loadOnAllNodes;
+        debugFlags = EnumSet.copyOf(other.debugFlags);
+        initialInterpretedModules = Lists.newArrayList(other.initialInterpretedModules);
+        reportErrors = other.reportErrors;
+        projects = Lists.newArrayList(other.projects);
+        beamLocator = other.beamLocator;
+        context = other.context;
+    }
+
     private static String getDefaultWorkingDir() {
         final IWorkspaceRoot wroot = ResourcesPlugin.getWorkspace().getRoot();
         return wroot.getLocation().toPortableString();
@@ -6,8 +6,27 @@ public interface IBackendFactory {
 
     IBackend createIdeBackend();
 
-    IBackend createBuildBackend(final RuntimeInfo info);
+    /**
+     * @param index
+     *            the backend's place in the pool of build backends for this
+     *            runtime version, it gives the node a name of its own
+     */
+    IBackend createBuildBackend(final RuntimeInfo info, final int index);
 
     IBackend createBackend(final BackendData data);
 
+    /**
+     * Starts the node for a launch and loads its code, but doesn't run
+     * anything for the launch yet.
+     */
+    IBackend createStandbyBackend(final BackendData data);
+
+    /**
+     * Hands a backend created by createStandbyBackend over to a launch.
+     * 
+     * @param data
+     *            the launch's data, it must describe the same node
+     */
+    void attachBackend(final IBackend backend, final BackendData data);
+
 }
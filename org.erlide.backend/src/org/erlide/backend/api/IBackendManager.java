@@ -1,6 +1,7 @@
 package org.erlide.backend.api;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
@@ -18,6 +19,16 @@ public interface IBackendManager extends IEpmdListener {
 
     IBackend getBuildBackend(@Nullable final IProject project);
 
+    /**
+     * The build backends for the project's runtime version, starting more of
+     * them if needed. The first one is the one returned by getBuildBackend.
+     * 
+     * @param max
+     *            how many backends are wanted, at most as many as the pool size
+     * @return an empty list if the project can't be built
+     */
+    List<IBackend> getBuildBackends(final IProject project, final int max);
+
     Set<IBackend> getExecutionBackends(final IProject project);
 
     Collection<IBackend> getAllBackends();
@@ -28,8 +39,19 @@ public interface IBackendManager extends IEpmdListener {
 
     void forEachBackend(final Procedure1<IBackend> visitor);
 
+    /**
+     * Uses the standby backend kept for the same settings if there is one,
+     * otherwise starts a new one.
+     */
     IBackend createExecutionBackend(final BackendData data);
 
+    /**
+     * @return true if a standby backend is (being) started for a node with
+     *         this name; the node is then managed by us even if it is already
+     *         registered with epmd
+     */
+    boolean hasStandbyBackend(final String nodeName);
+
     void addExecutionBackend(final IProject project, final IBackend b);
 
     void removeExecutionBackend(final IProject project, final IProjectCodeLoader b);
@@ -12,7 +12,6 @@ import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.ericsson.otp.erlang.OtpMbox;
-import com.google.common.collect.Lists;
 
 /**
  * This daemon is almost a copy of ErlangEventPublisher, but accepts generic
@@ -38,24 +37,11 @@ public class DebuggerEventDaemon implements IBackendListener {
 
         @Override
         public void run() {
-            OtpErlangObject msg = null;
-            final List<OtpErlangObject> messages = Lists.newArrayList();
             do {
                 try {
-                    msg = mbox.receive(200);
-                    if (msg != null) {
-                        messages.add(msg);
-                        // if there are more queued events, retrieve not
-                        // more than 10 of them
-                        int count = 0;
-                        do {
-                            msg = mbox.receive(0);
-                            if (msg != null) {
-                                messages.add(msg);
-                                count++;
-                            }
-                        } while (count < 10 && msg != null && !stopped);
-                    }
+                    // if there are more queued events, retrieve not
+                    // more than 10 of them
+                    final List<OtpErlangObject> messages = mbox.receiveAll(11, 200);
                     if (messages.size() != 0) {
                         if (DEBUG) {
                             for (final OtpErlangObject message : messages) {
@@ -63,8 +49,6 @@ public class DebuggerEventDaemon implements IBackendListener {
                             }
                         }
                         handler.handleMessages(messages);
-
-                        messages.clear();
                     }
                 } catch (final OtpErlangExit e) {
                     if (myBackend.isRunning()) {
@@ -75,7 +59,7 @@ public class DebuggerEventDaemon implements IBackendListener {
                 } catch (final Exception e) {
                     ErlLogger.warn(e);
                 }
-            } while (!stopped);
+            } while (!stopped && !Thread.currentThread().isInterrupted());
         }
     }
 
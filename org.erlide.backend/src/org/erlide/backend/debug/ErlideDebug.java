@@ -19,9 +19,11 @@ import org.erlide.util.erlang.ErlUtils;
 import org.erlide.util.erlang.TermParserException;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 
 public class ErlideDebug {
@@ -257,6 +259,31 @@ public class ErlideDebug {
         return null;
     }
 
+    /**
+     * Get elements offset..offset+length-1 of a value that all_stack_frames
+     * sent only partly.
+     * 
+     * @return a list, or a binary for binaries, or null if it couldn't be
+     *         retrieved
+     */
+    @SuppressWarnings("boxing")
+    public static OtpErlangObject getBindingPart(final IRpcSite backend,
+            final OtpErlangPid meta, final int frame, final String name,
+            final OtpErlangList path, final int offset, final int length) {
+        try {
+            final OtpErlangObject res = backend.call(ERLIDE_DEBUG, "binding_part",
+                    "xiaxii", meta, frame, name, path, offset, length);
+            if (res instanceof OtpErlangList || res instanceof OtpErlangString
+                    || res instanceof OtpErlangBinary) {
+                return res;
+            }
+            ErlLogger.warn("could not get part of %s: %s", name, res);
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+        }
+        return null;
+    }
+
     public static List<String> getAllModulesOnStack(final IRpcSite backend,
             final OtpErlangPid meta) {
         try {
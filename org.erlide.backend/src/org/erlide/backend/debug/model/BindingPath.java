@@ -0,0 +1,60 @@
+package org.erlide.backend.debug.model;
+
+import java.util.Arrays;
+
+import org.erlide.backend.debug.ErlideDebug;
+import org.erlide.runtime.api.IRpcSite;
+
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+
+/**
+ * Where a value is in the bindings of a suspended process: the stack frame,
+ * the variable and the positions of the elements leading to the value. Used
+ * to get the parts of large values that weren't sent with the stack.
+ */
+class BindingPath {
+
+    private final int frame;
+    private final String name;
+    private final int[] indexes;
+
+    /**
+     * @param frame
+     *            0 for the current bindings, n for the n:th frame sent by
+     *            erlide_debug:all_stack_frames
+     */
+    BindingPath(final int frame, final String name) {
+        this(frame, name, new int[0]);
+    }
+
+    private BindingPath(final int frame, final String name, final int[] indexes) {
+        this.frame = frame;
+        this.name = name;
+        this.indexes = indexes;
+    }
+
+    /**
+     * @param index
+     *            the 0-based position of the element, for a record counting
+     *            the record name too
+     */
+    BindingPath child(final int index) {
+        final int[] childIndexes = Arrays.copyOf(indexes, indexes.length + 1);
+        childIndexes[indexes.length] = index;
+        return new BindingPath(frame, name, childIndexes);
+    }
+
+    OtpErlangObject fetch(final IRpcSite site, final OtpErlangPid meta,
+            final int offset, final int length) {
+        final OtpErlangObject[] path = new OtpErlangObject[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            path[i] = new OtpErlangLong(indexes[i]);
+        }
+        return ErlideDebug.getBindingPart(site, meta, frame, name, new OtpErlangList(
+                path), offset, length);
+    }
+
+}
@@ -261,8 +261,10 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
         stackFrames = new ArrayList<IStackFrame>();
         final IDebugTarget target = getDebugTarget();
         stackFrames.add(new ErlangStackFrame(module, this, target, line, null, bs,
-                erlStackFrames.arity() + 2));
+                erlStackFrames.arity() + 2, 0));
+        int frameIndex = 0;
         for (final OtpErlangObject o : erlStackFrames) {
+            frameIndex++;
             final OtpErlangTuple t = (OtpErlangTuple) o;
             final OtpErlangTuple mfa;
             final OtpErlangObject el0 = t.elementAt(0);
@@ -296,7 +298,7 @@ public class ErlangProcess extends ErlangDebugElement implements IThread {
                 stackFrameNo = -1;
             }
             stackFrames.add(new ErlangStackFrame(mod, this, target, lin, null, bindings,
-                    stackFrameNo));
+                    stackFrameNo, frameIndex));
         }
     }
 
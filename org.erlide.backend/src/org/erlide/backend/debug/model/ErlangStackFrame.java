@@ -40,6 +40,9 @@ public class ErlangStackFrame extends ErlangDebugElement implements IStackFrame,
     private final String fModuleName;
     private final ErlangProcess fParent;
     private final int fLineNumber;
+    private final OtpErlangList rawBindings;
+    private final int frameIndex;
+    // created when first asked for, kept until the process resumes
     List<ErlangVariable> bindings;
     int stackFrameNo;
     private String clauseHead;
@@ -48,27 +51,26 @@ public class ErlangStackFrame extends ErlangDebugElement implements IStackFrame,
             final IDebugTarget target, final int lineNumber0,
             final ErlangFunction function, final OtpErlangList bindings,
             final int stackFrameNo) {
+        this(moduleName, parent, target, lineNumber0, function, bindings,
+                stackFrameNo, -1);
+    }
+
+    /**
+     * @param frameIndex
+     *            where the bindings are in the result of
+     *            erlide_debug:all_stack_frames, to get the parts of large
+     *            values that were left out; -1 if the bindings are complete
+     */
+    public ErlangStackFrame(final String moduleName, final ErlangProcess parent,
+            final IDebugTarget target, final int lineNumber0,
+            final ErlangFunction function, final OtpErlangList bindings,
+            final int stackFrameNo, final int frameIndex) {
         super(target);
         fParent = parent;
         fModuleName = moduleName;
         this.stackFrameNo = stackFrameNo;
-        final List<ErlangVariable> framesReversed = new ArrayList<ErlangVariable>(
-                bindings.arity());
-        for (final OtpErlangObject o : bindings) {
-            if (o instanceof OtpErlangTuple) {
-                final OtpErlangTuple t = (OtpErlangTuple) o;
-                final OtpErlangAtom nameA = (OtpErlangAtom) t.elementAt(0);
-                final OtpErlangObject value = t.elementAt(1);
-                framesReversed.add(new ErlangVariable(target, nameA.atomValue(), false,
-                        value, parent, moduleName, stackFrameNo));
-            }
-        }
-        final List<ErlangVariable> frames = new ArrayList<ErlangVariable>(
-                framesReversed.size());
-        for (int i = framesReversed.size() - 1; i >= 0; --i) {
-            frames.add(framesReversed.get(i));
-        }
-        this.bindings = frames;
+        rawBindings = bindings;
+        this.frameIndex = frameIndex;
         IErlModule module;
         try {
             module = ErlangEngine.getInstance().getModel().findModule(moduleName);
@@ -112,7 +114,34 @@ public class ErlangStackFrame extends ErlangDebugElement implements IStackFrame,
 
     @Override
     public IVariable[] getVariables() throws DebugException {
-        return bindings.toArray(new IVariable[bindings.size()]);
+        final List<ErlangVariable> vars = getBindings();
+        return vars.toArray(new IVariable[vars.size()]);
+    }
+
+    private synchronized List<ErlangVariable> getBindings() {
+        if (bindings == null) {
+            final List<ErlangVariable> framesReversed = new ArrayList<ErlangVariable>(
+                    rawBindings.arity());
+            for (final OtpErlangObject o : rawBindings) {
+                if (o instanceof OtpErlangTuple) {
+                    final OtpErlangTuple t = (OtpErlangTuple) o;
+                    final OtpErlangAtom nameA = (OtpErlangAtom) t.elementAt(0);
+                    final OtpErlangObject value = t.elementAt(1);
+                    final BindingPath path = frameIndex < 0 ? null : new BindingPath(
+                            frameIndex, nameA.atomValue());
+                    framesReversed.add(new ErlangVariable(getDebugTarget(), nameA
+                            .atomValue(), false, value, fParent, fModuleName,
+                            stackFrameNo, path));
+                }
+            }
+            final List<ErlangVariable> frames = new ArrayList<ErlangVariable>(
+                    framesReversed.size());
+            for (int i = framesReversed.size() - 1; i >= 0; --i) {
+                frames.add(framesReversed.get(i));
+            }
+            bindings = frames;
+        }
+        return bindings;
     }
 
     @Override
@@ -35,21 +35,33 @@ public class ErlangVariable extends ErlangDebugElement implements IVariable {
     public ErlangVariable(final IDebugTarget target, final String name,
             final boolean subVariable, final OtpErlangObject value,
             final ErlangProcess process, final String moduleName, final int stackFrameNo) {
+        this(target, name, subVariable, value, process, moduleName, stackFrameNo, null);
+    }
+
+    /**
+     * @param path
+     *            where to get the rest of the value if it wasn't sent whole,
+     *            may be null
+     */
+    ErlangVariable(final IDebugTarget target, final String name,
+            final boolean subVariable, final OtpErlangObject value,
+            final ErlangProcess process, final String moduleName,
+            final int stackFrameNo, final BindingPath path) {
         super(target);
         this.name = name;
         this.subVariable = subVariable;
-        this.value = createErlangValue(name, value, process, moduleName);
+        this.value = createErlangValue(name, value, process, moduleName, path);
         this.process = process;
         this.stackFrameNo = stackFrameNo;
     }
 
     private ErlangValue createErlangValue(final String aname,
             final OtpErlangObject avalue, final ErlangProcess aprocess,
-            final String moduleName) {
+            final String moduleName, final BindingPath path) {
         if (avalue instanceof OtpErlangList || avalue instanceof OtpErlangTuple
                 || avalue instanceof OtpErlangBinary || avalue instanceof OtpErlangString) {
             return new IndexedErlangValue(getDebugTarget(), aname, avalue, aprocess,
-                    moduleName);
+                    moduleName, path);
         }
         return new ErlangValue(getDebugTarget(), aname, avalue, aprocess, moduleName);
     }
@@ -88,9 +100,12 @@ public class ErlangVariable extends ErlangDebugElement implements IVariable {
         final String err = ErlideDebug.setVariableValue(edt.getBackend().getRpcSite(),
                 name, expression, stackFrameNo - 1, process.getMeta());
         if (err != null) {
-            // restore old value
-            ErlideDebug.setVariableValue(edt.getBackend().getRpcSite(), name,
-                    value.toString(), stackFrameNo - 1, process.getMeta());
+            // restore old value, unless we only have part of it
+            if (!(value instanceof IndexedErlangValue)
+                    || ((IndexedErlangValue) value).isComplete()) {
+                ErlideDebug.setVariableValue(edt.getBackend().getRpcSite(), name,
+                        value.toString(), stackFrameNo - 1, process.getMeta());
+            }
             throw new DebugException(new Status(IStatus.ERROR, BackendPlugin.PLUGIN_ID,
                     DebugException.TARGET_REQUEST_FAILED, "Bad expression", null));
         }
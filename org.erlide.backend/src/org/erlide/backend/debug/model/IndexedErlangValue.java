@@ -8,13 +8,17 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IDebugTarget;
 import org.eclipse.debug.core.model.IIndexedValue;
 import org.eclipse.debug.core.model.IVariable;
+import org.erlide.backend.internal.BackendPlugin;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.IErlModel;
@@ -34,9 +38,18 @@ import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+/**
+ * A list, tuple or binary. Large values come from erlide_debug as
+ * <code>{'$erlide_lazy', Size, Preview}</code>, where Preview holds the first
+ * elements; the others are retrieved a page at a time when they are shown.
+ */
 public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
     private static final List<IErlElement> EMPTY_LIST = Lists.newArrayList();
+    private static final OtpErlangAtom LAZY = OtpErlangAtom.intern("$erlide_lazy");
+    private static final int PAGE_SIZE = 100;
+    private static final int MAX_VALUE_STRING = 1000;
 
     // FIXME JC Maybe we should use polymorphism for records?
     protected IErlRecordDef record; // set if this value is a record
@@ -44,26 +57,58 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
 
     // TODO not for regular lists too?
 
+    private final BindingPath path;
+    private final boolean complete;
+    private final boolean text; // a string shown as such
+    private final int previewSize;
+    private final int size;
+    private final Map<Integer, IVariable> variables = Maps.newHashMap();
+    private final Map<Integer, OtpErlangObject[]> pages = Maps.newHashMap();
+
     public IndexedErlangValue(final IDebugTarget target, final String varName,
             final OtpErlangObject value, final ErlangProcess process,
             final String moduleName) {
-        super(target, varName, value, process, moduleName);
-        record = checkRecord(value);
-        list = checkList(value);
+        this(target, varName, value, process, moduleName, null);
     }
 
-    private OtpErlangList checkList(final OtpErlangObject theValue) {
-        if (theValue instanceof OtpErlangString) {
+    /**
+     * @param path
+     *            where to get the elements that weren't sent, may be null
+     */
+    IndexedErlangValue(final IDebugTarget target, final String varName,
+            final OtpErlangObject value, final ErlangProcess process,
+            final String moduleName, final BindingPath path) {
+        super(target, varName, preview(value), process, moduleName);
+        this.path = path;
+        complete = !containsLazy(value);
+        text = this.value instanceof OtpErlangString
+                && looksLikeAscii(getBytes((OtpErlangString) this.value));
+        list = checkList(this.value, isLazy(value));
+        previewSize = getArity(this.value, list);
+        size = isLazy(value) ? getLazySize(value) : previewSize;
+        record = checkRecord(this.value, size);
+    }
+
+    private OtpErlangList checkList(final OtpErlangObject theValue, final boolean lazy) {
+        // the start of a long string is a list too, so that it can be expanded
+        if (theValue instanceof OtpErlangString && (lazy || !text)) {
             final OtpErlangString os = (OtpErlangString) theValue;
-            final String s = os.stringValue();
-            final byte[] b = s.getBytes(Charsets.ISO_8859_1);
-            if (!looksLikeAscii(b)) {
-                return new OtpErlangList(s);
-            }
+            return new OtpErlangList(os.stringValue());
         }
         return null;
     }
 
+    private static byte[] getBytes(final OtpErlangString s) {
+        return s.stringValue().getBytes(Charsets.ISO_8859_1);
+    }
+
+    /**
+     * @return false if parts of the value weren't sent
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
     @Override
     public int getInitialOffset() {
         return 0;
@@ -79,7 +124,11 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
     }
 
     @Override
-    public IVariable getVariable(final int offset) throws DebugException {
+    public synchronized IVariable getVariable(final int offset) throws DebugException {
+        IVariable variable = variables.get(offset);
+        if (variable != null) {
+            return variable;
+        }
         String name;
         if (record != null) {
             try {
@@ -92,8 +141,11 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
         } else {
             name = varName + ":" + offset;
         }
-        return new ErlangVariable(getDebugTarget(), name, true, getElementAt(offset),
-                process, moduleName, -1);
+        final int index = record != null ? offset + 1 : offset;
+        variable = new ErlangVariable(getDebugTarget(), name, true, getElementAt(index),
+                process, moduleName, -1, path == null ? null : path.child(index));
+        variables.put(offset, variable);
+        return variable;
     }
 
     @Override
@@ -106,8 +158,12 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
         return result;
     }
 
-    private IErlRecordDef checkRecord(final OtpErlangObject o) {
-        if (o instanceof OtpErlangTuple) {
+    /**
+     * @param arity
+     *            the arity of the whole tuple, o may be only its start
+     */
+    private IErlRecordDef checkRecord(final OtpErlangObject o, final int arity) {
+        if (o instanceof OtpErlangTuple && ((OtpErlangTuple) o).arity() > 0) {
             final OtpErlangTuple t = (OtpErlangTuple) o;
             final OtpErlangObject h = t.elementAt(0);
             if (h instanceof OtpErlangAtom) {
@@ -122,7 +178,7 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
                                     moduleName, a.atomValue(), ErlElementKind.RECORD_DEF);
                     if (pd instanceof IErlRecordDef) {
                         final IErlRecordDef r = (IErlRecordDef) pd;
-                        if (r.hasChildren() && r.getChildCount() + 1 == t.arity()) {
+                        if (r.hasChildren() && r.getChildCount() + 1 == arity) {
                             return r;
                         }
                     }
@@ -156,125 +212,150 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
 
     @Override
     public String getValueString() throws DebugException {
+        final StringBuilder b = new StringBuilder();
         if (record != null) {
-            return getRecordValueString(record, value);
-        } else if (list != null) {
-            return getListValueString(list);
+            appendRecordValueString(b, record, (OtpErlangTuple) value);
+        } else if (list != null && !text) {
+            appendElementsValueString(b, "[", list.elements(), size, "]");
         } else {
-            return getValueString(value, false);
+            appendValueString(b, value, size, false);
         }
+        // large values are not shown whole
+        if (b.length() > MAX_VALUE_STRING) {
+            b.setLength(MAX_VALUE_STRING);
+            b.append("...");
+        }
+        return b.toString();
     }
 
-    private String getValueString(final OtpErlangObject o, final boolean recordCheck)
-            throws DebugException {
+    /**
+     * @param n
+     *            the number of elements of the whole value, o may be only its
+     *            start
+     */
+    private void appendValueString(final StringBuilder b, final OtpErlangObject o,
+            final int n, final boolean recordCheck) {
+        if (b.length() > MAX_VALUE_STRING) {
+            return;
+        }
         if (o instanceof OtpErlangBinary) {
-            final OtpErlangBinary b = (OtpErlangBinary) o;
-            return getBinaryValueString(b);
+            final OtpErlangBinary bin = (OtpErlangBinary) o;
+            appendBinaryValueString(b, bin.binaryValue(), n);
         } else if (o instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) o;
             if (recordCheck) {
-                final IErlRecordDef r = checkRecord(o);
+                final IErlRecordDef r = checkRecord(t, n);
                 if (r != null) {
-                    return getRecordValueString(r, o);
+                    appendRecordValueString(b, r, t);
+                    return;
                 }
             }
-            final OtpErlangTuple t = (OtpErlangTuple) o;
-            return getTupleValueString(t);
+            appendElementsValueString(b, "{", t.elements(), n, "}");
         } else if (o instanceof OtpErlangList) {
             final OtpErlangList l = (OtpErlangList) o;
-            return getListValueString(l);
+            appendElementsValueString(b, "[", l.elements(), n, "]");
+        } else if (o instanceof OtpErlangString
+                && n > ((OtpErlangString) o).stringValue().length()) {
+            final String s = o.toString();
+            b.append(s, 0, s.length() - 1).append("...\"");
         } else {
-            return o.toString();
+            b.append(o);
         }
     }
 
-    private String getRecordValueString(final IErlRecordDef r, final OtpErlangObject o) {
-        final StringBuilder b = new StringBuilder();
+    private void appendElementValueString(final StringBuilder b,
+            final OtpErlangObject o) {
+        final OtpErlangObject v = preview(o);
+        appendValueString(b, v, isLazy(o) ? getLazySize(o) : getArity(v, null), true);
+    }
+
+    private void appendRecordValueString(final StringBuilder b, final IErlRecordDef r,
+            final OtpErlangTuple t) {
         List<IErlElement> children;
         try {
             children = r.getChildren();
         } catch (final ErlModelException e) {
             children = EMPTY_LIST;
         }
-        final OtpErlangTuple t = (OtpErlangTuple) o;
         b.append(t.elementAt(0)).append("#{");
-        final int n = children.size();
-        if (n > 0) {
-            for (int i = 0; i < n; i++) {
-                final IErlRecordField field = (IErlRecordField) children.get(i);
-                b.append(field.getFieldName()).append('=')
-                        .append(t.elementAt(i + 1).toString()).append(", ");
+        final int n = Math.min(children.size(), t.arity() - 1);
+        for (int i = 0; i < n && b.length() <= MAX_VALUE_STRING; i++) {
+            if (i > 0) {
+                b.append(", ");
             }
-            b.setLength(b.length() - 2);
+            final IErlRecordField field = (IErlRecordField) children.get(i);
+            b.append(field.getFieldName()).append('=');
+            appendElementValueString(b, t.elementAt(i + 1));
+        }
+        if (n < children.size()) {
+            b.append(n > 0 ? ", ..." : "...");
         }
         b.append('}');
-        return b.toString();
     }
 
-    private String getListValueString(final OtpErlangList l) throws DebugException {
-        final StringBuilder b = new StringBuilder("[");
-        if (l.arity() > 0) {
-            for (final OtpErlangObject o : l) {
-                b.append(getValueString(o, true)).append(", ");
+    private void appendElementsValueString(final StringBuilder b, final String open,
+            final OtpErlangObject[] elements, final int n, final String close) {
+        b.append(open);
+        for (int i = 0; i < elements.length && b.length() <= MAX_VALUE_STRING; i++) {
+            if (i > 0) {
+                b.append(", ");
             }
-            b.setLength(b.length() - 2);
+            appendElementValueString(b, elements[i]);
         }
-        b.append(']');
-        return b.toString();
-    }
-
-    private String getTupleValueString(final OtpErlangTuple t) throws DebugException {
-        final StringBuilder b = new StringBuilder("{");
-        if (t.arity() > 0) {
-            for (final OtpErlangObject o : t.elements()) {
-                b.append(getValueString(o, true)).append(", ");
-            }
-            b.setLength(b.length() - 2);
+        if (n > elements.length) {
+            b.append(elements.length > 0 ? ", ..." : "...");
         }
-        b.append('}');
-        return b.toString();
+        b.append(close);
     }
 
-    private static String getBinaryValueString(final OtpErlangBinary b) {
-        final StringBuilder sb = new StringBuilder("<<");
-        if (b.size() > 0) {
-            final byte[] bytes = b.binaryValue();
+    private static void appendBinaryValueString(final StringBuilder sb,
+            final byte[] bytes, final int n) {
+        sb.append("<<");
+        if (bytes.length > 0) {
+            // only the start is shown, don't decode the rest
+            final int length = Math.min(bytes.length, MAX_VALUE_STRING);
             CharBuffer cb = null;
-            if (looksLikeAscii(bytes)) {
-                final Charset[] css = { Charsets.UTF_8, Charsets.ISO_8859_1 };
-                final Charset[] tryCharsets = css;
+            if (looksLikeAscii(bytes, length)) {
+                final Charset[] tryCharsets = { Charsets.UTF_8, Charsets.ISO_8859_1 };
                 for (final Charset cset : tryCharsets) {
                     final CharsetDecoder cd = cset.newDecoder();
                     cd.onMalformedInput(CodingErrorAction.REPORT);
                     cd.onUnmappableCharacter(CodingErrorAction.REPORT);
                     try {
-                        cb = cd.decode(ByteBuffer.wrap(bytes));
+                        cb = cd.decode(ByteBuffer.wrap(bytes, 0, length));
                         break;
                     } catch (final CharacterCodingException e) {
                     }
                 }
             }
             if (cb != null && cb.length() > 0) {
-                sb.append('"').append(cb).append('"');
+                sb.append('"').append(cb);
+                if (n > length) {
+                    sb.append("...");
+                }
+                sb.append('"');
             } else {
-                for (int i = 0, n = bytes.length; i < n; ++i) {
-                    int j = bytes[i];
-                    if (j < 0) {
-                        j += 256;
-                    }
-                    sb.append(j);
-                    if (i < n - 1) {
+                for (int i = 0; i < length && sb.length() <= MAX_VALUE_STRING; ++i) {
+                    if (i > 0) {
                         sb.append(',');
                     }
+                    sb.append(bytes[i] & 0xff);
+                }
+                if (n > length) {
+                    sb.append(",...");
                 }
             }
         }
         sb.append(">>");
-        return sb.toString();
     }
 
     private static boolean looksLikeAscii(final byte[] bytes) {
-        for (final byte b : bytes) {
-            if (b < 32) {
+        return looksLikeAscii(bytes, bytes.length);
+    }
+
+    private static boolean looksLikeAscii(final byte[] bytes, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 32) {
                 return false;
             }
         }
@@ -286,11 +367,18 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
         return getArity() != -1;
     }
 
-    protected OtpErlangObject getElementAt(final int index) {
+    /**
+     * @param index
+     *            the position in the value, for a record counting the record
+     *            name too
+     */
+    protected OtpErlangObject getElementAt(final int index) throws DebugException {
+        if (index >= previewSize) {
+            return fetchElementAt(index);
+        }
         if (value instanceof OtpErlangTuple) {
             final OtpErlangTuple t = (OtpErlangTuple) value;
-            final int ofs = record != null ? 1 : 0;
-            return t.elementAt(index + ofs);
+            return t.elementAt(index);
         } else if (value instanceof OtpErlangList) {
             final OtpErlangList l = (OtpErlangList) value;
             return l.elementAt(index);
@@ -307,7 +395,52 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
         return null;
     }
 
+    private OtpErlangObject fetchElementAt(final int index) throws DebugException {
+        final int page = index / PAGE_SIZE;
+        OtpErlangObject[] elements = pages.get(page);
+        if (elements == null) {
+            elements = fetchPage(page * PAGE_SIZE);
+            pages.put(page, elements);
+        }
+        if (index % PAGE_SIZE >= elements.length) {
+            throw notAvailable();
+        }
+        return elements[index % PAGE_SIZE];
+    }
+
+    private OtpErlangObject[] fetchPage(final int offset) throws DebugException {
+        if (path == null) {
+            throw notAvailable();
+        }
+        final OtpErlangObject part = path.fetch(getErlangDebugTarget().getBackend()
+                .getRpcSite(), process.getMeta(), offset, PAGE_SIZE);
+        if (part instanceof OtpErlangString) {
+            // a list of small integers comes as a string
+            return new OtpErlangList(((OtpErlangString) part).stringValue()).elements();
+        } else if (part instanceof OtpErlangList) {
+            return ((OtpErlangList) part).elements();
+        } else if (part instanceof OtpErlangBinary) {
+            final byte[] bytes = ((OtpErlangBinary) part).binaryValue();
+            final OtpErlangObject[] result = new OtpErlangObject[bytes.length];
+            for (int i = 0; i < bytes.length; i++) {
+                result[i] = new OtpErlangLong(bytes[i] & 0xff);
+            }
+            return result;
+        }
+        throw notAvailable();
+    }
+
+    private DebugException notAvailable() {
+        return new DebugException(new Status(IStatus.ERROR, BackendPlugin.PLUGIN_ID,
+                DebugException.TARGET_REQUEST_FAILED, "Could not get the value of "
+                        + varName, null));
+    }
+
     protected int getArity() {
+        return size;
+    }
+
+    private static int getArity(final OtpErlangObject value, final OtpErlangList list) {
         if (value instanceof OtpErlangTuple) {
             final OtpErlangTuple t = (OtpErlangTuple) value;
             return t.arity();
@@ -324,6 +457,44 @@ public class IndexedErlangValue extends ErlangValue implements IIndexedValue {
         }
     }
 
+    static boolean isLazy(final OtpErlangObject o) {
+        if (o instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) o;
+            return t.arity() == 3 && LAZY.equals(t.elementAt(0))
+                    && t.elementAt(1) instanceof OtpErlangLong;
+        }
+        return false;
+    }
+
+    private static OtpErlangObject preview(final OtpErlangObject o) {
+        return isLazy(o) ? ((OtpErlangTuple) o).elementAt(2) : o;
+    }
+
+    private static int getLazySize(final OtpErlangObject o) {
+        final OtpErlangLong n = (OtpErlangLong) ((OtpErlangTuple) o).elementAt(1);
+        return (int) Math.min(n.longValue(), Integer.MAX_VALUE);
+    }
+
+    private static boolean containsLazy(final OtpErlangObject o) {
+        if (isLazy(o)) {
+            return true;
+        }
+        final OtpErlangObject[] elements;
+        if (o instanceof OtpErlangTuple) {
+            elements = ((OtpErlangTuple) o).elements();
+        } else if (o instanceof OtpErlangList) {
+            elements = ((OtpErlangList) o).elements();
+        } else {
+            return false;
+        }
+        for (final OtpErlangObject e : elements) {
+            if (containsLazy(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public IVariable[] getVariables() throws DebugException {
         final int arity = getArity();
@@ -18,8 +18,10 @@ import static org.hamcrest.Matchers.nullValue;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.debug.core.DebugEvent;
 import org.eclipse.debug.core.DebugException;
@@ -53,6 +55,7 @@ import org.erlide.util.SystemConfiguration;
 import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangPid;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public abstract class Backend implements IStreamListener, IBackend {
 
@@ -60,10 +63,11 @@ public abstract class Backend implements IStreamListener, IBackend {
     private BackendShellManager shellManager;
     private final CodeManager codeManager;
 
-    private final BackendData data;
+    private BackendData data;
     private ErlangDebugTarget debugTarget;
     protected final IBackendManager backendManager;
     private boolean disposed = false;
+    private OutputDrainer outputDrainer;
 
     public Backend(final BackendData data, @NonNull final IErlRuntime runtime,
             final IBackendManager backendManager) {
@@ -81,6 +85,7 @@ public abstract class Backend implements IStreamListener, IBackend {
             return;
         }
         disposed = true;
+        stopDrainingOutput();
         if (data.isDebug() && debugTarget != null) {
             debugTarget.dispose();
         }
@@ -321,13 +326,56 @@ public abstract class Backend implements IStreamListener, IBackend {
     @Override
     public void initialize(final CodeContext context,
             final Collection<ICodeBundle> bundles) {
+        prepare(context, bundles);
+        launched();
+    }
+
+    /**
+     * Loads the code and starts the erlide apps, but doesn't do anything
+     * specific to a launch.
+     */
+    void prepare(final CodeContext context, final Collection<ICodeBundle> bundles) {
         runtime.addShutdownCallback(this);
         shellManager = new BackendShellManager(this);
         for (final ICodeBundle bb : bundles) {
             registerCodeBundle(context, bb);
         }
         initErlang(data.isManaged());
+    }
+
+    /**
+     * Hands a prepared backend over to a launch.
+     * 
+     * @param launchData
+     *            must describe the same node as the data the backend was
+     *            created with
+     */
+    void attach(final BackendData launchData) {
+        stopDrainingOutput();
+        data = launchData;
+        assignStreamProxyListeners();
+        launched();
+    }
+
+    /**
+     * Until a launch takes the node over, nobody else reads its output.
+     */
+    void drainOutput() {
+        final Process process = runtime.getProcess();
+        if (process != null) {
+            outputDrainer = new OutputDrainer(getName(), process);
+            outputDrainer.start();
+        }
+    }
+
+    private void stopDrainingOutput() {
+        if (outputDrainer != null) {
+            outputDrainer.stopDraining();
+            outputDrainer = null;
+        }
+    }
 
+    private void launched() {
         try {
             postLaunch();
         } catch (final DebugException e) {
@@ -359,25 +407,19 @@ public abstract class Backend implements IStreamListener, IBackend {
     private void loadBeamsFromDir(final String outDir) {
         final File dir = new File(outDir);
         if (dir.isDirectory()) {
+            final Map<String, IPath> beamPaths = Maps.newLinkedHashMap();
             for (final File f : dir.listFiles()) {
                 final Path path = new Path(f.getPath());
                 if (path.getFileExtension() != null
                         && "beam".compareTo(path.getFileExtension()) == 0) {
-                    final String m = path.removeFileExtension().lastSegment();
-                    try {
-                        boolean ok = false;
-                        final OtpErlangBinary bin = BeamUtil.getBeamBinary(m, path);
-                        if (bin != null) {
-                            ok = BeamLoader.loadBeam(getRpcSite(), m, bin);
-                        }
-                        if (!ok) {
-                            ErlLogger.error("Could not load %s", m);
-                        }
-                    } catch (final Exception ex) {
-                        ErlLogger.warn(ex);
-                    }
+                    beamPaths.put(path.removeFileExtension().lastSegment(), path);
                 }
             }
+            final Map<String, OtpErlangBinary> beams = BeamUtil
+                    .getBeamFileBinaries(beamPaths);
+            for (final String m : BeamLoader.loadBeams(getRpcSite(), beams)) {
+                ErlLogger.error("Could not load %s", m);
+            }
         }
     }
 
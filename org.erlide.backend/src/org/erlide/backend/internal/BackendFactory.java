@@ -63,15 +63,17 @@ public class BackendFactory implements IBackendFactory {
     }
 
     @Override
-    public synchronized IBackend createBuildBackend(final RuntimeInfo info) {
-        ErlLogger.debug("Create build backend " + info.getVersion().asMajor().toString());
-        final IBackend backend = createBackend(getBuildBackendData(info));
+    public IBackend createBuildBackend(final RuntimeInfo info,
+            final int index) {
+        ErlLogger.debug("Create build backend " + info.getVersion().asMajor().toString()
+                + " #" + index);
+        final IBackend backend = createBackend(getBuildBackendData(info, index));
         setWorkDirForCoreDumps(backend.getRpcSite());
         return backend;
     }
 
     @Override
-    public synchronized IBackend createBackend(final BackendData data) {
+    public IBackend createBackend(final BackendData data) {
         ErlLogger.debug("Create backend " + data.getNodeName());
 
         final IBackend b;
@@ -86,6 +88,26 @@ public class BackendFactory implements IBackendFactory {
         return b;
     }
 
+    @Override
+    public IBackend createStandbyBackend(final BackendData data) {
+        ErlLogger.debug("Create standby backend " + data.getNodeName());
+
+        final IErlRuntime runtime = ErlRuntimeFactory.createRuntime(data);
+        runtime.startAndWait();
+
+        final IBackendManager backendManager = BackendCore.getBackendManager();
+        final Backend b = new ExternalBackend(data, runtime, backendManager);
+        b.drainOutput();
+        b.prepare(data.getContext(), backendManager.getCodeBundles());
+        return b;
+    }
+
+    @Override
+    public void attachBackend(final IBackend backend, final BackendData data) {
+        ErlLogger.debug("Attach standby backend " + data.getNodeName());
+        ((Backend) backend).attach(data);
+    }
+
     private BackendData getIdeBackendData() {
         final RuntimeInfo info = getIdeRuntimeInfo();
         final BackendData result = new BackendData(info);
@@ -102,11 +124,14 @@ public class BackendFactory implements IBackendFactory {
         return result;
     }
 
-    private BackendData getBuildBackendData(final @NonNull RuntimeInfo info) {
+    private BackendData getBuildBackendData(final @NonNull RuntimeInfo info,
+            final int index) {
         final RuntimeInfo myinfo = new RuntimeInfo(info);
 
         final BackendData result = new BackendData(myinfo);
-        result.setNodeName(info.getVersion().asMajor().toString() + "_"
+        // the first one keeps the name it had before there were several
+        final String suffix = index == 0 ? "" : "_" + index;
+        result.setNodeName(info.getVersion().asMajor().toString() + suffix + "_"
                 + BackendUtils.getErlideNodeNameTag());
         result.setCookie("erlide");
         result.setRestartable(true);
@@ -11,8 +11,10 @@
 package org.erlide.backend.internal;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -23,9 +25,15 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IExtension;
 import org.eclipse.core.runtime.IExtensionPoint;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.debug.core.DebugPlugin;
 import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchConfiguration;
+import org.eclipse.debug.core.ILaunchConfigurationListener;
 import org.eclipse.debug.core.model.IProcess;
 import org.eclipse.jdt.annotation.Nullable;
 import org.eclipse.xtext.xbase.lib.Pair;
@@ -44,6 +52,7 @@ import org.erlide.backend.api.IProjectCodeLoader;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.model.IErlModel;
 import org.erlide.engine.model.root.IErlProject;
+import org.erlide.engine.util.NatureUtil;
 import org.erlide.runtime.api.IRpcSite;
 import org.erlide.runtime.runtimeinfo.RuntimeInfo;
 import org.erlide.runtime.runtimeinfo.RuntimeVersion;
@@ -51,10 +60,15 @@ import org.erlide.util.ErlLogger;
 import org.osgi.framework.Bundle;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
 public final class BackendManager implements IBackendManager {
 
@@ -62,15 +76,44 @@ public final class BackendManager implements IBackendManager {
         ADDED, REMOVED, MODULE_LOADED
     }
 
+    /**
+     * How many build backends may be started for each runtime version.
+     */
+    private static final int BUILD_POOL_SIZE = Integer.getInteger(
+            "erlide.build.backends",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+
+    /**
+     * How many standby execution backends may be kept for each runtime, 0
+     * turns them off.
+     */
+    private static final int STANDBY_POOL_SIZE = Integer.getInteger(
+            "erlide.launch.standby", 1);
+
+    /**
+     * How long to wait for a node's name to be free again after it was
+     * stopped.
+     */
+    private static final long NODE_DOWN_TIMEOUT = 10000;
+
+    /**
+     * erl options that run code when the node starts.
+     */
+    private static final Set<String> STARTUP_CODE_OPTIONS = ImmutableSet.of("-s",
+            "-run", "-eval");
+
     private volatile IBackend ideBackend;
     private final Object ideBackendLock = new Object();
     private final Map<IProject, Set<IBackend>> executionBackends;
-    private final Map<String, IBackend> buildBackends;
+    private final Map<String, List<SettableFuture<IBackend>>> buildBackends;
+    private final Map<String, Standby> standbyBackends;
+    private volatile boolean disposed;
     final List<IBackendListener> listeners;
     private final Map<Bundle, ICodeBundle> codeBundles;
 
     private final Set<IBackend> allBackends;
     private final BackendManagerLaunchListener launchListener;
+    private final ILaunchConfigurationListener configurationListener;
     private final IBackendFactory factory;
     private final RuntimeInfo erlideRuntimeInfo;
 
@@ -82,6 +125,7 @@ public final class BackendManager implements IBackendManager {
         ideBackend = null;
         executionBackends = Maps.newHashMap();
         buildBackends = Maps.newHashMap();
+        standbyBackends = Maps.newLinkedHashMap();
         allBackends = Sets.newHashSet();
         listeners = Lists.newArrayList();
         codeBundles = Maps.newHashMap();
@@ -90,6 +134,25 @@ public final class BackendManager implements IBackendManager {
 
         launchListener = new BackendManagerLaunchListener(this, DebugPlugin.getDefault()
                 .getLaunchManager());
+        configurationListener = new ILaunchConfigurationListener() {
+            @Override
+            public void launchConfigurationAdded(
+                    final ILaunchConfiguration configuration) {
+            }
+
+            @Override
+            public void launchConfigurationChanged(
+                    final ILaunchConfiguration configuration) {
+            }
+
+            @Override
+            public void launchConfigurationRemoved(
+                    final ILaunchConfiguration configuration) {
+                discardStandbyBackends(configuration);
+            }
+        };
+        DebugPlugin.getDefault().getLaunchManager()
+                .addLaunchConfigurationListener(configurationListener);
     }
 
     @SuppressWarnings("unused")
@@ -116,12 +179,235 @@ public final class BackendManager implements IBackendManager {
     @Override
     public IBackend createExecutionBackend(final BackendData data) {
         ErlLogger.debug("create execution backend " + data.getNodeName());
-        final IBackend b = factory.createBackend(data);
+        IBackend b = takeStandbyBackend(data);
+        if (b == null) {
+            b = factory.createBackend(data);
+        }
         addBackend(b);
         notifyBackendChange(b, BackendEvent.ADDED, null, null);
         return b;
     }
 
+    /**
+     * A launched node is started again with the same settings as soon as its
+     * launch terminates, so that the next launch of the same configuration
+     * finds it up and with its code loaded. A node keeps the name the user
+     * gave it, so we can't have a standby node before a configuration was
+     * launched once, nor reuse one that ran a launch: that one is killed.
+     */
+    private static class Standby {
+        final String runtimeName;
+        final String nodeName;
+        final ILaunchConfiguration configuration;
+        final SettableFuture<IBackend> backend = SettableFuture.create();
+
+        Standby(final BackendData data, final ILaunchConfiguration configuration) {
+            runtimeName = data.getRuntimeInfo().getName();
+            nodeName = data.getNodeName();
+            this.configuration = configuration;
+        }
+    }
+
+    /**
+     * Backends can be used for launches that would start exactly the same
+     * node.
+     */
+    private static String getStandbyKey(final BackendData data) {
+        return Arrays.toString(data.getCmdLine()) + " " + data.getWorkingDir() + " "
+                + (data.getEnv() == null ? "" : Maps.newTreeMap(data.getEnv()))
+                + " " + data.getContext();
+    }
+
+    @Override
+    public boolean hasStandbyBackend(final String nodeName) {
+        synchronized (standbyBackends) {
+            for (final Standby standby : standbyBackends.values()) {
+                if (standby.nodeName.equals(nodeName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private IBackend takeStandbyBackend(final BackendData data) {
+        final String key = getStandbyKey(data);
+        Standby match = null;
+        final List<Standby> conflicts = Lists.newArrayList();
+        synchronized (standbyBackends) {
+            final Iterator<Entry<String, Standby>> i = standbyBackends.entrySet()
+                    .iterator();
+            while (i.hasNext()) {
+                final Entry<String, Standby> entry = i.next();
+                if (entry.getKey().equals(key)) {
+                    match = entry.getValue();
+                    i.remove();
+                } else if (entry.getValue().nodeName.equals(data.getNodeName())) {
+                    conflicts.add(entry.getValue());
+                    i.remove();
+                }
+            }
+        }
+        // the node's settings have changed, the name must be free again
+        for (final Standby standby : conflicts) {
+            discard(standby);
+        }
+        if (!conflicts.isEmpty()) {
+            waitForNodeDown(data.getNodeName());
+        }
+        if (match == null) {
+            return null;
+        }
+        // it may still be starting, that can't be slower than starting anew
+        final IBackend b = Futures.getUnchecked(match.backend);
+        if (b == null) {
+            return null;
+        }
+        if (!b.isRunning()) {
+            b.dispose();
+            waitForNodeDown(data.getNodeName());
+            return null;
+        }
+        factory.attachBackend(b, data);
+        return b;
+    }
+
+    private void startStandbyBackend(final BackendData used) {
+        final ILaunch launch = used.getLaunch();
+        if (STANDBY_POOL_SIZE <= 0 || launch == null
+                || launch.getLaunchConfiguration() == null || runsStartupCode(used)) {
+            return;
+        }
+        final BackendData data = new BackendData(used);
+        final Standby standby = new Standby(data, launch.getLaunchConfiguration());
+        final List<Standby> evicted = Lists.newArrayList();
+        synchronized (standbyBackends) {
+            if (disposed) {
+                return;
+            }
+            int count = 0;
+            for (final Standby s : standbyBackends.values()) {
+                if (s.runtimeName.equals(standby.runtimeName)) {
+                    count++;
+                }
+            }
+            // the oldest ones go first
+            final Iterator<Standby> i = standbyBackends.values().iterator();
+            while (count >= STANDBY_POOL_SIZE && i.hasNext()) {
+                final Standby s = i.next();
+                if (s.runtimeName.equals(standby.runtimeName)) {
+                    evicted.add(s);
+                    i.remove();
+                    count--;
+                }
+            }
+            standbyBackends.put(getStandbyKey(data), standby);
+        }
+        for (final Standby s : evicted) {
+            discard(s);
+        }
+        final Thread starter = new Thread("start standby backend " + data.getNodeName()) {
+            @Override
+            public void run() {
+                IBackend b = null;
+                try {
+                    if (waitForNodeDown(data.getNodeName())) {
+                        b = factory.createStandbyBackend(data);
+                    } else {
+                        ErlLogger.warn("Node %s is still up, no standby backend",
+                                data.getNodeName());
+                    }
+                } catch (final Exception e) {
+                    ErlLogger.warn(e);
+                }
+                standby.backend.set(b);
+            }
+        };
+        starter.setDaemon(true);
+        starter.start();
+    }
+
+    /**
+     * The node would run the user's code before it is launched.
+     */
+    private static boolean runsStartupCode(final BackendData data) {
+        for (final String arg : data.getCmdLine()) {
+            if ("-extra".equals(arg)) {
+                // the rest is for the user's code
+                break;
+            }
+            if (STARTUP_CODE_OPTIONS.contains(arg)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The configuration is gone, so its standby backends won't be used and
+     * must give up their node names.
+     */
+    private void discardStandbyBackends(final ILaunchConfiguration configuration) {
+        final List<Standby> discarded = Lists.newArrayList();
+        synchronized (standbyBackends) {
+            final Iterator<Standby> i = standbyBackends.values().iterator();
+            while (i.hasNext()) {
+                final Standby standby = i.next();
+                if (standby.configuration.equals(configuration)) {
+                    discarded.add(standby);
+                    i.remove();
+                }
+            }
+        }
+        for (final Standby standby : discarded) {
+            discard(standby);
+        }
+    }
+
+    /**
+     * Stop the standby backend, now or when it has started.
+     */
+    private static void discard(final Standby standby) {
+        dispose(standby.backend);
+    }
+
+    /**
+     * Stop the backend, now or when it has started.
+     */
+    private static void dispose(final ListenableFuture<IBackend> backend) {
+        backend.addListener(new Runnable() {
+            @Override
+            public void run() {
+                final IBackend b = Futures.getUnchecked(backend);
+                if (b != null) {
+                    b.dispose();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * @return false if the node is still registered with epmd after the
+     *         timeout
+     */
+    private static boolean waitForNodeDown(final String nodeName) {
+        final int atSignIndex = nodeName.indexOf('@');
+        final String shortName = atSignIndex < 0 ? nodeName : nodeName.substring(0,
+                atSignIndex);
+        final long deadline = System.currentTimeMillis() + NODE_DOWN_TIMEOUT;
+        while (BackendCore.getEpmdWatcher().hasLocalNode(shortName)) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void addBackend(final IBackend b) {
         synchronized (allBackends) {
             allBackends.add(b);
@@ -134,27 +420,81 @@ public final class BackendManager implements IBackendManager {
             // TODO not sure if this is what we really want to do in this case
             return getIdeBackend();
         }
+        final List<IBackend> pool = getBuildBackends(project, 1);
+        return pool.isEmpty() ? null : pool.get(0);
+    }
+
+    @Override
+    public List<IBackend> getBuildBackends(final IProject project, final int max) {
         final IErlProject erlProject = ErlangEngine.getInstance().getModel()
                 .getErlangProject(project);
         if (erlProject == null) {
             ErlLogger.warn("Project %s is not an erlang project", project.getName());
-            return null;
+            return Collections.emptyList();
         }
         final RuntimeInfo info = erlProject.getRuntimeInfo();
         if (info == null) {
             ErlLogger
                     .info("Project %s has no runtime info, using ide", project.getName());
-            return ideBackend;
+            return Collections.singletonList(getIdeBackend());
         }
+        return getBuildBackends(info, max);
+    }
+
+    /**
+     * The backends are started outside the lock, so that callers that need
+     * only backends that are up already don't wait for new ones. A backend
+     * that failed to start is tried again by the next caller.
+     */
+    private List<IBackend> getBuildBackends(final RuntimeInfo info, final int max) {
         final String version = info.getVersion().asMajor().toString();
-        IBackend b = buildBackends.get(version);
-        if (b == null) {
-            b = factory.createBuildBackend(info);
-            buildBackends.put(version, b);
-            addBackend(b);
-            notifyBackendChange(b, BackendEvent.ADDED, null, null);
+        final int size = Math.max(1, Math.min(max, BUILD_POOL_SIZE));
+        final List<SettableFuture<IBackend>> slots;
+        final Map<Integer, SettableFuture<IBackend>> starting = Maps.newLinkedHashMap();
+        synchronized (buildBackends) {
+            List<SettableFuture<IBackend>> pool = buildBackends.get(version);
+            if (pool == null) {
+                pool = Lists.newArrayList();
+                buildBackends.put(version, pool);
+            }
+            for (int i = 0; i < size; i++) {
+                if (i == pool.size() || hasFailed(pool.get(i))) {
+                    final SettableFuture<IBackend> slot = SettableFuture.create();
+                    if (i == pool.size()) {
+                        pool.add(slot);
+                    } else {
+                        pool.set(i, slot);
+                    }
+                    starting.put(i, slot);
+                }
+            }
+            slots = Lists.newArrayList(pool.subList(0, size));
         }
-        return b;
+        for (final Entry<Integer, SettableFuture<IBackend>> slot : starting.entrySet()) {
+            IBackend b = null;
+            try {
+                b = factory.createBuildBackend(info, slot.getKey());
+                addBackend(b);
+                notifyBackendChange(b, BackendEvent.ADDED, null, null);
+            } catch (final Exception e) {
+                ErlLogger.warn(e);
+            } finally {
+                slot.getValue().set(b);
+            }
+        }
+        final List<IBackend> result = Lists.newArrayList();
+        for (final SettableFuture<IBackend> slot : slots) {
+            // those started by another caller may still be starting
+            final IBackend b = Futures.getUnchecked(slot);
+            if (b != null) {
+                result.add(b);
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasFailed(final ListenableFuture<IBackend> backend) {
+        return backend.isDone() && Futures.getUnchecked(backend) == null;
     }
 
     @Override
@@ -163,6 +503,7 @@ public final class BackendManager implements IBackendManager {
         if (ideBackend == null) {
             synchronized (ideBackendLock) {
                 if (ideBackend == null) {
+                    startDefaultBuildBackend();
                     ideBackend = factory.createIdeBackend();
                     addBackend(ideBackend);
                     notifyBackendChange(ideBackend, BackendEvent.ADDED, null, null);
@@ -173,6 +514,40 @@ public final class BackendManager implements IBackendManager {
         return ideBackend;
     }
 
+    /**
+     * Most projects use the default runtime, its build backend is started
+     * while the ide backend starts. Not if there is nothing to build.
+     */
+    private void startDefaultBuildBackend() {
+        final RuntimeInfo info = BackendCore.getRuntimeInfoCatalog().getDefaultRuntime();
+        if (info == null || info.getVersion() == null || !hasErlangProjects()) {
+            return;
+        }
+        final Job starter = new Job("Starting build backend " + info.getName()) {
+            @Override
+            protected IStatus run(final IProgressMonitor monitor) {
+                try {
+                    getBuildBackends(info, 1);
+                } catch (final Exception e) {
+                    ErlLogger.warn(e);
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        starter.setSystem(true);
+        starter.schedule();
+    }
+
+    private static boolean hasErlangProjects() {
+        for (final IProject project : ResourcesPlugin.getWorkspace().getRoot()
+                .getProjects()) {
+            if (NatureUtil.hasErlangNature(project)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void notifyBackendChange(final IBackend b, final BackendEvent type,
             final IProject project, final String moduleName) {
         if (listeners == null) {
@@ -401,8 +776,21 @@ public final class BackendManager implements IBackendManager {
 
     @Override
     public void dispose() {
-        for (final IBackend b : buildBackends.values()) {
-            b.dispose();
+        disposed = true;
+        DebugPlugin.getDefault().getLaunchManager()
+                .removeLaunchConfigurationListener(configurationListener);
+        synchronized (standbyBackends) {
+            for (final Standby standby : standbyBackends.values()) {
+                discard(standby);
+            }
+            standbyBackends.clear();
+        }
+        synchronized (buildBackends) {
+            for (final List<SettableFuture<IBackend>> pool : buildBackends.values()) {
+                for (final SettableFuture<IBackend> slot : pool) {
+                    dispose(slot);
+                }
+            }
         }
         if (ideBackend != null) {
             ideBackend.dispose();
@@ -428,6 +816,10 @@ public final class BackendManager implements IBackendManager {
         final IBackend b = getBackendForLaunch(launch);
         if (b != null) {
             b.dispose();
+            final BackendData data = b.getData();
+            if (!data.isInternal() && data.isManaged()) {
+                startStandbyBackend(data);
+            }
         }
     }
 
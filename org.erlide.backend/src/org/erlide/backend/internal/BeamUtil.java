@@ -11,6 +11,13 @@ import java.net.URLConnection;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.internal.runtime.Activator;
 import org.eclipse.core.runtime.IConfigurationElement;
@@ -23,10 +30,76 @@ import org.osgi.framework.Bundle;
 
 import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 @SuppressWarnings("restriction")
 public class BeamUtil {
 
+    private static final int READ_THREADS = Math.max(2, Math.min(8, Runtime
+            .getRuntime().availableProcessors()));
+    private static final ExecutorService readers = Executors.newFixedThreadPool(
+            READ_THREADS, new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("beam-reader-%d").build());
+
+    /**
+     * Reads the beams in parallel.
+     * 
+     * @return the binaries by module name, in the same order; those that
+     *         couldn't be read are left out
+     */
+    public static Map<String, OtpErlangBinary> getBeamBinaries(
+            final Map<String, URL> beamPaths) {
+        final Map<String, Future<OtpErlangBinary>> reads = Maps.newLinkedHashMap();
+        for (final Entry<String, URL> beam : beamPaths.entrySet()) {
+            reads.put(beam.getKey(), readers.submit(new Callable<OtpErlangBinary>() {
+                @Override
+                public OtpErlangBinary call() {
+                    return getBeamBinary(beam.getKey(), beam.getValue());
+                }
+            }));
+        }
+        return collect(reads);
+    }
+
+    /**
+     * Like {@link #getBeamBinaries(Map)}, for files in the file system.
+     */
+    public static Map<String, OtpErlangBinary> getBeamFileBinaries(
+            final Map<String, IPath> beamPaths) {
+        final Map<String, Future<OtpErlangBinary>> reads = Maps.newLinkedHashMap();
+        for (final Entry<String, IPath> beam : beamPaths.entrySet()) {
+            reads.put(beam.getKey(), readers.submit(new Callable<OtpErlangBinary>() {
+                @Override
+                public OtpErlangBinary call() {
+                    return getBeamBinary(beam.getKey(), beam.getValue());
+                }
+            }));
+        }
+        return collect(reads);
+    }
+
+    private static Map<String, OtpErlangBinary> collect(
+            final Map<String, Future<OtpErlangBinary>> reads) {
+        final Map<String, OtpErlangBinary> result = Maps.newLinkedHashMap();
+        for (final Entry<String, Future<OtpErlangBinary>> read : reads.entrySet()) {
+            OtpErlangBinary bin = null;
+            try {
+                bin = read.getValue().get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                ErlLogger.warn(e);
+            }
+            if (bin == null) {
+                ErlLogger.error("Could not load %s", read.getKey());
+            } else {
+                result.put(read.getKey(), bin);
+            }
+        }
+        return result;
+    }
+
     public static OtpErlangBinary getBeamBinary(final String moduleName,
             final URL beamPath) {
         FileInputStream s;
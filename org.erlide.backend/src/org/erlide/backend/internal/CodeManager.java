@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.erlide.backend.BackendUtils;
 import org.erlide.backend.api.ICodeBundle;
@@ -26,6 +27,7 @@ import org.erlide.runtime.runtimeinfo.RuntimeVersion;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.google.common.collect.Maps;
 
 public class CodeManager {
 
@@ -94,30 +96,23 @@ public class CodeManager {
         unloadCodeForBundle(context, bundle);
     }
 
-    private boolean loadBeam(final String moduleName, final URL beamPath) {
-        final OtpErlangBinary bin = BeamUtil.getBeamBinary(moduleName, beamPath);
-        if (bin == null) {
-            return false;
-        }
-        return BeamLoader.loadBeam(site, moduleName, bin);
-    }
-
     private void loadCodeForBundle(final CodeContext context, final ICodeBundle bundle) {
         final Collection<String> ebinDirs = bundle.getEbinDirs(context);
         if (ebinDirs == null) {
             return;
         }
+        final Map<String, URL> beamPaths = Maps.newLinkedHashMap();
         for (final String ebinDir : ebinDirs) {
             final String beamModuleName = BackendUtils.getBeamModuleName(ebinDir);
             if (beamModuleName != null) {
                 // ErlLogger.debug(" load " + beamModuleName);
-                final boolean ok = loadBeam(beamModuleName,
-                        bundle.getBundle().getEntry(ebinDir));
-                if (!ok) {
-                    ErlLogger.error("Could not load %s", beamModuleName);
-                }
+                beamPaths.put(beamModuleName, bundle.getBundle().getEntry(ebinDir));
             }
         }
+        final Map<String, OtpErlangBinary> beams = BeamUtil.getBeamBinaries(beamPaths);
+        for (final String failed : BeamLoader.loadBeams(site, beams)) {
+            ErlLogger.error("Could not load %s", failed);
+        }
     }
 
     private void unloadCodeForBundle(final CodeContext context, final ICodeBundle bundle) {
@@ -32,7 +32,8 @@ public class ExternalBackend extends Backend {
     public void dispose() {
         try {
             final ILaunch launch = getData().getLaunch();
-            if (!launch.isTerminated()) {
+            // a standby backend has no launch yet
+            if (launch != null && !launch.isTerminated()) {
                 launch.terminate();
             }
         } catch (final DebugException e) {
@@ -51,7 +52,11 @@ public class ExternalBackend extends Backend {
     }
 
     private IProcess getErtsProcess() {
-        final IProcess[] ps = getData().getLaunch().getProcesses();
+        final ILaunch launch = getData().getLaunch();
+        if (launch == null) {
+            return null;
+        }
+        final IProcess[] ps = launch.getProcesses();
         if (ps == null || ps.length == 0) {
             return null;
         }
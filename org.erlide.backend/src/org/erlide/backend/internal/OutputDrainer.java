@@ -0,0 +1,64 @@
+package org.erlide.backend.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.erlide.util.ErlLogger;
+
+/**
+ * Reads and drops a node's output while no launch shows it, so that the node
+ * doesn't block on a full pipe. It only reads what is available, so that once
+ * it is stopped the streams can be handed over without losing anything more.
+ */
+class OutputDrainer extends Thread {
+
+    private static final long POLL_INTERVAL = 100;
+
+    private final InputStream[] streams;
+    private volatile boolean stopped;
+
+    OutputDrainer(final String nodeName, final Process process) {
+        super("drain output of " + nodeName);
+        setDaemon(true);
+        streams = new InputStream[] { process.getInputStream(),
+                process.getErrorStream() };
+    }
+
+    @Override
+    public void run() {
+        final byte[] buf = new byte[4096];
+        try {
+            while (!stopped) {
+                boolean idle = true;
+                for (final InputStream stream : streams) {
+                    final int n = stream.available();
+                    if (n > 0) {
+                        stream.read(buf, 0, Math.min(n, buf.length));
+                        idle = false;
+                    }
+                }
+                if (idle) {
+                    Thread.sleep(POLL_INTERVAL);
+                }
+            }
+        } catch (final IOException e) {
+            // the node is gone
+        } catch (final InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Returns when the streams aren't read any more.
+     */
+    void stopDraining() {
+        stopped = true;
+        try {
+            join();
+        } catch (final InterruptedException e) {
+            ErlLogger.warn(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
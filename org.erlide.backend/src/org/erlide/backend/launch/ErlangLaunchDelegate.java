@@ -61,8 +61,11 @@ public class ErlangLaunchDelegate extends LaunchConfigurationDelegate {
             return;
         }
         final String nodeName = config.getAttribute(ErlRuntimeAttributes.NODE_NAME, "");
-        BackendData data = new BackendData(runtimeInfo, config, mode, shouldManageNode(
-                nodeName, BackendCore.getEpmdWatcher()));
+        // a standby node is already registered, but it's ours
+        final boolean managed = BackendCore.getBackendManager().hasStandbyBackend(
+                nodeName)
+                || shouldManageNode(nodeName, BackendCore.getEpmdWatcher());
+        BackendData data = new BackendData(runtimeInfo, config, mode, managed);
         final RuntimeInfo info = data.getRuntimeInfo();
         if (info == null) {
             ErlLogger.error("Could not find runtime '%s'", data.getRuntimeInfo()
@@ -0,0 +1,97 @@
+package org.erlide.core.builder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class IncludeGraphTest {
+
+    private IncludeGraph graph;
+
+    @Before
+    public void setUp() {
+        graph = new IncludeGraph();
+        graph.addHeader("include/a.hrl");
+        graph.addHeader("include/b.hrl");
+        graph.addHeader("src/c.hrl");
+        graph.setIncludes("include/a.hrl", Arrays.asList("b.hrl"));
+        graph.setIncludes("src/m1.erl",
+                Arrays.asList("a.hrl", "kernel/include/file.hrl"));
+        graph.setIncludes("src/m2.erl", Arrays.asList("../include/b.hrl"));
+        graph.setIncludes("src/m3.erl", Arrays.asList("c.hrl"));
+        graph.setInitialized();
+    }
+
+    @Test
+    public void directAndTransitiveDependents() {
+        assertEquals(Sets.newHashSet("src/m1.erl"), graph.getDependents("a.hrl"));
+        assertEquals(Sets.newHashSet("src/m1.erl", "src/m2.erl"),
+                graph.getDependents("b.hrl"));
+        assertTrue(graph.getDependents("x.hrl").isEmpty());
+    }
+
+    @Test
+    public void includedHeadersAreResolved() {
+        assertEquals(Sets.newHashSet("include/a.hrl", "include/b.hrl"),
+                graph.getIncludedHeaders("src/m1.erl"));
+        assertEquals(Sets.newHashSet("src/c.hrl"),
+                graph.getIncludedHeaders("src/m3.erl"));
+    }
+
+    @Test
+    public void setIncludesReplacesEdges() {
+        graph.setIncludes("src/m1.erl", Arrays.asList("c.hrl"));
+        assertEquals(Sets.newHashSet("src/m2.erl"), graph.getDependents("b.hrl"));
+        assertEquals(Sets.newHashSet("src/m1.erl", "src/m3.erl"),
+                graph.getDependents("c.hrl"));
+    }
+
+    @Test
+    public void removedHeaderKeepsDependents() {
+        graph.removeFile("include/a.hrl");
+        assertEquals(Sets.newHashSet("src/m1.erl"), graph.getDependents("a.hrl"));
+        assertTrue(graph.getIncludedHeaders("src/m1.erl").isEmpty());
+    }
+
+    @Test
+    public void cyclesAreHandled() {
+        graph.setIncludes("include/b.hrl", Collections.singleton("a.hrl"));
+        assertEquals(Sets.newHashSet("src/m1.erl", "src/m2.erl"),
+                graph.getDependents("a.hrl"));
+        assertEquals(Sets.newHashSet("include/a.hrl", "include/b.hrl"),
+                graph.getIncludedHeaders("src/m2.erl"));
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        final StringWriter out = new StringWriter();
+        graph.save(out);
+        assertFalse(graph.isDirty());
+        final IncludeGraph loaded = new IncludeGraph();
+        loaded.load(new StringReader(out.toString()));
+        assertTrue(loaded.isInitialized());
+        assertEquals(graph.getDependents("b.hrl"), loaded.getDependents("b.hrl"));
+        assertEquals(graph.getIncludedHeaders("src/m1.erl"),
+                loaded.getIncludedHeaders("src/m1.erl"));
+    }
+
+    @Test
+    public void unknownFormatIsNotLoaded() throws IOException {
+        final IncludeGraph loaded = new IncludeGraph();
+        loaded.load(new StringReader("something else\nF\tsrc/m.erl\ta.hrl\n"));
+        assertFalse(loaded.isInitialized());
+        assertTrue(loaded.getDependents("a.hrl").isEmpty());
+    }
+
+}
@@ -14,6 +14,9 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.logging.Level;
 
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ISaveContext;
 import org.eclipse.core.resources.ISaveParticipant;
 import org.eclipse.core.resources.IWorkspace;
@@ -27,6 +30,7 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.erlide.backend.debug.ErlangDebugOptionsManager;
+import org.erlide.core.builder.BuilderHelper;
 import org.erlide.runtime.rpc.RpcMonitor;
 import org.erlide.util.EncodingUtils;
 import org.erlide.util.ErlLogger;
@@ -48,6 +52,14 @@ public final class ErlangCore {
     private ISaveParticipant saveParticipant;
     private final ErlangDebugOptionsManager erlangDebugOptionsManager;
     private final ErlangCoreLogger logger;
+    private final IResourceChangeListener projectCloseListener = new IResourceChangeListener() {
+        @Override
+        public void resourceChanged(final IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                BuilderHelper.forgetIncludeGraph((IProject) event.getResource());
+            }
+        }
+    };
 
     public ErlangCore(final Plugin plugin, final IWorkspace workspace,
             final IExtensionRegistry extensionRegistry, final String logDir,
@@ -77,12 +89,15 @@ public final class ErlangCore {
 
         workspace.addSaveParticipant(plugin.getBundle().getSymbolicName(),
                 getSaveParticipant());
+        workspace.addResourceChangeListener(projectCloseListener,
+                IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
 
         erlangDebugOptionsManager.start();
         ErlLogger.info("Started CORE");
     }
 
     public void stop() {
+        workspace.removeResourceChangeListener(projectCloseListener);
         erlangDebugOptionsManager.shutdown();
         final String location = ResourcesPlugin.getWorkspace().getRoot().getLocation()
                 .toPortableString();
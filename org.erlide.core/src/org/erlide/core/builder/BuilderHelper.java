@@ -11,6 +11,9 @@
 package org.erlide.core.builder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -18,6 +21,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.filesystem.URIUtil;
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IPathVariableManager;
@@ -36,6 +40,7 @@ import org.eclipse.core.runtime.Platform;
 import org.erlide.backend.BackendCore;
 import org.erlide.backend.api.IBackend;
 import org.erlide.backend.api.IBackendManager;
+import org.erlide.core.ErlangCore;
 import org.erlide.core.ErlangPlugin;
 import org.erlide.core.internal.builder.BuildQueueProcessor;
 import org.erlide.core.internal.builder.BuildWorkerInfo;
@@ -44,10 +49,8 @@ import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.builder.MarkerUtils;
 import org.erlide.engine.model.erlang.ErlangIncludeFile;
 import org.erlide.engine.model.erlang.IErlModule;
-import org.erlide.engine.model.erlang.ModuleKind;
 import org.erlide.engine.model.root.ErlangProjectProperties;
 import org.erlide.engine.model.root.IErlProject;
-import org.erlide.engine.util.ResourceUtil;
 import org.erlide.runtime.api.IRpcSite;
 import org.erlide.runtime.rpc.IRpcFuture;
 import org.erlide.runtime.rpc.RpcException;
@@ -58,8 +61,11 @@ import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.Files;
 
 public final class BuilderHelper {
 
@@ -68,6 +74,9 @@ public final class BuilderHelper {
     private static final String BEAM = "beam";
     private static final String YRL = "yrl";
     private static final String ERLIDE_BUILDER = "erlide_builder";
+    private static final String INCLUDE_GRAPH = "includes.graph";
+
+    private static final Map<IProject, IncludeGraph> includeGraphs = Maps.newHashMap();
 
     public BuilderHelper() {
     }
@@ -139,25 +148,172 @@ public final class BuilderHelper {
 
     public void addDependents(final IResource resource, final IProject my_project,
             final Set<BuildResource> result) throws ErlModelException {
+        final IncludeGraph graph = getIncludeGraph(my_project);
+        for (final String path : graph.getDependents(resource.getName())) {
+            final IResource m = my_project.findMember(path);
+            if (m != null && ERL.equals(m.getFileExtension())) {
+                result.add(new BuildResource(m));
+            }
+        }
+    }
+
+    /**
+     * @return the include dependencies of the project, read from the project's
+     *         working location or, the first time, computed from the model
+     */
+    public IncludeGraph getIncludeGraph(final IProject project)
+            throws ErlModelException {
+        IncludeGraph graph;
+        synchronized (includeGraphs) {
+            graph = includeGraphs.get(project);
+            if (graph == null) {
+                graph = new IncludeGraph();
+                loadIncludeGraph(project, graph);
+                includeGraphs.put(project, graph);
+            }
+        }
+        synchronized (graph) {
+            if (!graph.isInitialized()) {
+                initIncludeGraph(project, graph);
+            }
+        }
+        return graph;
+    }
+
+    private static File getIncludeGraphFile(final IProject project) {
+        return project.getWorkingLocation(ErlangCore.PLUGIN_ID)
+                .append(INCLUDE_GRAPH).toFile();
+    }
+
+    private void loadIncludeGraph(final IProject project, final IncludeGraph graph) {
+        final File file = getIncludeGraphFile(project);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final Reader reader = Files.newReader(file, Charsets.UTF_8);
+            try {
+                graph.load(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (final IOException e) {
+            ErlLogger.warn(e);
+            graph.clear();
+        }
+    }
+
+    private void initIncludeGraph(final IProject project, final IncludeGraph graph)
+            throws ErlModelException {
         final IErlProject eprj = ErlangEngine.getInstance().getModel()
-                .findProject(my_project);
-        if (eprj != null) {
-            final Collection<IErlModule> ms = eprj.getModules();
-            for (final IErlModule m : ms) {
-                final Collection<ErlangIncludeFile> incs = m.getIncludeFiles();
-                for (final ErlangIncludeFile ifile : incs) {
-                    if (ResourceUtil.samePath(ifile.getFilename(), resource.getName())) {
-                        if (m.getModuleKind() == ModuleKind.ERL) {
-                            final BuildResource bres = new BuildResource(m.getResource());
-                            result.add(bres);
-                        }
-                        break;
+                .findProject(project);
+        if (eprj == null) {
+            return;
+        }
+        try {
+            project.accept(new IResourceVisitor() {
+                @Override
+                public boolean visit(final IResource resource) {
+                    if (resource.getType() == IResource.FILE
+                            && HRL.equals(resource.getFileExtension())) {
+                        graph.addHeader(getGraphPath(resource));
                     }
+                    return true;
                 }
+            });
+        } catch (final CoreException e) {
+            ErlLogger.warn(e);
+        }
+        for (final IErlModule m : eprj.getModules()) {
+            recordIncludes(graph, m);
+        }
+        for (final IErlModule m : eprj.getIncludes()) {
+            recordIncludes(graph, m);
+        }
+        graph.setInitialized();
+    }
+
+    private static String getGraphPath(final IResource resource) {
+        return resource.getProjectRelativePath().toPortableString();
+    }
+
+    private static void recordIncludes(final IncludeGraph graph, final IErlModule m)
+            throws ErlModelException {
+        final IResource resource = m.getResource();
+        if (resource == null || !resource.exists()) {
+            return;
+        }
+        final List<String> names = Lists.newArrayList();
+        for (final ErlangIncludeFile ifile : m.getIncludeFiles()) {
+            names.add(ifile.getFilenameLastPart());
+        }
+        graph.setIncludes(getGraphPath(resource), names);
+    }
+
+    /**
+     * Record the current includes of a compiled module or of a changed header.
+     */
+    public void updateIncludeGraph(final IProject project, final IResource resource) {
+        if (resource.getType() != IResource.FILE) {
+            return;
+        }
+        try {
+            final IErlModule m = ErlangEngine.getInstance().getModel()
+                    .findModule((IFile) resource);
+            if (m != null) {
+                recordIncludes(getIncludeGraph(project), m);
             }
+        } catch (final ErlModelException e) {
+            ErlLogger.warn(e);
         }
     }
 
+    public void removeFromIncludeGraph(final IProject project, final IResource resource) {
+        try {
+            getIncludeGraph(project).removeFile(getGraphPath(resource));
+        } catch (final ErlModelException e) {
+            ErlLogger.warn(e);
+        }
+    }
+
+    public void saveIncludeGraph(final IProject project) {
+        final IncludeGraph graph;
+        synchronized (includeGraphs) {
+            graph = includeGraphs.get(project);
+        }
+        if (graph == null || !graph.isDirty() || !project.isAccessible()) {
+            return;
+        }
+        try {
+            final Writer writer = Files.newWriter(getIncludeGraphFile(project),
+                    Charsets.UTF_8);
+            try {
+                graph.save(writer);
+            } finally {
+                writer.close();
+            }
+        } catch (final IOException e) {
+            ErlLogger.warn(e);
+        }
+    }
+
+    /**
+     * Drop the include graph of a project that is closed or deleted. If the
+     * project is opened again, the graph is loaded from its file.
+     */
+    public static void forgetIncludeGraph(final IProject project) {
+        synchronized (includeGraphs) {
+            includeGraphs.remove(project);
+        }
+    }
+
+    public void clearIncludeGraph(final IProject project) {
+        synchronized (includeGraphs) {
+            includeGraphs.remove(project);
+        }
+        getIncludeGraphFile(project).delete();
+    }
+
     public Set<BuildResource> getAffectedResources(
             @SuppressWarnings("rawtypes") final Map args, final IProject project,
             final IProgressMonitor monitor) throws CoreException {
@@ -271,17 +427,12 @@ public final class BuilderHelper {
             final IResource beam, final boolean shouldCompile0, final IErlProject eprj)
             throws ErlModelException {
         boolean shouldCompile = shouldCompile0;
-        final IErlModule m = eprj.getModule(source.getName());
-        if (m != null) {
-            final Collection<ErlangIncludeFile> incs = m.getIncludeFiles();
-            for (final ErlangIncludeFile ifile : incs) {
-                final IResource rifile = ResourceUtil.findResourceByName(project,
-                        ifile.getFilename());
-                if (rifile != null
-                        && rifile.getLocalTimeStamp() > beam.getLocalTimeStamp()) {
-                    shouldCompile = true;
-                    break;
-                }
+        final IncludeGraph graph = getIncludeGraph(project);
+        for (final String path : graph.getIncludedHeaders(getGraphPath(source))) {
+            final IResource rifile = project.findMember(path);
+            if (rifile != null && rifile.getLocalTimeStamp() > beam.getLocalTimeStamp()) {
+                shouldCompile = true;
+                break;
             }
         }
         return shouldCompile;
@@ -321,6 +472,9 @@ public final class BuilderHelper {
             ErlLogger.warn("bad result from builder: %s", t);
         }
 
+        if (ERL.equals(source.getFileExtension())) {
+            updateIncludeGraph(project, source);
+        }
         completeCompileForYrl(project, source, backend, compilerOptions);
     }
 
@@ -678,8 +832,8 @@ public final class BuilderHelper {
                     return false;
                 }
             }
-            if (properties.getIncludeDirs().contains(path)
-                    && HRL.equals(ext)) {
+            if ((properties.getIncludeDirs().contains(path) || properties
+                    .getSourceDirs().contains(path)) && HRL.equals(ext)) {
                 try {
                     handleHrlFile(kind, resource, fullBuild);
                 } catch (final ErlModelException e) {
@@ -759,7 +913,13 @@ public final class BuilderHelper {
             case IResourceDelta.CHANGED:
                 final int n = result.size();
                 if (!fullBuild) {
-                    helper.addDependents(resource, resource.getProject(), result);
+                    final IProject project = resource.getProject();
+                    if (kind == IResourceDelta.REMOVED) {
+                        helper.removeFromIncludeGraph(project, resource);
+                    } else {
+                        helper.updateIncludeGraph(project, resource);
+                    }
+                    helper.addDependents(resource, project, result);
                 }
                 monitor.worked(result.size() - n);
                 break;
@@ -776,6 +936,7 @@ public final class BuilderHelper {
                 break;
             case IResourceDelta.REMOVED:
                 MarkerUtils.deleteMarkers(resource);
+                helper.removeFromIncludeGraph(resource.getProject(), resource);
                 IPath beam = erlProject.getProperties().getOutputDir();
                 final IPath module = beam.append(resource.getName())
                         .removeFileExtension();
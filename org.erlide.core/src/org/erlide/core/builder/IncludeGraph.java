@@ -0,0 +1,233 @@
+package org.erlide.core.builder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.filesystem.EFS;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Include dependencies of the files of one project, in both directions, so
+ * that the builder can find the modules affected by a changed header (and the
+ * headers a module depends on) without parsing every module of the project.
+ * <p>
+ * Files are identified by their project relative path. Includes are recorded by
+ * file name, like the builder always matched them; headers in the project are
+ * registered separately so that included names can be resolved to files.
+ */
+public class IncludeGraph {
+
+    private static final String VERSION = "erlide include graph 1";
+    private static final String HRL = ".hrl";
+
+    private static final boolean CASE_SENSITIVE = EFS.getLocalFileSystem()
+            .isCaseSensitive();
+
+    private final Map<String, Set<String>> includes = Maps.newHashMap();
+    private final Map<String, Set<String>> includers = Maps.newHashMap();
+    private final Map<String, String> headers = Maps.newHashMap();
+    private boolean initialized;
+    private boolean dirty;
+
+    static String canonicalName(final String name) {
+        final int i = name.lastIndexOf('/');
+        final String last = i < 0 ? name : name.substring(i + 1);
+        return CASE_SENSITIVE ? last : last.toLowerCase();
+    }
+
+    private static boolean isHeader(final String path) {
+        return path.regionMatches(true, path.length() - HRL.length(), HRL, 0,
+                HRL.length());
+    }
+
+    public synchronized boolean isInitialized() {
+        return initialized;
+    }
+
+    public synchronized void setInitialized() {
+        initialized = true;
+        dirty = true;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized void clear() {
+        includes.clear();
+        includers.clear();
+        headers.clear();
+        initialized = false;
+        dirty = true;
+    }
+
+    /**
+     * Register a header file, so that includes with its name resolve to it. If
+     * several headers have the same name, the first one registered wins.
+     */
+    public synchronized void addHeader(final String path) {
+        final String name = canonicalName(path);
+        if (!headers.containsKey(name)) {
+            headers.put(name, path);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Replace the includes recorded for a file.
+     */
+    public synchronized void setIncludes(final String path,
+            final Collection<String> includeNames) {
+        removeIncludes(path);
+        final Set<String> names = Sets.newHashSet();
+        for (final String include : includeNames) {
+            names.add(canonicalName(include));
+        }
+        includes.put(path, names);
+        for (final String name : names) {
+            Set<String> files = includers.get(name);
+            if (files == null) {
+                files = Sets.newHashSet();
+                includers.put(name, files);
+            }
+            files.add(path);
+        }
+        if (isHeader(path)) {
+            addHeader(path);
+        }
+        dirty = true;
+    }
+
+    public synchronized void removeFile(final String path) {
+        removeIncludes(path);
+        final String name = canonicalName(path);
+        if (path.equals(headers.get(name))) {
+            headers.remove(name);
+        }
+        dirty = true;
+    }
+
+    private void removeIncludes(final String path) {
+        final Set<String> names = includes.remove(path);
+        if (names == null) {
+            return;
+        }
+        for (final String name : names) {
+            final Set<String> files = includers.get(name);
+            if (files != null) {
+                files.remove(path);
+                if (files.isEmpty()) {
+                    includers.remove(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the files that include the named header, directly or through
+     *         other headers. Headers themselves are not part of the result.
+     */
+    public synchronized Set<String> getDependents(final String headerName) {
+        final Set<String> result = Sets.newHashSet();
+        final Set<String> seen = Sets.newHashSet();
+        final LinkedList<String> queue = new LinkedList<String>();
+        queue.add(canonicalName(headerName));
+        while (!queue.isEmpty()) {
+            final String name = queue.removeFirst();
+            if (!seen.add(name)) {
+                continue;
+            }
+            final Set<String> files = includers.get(name);
+            if (files == null) {
+                continue;
+            }
+            for (final String file : files) {
+                if (isHeader(file)) {
+                    queue.add(canonicalName(file));
+                } else {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the paths of the project headers that the file includes, directly
+     *         or through other headers. Includes that don't resolve to a
+     *         registered header are left out.
+     */
+    public synchronized Set<String> getIncludedHeaders(final String path) {
+        final Set<String> result = Sets.newHashSet();
+        final LinkedList<String> queue = new LinkedList<String>();
+        queue.add(path);
+        while (!queue.isEmpty()) {
+            final Set<String> names = includes.get(queue.removeFirst());
+            if (names == null) {
+                continue;
+            }
+            for (final String name : names) {
+                final String header = headers.get(name);
+                if (header != null && result.add(header)) {
+                    queue.add(header);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read a graph written by {@link #save(Writer)}. An unknown format leaves
+     * the graph uninitialized.
+     */
+    public synchronized void load(final Reader reader) throws IOException {
+        clear();
+        final BufferedReader in = new BufferedReader(reader);
+        if (!VERSION.equals(in.readLine())) {
+            return;
+        }
+        String line;
+        while ((line = in.readLine()) != null) {
+            final String[] fields = line.split("\t");
+            if (fields.length < 2) {
+                continue;
+            }
+            if ("H".equals(fields[0])) {
+                addHeader(fields[1]);
+            } else if ("F".equals(fields[0])) {
+                final Set<String> names = Sets.newHashSet();
+                for (int i = 2; i < fields.length; i++) {
+                    names.add(fields[i]);
+                }
+                setIncludes(fields[1], names);
+            }
+        }
+        initialized = true;
+        dirty = false;
+    }
+
+    public synchronized void save(final Writer out) throws IOException {
+        out.write(VERSION);
+        out.write('\n');
+        for (final String header : headers.values()) {
+            out.write("H\t" + header + "\n");
+        }
+        for (final Map.Entry<String, Set<String>> entry : includes.entrySet()) {
+            out.write("F\t" + entry.getKey());
+            for (final String name : entry.getValue()) {
+                out.write("\t" + name);
+            }
+            out.write('\n');
+        }
+        dirty = false;
+    }
+
+}
@@ -14,10 +14,9 @@ import static com.google.common.collect.Lists.newArrayList;
 
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -49,15 +48,26 @@ import org.erlide.engine.model.builder.MarkerUtils;
 import org.erlide.engine.model.root.ErlangProjectProperties;
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.runtime.rpc.IRpcFuture;
+import org.erlide.runtime.rpc.RpcCompletionQueue;
+import org.erlide.runtime.rpc.RpcCompletionQueue.Completion;
+import org.erlide.runtime.rpc.RpcException;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.Util;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
-import com.google.common.collect.Lists;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class InternalBuilder extends ErlangBuilder {
 
+    private static final int MAX_IN_FLIGHT = Integer.getInteger(
+            "erlide.builder.inflight", 4 * Runtime.getRuntime().availableProcessors());
+    // starting another build backend is only worth it for this many files
+    private static final int FILES_PER_BACKEND = Integer.getInteger(
+            "erlide.builder.filesPerBackend", 20);
+
     BuildNotifier notifier;
     private final BuilderHelper helper = new BuilderHelper();
 
@@ -111,6 +121,7 @@ public class InternalBuilder extends ErlangBuilder {
             MarkerUtils.addProblemMarker(project, null, null, msg, 0,
                     IMarker.SEVERITY_ERROR);
         } finally {
+            helper.saveIncludeGraph(project);
             cleanup();
             // if (BuilderHelper.isDebugging()) {
             ErlLogger.trace(
@@ -137,6 +148,7 @@ public class InternalBuilder extends ErlangBuilder {
         try {
             initializeBuilder(monitor);
             MarkerUtils.removeProblemMarkersFor(currentProject);
+            helper.clearIncludeGraph(currentProject);
             final IErlProject erlProject = ErlangEngine.getInstance().getModel()
                     .getErlangProject(currentProject);
             final IFolder bf = currentProject.getFolder(erlProject.getProperties()
@@ -198,79 +210,159 @@ public class InternalBuilder extends ErlangBuilder {
         if (n == 0) {
             return;
         }
-        final IBackend backend = BackendCore.getBackendManager().getBuildBackend(project);
-        if (backend == null) {
+        final List<IBackend> backends = BackendCore.getBackendManager()
+                .getBuildBackends(project, (n + FILES_PER_BACKEND - 1) / FILES_PER_BACKEND);
+        if (backends.isEmpty() || backends.get(0) == null) {
             final String message = "No backend with the required "
                     + "version could be found. Can't build.";
             MarkerUtils.addProblemMarker(project, null, null, message, 0,
                     IMarker.SEVERITY_ERROR);
             throw new BackendException(message);
         }
+        final IBackend backend = backends.get(0);
         final IErlModel model = ErlangEngine.getInstance().getModel();
-        backend.addProjectPath(model.findProject(project));
+        for (final IBackend b : backends) {
+            b.addProjectPath(model.findProject(project));
+        }
 
         notifier.setProgressPerCompilationUnit(1.0f / n);
-        final Map<IRpcFuture, IResource> results = new HashMap<IRpcFuture, IResource>();
-        for (final BuildResource bres : resourcesToBuild) {
-            notifier.checkCancel();
-            final IResource resource = bres.getResource();
-            MarkerUtils.deleteMarkers(resource);
-            // notifier.aboutToCompile(resource);
-            if ("erl".equals(resource.getFileExtension())) {
-                final String outputDir = erlProject.getProperties().getOutputDir()
-                        .toString();
-                final IRpcFuture f = helper.startCompileErl(project, bres, outputDir,
-                        backend.getRpcSite(), compilerOptions,
-                        kind == IncrementalProjectBuilder.FULL_BUILD);
-                if (f != null) {
-                    results.put(f, resource);
-                }
-            } else if ("yrl".equals(resource.getFileExtension())) {
-                final IRpcFuture f = helper.startCompileYrl(project, resource,
-                        backend.getRpcSite(), compilerOptions);
+        final RpcCompletionQueue<IResource> results = new RpcCompletionQueue<IResource>();
+        // which backend compiles each resource, and how many each one has
+        final Map<IResource, Integer> compiledBy = Maps.newHashMap();
+        final int[] queued = new int[backends.size()];
+        // projects built at the same time start on different backends
+        final int first = (project.getName().hashCode() & Integer.MAX_VALUE)
+                % backends.size();
+        final List<String> beams = newArrayList();
+        final Iterator<BuildResource> toStart = resourcesToBuild.iterator();
+        while (toStart.hasNext() || !results.isEmpty()) {
+            // keep at most MAX_IN_FLIGHT compilations queued on each backend
+            while (toStart.hasNext() && results.size() < MAX_IN_FLIGHT * backends.size()) {
+                notifier.checkCancel();
+                final BuildResource bres = toStart.next();
+                final int i = leastQueued(queued, first);
+                final IRpcFuture f = startCompile(erlProject, project, kind, bres,
+                        backends.get(i), compilerOptions);
                 if (f != null) {
-                    results.put(f, resource);
+                    results.add(bres.getResource(), f);
+                    compiledBy.put(bres.getResource(), i);
+                    queued[i]++;
                 }
-            } else {
-                ErlLogger.warn("Don't know how to compile: %s", resource.getName());
+            }
+            notifier.checkCancel();
+            final Completion<IResource> result;
+            try {
+                result = results.poll(100, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            }
+            if (result == null) {
+                continue;
+            }
+            final IResource resource = result.getKey();
+            final int i = compiledBy.remove(resource);
+            queued[i]--;
+            final OtpErlangObject r;
+            try {
+                r = result.getFuture().checkedGet();
+            } catch (final RpcException e) {
+                // a node of the build pool may have died or timed out
+                ErlLogger.warn("Compiling %s on %s failed: %s", resource.getName(),
+                        backends.get(i).getName(), e.getMessage());
+                MarkerUtils.addProblemMarker(resource, null, null,
+                        "Compilation failed: " + e.getMessage(), 0,
+                        IMarker.SEVERITY_ERROR);
+                notifier.compiled(resource);
+                continue;
+            }
+            if (r != null) {
+                helper.completeCompile(project, resource, r, backends.get(i)
+                        .getRpcSite(), compilerOptions);
+                addBeams(r, beams);
+                notifier.compiled(resource);
             }
         }
+        helper.refreshOutputDir(project);
+        if (backends.size() > 1) {
+            reloadBeams(backends, beams);
+        }
 
-        final List<Entry<IRpcFuture, IResource>> done = Lists.newArrayList();
-        final List<Entry<IRpcFuture, IResource>> waiting = Lists.newArrayList(results
-                .entrySet());
+        try {
+            helper.checkForClashes(backend.getRpcSite(), project);
+        } catch (final Exception e) {
+        }
+        for (final IBackend b : backends) {
+            b.removeProjectPath(model.findProject(project));
+        }
 
-        // TODO should use some kind of notification!
-        while (!waiting.isEmpty()) {
-            for (final Entry<IRpcFuture, IResource> result : waiting) {
-                notifier.checkCancel();
-                OtpErlangObject r;
-                try {
-                    r = result.getKey().get(100, TimeUnit.MILLISECONDS);
-                } catch (final Exception e) {
-                    r = null;
-                }
-                if (r != null) {
-                    final IResource resource = result.getValue();
+    }
 
-                    helper.completeCompile(project, resource, r, backend.getRpcSite(),
-                            compilerOptions);
-                    notifier.compiled(resource);
+    private static int leastQueued(final int[] queued, final int first) {
+        int best = first;
+        for (int k = 1; k < queued.length; k++) {
+            final int i = (first + k) % queued.length;
+            if (queued[i] < queued[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
 
-                    done.add(result);
+    private static void addBeams(final OtpErlangObject compilationResult,
+            final List<String> beams) {
+        if (compilationResult instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) compilationResult;
+            if (t.arity() > 2 && t.elementAt(2) instanceof OtpErlangList) {
+                for (final OtpErlangObject beam : (OtpErlangList) t.elementAt(2)) {
+                    // paths with non-latin1 characters come as lists
+                    final String path = Util.stringValue(beam);
+                    if (path != null) {
+                        beams.add(path);
+                    }
                 }
             }
-            waiting.removeAll(done);
-            done.clear();
         }
-        helper.refreshOutputDir(project);
+    }
 
-        try {
-            helper.checkForClashes(backend.getRpcSite(), project);
-        } catch (final Exception e) {
+    /**
+     * The beams were written to the output dir by different backends; those
+     * that have an older version of a module loaded (a parse transform, for
+     * example) must load the new one.
+     */
+    private static void reloadBeams(final List<IBackend> backends,
+            final List<String> beams) {
+        if (beams.isEmpty()) {
+            return;
         }
-        backend.removeProjectPath(model.findProject(project));
+        for (final IBackend b : backends) {
+            try {
+                b.getRpcSite().call("erlide_builder", "reload_loaded", "ls", beams);
+            } catch (final RpcException e) {
+                ErlLogger.warn(e);
+            }
+        }
+    }
 
+    private IRpcFuture startCompile(final IErlProject erlProject,
+            final IProject project, final int kind, final BuildResource bres,
+            final IBackend backend, final OtpErlangList compilerOptions) {
+        final IResource resource = bres.getResource();
+        MarkerUtils.deleteMarkers(resource);
+        // notifier.aboutToCompile(resource);
+        if ("erl".equals(resource.getFileExtension())) {
+            final String outputDir = erlProject.getProperties().getOutputDir()
+                    .toString();
+            return helper.startCompileErl(project, bres, outputDir,
+                    backend.getRpcSite(), compilerOptions,
+                    kind == IncrementalProjectBuilder.FULL_BUILD);
+        } else if ("yrl".equals(resource.getFileExtension())) {
+            return helper.startCompileYrl(project, resource, backend.getRpcSite(),
+                    compilerOptions);
+        } else {
+            ErlLogger.warn("Don't know how to compile: %s", resource.getName());
+            return null;
+        }
     }
 
     private void handleAppFile(final String outPath, final Collection<IPath> sources) {
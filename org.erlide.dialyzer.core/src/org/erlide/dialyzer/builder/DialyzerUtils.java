@@ -4,8 +4,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
@@ -25,7 +23,7 @@ import org.erlide.engine.model.root.IErlElementLocator;
 import org.erlide.engine.model.root.IErlFolder;
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.runtime.api.IRpcSite;
-import org.erlide.runtime.rpc.IRpcFuture;
+import org.erlide.runtime.rpc.IRpcStream;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
@@ -86,29 +84,38 @@ public class DialyzerUtils {
             ErlLogger.trace("dialyzer", "run %s", fileNames);
 
             final IRpcSite b = backend.getRpcSite();
-            final IRpcFuture future = ErlideDialyze.dialyze(b, files, pltPaths,
+            final IRpcStream stream = ErlideDialyze.streamDialyze(b, files, pltPaths,
                     includeDirs, fromSource, noCheckPLT);
 
-            while (!future.isDone()) {
+            while (true) {
                 // check cancellation
                 if (monitor.isCanceled()) {
+                    stream.cancel();
                     throw new OperationCanceledException();
                 }
                 // check backend down
                 if (!backend.isRunning()) {
+                    stream.cancel();
                     throw new BackendException("Dialyzer: backend " + backend.getName()
                             + " is down");
                 }
 
-                OtpErlangObject r = null;
+                List<OtpErlangObject> warnings;
                 try {
-                    r = future.checkedGet(500, TimeUnit.MILLISECONDS);
-                } catch (final TimeoutException e) {
+                    warnings = stream.nextChunk(500);
                 } catch (final RpcTimeoutException e) {
+                    continue;
                 }
-                if (r != null) {
-                    processResult(b, r);
+                if (warnings == null) {
+                    break;
                 }
+                DialyzerMarkerUtils.addDialyzerWarningMarkersFromResultList(b,
+                        new OtpErlangList(warnings.toArray(new OtpErlangObject[warnings
+                                .size()])));
+            }
+            final OtpErlangObject r = stream.getResult();
+            if (r instanceof OtpErlangTuple) {
+                processResult(b, r);
             }
         } catch (final RpcException e) {
             throw new InvocationTargetException(e);
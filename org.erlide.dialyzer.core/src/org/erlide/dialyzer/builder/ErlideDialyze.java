@@ -7,6 +7,7 @@ import org.eclipse.core.runtime.IPath;
 import org.erlide.runtime.api.IRpcSite;
 import org.erlide.runtime.rpc.IRpcFuture;
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.IRpcStream;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
@@ -35,6 +36,22 @@ public class ErlideDialyze {
                 incs, fromSource, noCheckPLT);
     }
 
+    /**
+     * Like dialyze(), but the warnings come as soon as they are found. The
+     * stream's result is ok or {dialyzer_error, Message}.
+     */
+    public static IRpcStream streamDialyze(final IRpcSite backend,
+            final Collection<String> files, final Collection<String> pltPaths,
+            final Collection<IPath> includeDirs, final boolean fromSource,
+            final Object noCheckPLT) throws RpcException {
+        final List<String> incs = Lists.newArrayList();
+        for (final IPath p : includeDirs) {
+            incs.add(p.toString());
+        }
+        return backend.async_call_stream(ERLIDE_DIALYZE, "stream_dialyze", "lslslsoo",
+                files, pltPaths, incs, fromSource, noCheckPLT);
+    }
+
     public static void startDialyzer(final IRpcSite backend,
             final Collection<String> files, final Collection<String> pltPaths,
             final Collection<IPath> includeDirs, final boolean fromSource,
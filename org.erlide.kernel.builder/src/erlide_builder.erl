@@ -24,7 +24,8 @@
          source_clash/1,
 
          build_resources/5,
-         compile_app_src/3
+         compile_app_src/3,
+         reload_loaded/1
         ]).
 
 %%-define(DEBUG, 1).
@@ -210,6 +211,26 @@ build_one_file(F, OutputDir, IncludeDirs, Options) ->
             {error, [{0, F, "Don't know how to compile this file"}]}
     end.
 
+%% When a build was shared by several nodes, each node reloads the modules it
+%% has loaded, so that they all use the code that was just written.
+reload_loaded(BeamFiles) ->
+    lists:foreach(fun reload_if_loaded/1, BeamFiles),
+    ok.
+
+reload_if_loaded(BeamFile) ->
+    Mod = list_to_atom(filename:basename(BeamFile, ".beam")),
+    case code:is_loaded(Mod) of
+        {file, _} ->
+            case code:soft_purge(Mod) of
+                true ->
+                    code:load_abs(filename:rootname(BeamFile));
+                false ->
+                    ok
+            end;
+        false ->
+            ok
+    end.
+
 %% TODO disabled inefficient scanning of source dirs, ticket #1300
 compile_app_src(Src, Dest, _Sources) ->
     {ok, [{application, App, Opts}]} = file:consult(Src),
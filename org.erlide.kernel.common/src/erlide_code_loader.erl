@@ -0,0 +1,94 @@
+%% Description: Loads many modules at once, for BeamLoader.loadBeams.
+%%
+%% Modules whose loaded code has the same MD5 as the new binary are left
+%% alone. The others are loaded together with code:atomic_load/1 where it
+%% exists (OTP 19 and later). If that isn't possible, or if it fails, they
+%% are loaded one at a time, so that each module gets its own result.
+%%
+%% The result has an element {Module, ok | unchanged | {error, Reason}} for
+%% each module.
+
+-module(erlide_code_loader).
+
+-export([load_binaries/1]).
+
+load_binaries(Beams) when is_list(Beams) ->
+    Checked = [{M, Bin, check(M, Bin)} || {M, Bin} <- Beams],
+    Loaded = load([{M, Bin} || {M, Bin, load} <- Checked]),
+    [case Check of
+         load ->
+             lists:keyfind(M, 1, Loaded);
+         _ ->
+             {M, Check}
+     end || {M, _, Check} <- Checked].
+
+check(M, Bin) ->
+    case is_unchanged(M, Bin) of
+        true ->
+            unchanged;
+        false ->
+            case code:is_sticky(M) of
+                true ->
+                    {error, sticky_directory};
+                false ->
+                    load
+            end
+    end.
+
+is_unchanged(M, Bin) ->
+    case code:is_loaded(M) of
+        false ->
+            false;
+        _ ->
+            case beam_lib:md5(Bin) of
+                {ok, {M, MD5}} ->
+                    loaded_md5(M) =:= MD5;
+                _ ->
+                    false
+            end
+    end.
+
+%% module_info(md5) is new in OTP 18; before that, the vsn of a module that
+%% doesn't set its own is the MD5.
+loaded_md5(M) ->
+    try
+        M:module_info(md5)
+    catch
+        _:_ ->
+            case lists:keyfind(vsn, 1, M:module_info(attributes)) of
+                {vsn, [Vsn]} when is_integer(Vsn) ->
+                    <<Vsn:128>>;
+                _ ->
+                    undefined
+            end
+    end.
+
+load([]) ->
+    [];
+load(Beams) ->
+    case erlang:function_exported(code, atomic_load, 1) of
+        true ->
+            case code:atomic_load([{M, file_name(M), Bin} || {M, Bin} <- Beams]) of
+                ok ->
+                    [{M, ok} || {M, _} <- Beams];
+                {error, _} ->
+                    %% nothing was loaded, find out which ones fail
+                    load_each(Beams)
+            end;
+        false ->
+            load_each(Beams)
+    end.
+
+load_each(Beams) ->
+    [{M, load_one(M, Bin)} || {M, Bin} <- Beams].
+
+load_one(M, Bin) ->
+    case code:load_binary(M, file_name(M), Bin) of
+        {module, M} ->
+            ok;
+        {error, Reason} ->
+            {error, Reason}
+    end.
+
+file_name(M) ->
+    atom_to_list(M) ++ ".erl".
@@ -0,0 +1,21 @@
+%% Description: Runs a batch of calls from Java in one round trip.
+%%
+%% The calls are run in order, by the same process. The result has an element
+%% for each call, with the same term rpc:call/4 would have returned for it: the
+%% value, or {badrpc, {'EXIT', Reason}} if the call raised an error or exited
+%% (a thrown value is returned as is, like catch does).
+
+-module(erlide_rpc_batch).
+
+-export([call/1]).
+
+call(Calls) when is_list(Calls) ->
+    [call_one(M, F, A) || {M, F, A} <- Calls].
+
+call_one(M, F, A) ->
+    case catch apply(M, F, A) of
+        {'EXIT', _} = Exit ->
+            {badrpc, Exit};
+        Result ->
+            Result
+    end.
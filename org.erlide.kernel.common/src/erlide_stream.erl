@@ -0,0 +1,91 @@
+%% Description: Sends the result of a call in chunks, with flow control.
+%%
+%% Java starts the call with erlide_stream:start/6 (see IRpcSite.async_call_stream).
+%% The called function gets a sink as its first argument and uses send/2 to
+%% send a list of items at a time; its return value ends the stream.
+%%
+%% Messages to Java, all tagged with the call's ref:
+%%   {Ref, start, Pid}, {Ref, chunk, Pid, Items}, {Ref, done, Result}
+%%   and {Ref, error, Reason}
+%% Messages from Java:
+%%   {Ref, ack} when a chunk was taken, {Ref, cancel} to stop the producer.
+%%
+%% A producer may have at most Window chunks not yet taken, then send/2 waits.
+%% Chunks must be sent from the process that runs the called function.
+%% If that process has a receive that matches anything, it must pass the
+%% messages from Java to handle/1.
+
+-module(erlide_stream).
+
+-export([start/6,
+         send/2,
+         handle/1]).
+
+%%-define(DEBUG, 1).
+
+-include("erlide.hrl").
+
+%% a consumer that stops taking chunks is considered gone after this long
+-define(CREDIT_TIMEOUT, 300000).
+
+start(JPid, Ref, Window, M, F, A) ->
+    Sink = {?MODULE, JPid, Ref, Window},
+    JPid ! {Ref, start, self()},
+    Reply = try
+                {Ref, done, apply(M, F, [Sink | A])}
+            catch
+                throw:{?MODULE, cancelled} ->
+                    {Ref, cancelled};
+                Class:Error ->
+                    ?D({Class, Error, erlang:get_stacktrace()}),
+                    {Ref, error, {Class, Error}}
+            end,
+    erase({?MODULE, Ref}),
+    JPid ! Reply,
+    ok.
+
+send(_Sink, []) ->
+    ok;
+send({?MODULE, JPid, Ref, Window}, Items) when is_list(Items) ->
+    JPid ! {Ref, chunk, self(), Items},
+    Pending = pending(Ref) + 1,
+    put({?MODULE, Ref}, Pending),
+    wait_credit(Ref, Window),
+    ok.
+
+%% Credit or cancel messages that were received by the producer itself.
+handle({Ref, ack}) ->
+    put({?MODULE, Ref}, pending(Ref) - 1),
+    ok;
+handle({_Ref, cancel}) ->
+    throw({?MODULE, cancelled}).
+
+pending(Ref) ->
+    case get({?MODULE, Ref}) of
+        undefined ->
+            0;
+        N ->
+            N
+    end.
+
+wait_credit(Ref, Window) ->
+    Timeout = case pending(Ref) < Window of
+                  true ->
+                      0;
+                  false ->
+                      ?CREDIT_TIMEOUT
+              end,
+    receive
+        {Ref, ack} = Msg ->
+            handle(Msg),
+            wait_credit(Ref, Window);
+        {Ref, cancel} = Msg ->
+            handle(Msg)
+    after Timeout ->
+            case Timeout of
+                0 ->
+                    ok;
+                _ ->
+                    throw({?MODULE, cancelled})
+            end
+    end.
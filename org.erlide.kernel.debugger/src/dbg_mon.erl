@@ -22,6 +22,7 @@
 -export([resume/1, suspend/1, bindings/1, all_stack_frames/1, step_over/1]).
 -export([step_into/1, step_return/1, eval/2, set_variable_value/4]).
 -export([tracing/2, drop_to_frame/2, all_modules_on_stack/1]).
+-export([cached_stack_frames/1]).
 
 -define(BACKTRACE, all).
 
@@ -41,7 +42,9 @@
 
                 backtrace, % integer() Number of call frames to fetch
 
-                attach     % false | {Flags, Function}
+                attach,    % false | {Flags, Function}
+
+                frames = [] % [{MetaPid, StackFrames}] until anything changes
                }).
 
 -define(SERVER, ?MODULE).
@@ -156,7 +159,7 @@ loop(State) ->
         {cmd, Cmd, From} = _Msg ->
             %% 	    io:format("@ dbg_mon cmd: ~p~n", [_Msg]),
             log({gui_cmd, Cmd, From}),
-            {Reply, State1} = gui_cmd(Cmd, State),
+            {Reply, State1} = gui_cmd(Cmd, forget_frames(Cmd, State)),
             From ! Reply,
             loop(State1);
 
@@ -168,7 +171,7 @@ loop(State) ->
             log({int_cmd, Cmd}),
             msg(State#state.parent, Msg),
 
-            State2 = int_cmd(Cmd, State),
+            State2 = int_cmd(Cmd, State#state{frames=[]}),
             loop(State2);
 
         Msg ->
@@ -279,7 +282,15 @@ gui_cmd({bindings, MetaPid}, State) ->
     {Res, State};
 gui_cmd({all_stack_frames, MetaPid}, State) ->
     Res = dbg_icmd:get(MetaPid, all_stack_frames, noargs),
-    {Res, State};
+    Frames = lists:keystore(MetaPid, 1, State#state.frames, {MetaPid, Res}),
+    {Res, State#state{frames=Frames}};
+gui_cmd({cached_stack_frames, MetaPid}, State) ->
+    case lists:keyfind(MetaPid, 1, State#state.frames) of
+        {MetaPid, Res} ->
+            {Res, State};
+        false ->
+            gui_cmd({all_stack_frames, MetaPid}, State)
+    end;
 gui_cmd({all_modules_on_stack, MetaPid}, State) ->
     Res = dbg_icmd:get(MetaPid, all_modules_on_stack, noargs),
     {Res, State};
@@ -335,6 +346,14 @@ gui_cmd(_Cmd, State) ->
   %% io:format("@ dbg_mon: unknown ~p~n",[_Cmd]),
   State.
 
+%% Only reading the stack keeps the frames fetched for it.
+forget_frames({Cmd, _MetaPid}, State)
+  when Cmd =:= bindings; Cmd =:= all_stack_frames;
+       Cmd =:= cached_stack_frames; Cmd =:= all_modules_on_stack ->
+    State;
+forget_frames(_Cmd, State) ->
+    State#state{frames=[]}.
+
 %%--Commands from the interpreter-------------------------------------
 
 int_cmd({interpret, _Mod}, State) ->
@@ -428,6 +447,11 @@ tracing(Bool, MetaPid) ->
 all_stack_frames(MetaPid) ->
     cmd(all_stack_frames, MetaPid).
 
+%% Like all_stack_frames/1, but doesn't ask the meta process again while
+%% nothing has happened since the last time.
+cached_stack_frames(MetaPid) ->
+    cmd(cached_stack_frames, MetaPid).
+
 all_modules_on_stack(MetaPid) ->
     cmd(all_modules_on_stack, MetaPid).
 
@@ -20,6 +20,16 @@
 %% -define(DebugStack(T), erlide_log:erlangLogStack(?MODULE, ?LINE, finest, T)).
 %% -define(Info(T), erlide_log:erlangLog(?MODULE, ?LINE, info, T)).
 
+%% Large values in the stack frames are sent as
+%% {'$erlide_lazy', Size, Preview}, where Preview has the same type as the
+%% value and holds its first elements; binding_part/6 gets the rest.
+-define(LAZY, '$erlide_lazy').
+%% values whose external size is at most this are sent whole
+-define(SMALL_TERM, 4096).
+-define(PREVIEW_ITEMS, 100).
+-define(PREVIEW_BYTES, 1024).
+-define(PREVIEW_DEPTH, 3).
+
 %%
 %% Exported Functions
 %%
@@ -36,6 +46,7 @@
          step_return/1,
          interpret/3,
          all_stack_frames/1,
+         binding_part/6,
          all_modules_on_stack/1,
          tracing/2,
          eval/2,
@@ -152,7 +163,31 @@ eval(Expr, MetaPid) ->
     dbg_mon:eval(Expr, MetaPid).
 
 all_stack_frames(MetaPid) ->
-    dbg_mon:all_stack_frames(MetaPid).
+    case dbg_mon:all_stack_frames(MetaPid) of
+        {{Frames, SavedStackTrace}, Bs} when is_list(Frames) ->
+            {{shape_frames(Frames), SavedStackTrace}, shape_bindings(Bs)};
+        {Frames, Bs} when is_list(Frames) ->
+            {shape_frames(Frames), shape_bindings(Bs)};
+        Other ->
+            Other
+    end.
+
+%% Frame is 0 for the current bindings, N for the Nth frame from
+%% all_stack_frames/1. Path has the 0-based positions of the elements to
+%% descend into. A value is usually read in several parts, so the frames
+%% are fetched once for all of them.
+binding_part(MetaPid, Frame, Name, Path, Offset, Length) ->
+    case dbg_mon:cached_stack_frames(MetaPid) of
+        {Frames, Bs} ->
+            case lists:keyfind(Name, 1, frame_bindings(Frame, Frames, Bs)) of
+                {Name, Value} ->
+                    part(descend(Value, Path), Offset, Length);
+                false ->
+                    {error, not_found}
+            end;
+        _ ->
+            {error, not_found}
+    end.
 
 all_modules_on_stack(MetaPid) ->
     dbg_mon:all_modules_on_stack(MetaPid).
@@ -218,6 +253,104 @@ nodes() ->
 log(_) ->
     ok.
 
+shape_frames(Frames) ->
+    [case Frame of
+         {MFA, Line, Bs, Level} when is_list(Bs) ->
+             {MFA, Line, shape_bindings(Bs), Level};
+         _ ->
+             Frame
+     end || Frame <- Frames].
+
+shape_bindings(Bs) when is_list(Bs) ->
+    [{Name, shape(Value, ?PREVIEW_DEPTH)} || {Name, Value} <- Bs];
+shape_bindings(Bs) ->
+    Bs.
+
+shape(T, Depth) ->
+    case erlang:external_size(T) =< ?SMALL_TERM of
+        true ->
+            T;
+        false ->
+            shape_large(T, Depth)
+    end.
+
+shape_large(B, _Depth) when is_binary(B), byte_size(B) > ?PREVIEW_BYTES ->
+    {?LAZY, byte_size(B), binary:part(B, 0, ?PREVIEW_BYTES)};
+shape_large(T, 0) when is_tuple(T) ->
+    %% keep a record's name
+    Preview = case element(1, T) of
+                  A when is_atom(A) ->
+                      {A};
+                  _ ->
+                      {}
+              end,
+    {?LAZY, tuple_size(T), Preview};
+shape_large(T, Depth) when is_tuple(T) ->
+    Items = shape_items(tuple_to_list(T), Depth - 1),
+    case tuple_size(T) > ?PREVIEW_ITEMS of
+        true ->
+            {?LAZY, tuple_size(T), list_to_tuple(Items)};
+        false ->
+            list_to_tuple(Items)
+    end;
+shape_large(L, Depth) when is_list(L) ->
+    case proper_length(L) of
+        undefined ->
+            L;
+        Length when Depth =:= 0 ->
+            {?LAZY, Length, []};
+        Length when Length > ?PREVIEW_ITEMS ->
+            {?LAZY, Length, shape_items(L, Depth - 1)};
+        _ ->
+            [shape(E, Depth - 1) || E <- L]
+    end;
+shape_large(T, _Depth) ->
+    T.
+
+%% the first PREVIEW_ITEMS elements
+shape_items(L, Depth) ->
+    [shape(E, Depth) || E <- lists:sublist(L, ?PREVIEW_ITEMS)].
+
+proper_length(L) ->
+    try
+        length(L)
+    catch
+        error:badarg ->
+            undefined
+    end.
+
+frame_bindings(0, _Frames, Bs) ->
+    Bs;
+frame_bindings(N, {Frames, _SavedStackTrace}, Bs) ->
+    frame_bindings(N, Frames, Bs);
+frame_bindings(N, Frames, _Bs) when is_list(Frames), N =< length(Frames) ->
+    case lists:nth(N, Frames) of
+        {_MFA, _Line, Bs, _Level} when is_list(Bs) ->
+            Bs;
+        _ ->
+            []
+    end;
+frame_bindings(_N, _Frames, _Bs) ->
+    [].
+
+descend(T, []) ->
+    T;
+descend(T, [I | Is]) when is_tuple(T) ->
+    descend(element(I + 1, T), Is);
+descend(L, [I | Is]) when is_list(L) ->
+    descend(lists:nth(I + 1, L), Is).
+
+%% an Offset at or past the end gives an empty part
+part(B, Offset, Length) when is_binary(B) ->
+    Start = min(Offset, byte_size(B)),
+    binary:part(B, Start, min(Length, byte_size(B) - Start));
+part(T, Offset, Length) when is_tuple(T) ->
+    part(tuple_to_list(T), Offset, Length);
+part(L, Offset, Length) when is_list(L), Offset < length(L) ->
+    [shape(E, ?PREVIEW_DEPTH) || E <- lists:sublist(L, Offset + 1, Length)];
+part(L, _Offset, _Length) when is_list(L) ->
+    [].
+
 process_info(Pid, Info) ->
     Node = node(Pid),
     case node() of
@@ -20,6 +20,7 @@
          check_plt/1,
          update_plt_with_additional_paths/2,
          start_dialyze/6,
+         stream_dialyze/6,
          start_update_plt_with_additional_paths/3]).
 
 -compile({no_auto_import, [error/1, error/2]}).
@@ -47,22 +48,13 @@ dialyze(Files, PltFiles, Includes, FromSource, NoCheckPLT) ->
     end.
 
 start_dialyze(JPid, Files, PltFiles, Includes, FromSource, NoCheckPLT) ->
-    From = case FromSource of
-               true -> src_code;
-               false -> byte_code
-           end,
-    Plt = case PltFiles of
-              [] ->
-                  dialyzer_plt:new();
-              [Plt1] ->
-                  ?D(Plt1),
-                  dialyzer_plt:from_file(Plt1);
-              _ ->
-                  Plts = [dialyzer_plt:from_file(F) || F <- PltFiles],
-                  dialyzer_plt:merge_plts_or_report_conflicts(PltFiles, Plts)
-          end,
+    From = from(FromSource),
     ?D(before),
-    R = (catch do_analysis(Files, none, Plt, none, succ_typings, Includes, NoCheckPLT, From, JPid)),
+    R = (catch begin
+                   check_plts(PltFiles, NoCheckPLT),
+                   do_analysis(Files, none, read_plts(PltFiles), none, succ_typings,
+                               Includes, NoCheckPLT, From, JPid)
+               end),
     case R of
         {ErrorOrExit, E} when ErrorOrExit =:= 'EXIT'; ErrorOrExit =:= error ->
             {error, flat(E)};
@@ -70,6 +62,47 @@ start_dialyze(JPid, Files, PltFiles, Includes, FromSource, NoCheckPLT) ->
             Result
     end.
 
+%% Like dialyze/5, but the warnings are sent with erlide_stream as soon as the
+%% analysis finds them.
+stream_dialyze(Sink, Files, PltFiles, Includes, FromSource, NoCheckPLT) ->
+    Progress = fun(progress, {_Pid, warnings, Warnings}) ->
+                       erlide_stream:send(Sink, Warnings);
+                  (_, _) ->
+                       ok
+               end,
+    R = (catch begin
+                   check_plts(PltFiles, NoCheckPLT),
+                   do_analysis(Files, none, read_plts(PltFiles), none, succ_typings,
+                               Includes, NoCheckPLT, from(FromSource), Progress)
+               end),
+    case R of
+        {erlide_stream, cancelled} ->
+            throw(R);
+        {ErrorOrExit, E} when ErrorOrExit =:= 'EXIT'; ErrorOrExit =:= dialyzer_error ->
+            {dialyzer_error, flat(E)};
+        _ ->
+            ok
+    end.
+
+from(true) -> src_code;
+from(false) -> byte_code.
+
+%% Like {check_plt, true} for dialyzer:run/1, bring the PLTs up to date with
+%% the code they were built from before they are read.
+check_plts(_PltFiles, true) ->
+    ok;
+check_plts(PltFiles, false) ->
+    lists:foreach(fun check_plt/1, PltFiles).
+
+read_plts([]) ->
+    dialyzer_plt:new();
+read_plts([Plt]) ->
+    ?D(Plt),
+    dialyzer_plt:from_file(Plt);
+read_plts(PltFiles) ->
+    Plts = [dialyzer_plt:from_file(F) || F <- PltFiles],
+    dialyzer_plt:merge_plts_or_report_conflicts(PltFiles, Plts).
+
 %%     From = case FromSource of
 %%                true -> src_code;
 %%                false -> byte_code
@@ -543,7 +576,9 @@ get_progress_fun(JPid) when is_pid(JPid) ->
     fun(W, M) ->
             JPid ! {W, M},
             ok
-    end.
+    end;
+get_progress_fun(Fun) when is_function(Fun, 2) ->
+    Fun.
 
 do_analysis(Files, FileName, Plt, PltInfo, AnalysisType, JPid) ->
     do_analysis(Files, FileName, Plt, PltInfo, AnalysisType, [], true, byte_code, JPid).
@@ -594,19 +629,19 @@ do_analysis(Files, FileName, Plt, PltInfo, AnalysisType, IncludeDirs, _NoCheckPL
                              callgraph_file = ""},
     State3 = start_analysis(State2, InitAnalysis),
     %%     {T1, _} = statistics(wall_clock),
-    case JPid of
+    case is_pid(JPid) of
         false -> ok;
-        _ ->
+        true ->
             %% TODO value below initializes progress monitor. How big should it be?
             JPid ! {start, 10}
     end,
     Return = (catch cl_loop(State3)),
     %%     {T2, _} = statistics(wall_clock),
     %%     report_elapsed_time(T1, T2, Options),
-    case JPid of
+    case is_pid(JPid) of
         false ->
             Return;
-        _ ->
+        true ->
             JPid ! {stop, Return},
             ok
     end.
@@ -711,8 +746,16 @@ cl_loop(State, LogCache) ->
             cl_loop(State, lists:sublist([LogMsg|LogCache], ?LOG_CACHE_SIZE));
         {BackendPid, warnings, Warnings} ->
             ?D({warnings, Warnings}),
-            progress(warnings, Warnings, State),
-            NewState = store_warnings(State, Warnings),
+            %% the progress fun may stream them, so each batch is sorted and
+            %% has only warnings that weren't reported before
+            Stored = State#cl_state.stored_warnings,
+            New = [W || W <- process_warnings(Warnings),
+                        not lists:member(W, Stored)],
+            case New of
+                [] -> ok;
+                _ -> progress(warnings, New, State)
+            end,
+            NewState = store_warnings(State, New),
             cl_loop(NewState, LogCache);
         {BackendPid, unknown_behaviours, Behaviours} ->
             ?D({unknown_behaviours, Behaviours}),
@@ -746,6 +789,12 @@ cl_loop(State, LogCache) ->
             Msg = failed_anal_msg(io_lib:format("~P", [Reason, 12]), LogCache),
             progress('EXIT', Msg, State),
             error(State, Msg);
+        {Ref, ack} = Msg when is_reference(Ref) ->
+            %% the progress fun is streaming the warnings
+            erlide_stream:handle(Msg),
+            cl_loop(State, LogCache);
+        {Ref, cancel} = Msg when is_reference(Ref) ->
+            erlide_stream:handle(Msg);
         _Other ->
             ?D({'_Other'}),
             %% io:format("Received ~p\n", [_Other]),
@@ -13,6 +13,7 @@
          get_external_modules/2,
          get_external_module/2,
          get_external_module_tree/1,
+         stream_external_module_tree/3,
          get_external_include/2,
          get_external_1/3,
          get_otp_lib_src_includes/1,
@@ -32,9 +33,17 @@
 -include("erlide.hrl").
 -include("erlide_open.hrl").
 -include("erlide_token.hrl").
+-include_lib("kernel/include/file.hrl").
 
 -define(CACHE_VERSION, 2).
 
+%% entries per chunk when streaming the external module tree
+-define(TREE_CHUNK, 200).
+-define(TREE_CACHE_VERSION, 1).
+%% how many external module trees are kept in the state dir; the ones that
+%% weren't used for the longest time are deleted
+-define(TREE_CACHES, 8).
+
 %%
 %% API Functions
 %%
@@ -175,6 +184,160 @@ get_external_modules(Prefix, #open_context{externalModules=ExternalModulesFiles,
 get_external_module_tree(#open_context{externalModules=ExternalModulesFiles, pathVars=PathVars}) ->
     {ok, get_external_module_tree(ExternalModulesFiles, PathVars)}.
 
+%% The tree is cached in StateDir, keyed by the external modules files and the
+%% path variables. The cache is valid as long as none of the files that were
+%% read to build the tree has changed. Projects can have different keys, so
+%% only the most recently used ?TREE_CACHES caches are kept.
+stream_external_module_tree(Sink, #open_context{externalModules=PackedFileNames, pathVars=PathVars}, StateDir) ->
+    CacheName = external_tree_cache_name(StateDir, PackedFileNames, PathVars),
+    case read_external_tree_cache(CacheName, {PackedFileNames, PathVars}) of
+        {ok, Tree} ->
+            ?D({from_cache, CacheName}),
+            %% the modification time tells which caches are in use
+            _ = file:change_time(CacheName, calendar:local_time()),
+            send_tree(Sink, Tree);
+        no_cache ->
+            {Files, Tree} = stream_external_tree(Sink, PackedFileNames, PathVars),
+            write_external_tree_cache(CacheName, {PackedFileNames, PathVars}, Files, Tree),
+            delete_old_tree_caches(StateDir, CacheName)
+    end,
+    ok.
+
+stream_external_tree(Sink, PackedFileNames, PathVars) ->
+    Fun = fun(Parent, FileName, {Chunk, All}) ->
+                  Entry = {Parent, replace_path_var(FileName, PathVars), module},
+                  {stream_entry(Sink, Entry, Chunk), [Entry | All]}
+          end,
+    %% entries are only sent with the next module, since fx2 drops them if the
+    %% file can't be read
+    Fun2 = fun(Parent, FileName, {Chunk, All}) ->
+                   Entry = {Parent, replace_path_var(FileName, PathVars), entry},
+                   {[Entry | Chunk], [Entry | All]}
+           end,
+    FileNames = erlide_util:unpack(PackedFileNames),
+    {Done, {LastChunk, Tree}} = fx(FileNames, Fun, Fun2, PathVars, "root", [], {[], []}),
+    erlide_stream:send(Sink, lists:reverse(LastChunk)),
+    %% all the files that were read, or couldn't be
+    Roots = replace_path_vars(FileNames, PathVars),
+    Files = [F || F <- Done, lists:member(F, Roots) orelse filename:extension(F) == ".erlidex"],
+    {Files, lists:reverse(Tree)}.
+
+stream_entry(Sink, Entry, Acc) when length(Acc) >= ?TREE_CHUNK ->
+    erlide_stream:send(Sink, lists:reverse([Entry | Acc])),
+    [];
+stream_entry(_Sink, Entry, Acc) ->
+    [Entry | Acc].
+
+send_tree(Sink, Tree) when length(Tree) > ?TREE_CHUNK ->
+    {Chunk, Rest} = lists:split(?TREE_CHUNK, Tree),
+    erlide_stream:send(Sink, Chunk),
+    send_tree(Sink, Rest);
+send_tree(Sink, Tree) ->
+    erlide_stream:send(Sink, Tree).
+
+external_tree_cache_name(StateDir, PackedFileNames, PathVars) ->
+    Hash = erlang:md5(term_to_binary({PackedFileNames, PathVars})),
+    Hex = lists:flatten([io_lib:format("~2.16.0b", [X]) || <<X>> <= Hash]),
+    filename:join(StateDir, "external_tree_" ++ Hex ++ ".cache").
+
+delete_old_tree_caches(StateDir, CacheName) ->
+    Caches = filelib:wildcard("external_tree_*.cache", StateDir),
+    Others = [{filelib:last_modified(F), F}
+              || C <- Caches,
+                 F <- [filename:join(StateDir, C)],
+                 F =/= CacheName],
+    Newest = lists:reverse(lists:sort(Others)),
+    Old = lists:nthtail(min(?TREE_CACHES - 1, length(Newest)), Newest),
+    [file:delete(F) || {_, F} <- Old],
+    ok.
+
+read_external_tree_cache(CacheName, Key) ->
+    case file:read_file(CacheName) of
+        {ok, B} ->
+            case catch binary_to_term(B) of
+                {?TREE_CACHE_VERSION, Key, Files, Tree} ->
+                    case check_file_signatures(Files) of
+                        Files ->
+                            {ok, Tree};
+                        changed ->
+                            no_cache;
+                        Touched ->
+                            %% same content, only remember the new dates
+                            write_tree_cache(CacheName, Key, Touched, Tree),
+                            {ok, Tree}
+                    end;
+                _ ->
+                    no_cache
+            end;
+        _ ->
+            no_cache
+    end.
+
+write_external_tree_cache(CacheName, Key, FileNames, Tree) ->
+    write_tree_cache(CacheName, Key, [file_signature(F) || F <- FileNames], Tree).
+
+write_tree_cache(CacheName, Key, Files, Tree) ->
+    B = term_to_binary({?TREE_CACHE_VERSION, Key, Files, Tree}, [compressed]),
+    case file:write_file(CacheName, B) of
+        ok ->
+            ok;
+        _Error ->
+            ?D({_Error, CacheName}),
+            ok
+    end.
+
+%% The dates and sizes are checked first, the contents only if they differ.
+file_signature(FileName) ->
+    case file_stamp(FileName) of
+        {ok, Stamp} ->
+            {FileName, Stamp, content_hash(FileName)};
+        error ->
+            {FileName, missing}
+    end.
+
+file_stamp(FileName) ->
+    case file:read_file_info(FileName) of
+        {ok, #file_info{mtime=MTime, size=Size}} ->
+            {ok, {MTime, Size}};
+        _ ->
+            error
+    end.
+
+content_hash(FileName) ->
+    case file:read_file(FileName) of
+        {ok, B} ->
+            erlang:md5(B);
+        _ ->
+            missing
+    end.
+
+check_file_signatures(Files) ->
+    check_file_signatures(Files, []).
+
+check_file_signatures([], Acc) ->
+    lists:reverse(Acc);
+check_file_signatures([{FileName, missing}=Sig | Rest], Acc) ->
+    case file_stamp(FileName) of
+        {ok, _} ->
+            changed;
+        error ->
+            check_file_signatures(Rest, [Sig | Acc])
+    end;
+check_file_signatures([{FileName, Stamp, Hash}=Sig | Rest], Acc) ->
+    case file_stamp(FileName) of
+        {ok, Stamp} ->
+            check_file_signatures(Rest, [Sig | Acc]);
+        {ok, NewStamp} ->
+            case content_hash(FileName) of
+                Hash ->
+                    check_file_signatures(Rest, [{FileName, NewStamp, Hash} | Acc]);
+                _ ->
+                    changed
+            end;
+        error ->
+            changed
+    end.
+
 get_external_module(Name, #open_context{externalModules=ExternalModulesFiles, pathVars=PathVars}) ->
     ExternalModules = get_external_modules_files(ExternalModulesFiles, PathVars),
     case [XM || XM <- ExternalModules, has_name(Name, XM)] of
@@ -462,7 +625,7 @@ fx2(FN, Fun, Fun2, PathVars, Parent, Done, Acc) ->
             Lines = erlide_util:split_lines(B),
             fx(Lines, Fun, Fun2, PathVars, FN, [FN | Done], NewAcc);
         _ ->
-            {Done, Acc}
+            {[FN | Done], Acc}
     end.
 
 get_source_from_external_modules(Mod, #open_context{externalModules=ExternalModules,
@@ -0,0 +1,42 @@
+-module(erlide_code_loader_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+beam(M, Value) ->
+    Forms = [{attribute, 1, module, M},
+             {attribute, 2, export, [{value, 0}]},
+             {function, 3, value, 0, [{clause, 3, [], [], [{integer, 3, Value}]}]}],
+    {ok, M, Bin} = compile:forms(Forms, []),
+    Bin.
+
+cleanup(M) ->
+    code:purge(M),
+    code:delete(M),
+    code:purge(M).
+
+loads_and_skips_unchanged_test() ->
+    M = erlide_code_loader_test_mod,
+    try
+        ?assertEqual([{M, ok}],
+                     erlide_code_loader:load_binaries([{M, beam(M, 1)}])),
+        ?assertEqual(1, M:value()),
+        ?assertEqual([{M, unchanged}],
+                     erlide_code_loader:load_binaries([{M, beam(M, 1)}])),
+        ?assertEqual([{M, ok}],
+                     erlide_code_loader:load_binaries([{M, beam(M, 2)}])),
+        ?assertEqual(2, M:value())
+    after
+        cleanup(M)
+    end.
+
+reports_each_failure_test() ->
+    M = erlide_code_loader_test_mod2,
+    try
+        ?assertMatch([{M, ok}, {lists, {error, _}}, {bad, {error, _}}],
+                     erlide_code_loader:load_binaries([{M, beam(M, 1)},
+                                                       {lists, beam(lists, 1)},
+                                                       {bad, <<"not a beam">>}])),
+        ?assertEqual(1, M:value())
+    after
+        cleanup(M)
+    end.
@@ -0,0 +1,94 @@
+-module(erlide_debug_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+-define(LAZY, '$erlide_lazy').
+
+%% A process registered as dbg_mon answers every command with the given
+%% stack frames.
+with_frames(Frames, Fun) ->
+    Mon = spawn(fun() -> fake_mon(Frames) end),
+    true = register(dbg_mon, Mon),
+    try
+        Fun()
+    after
+        unregister(dbg_mon),
+        exit(Mon, kill)
+    end.
+
+fake_mon(Frames) ->
+    receive
+        {cmd, _Cmd, From} ->
+            From ! Frames,
+            fake_mon(Frames)
+    end.
+
+stack_frames(Bs) ->
+    with_frames({[], Bs}, fun() -> erlide_debug:all_stack_frames(meta) end).
+
+binding_part(Value, Path, Offset, Length) ->
+    with_frames({[], [{'X', Value}]},
+                fun() ->
+                        erlide_debug:binding_part(meta, 0, 'X', Path, Offset, Length)
+                end).
+
+big_list() ->
+    lists:seq(1, 5000).
+
+small_values_are_sent_whole_test() ->
+    Bs = [{'A', lists:seq(1, 10)}, {'B', <<"abc">>}, {'C', {a, b}}],
+    ?assertEqual({[], Bs}, stack_frames(Bs)).
+
+list_preview_test() ->
+    ?assertEqual({[], [{'X', {?LAZY, 5000, lists:seq(1, 100)}}]},
+                 stack_frames([{'X', big_list()}])).
+
+tuple_preview_test() ->
+    ?assertEqual({[], [{'X', {?LAZY, 5000, list_to_tuple(lists:seq(1, 100))}}]},
+                 stack_frames([{'X', list_to_tuple(big_list())}])).
+
+binary_preview_test() ->
+    ?assertEqual({[], [{'X', {?LAZY, 10000, binary:copy(<<"a">>, 1024)}}]},
+                 stack_frames([{'X', binary:copy(<<"a">>, 10000)}])).
+
+record_keeps_its_name_below_the_depth_test() ->
+    Value = {r1, {r2, {r3, {r4, big_list()}}}},
+    ?assertEqual({[], [{'X', {r1, {r2, {r3, {?LAZY, 2, {r4}}}}}}]},
+                 stack_frames([{'X', Value}])).
+
+list_below_the_depth_test() ->
+    Value = {r1, {r2, {r3, big_list()}}},
+    ?assertEqual({[], [{'X', {r1, {r2, {r3, {?LAZY, 5000, []}}}}}]},
+                 stack_frames([{'X', Value}])).
+
+frame_bindings_are_shaped_test() ->
+    Frames = [{{m, f, 1}, 10, [{'Y', big_list()}], 1}],
+    ?assertEqual({[{{m, f, 1}, 10, [{'Y', {?LAZY, 5000, lists:seq(1, 100)}}], 1}], []},
+                 with_frames({Frames, []},
+                             fun() -> erlide_debug:all_stack_frames(meta) end)).
+
+binding_part_test_() ->
+    Bin = binary:copy(<<"a">>, 10000),
+    [?_assertEqual(<<"aa">>, binding_part(Bin, [], 9998, 100)),
+     ?_assertEqual(<<>>, binding_part(Bin, [], 10000, 100)),
+     ?_assertEqual(<<>>, binding_part(Bin, [], 10001, 100)),
+     ?_assertEqual([4999, 5000], binding_part(big_list(), [], 4998, 100)),
+     ?_assertEqual([], binding_part(big_list(), [], 5000, 100)),
+     ?_assertEqual([], binding_part(big_list(), [], 5001, 100)),
+     ?_assertEqual([], binding_part(list_to_tuple(big_list()), [], 5000, 100)),
+     ?_assertEqual([3], binding_part({a, [1, 2, 3]}, [1], 2, 100))].
+
+binding_part_in_a_frame_test() ->
+    Frames = [{{m, f, 1}, 10, [{'Y', big_list()}], 1}],
+    ?assertEqual([101, 102],
+                 with_frames({Frames, []},
+                             fun() ->
+                                     erlide_debug:binding_part(meta, 1, 'Y', [], 100, 2)
+                             end)).
+
+binding_part_not_found_test() ->
+    ?assertEqual({error, not_found},
+                 with_frames({[], []},
+                             fun() ->
+                                     erlide_debug:binding_part(meta, 0, 'X', [], 0, 1)
+                             end)).
@@ -62,6 +62,64 @@ open_record_field_test_() ->
 				   open_test("-a() -> #r{field1=A, field2=B}."))
 	].
 
+external_module_tree_cache_test() ->
+    Dir = "external_tree_test",
+    ok = filelib:ensure_dir(filename:join(Dir, "x")),
+    Ext = filename:join(Dir, "x.erlidex"),
+    ok = file:write_file(Ext, "a.erl\nb.erl\n"),
+    Context = #open_context{externalModules=Ext, pathVars=[]},
+    Tree = [{"root", Ext, entry}, {Ext, "a.erl", module}, {Ext, "b.erl", module}],
+    ?assertEqual(Tree, external_module_tree(Context, Dir)),
+    ?assertMatch([_], filelib:wildcard(filename:join(Dir, "external_tree_*.cache"))),
+    ?assertEqual(Tree, external_module_tree(Context, Dir)),
+    ok = file:write_file(Ext, "a.erl\n"),
+    ?assertEqual(lists:sublist(Tree, 2), external_module_tree(Context, Dir)),
+    [ok = file:delete(F) || F <- filelib:wildcard(filename:join(Dir, "*"))],
+    ok = file:del_dir(Dir).
+
+old_external_module_tree_caches_are_deleted_test() ->
+    Dir = "external_tree_test",
+    ok = filelib:ensure_dir(filename:join(Dir, "x")),
+    Ext = filename:join(Dir, "x.erlidex"),
+    ok = file:write_file(Ext, "a.erl\n"),
+    %% caches of other keys, used a day apart
+    Old = [begin
+               F = filename:join(Dir, "external_tree_" ++ integer_to_list(I) ++ ".cache"),
+               ok = file:write_file(F, "old"),
+               ok = file:change_time(F, {{2013, 1, I}, {0, 0, 0}}),
+               F
+           end || I <- lists:seq(1, 9)],
+    Context = #open_context{externalModules=Ext, pathVars=[]},
+    external_module_tree(Context, Dir),
+    Caches = filelib:wildcard(filename:join(Dir, "external_tree_*.cache")),
+    ?assertEqual(8, length(Caches)),
+    ?assertEqual(lists:nthtail(2, Old), [F || F <- Old, lists:member(F, Caches)]),
+    [ok = file:delete(F) || F <- filelib:wildcard(filename:join(Dir, "*"))],
+    ok = file:del_dir(Dir).
+
+%% plays the Java side of the stream
+external_module_tree(Context, StateDir) ->
+    Ref = make_ref(),
+    Self = self(),
+    spawn(fun() ->
+                  erlide_stream:start(Self, Ref, 4, erlide_open, stream_external_module_tree,
+                                      [Context, StateDir])
+          end),
+    external_module_tree_loop(Ref, []).
+
+external_module_tree_loop(Ref, Acc) ->
+    receive
+        {Ref, start, _Pid} ->
+            external_module_tree_loop(Ref, Acc);
+        {Ref, chunk, Pid, Items} ->
+            Pid ! {Ref, ack},
+            external_module_tree_loop(Ref, [Items | Acc]);
+        {Ref, done, ok} ->
+            lists:append(lists:reverse(Acc))
+    after 5000 ->
+            timeout
+    end.
+
 open_test(S) ->
     {S1, Offset} = split(S),
     erlide_scanner:create(test),
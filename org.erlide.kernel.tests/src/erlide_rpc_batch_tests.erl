@@ -0,0 +1,58 @@
+-module(erlide_rpc_batch_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+%% called through erlide_rpc_batch
+-export([append/1]).
+
+append(X) ->
+    Acc = case get(?MODULE) of undefined -> []; L -> L end,
+    put(?MODULE, Acc ++ [X]),
+    get(?MODULE).
+
+empty_test() ->
+    ?assertEqual([], erlide_rpc_batch:call([])).
+
+results_in_order_test() ->
+    ?assertEqual([3, "cba", {ok, a}],
+                 erlide_rpc_batch:call([{erlang, length, [[a, b, c]]},
+                                        {lists, reverse, ["abc"]},
+                                        {erlang, list_to_tuple, [[ok, a]]}])).
+
+calls_run_in_order_test() ->
+    erase(?MODULE),
+    try
+        ?assertEqual([[1], [1, 2], [1, 2, 3]],
+                     erlide_rpc_batch:call([{?MODULE, append, [I]}
+                                            || I <- [1, 2, 3]]))
+    after
+        erase(?MODULE)
+    end.
+
+failures_dont_stop_the_batch_test() ->
+    ?assertMatch([1,
+                  {badrpc, {'EXIT', {badarg, _}}},
+                  {badrpc, {'EXIT', {undef, _}}},
+                  oops,
+                  {badrpc, {'EXIT', bye}},
+                  2],
+                 erlide_rpc_batch:call([{erlang, abs, [-1]},
+                                        {erlang, atom_to_list, [1]},
+                                        {no_such_module, f, []},
+                                        {erlang, throw, [oops]},
+                                        {erlang, exit, [bye]},
+                                        {erlang, abs, [2]}])).
+
+same_results_as_rpc_test() ->
+    Calls = [{erlang, abs, [-1]},
+             {erlang, atom_to_list, [1]},
+             {erlang, throw, [oops]},
+             {erlang, exit, [bye]}],
+    ?assertEqual([without_stack(rpc:call(node(), M, F, A)) || {M, F, A} <- Calls],
+                 [without_stack(R) || R <- erlide_rpc_batch:call(Calls)]).
+
+%% the stacks of errors differ between the two ways of calling
+without_stack({badrpc, {'EXIT', {Reason, Stack}}}) when is_list(Stack) ->
+    {badrpc, {'EXIT', Reason}};
+without_stack(Result) ->
+    Result.
@@ -0,0 +1,60 @@
+-module(erlide_stream_tests).
+
+-include_lib("eunit/include/eunit.hrl").
+
+%% called through erlide_stream
+-export([produce/2, fail/1]).
+
+produce(Sink, N) ->
+    [erlide_stream:send(Sink, [I]) || I <- lists:seq(1, N)],
+    N.
+
+fail(_Sink) ->
+    erlang:error(badarg).
+
+start(Window, F, A) ->
+    Ref = make_ref(),
+    Self = self(),
+    spawn(fun() -> erlide_stream:start(Self, Ref, Window, ?MODULE, F, A) end),
+    Ref.
+
+%% plays the Java side: takes the chunks and acknowledges them
+consume(Ref, Acc) ->
+    receive
+        {Ref, start, _Pid} ->
+            consume(Ref, Acc);
+        {Ref, chunk, Pid, Items} ->
+            Pid ! {Ref, ack},
+            consume(Ref, [Items | Acc]);
+        {Ref, done, Result} ->
+            {lists:append(lists:reverse(Acc)), Result};
+        {Ref, error, _} = Error ->
+            Error;
+        {Ref, cancelled} = Cancelled ->
+            Cancelled
+    after 5000 ->
+            timeout
+    end.
+
+chunks_arrive_in_order_test() ->
+    Ref = start(2, produce, [10]),
+    ?assertEqual({lists:seq(1, 10), 10}, consume(Ref, [])).
+
+producer_waits_for_credit_test() ->
+    Ref = start(2, produce, [10]),
+    timer:sleep(100),
+    {messages, Msgs} = process_info(self(), messages),
+    ?assertEqual(2, length([C || {R, chunk, _, _} = C <- Msgs, R =:= Ref])),
+    ?assertEqual({lists:seq(1, 10), 10}, consume(Ref, [])).
+
+cancel_stops_producer_test() ->
+    Ref = start(2, produce, [10]),
+    receive
+        {Ref, start, Pid} ->
+            Pid ! {Ref, cancel}
+    end,
+    ?assertEqual({Ref, cancelled}, consume(Ref, [])).
+
+error_is_reported_test() ->
+    Ref = start(2, fail, []),
+    ?assertEqual({Ref, error, {error, badarg}}, consume(Ref, [])).
@@ -12,5 +12,9 @@ all_test_() ->
      erlide_indent_tests,
      erlide_search_tests,
      erlide_open_tests,
-     erlide_parse_tests
+     erlide_parse_tests,
+     erlide_stream_tests,
+     erlide_code_loader_tests,
+     erlide_rpc_batch_tests,
+     erlide_debug_tests
     ].
\ No newline at end of file
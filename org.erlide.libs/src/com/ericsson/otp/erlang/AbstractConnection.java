@@ -21,7 +21,10 @@ package com.ericsson.otp.erlang;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.Random;
 
 /**
@@ -86,6 +89,7 @@ public abstract class AbstractConnection extends Thread {
 
     protected boolean connected = false; // connection status
     protected Socket socket; // communication channel
+    private OtpNioChannel nio = null; // transport, if not using our own thread
     protected OtpPeer peer; // who are we connected to
     protected OtpLocalNode self; // this nodes id
     String name; // local name of this connection
@@ -203,6 +207,35 @@ public abstract class AbstractConnection extends Thread {
         connected = true;
     }
 
+    /**
+     * The selector to use for the NIO transport, or null to receive with a
+     * thread of our own. Called during construction.
+     */
+    OtpSelector selector() {
+        return null;
+    }
+
+    /**
+     * Start receiving from the peer: on the {@link #selector() selector} if
+     * there is one and the socket has a channel, otherwise by starting this
+     * thread.
+     */
+    protected void startReceiving() throws IOException {
+        final OtpSelector selector = selector();
+        final SocketChannel channel = socket == null ? null : socket.getChannel();
+        if (selector == null || channel == null || !connected) {
+            start();
+            return;
+        }
+        try {
+            nio = new OtpNioChannel(this, channel, selector);
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+        nio.start();
+    }
+
     /**
      * Deliver communication exceptions to the recipient.
      */
@@ -230,31 +263,34 @@ public abstract class AbstractConnection extends Thread {
         if (!connected) {
             throw new IOException("Not connected");
         }
-        final OtpOutputStream header = new OtpOutputStream(headerLen);
-
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(passThrough);
-        header.write1(version);
+        final OtpOutputStream header = OtpOutputStream.acquire();
+        try {
+            // preamble: 4 byte length + "passthrough" tag + version
+            header.write4BE(0); // reserve space for length
+            header.write1(passThrough);
+            header.write1(version);
 
-        // header info
-        header.write_tuple_head(4);
-        header.write_long(regSendTag);
-        header.write_any(from);
-        if (sendCookie) {
-            header.write_atom(self.cookie());
-        } else {
-            header.write_atom("");
-        }
-        header.write_atom(dest);
+            // header info
+            header.write_tuple_head(4);
+            header.write_long(regSendTag);
+            header.write_any(from);
+            if (sendCookie) {
+                header.write_atom(self.cookie());
+            } else {
+                header.write_atom("");
+            }
+            header.write_atom(dest);
 
-        // version for payload
-        header.write1(version);
+            // version for payload
+            header.write1(version);
 
-        // fix up length in preamble
-        header.poke4BE(0, header.size() + payload.size() - 4);
+            // fix up length in preamble
+            header.poke4BE(0, header.size() + payload.size() - 4);
 
-        do_send(header, payload);
+            do_send(header, payload);
+        } finally {
+            header.release();
+        }
     }
 
     /**
@@ -274,30 +310,33 @@ public abstract class AbstractConnection extends Thread {
         if (!connected) {
             throw new IOException("Not connected");
         }
-        final OtpOutputStream header = new OtpOutputStream(headerLen);
-
-        // preamble: 4 byte length + "passthrough" tag + version
-        header.write4BE(0); // reserve space for length
-        header.write1(passThrough);
-        header.write1(version);
+        final OtpOutputStream header = OtpOutputStream.acquire();
+        try {
+            // preamble: 4 byte length + "passthrough" tag + version
+            header.write4BE(0); // reserve space for length
+            header.write1(passThrough);
+            header.write1(version);
 
-        // header info
-        header.write_tuple_head(3);
-        header.write_long(sendTag);
-        if (sendCookie) {
-            header.write_atom(self.cookie());
-        } else {
-            header.write_atom("");
-        }
-        header.write_any(dest);
+            // header info
+            header.write_tuple_head(3);
+            header.write_long(sendTag);
+            if (sendCookie) {
+                header.write_atom(self.cookie());
+            } else {
+                header.write_atom("");
+            }
+            header.write_any(dest);
 
-        // version for payload
-        header.write1(version);
+            // version for payload
+            header.write1(version);
 
-        // fix up length in preamble
-        header.poke4BE(0, header.size() + payload.size() - 4);
+            // fix up length in preamble
+            header.poke4BE(0, header.size() + payload.size() - 4);
 
-        do_send(header, payload);
+            do_send(header, payload);
+        } finally {
+            header.release();
+        }
     }
 
     /*
@@ -489,7 +528,6 @@ public abstract class AbstractConnection extends Thread {
 
         final byte[] lbuf = new byte[4];
         OtpInputStream ibuf;
-        OtpErlangObject traceobj;
         int len;
         final byte[] tock = { 0, 0, 0, 0 };
 
@@ -518,200 +556,226 @@ public abstract class AbstractConnection extends Thread {
 
                 // got a real message (maybe) - read len bytes
                 final byte[] tmpbuf = new byte[len];
-                // i = socket.getInputStream().read(tmpbuf);
                 readSock(socket, tmpbuf);
-                ibuf = new OtpInputStream(tmpbuf, flags);
-
-                if (ibuf.read1() != passThrough) {
+                if (!receiveFrame(tmpbuf)) {
                     break receive_loop;
                 }
+            } // end receive_loop
 
-                // got a real message (really)
-                OtpErlangObject reason = null;
-                OtpErlangAtom cookie = null;
-                OtpErlangObject tmp = null;
-                OtpErlangTuple head = null;
-                OtpErlangAtom toName;
-                OtpErlangPid to;
-                OtpErlangPid from;
-                int tag;
-
-                // decode the header
-                tmp = ibuf.read_any();
-                if (!(tmp instanceof OtpErlangTuple)) {
-                    break receive_loop;
-                }
+            // this section reachable only with break
+            // we have received garbage from peer
+            deliver(new OtpErlangExit("Remote is sending garbage"));
 
-                head = (OtpErlangTuple) tmp;
-                if (!(head.elementAt(0) instanceof OtpErlangLong)) {
-                    break receive_loop;
-                }
+        } // try
 
-                // lets see what kind of message this is
-                tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
-
-                switch (tag) {
-                case sendTag: // { SEND, Cookie, ToPid }
-                case sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
-                    if (!cookieOk) {
-                        // we only check this once, he can send us bad cookies
-                        // later if he likes
-                        if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
-                            break receive_loop;
-                        }
-                        cookie = (OtpErlangAtom) head.elementAt(1);
-                        if (sendCookie) {
-                            if (!cookie.atomValue().equals(self.cookie())) {
-                                cookieError(self, cookie);
-                            }
-                        } else {
-                            if (!cookie.atomValue().equals("")) {
-                                cookieError(self, cookie);
-                            }
-                        }
-                        cookieOk = true;
-                    }
+        catch (final OtpAuthException e) {
+            deliver(e);
+        } catch (final OtpErlangDecodeException e) {
+            deliver(new OtpErlangExit("Remote is sending garbage"));
+        } catch (final IOException e) {
+            deliver(new OtpErlangExit("Remote has closed connection"));
+        } finally {
+            close();
+        }
+    }
+
+    /*
+     * Called by the NIO transport when receiving stops, like the end of run().
+     */
+    void receiveFailed(final Exception e) {
+        if (e instanceof OtpAuthException) {
+            deliver(e);
+        } else if (e instanceof OtpErlangDecodeException) {
+            deliver(new OtpErlangExit("Remote is sending garbage"));
+        } else {
+            deliver(new OtpErlangExit("Remote has closed connection"));
+        }
+        close();
+    }
 
-                    if (traceLevel >= sendThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+    /*
+     * Decode a packet received from the peer and deliver its message. Returns
+     * false if the peer is sending garbage.
+     */
+    boolean receiveFrame(final byte[] tmpbuf) throws OtpAuthException,
+            OtpErlangDecodeException {
+        final OtpInputStream ibuf = new OtpInputStream(tmpbuf, flags);
+        OtpErlangObject traceobj;
 
-                        /* show received payload too */
-                        ibuf.mark(0);
-                        traceobj = ibuf.read_any();
+        if (ibuf.read1() != passThrough) {
+            return false;
+        }
 
-                        if (traceobj == null) {
-                            System.out.println("   (null)");
-                        } else {
-                            System.out.println("   " + traceobj);
-                        }
-                        ibuf.reset();
-                    }
+        // got a real message (really)
+        OtpErlangObject reason = null;
+        OtpErlangAtom cookie = null;
+        OtpErlangObject tmp = null;
+        OtpErlangTuple head = null;
+        OtpErlangAtom toName;
+        OtpErlangPid to;
+        OtpErlangPid from;
+        int tag;
+
+        // decode the header
+        tmp = ibuf.read_any();
+        if (!(tmp instanceof OtpErlangTuple)) {
+            return false;
+        }
 
-                    to = (OtpErlangPid) head.elementAt(2);
+        head = (OtpErlangTuple) tmp;
+        if (!(head.elementAt(0) instanceof OtpErlangLong)) {
+            return false;
+        }
 
-                    deliver(new OtpMsg(to, ibuf));
-                    break;
+        // lets see what kind of message this is
+        tag = (int) ((OtpErlangLong) head.elementAt(0)).longValue();
 
-                case regSendTag: // { REG_SEND, FromPid, Cookie, ToName }
-                case regSendTTTag: // { REG_SEND, FromPid, Cookie, ToName,
-                    // TraceToken }
-                    if (!cookieOk) {
-                        // we only check this once, he can send us bad cookies
-                        // later if he likes
-                        if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
-                            break receive_loop;
-                        }
-                        cookie = (OtpErlangAtom) head.elementAt(2);
-                        if (sendCookie) {
-                            if (!cookie.atomValue().equals(self.cookie())) {
-                                cookieError(self, cookie);
-                            }
-                        } else {
-                            if (!cookie.atomValue().equals("")) {
-                                cookieError(self, cookie);
-                            }
-                        }
-                        cookieOk = true;
+        switch (tag) {
+        case sendTag: // { SEND, Cookie, ToPid }
+        case sendTTTag: // { SEND, Cookie, ToPid, TraceToken }
+            if (!cookieOk) {
+                // we only check this once, he can send us bad cookies
+                // later if he likes
+                if (!(head.elementAt(1) instanceof OtpErlangAtom)) {
+                    return false;
+                }
+                cookie = (OtpErlangAtom) head.elementAt(1);
+                if (sendCookie) {
+                    if (!cookie.atomValue().equals(self.cookie())) {
+                        cookieError(self, cookie);
+                    }
+                } else {
+                    if (!cookie.atomValue().equals("")) {
+                        cookieError(self, cookie);
                     }
+                }
+                cookieOk = true;
+            }
 
-                    if (traceLevel >= sendThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+            if (traceLevel >= sendThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
 
-                        /* show received payload too */
-                        ibuf.mark(0);
-                        traceobj = ibuf.read_any();
+                /* show received payload too */
+                ibuf.mark(0);
+                traceobj = ibuf.read_any();
 
-                        if (traceobj != null) {
-                            System.out.println("   " + traceobj);
-                        } else {
-                            System.out.println("   (null)");
-                        }
-                        ibuf.reset();
-                    }
+                if (traceobj == null) {
+                    System.out.println("   (null)");
+                } else {
+                    System.out.println("   " + traceobj);
+                }
+                ibuf.reset();
+            }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    toName = (OtpErlangAtom) head.elementAt(3);
+            to = (OtpErlangPid) head.elementAt(2);
 
-                    deliver(new OtpMsg(from, toName.atomValue(), ibuf));
-                    break;
+            deliver(new OtpMsg(to, ibuf));
+            break;
 
-                case exitTag: // { EXIT, FromPid, ToPid, Reason }
-                case exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
-                    if (head.elementAt(3) == null) {
-                        break receive_loop;
+        case regSendTag: // { REG_SEND, FromPid, Cookie, ToName }
+        case regSendTTTag: // { REG_SEND, FromPid, Cookie, ToName,
+            // TraceToken }
+            if (!cookieOk) {
+                // we only check this once, he can send us bad cookies
+                // later if he likes
+                if (!(head.elementAt(2) instanceof OtpErlangAtom)) {
+                    return false;
+                }
+                cookie = (OtpErlangAtom) head.elementAt(2);
+                if (sendCookie) {
+                    if (!cookie.atomValue().equals(self.cookie())) {
+                        cookieError(self, cookie);
                     }
-                    if (traceLevel >= ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
+                } else {
+                    if (!cookie.atomValue().equals("")) {
+                        cookieError(self, cookie);
                     }
+                }
+                cookieOk = true;
+            }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
-                    reason = head.elementAt(3);
+            if (traceLevel >= sendThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
 
-                    deliver(new OtpMsg(tag, from, to, reason));
-                    break;
+                /* show received payload too */
+                ibuf.mark(0);
+                traceobj = ibuf.read_any();
 
-                case exitTTTag: // { EXIT, FromPid, ToPid, TraceToken, Reason }
-                case exit2TTTag: // { EXIT2, FromPid, ToPid, TraceToken,
-                    // Reason
-                    // }
-                    // as above, but bifferent element number
-                    if (head.elementAt(4) == null) {
-                        break receive_loop;
-                    }
-                    if (traceLevel >= ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
-                    }
+                if (traceobj != null) {
+                    System.out.println("   " + traceobj);
+                } else {
+                    System.out.println("   (null)");
+                }
+                ibuf.reset();
+            }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
-                    reason = head.elementAt(4);
+            from = (OtpErlangPid) head.elementAt(1);
+            toName = (OtpErlangAtom) head.elementAt(3);
 
-                    deliver(new OtpMsg(tag, from, to, reason));
-                    break;
+            deliver(new OtpMsg(from, toName.atomValue(), ibuf));
+            break;
 
-                case linkTag: // { LINK, FromPid, ToPid}
-                case unlinkTag: // { UNLINK, FromPid, ToPid}
-                    if (traceLevel >= ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
-                    }
+        case exitTag: // { EXIT, FromPid, ToPid, Reason }
+        case exit2Tag: // { EXIT2, FromPid, ToPid, Reason }
+            if (head.elementAt(3) == null) {
+                return false;
+            }
+            if (traceLevel >= ctrlThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
+            }
 
-                    from = (OtpErlangPid) head.elementAt(1);
-                    to = (OtpErlangPid) head.elementAt(2);
+            from = (OtpErlangPid) head.elementAt(1);
+            to = (OtpErlangPid) head.elementAt(2);
+            reason = head.elementAt(3);
 
-                    deliver(new OtpMsg(tag, from, to));
-                    break;
+            deliver(new OtpMsg(tag, from, to, reason));
+            break;
 
-                // absolutely no idea what to do with these, so we ignore
-                // them...
-                case groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
-                    // (just show trace)
-                    if (traceLevel >= ctrlThreshold) {
-                        System.out.println("<- " + headerType(head) + " " + head);
-                    }
-                    break;
+        case exitTTTag: // { EXIT, FromPid, ToPid, TraceToken, Reason }
+        case exit2TTTag: // { EXIT2, FromPid, ToPid, TraceToken,
+            // Reason
+            // }
+            // as above, but bifferent element number
+            if (head.elementAt(4) == null) {
+                return false;
+            }
+            if (traceLevel >= ctrlThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
+            }
 
-                default:
-                    // garbage?
-                    break receive_loop;
-                }
-            } // end receive_loop
+            from = (OtpErlangPid) head.elementAt(1);
+            to = (OtpErlangPid) head.elementAt(2);
+            reason = head.elementAt(4);
 
-            // this section reachable only with break
-            // we have received garbage from peer
-            deliver(new OtpErlangExit("Remote is sending garbage"));
+            deliver(new OtpMsg(tag, from, to, reason));
+            break;
 
-        } // try
+        case linkTag: // { LINK, FromPid, ToPid}
+        case unlinkTag: // { UNLINK, FromPid, ToPid}
+            if (traceLevel >= ctrlThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
+            }
 
-        catch (final OtpAuthException e) {
-            deliver(e);
-        } catch (final OtpErlangDecodeException e) {
-            deliver(new OtpErlangExit("Remote is sending garbage"));
-        } catch (final IOException e) {
-            deliver(new OtpErlangExit("Remote has closed connection"));
-        } finally {
-            close();
+            from = (OtpErlangPid) head.elementAt(1);
+            to = (OtpErlangPid) head.elementAt(2);
+
+            deliver(new OtpMsg(tag, from, to));
+            break;
+
+        // absolutely no idea what to do with these, so we ignore
+        // them...
+        case groupLeaderTag: // { GROUPLEADER, FromPid, ToPid}
+            // (just show trace)
+            if (traceLevel >= ctrlThreshold) {
+                System.out.println("<- " + headerType(head) + " " + head);
+            }
+            break;
+
+        default:
+            // garbage?
+            return false;
         }
+        return true;
     }
 
     /**
@@ -763,6 +827,9 @@ public abstract class AbstractConnection extends Thread {
     public void close() {
         done = true;
         connected = false;
+        if (nio != null) {
+            nio.close();
+        }
         synchronized (this) {
             try {
                 if (socket != null) {
@@ -795,7 +862,8 @@ public abstract class AbstractConnection extends Thread {
     }
 
     // used by send and send_reg (message types with payload)
-    protected synchronized void do_send(final OtpOutputStream header,
+    // the NIO transport orders the writes itself, the socket needs our lock
+    protected void do_send(final OtpOutputStream header,
             final OtpOutputStream payload) throws IOException {
         try {
             if (traceLevel >= sendThreshold) {
@@ -814,8 +882,15 @@ public abstract class AbstractConnection extends Thread {
                 }
             }
 
-            header.writeTo(socket.getOutputStream());
-            payload.writeTo(socket.getOutputStream());
+            if (nio != null) {
+                nio.write(new ByteBuffer[] { header.asByteBuffer(),
+                        payload.asByteBuffer() });
+            } else {
+                synchronized (this) {
+                    header.writeTo(socket.getOutputStream());
+                    payload.writeTo(socket.getOutputStream());
+                }
+            }
         } catch (final IOException e) {
             close();
             throw e;
@@ -823,7 +898,7 @@ public abstract class AbstractConnection extends Thread {
     }
 
     // used by the other message types
-    protected synchronized void do_send(final OtpOutputStream header) throws IOException {
+    protected void do_send(final OtpOutputStream header) throws IOException {
         try {
             if (traceLevel >= ctrlThreshold) {
                 try {
@@ -833,7 +908,13 @@ public abstract class AbstractConnection extends Thread {
                     System.out.println("   " + "can't decode output buffer: " + e);
                 }
             }
-            header.writeTo(socket.getOutputStream());
+            if (nio != null) {
+                nio.write(new ByteBuffer[] { header.asByteBuffer() });
+            } else {
+                synchronized (this) {
+                    header.writeTo(socket.getOutputStream());
+                }
+            }
         } catch (final IOException e) {
             close();
             throw e;
@@ -892,12 +973,12 @@ public abstract class AbstractConnection extends Thread {
         int i;
         InputStream is = null;
 
-        synchronized (this) {
-            if (s == null) {
-                throw new IOException("expected " + len + " bytes, socket was closed");
-            }
-            is = s.getInputStream();
+        // not under the connection's lock: a sender blocked in a write holds
+        // it, and its peer may be waiting for us to read before reading
+        if (s == null) {
+            throw new IOException("expected " + len + " bytes, socket was closed");
         }
+        is = s.getInputStream();
 
         while (got < len) {
             i = is.read(b, got, len - got);
@@ -949,7 +1030,12 @@ public abstract class AbstractConnection extends Thread {
 
     protected void doConnect(final int port) throws IOException, OtpAuthException {
         try {
-            socket = new Socket(peer.host(), port);
+            if (selector() != null) {
+                socket = SocketChannel.open(new InetSocketAddress(peer.host(), port))
+                        .socket();
+            } else {
+                socket = new Socket(peer.host(), port);
+            }
             socket.setTcpNoDelay(true);
 
             if (traceLevel >= handshakeThreshold) {
@@ -18,9 +18,23 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * This class implements a generic FIFO queue. There is no upper bound on the
  * length of the queue, items are linked.
+ * 
+ * <p>
+ * Putting is lock free, so the threads delivering messages don't contend with
+ * each other or with the reader. Getting is done under the queue's lock, which
+ * is normally uncontended since a queue usually has a single reader; readers
+ * waiting for an item don't hold it, they are parked and woken by
+ * {@link #put(Object)}.
+ * </p>
  */
 
 public class GenericQueue {
@@ -28,26 +42,26 @@ public class GenericQueue {
     private static final int closing = 1;
     private static final int closed = 2;
 
-    private int status;
+    private volatile int status;
+    // a bucket whose successor is the first item; guarded by this
     private Bucket head;
-    private Bucket tail;
-    private int count;
-
-    private void init() {
-        head = null;
-        tail = null;
-        count = 0;
-    }
+    // the last bucket, where put links new items
+    private final AtomicReference<Bucket> tail;
+    private final AtomicInteger count = new AtomicInteger();
+    // threads blocked in get
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
 
     /** Create an empty queue */
     public GenericQueue() {
-        init();
+        head = new Bucket(null);
+        tail = new AtomicReference<Bucket>(head);
         status = open;
     }
 
     /** Clear a queue */
-    public void flush() {
-        init();
+    public synchronized void flush() {
+        while (tryGet() != null) {
+        }
     }
 
     public void close() {
@@ -60,20 +74,19 @@ public class GenericQueue {
      * @param o
      *            Object to insert in the queue
      */
-    public synchronized void put(final Object o) {
+    public void put(final Object o) {
         final Bucket b = new Bucket(o);
 
-        if (tail != null) {
-            tail.setNext(b);
-            tail = b;
-        } else {
-            // queue was empty but has one element now
-            head = tail = b;
-        }
-        count++;
+        count.incrementAndGet();
+        // readers see b once it is linked from the previous tail
+        tail.getAndSet(b).setNext(b);
 
         // notify any waiting tasks
-        notify();
+        if (!waiters.isEmpty()) {
+            for (final Thread t : waiters) {
+                LockSupport.unpark(t);
+            }
+        }
     }
 
     /**
@@ -82,16 +95,25 @@ public class GenericQueue {
      * 
      * @return The object at the head of the queue.
      */
-    public synchronized Object get() {
-        Object o = null;
-
-        while ((o = tryGet()) == null) {
-            try {
-                this.wait();
-            } catch (final InterruptedException e) {
+    public Object get() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    final Object o = get(-1L, TimeUnit.NANOSECONDS);
+                    if (o != null) {
+                        return o;
+                    }
+                } catch (final InterruptedException e) {
+                    // keep waiting, but let the caller know
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
         }
-        return o;
     }
 
     /**
@@ -103,58 +125,95 @@ public class GenericQueue {
      *            queue.
      * 
      * @exception InterruptedException
-     *                if the operation times out.
+     *                if the operation times out, or the thread is
+     *                interrupted.
      * 
      * @return The object at the head of the queue, or null if none arrived in
      *         time.
      */
-    public synchronized Object get(final long timeout) throws InterruptedException {
+    public Object get(final long timeout) throws InterruptedException {
         if (status == closed) {
             return null;
         }
 
-        long currentTime = System.currentTimeMillis();
-        final long stopTime = currentTime + timeout;
-        Object o = null;
+        final Object o = poll(timeout);
+        if (o == null) {
+            throw new InterruptedException("Get operation timed out");
+        }
+        return o;
+    }
 
-        while (true) {
-            if ((o = tryGet()) != null) {
-                return o;
-            }
+    /*
+     * Like get(timeout), but returns null when it times out, so that an
+     * InterruptedException means the thread was interrupted.
+     */
+    Object poll(final long timeout) throws InterruptedException {
+        if (status == closed) {
+            return null;
+        }
+        return get(Math.max(timeout, 0), TimeUnit.MILLISECONDS);
+    }
 
-            currentTime = System.currentTimeMillis();
-            if (stopTime <= currentTime) {
-                throw new InterruptedException("Get operation timed out");
-            }
+    /*
+     * Wait at most timeout for an object, or forever if timeout is negative.
+     * Returns null on timeout.
+     */
+    private Object get(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        Object o = tryGet();
+        if (o != null || timeout == 0) {
+            return o;
+        }
 
-            try {
-                this.wait(stopTime - currentTime);
-            } catch (final InterruptedException e) {
-                // ignore, but really should retry operation instead
+        final long stopTime = System.nanoTime() + unit.toNanos(timeout);
+        final Thread self = Thread.currentThread();
+        waiters.add(self);
+        try {
+            while ((o = tryGet()) == null) {
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    final long left = stopTime - System.nanoTime();
+                    if (left <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, left);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
             }
+            return o;
+        } finally {
+            waiters.remove(self);
         }
     }
 
     // attempt to retrieve message from queue head
-    public Object tryGet() {
-        Object o = null;
-
-        if (head != null) {
-            o = head.getContents();
-            head = head.getNext();
-            count--;
-
-            if (head == null) {
-                tail = null;
-                count = 0;
-            }
+    public synchronized Object tryGet() {
+        final Bucket next = head.getNext();
+        if (next == null) {
+            return null;
         }
-
+        final Object o = next.takeContents();
+        head = next;
+        count.decrementAndGet();
         return o;
     }
 
-    public synchronized int getCount() {
-        return count;
+    /**
+     * Look at the object at the head of the queue, without removing it. To
+     * remove the same object with {@link #tryGet()}, synchronize on the queue.
+     * 
+     * @return The object at the head of the queue, or null if it is empty.
+     */
+    public synchronized Object peek() {
+        final Bucket next = head.getNext();
+        return next == null ? null : next.getContents();
+    }
+
+    public int getCount() {
+        return Math.max(0, count.get());
     }
 
     /*
@@ -162,8 +221,8 @@ public class GenericQueue {
      * The container holds the queued object and a reference to the next Bucket.
      */
     static class Bucket {
-        private Bucket next;
-        private final Object contents;
+        private volatile Bucket next;
+        private Object contents;
 
         public Bucket(final Object o) {
             next = null;
@@ -181,5 +240,12 @@ public class GenericQueue {
         public Object getContents() {
             return contents;
         }
+
+        // the bucket becomes the head, it shouldn't keep the object alive
+        Object takeContents() {
+            final Object o = contents;
+            contents = null;
+            return o;
+        }
     }
 }
@@ -0,0 +1,98 @@
+package com.ericsson.otp.erlang;
+
+import java.util.Arrays;
+
+/**
+ * Shared atom instances, so that the atoms that come and go all the time
+ * (ok, error, rex, call, record tags...) are neither decoded nor encoded over
+ * and over, and compare by identity.
+ *
+ * <p>
+ * Both tables are direct mapped and bounded: a slot holds the last atom that
+ * hashed to it. Entries are immutable, so the slots need no locking; a lost
+ * update only costs a miss.
+ * </p>
+ */
+final class OtpAtomCache {
+    // must be a power of two
+    private static final int size = 1024;
+
+    private static final OtpErlangAtom[] interned = new OtpErlangAtom[size];
+    private static final Entry[] decoded = new Entry[size];
+
+    private static final class Entry {
+        final boolean utf8;
+        final byte[] bytes;
+        final OtpErlangAtom atom;
+
+        Entry(final boolean utf8, final byte[] bytes, final OtpErlangAtom atom) {
+            this.utf8 = utf8;
+            this.bytes = bytes;
+            this.atom = atom;
+        }
+
+        boolean matches(final boolean isUtf8, final byte[] buf, final int off,
+                final int len) {
+            if (utf8 != isUtf8 || bytes.length != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (bytes[i] != buf[off + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private OtpAtomCache() {
+    }
+
+    private static int slot(final int hash) {
+        return (hash ^ hash >>> 16) & size - 1;
+    }
+
+    /**
+     * The shared atom with the given value.
+     */
+    static OtpErlangAtom intern(final String atom) {
+        final int i = slot(atom.hashCode());
+        final OtpErlangAtom a = interned[i];
+        if (a != null && a.atomValue().equals(atom)) {
+            return a;
+        }
+        final OtpErlangAtom result = new OtpErlangAtom(atom, true);
+        interned[i] = result;
+        return result;
+    }
+
+    /**
+     * The atom whose text is encoded in buf at off, or null if it isn't
+     * cached.
+     */
+    static OtpErlangAtom lookup(final boolean utf8, final byte[] buf, final int off,
+            final int len) {
+        final Entry e = decoded[slot(hash(buf, off, len))];
+        if (e != null && e.matches(utf8, buf, off, len)) {
+            return e.atom;
+        }
+        return null;
+    }
+
+    /**
+     * Remember the atom decoded from the given text.
+     */
+    static void put(final boolean utf8, final byte[] buf, final int off,
+            final int len, final OtpErlangAtom atom) {
+        decoded[slot(hash(buf, off, len))] = new Entry(utf8, Arrays.copyOfRange(
+                buf, off, off + len), atom);
+    }
+
+    private static int hash(final byte[] buf, final int off, final int len) {
+        int h = 1;
+        for (int i = off; i < off + len; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ericsson.otp.erlang;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct buffers, used by the NIO transport for reading and for the
+ * data that couldn't be written immediately.
+ */
+final class OtpBufferPool {
+    static final int bufferSize = 64 * 1024;
+    private static final int maxPooled = 64;
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> pool = new ConcurrentLinkedQueue<ByteBuffer>();
+    private static final AtomicInteger pooled = new AtomicInteger();
+
+    private OtpBufferPool() {
+    }
+
+    /**
+     * Get a cleared buffer, from the pool if there is one.
+     */
+    static ByteBuffer acquire() {
+        final ByteBuffer buf = pool.poll();
+        if (buf == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        pooled.decrementAndGet();
+        buf.clear();
+        return buf;
+    }
+
+    /**
+     * Give back a buffer; it must not be used afterwards.
+     */
+    static void release(final ByteBuffer buf) {
+        if (pooled.incrementAndGet() <= maxPooled) {
+            pool.offer(buf);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+}
@@ -83,7 +83,7 @@ public class OtpCookedConnection extends AbstractConnection {
         super(self, s);
         this.self = self;
         links = new Links(25);
-        start();
+        startReceiving();
     }
 
     /*
@@ -101,7 +101,13 @@ public class OtpCookedConnection extends AbstractConnection {
         super(self, other);
         this.self = self;
         links = new Links(25);
-        start();
+        startReceiving();
+    }
+
+    // called during construction, when our own self isn't set yet
+    @Override
+    OtpSelector selector() {
+        return ((OtpNode) super.self).selector();
     }
 
     // pass the error to the node
@@ -152,17 +158,31 @@ public class OtpCookedConnection extends AbstractConnection {
     void send(final OtpErlangPid from, final OtpErlangPid dest, final OtpErlangObject msg)
             throws IOException {
         // encode and send the message
-        sendBuf(from, dest, new OtpOutputStream(msg));
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            sendBuf(from, dest, payload);
+        } finally {
+            payload.release();
+        }
     }
 
     /*
      * send to remote name dest is recipient's registered name, the nodename is
-     * implied by the choice of connection.
+     * implied by the choice of connection. Returns the size of the encoded
+     * message.
      */
-    void send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
+    int send(final OtpErlangPid from, final String dest, final OtpErlangObject msg)
             throws IOException {
         // encode and send the message
-        sendBuf(from, dest, new OtpOutputStream(msg));
+        final OtpOutputStream payload = OtpOutputStream.acquire();
+        try {
+            payload.write_any(msg);
+            sendBuf(from, dest, payload);
+            return payload.size();
+        } finally {
+            payload.release();
+        }
     }
 
     @Override
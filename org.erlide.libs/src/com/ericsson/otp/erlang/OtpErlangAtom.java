@@ -33,6 +33,8 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
     public static final int maxAtomLength = 0xff; // one byte length
 
     private final String atom;
+    // the encoded atom, for the shared instances
+    private final transient byte[] encoded;
 
     /**
      * Create an atom from the given string.
@@ -54,6 +56,49 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
                     + maxAtomLength + " characters: " + atom);
         }
         this.atom = atom;
+        encoded = null;
+    }
+
+    /*
+     * A shared atom, see OtpAtomCache.
+     */
+    OtpErlangAtom(final String atom, final boolean shared) {
+        this(atom, shared ? encode(atom) : null);
+    }
+
+    private OtpErlangAtom(final String atom, final byte[] encoded) {
+        if (atom.codePointCount(0, atom.length()) > maxAtomLength) {
+            throw new java.lang.IllegalArgumentException("Atom may not exceed "
+                    + maxAtomLength + " characters: " + atom);
+        }
+        this.atom = atom;
+        this.encoded = encoded;
+    }
+
+    private static byte[] encode(final String atom) {
+        // tag, length and at most three bytes per char
+        final OtpOutputStream buf = new OtpOutputStream(3 + 3 * atom.length());
+        buf.write_atom(atom);
+        return buf.toByteArray();
+    }
+
+    /**
+     * Get the shared atom with the given value. Atoms used often, like message
+     * tags, are cheaper this way than with {@link #OtpErlangAtom(String)}:
+     * they are encoded only once and usually compare by identity.
+     * 
+     * @param atom
+     *            the string to create the atom from.
+     * 
+     * @exception java.lang.IllegalArgumentException
+     *                if the string is null or contains more than
+     *                {@link #maxAtomLength maxAtomLength} characters.
+     */
+    public static OtpErlangAtom intern(final String atom) {
+        if (atom == null) {
+            throw new java.lang.IllegalArgumentException("null string value");
+        }
+        return OtpAtomCache.intern(atom);
     }
 
     /**
@@ -69,6 +114,7 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
      */
     public OtpErlangAtom(final OtpInputStream buf) throws OtpErlangDecodeException {
         atom = buf.read_atom();
+        encoded = null;
     }
 
     /**
@@ -76,6 +122,7 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
      */
     public OtpErlangAtom(final boolean t) {
         atom = String.valueOf(t);
+        encoded = null;
     }
 
     /**
@@ -131,13 +178,15 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
      */
     @Override
     public boolean equals(final Object o) {
-
+        if (o == this) {
+            return true;
+        }
         if (!(o instanceof OtpErlangAtom)) {
             return false;
         }
 
         final OtpErlangAtom atom = (OtpErlangAtom) o;
-        return this.atom.compareTo(atom.atom) == 0;
+        return this.atom.equals(atom.atom);
     }
 
     @Override
@@ -153,7 +202,11 @@ public class OtpErlangAtom extends OtpErlangObject implements Serializable, Clon
      */
     @Override
     public void encode(final OtpOutputStream buf) {
-        buf.write_atom(atom);
+        if (encoded != null) {
+            buf.writeN(encoded);
+        } else {
+            buf.write_atom(atom);
+        }
     }
 
     /* the following four predicates are helpers for the toString() method */
@@ -18,6 +18,8 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -38,6 +40,9 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
 
     final private OtpErlangObject[] elems;
 
+    // the elements not decoded yet, if read with OtpInputStream.DECODE_LAZY
+    private transient volatile OtpLazyElements lazy = null;
+
     private OtpErlangObject lastTail = null;
 
     /**
@@ -138,8 +143,12 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
         final int arity = buf.read_list_head();
         if (arity > 0) {
             elems = new OtpErlangObject[arity];
-            for (int i = 0; i < arity; i++) {
-                elems[i] = buf.read_any();
+            if (buf.isLazy() && arity >= OtpLazyElements.minArity) {
+                lazy = new OtpLazyElements(buf, arity);
+            } else {
+                for (int i = 0; i < arity; i++) {
+                    elems[i] = buf.read_any();
+                }
             }
             /* discard the terminating nil (empty list) or read tail */
             if (buf.peek1() == OtpExternal.nilTag) {
@@ -174,9 +183,32 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
         if (i >= arity() || i < 0) {
             return null;
         }
+        if (lazy != null) {
+            return lazyElementAt(i);
+        }
+        return elems[i];
+    }
+
+    private synchronized OtpErlangObject lazyElementAt(final int i) {
+        if (lazy != null && lazy.decodeInto(elems, i)) {
+            lazy = null;
+        }
         return elems[i];
     }
 
+    // all elements, decoded
+    private OtpErlangObject[] elems() {
+        if (lazy != null) {
+            synchronized (this) {
+                if (lazy != null) {
+                    lazy.decodeAll(elems);
+                    lazy = null;
+                }
+            }
+        }
+        return elems;
+    }
+
     /**
      * Get all the elements from the list as an array.
      * 
@@ -187,7 +219,7 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
             return NO_ELEMENTS;
         } else {
             final OtpErlangObject[] res = new OtpErlangObject[arity()];
-            System.arraycopy(elems, 0, res, 0, res.length);
+            System.arraycopy(elems(), 0, res, 0, res.length);
             return res;
         }
     }
@@ -211,7 +243,7 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
             if (i > start) {
                 s.append(",");
             }
-            s.append(elems[i].toString());
+            s.append(elementAt(i).toString());
         }
         if (lastTail != null) {
             s.append("|").append(lastTail.toString());
@@ -243,7 +275,7 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
             buf.write_list_head(arity);
 
             for (int i = start; i < arity + start; i++) {
-                buf.write_any(elems[i]);
+                buf.write_any(elementAt(i));
             }
         }
         if (lastTail == null) {
@@ -348,7 +380,7 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
 
     public OtpErlangObject getHead() {
         if (arity() > 0) {
-            return elems[0];
+            return elementAt(0);
         }
         return null;
     }
@@ -491,11 +523,10 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
 
         @Override
         public OtpErlangObject next() {
-            try {
-                return elems[cursor++];
-            } catch (final IndexOutOfBoundsException e) {
+            if (cursor >= elems.length) {
                 throw new NoSuchElementException();
             }
+            return elementAt(cursor++);
         }
 
         @Override
@@ -503,4 +534,9 @@ public class OtpErlangList extends OtpErlangObject implements Iterable<OtpErlang
             throw new UnsupportedOperationException("OtpErlangList cannot be modified!");
         }
     }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        elems();
+        out.defaultWriteObject();
+    }
 }
@@ -18,6 +18,8 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
@@ -37,6 +39,9 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
 
     private OtpErlangObject[] elems = NO_ELEMENTS;
 
+    // the elements not decoded yet, if read with OtpInputStream.DECODE_LAZY
+    private transient volatile OtpLazyElements lazy = null;
+
     /**
      * Create a unary tuple containing the given element.
      * 
@@ -115,8 +120,12 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
         if (arity > 0) {
             elems = new OtpErlangObject[arity];
 
-            for (int i = 0; i < arity; i++) {
-                elems[i] = buf.read_any();
+            if (buf.isLazy() && arity >= OtpLazyElements.minArity) {
+                lazy = new OtpLazyElements(buf, arity);
+            } else {
+                for (int i = 0; i < arity; i++) {
+                    elems[i] = buf.read_any();
+                }
             }
         } else {
             elems = NO_ELEMENTS;
@@ -145,9 +154,32 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
         if (i >= arity() || i < 0) {
             return null;
         }
+        if (lazy != null) {
+            return lazyElementAt(i);
+        }
+        return elems[i];
+    }
+
+    private synchronized OtpErlangObject lazyElementAt(final int i) {
+        if (lazy != null && lazy.decodeInto(elems, i)) {
+            lazy = null;
+        }
         return elems[i];
     }
 
+    // all elements, decoded
+    private OtpErlangObject[] elems() {
+        if (lazy != null) {
+            synchronized (this) {
+                if (lazy != null) {
+                    lazy.decodeAll(elems);
+                    lazy = null;
+                }
+            }
+        }
+        return elems;
+    }
+
     /**
      * Get all the elements from the tuple as an array.
      * 
@@ -155,7 +187,7 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
      */
     public OtpErlangObject[] elements() {
         final OtpErlangObject[] res = new OtpErlangObject[arity()];
-        System.arraycopy(elems, 0, res, 0, res.length);
+        System.arraycopy(elems(), 0, res, 0, res.length);
         return res;
     }
 
@@ -168,6 +200,7 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
     public String toString() {
         int i;
         final StringBuffer s = new StringBuffer();
+        final OtpErlangObject[] elems = elems();
         final int arity = elems.length;
 
         s.append("{");
@@ -192,6 +225,7 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
      */
     @Override
     public void encode(final OtpOutputStream buf) {
+        final OtpErlangObject[] elems = elems();
         final int arity = elems.length;
 
         buf.write_tuple_head(arity);
@@ -225,7 +259,7 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
         }
 
         for (int i = 0; i < a; i++) {
-            if (!elems[i].equals(t.elems[i])) {
+            if (!elementAt(i).equals(t.elementAt(i))) {
                 return false; // early exit
             }
         }
@@ -239,15 +273,21 @@ public class OtpErlangTuple extends OtpErlangObject implements Serializable, Clo
         final int a = arity();
         hash.combine(a);
         for (int i = 0; i < a; i++) {
-            hash.combine(elems[i].hashCode());
+            hash.combine(elementAt(i).hashCode());
         }
         return hash.valueOf();
     }
 
     @Override
     public Object clone() {
+        final OtpErlangObject[] elems = elems();
         final OtpErlangTuple newTuple = (OtpErlangTuple) super.clone();
         newTuple.elems = elems.clone();
         return newTuple;
     }
+
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        elems();
+        out.defaultWriteObject();
+    }
 }
@@ -33,6 +33,13 @@ public class OtpInputStream extends ByteArrayInputStream {
 
     public static int DECODE_INT_LISTS_AS_STRINGS = 1;
 
+    /**
+     * Decode the elements of large tuples and lists when they are first asked
+     * for, by elementAt, elements() or iteration. A decoded element is kept in
+     * its tuple or list; the bytes are kept until all of them are decoded.
+     */
+    public static final int DECODE_LAZY = 2;
+
     private final int flags;
 
     /**
@@ -64,6 +71,21 @@ public class OtpInputStream extends ByteArrayInputStream {
 	this.flags = flags;
     }
 
+    // package scope
+    boolean isLazy() {
+	return (flags & DECODE_LAZY) != 0;
+    }
+
+    // package scope
+    int getFlags() {
+	return flags;
+    }
+
+    // package scope
+    byte[] getBuffer() {
+	return super.buf;
+    }
+
     /**
      * Get the current position in the stream.
      * 
@@ -350,9 +372,18 @@ public class OtpInputStream extends ByteArrayInputStream {
      *                if the next term in the stream is not an atom.
      */
     public String read_atom() throws OtpErlangDecodeException {
+	return read_atom_shared().atomValue();
+    }
+
+    /*
+     * Read an atom, shared with other streams if it has been seen recently.
+     * Those are found by their encoded text, so they are read without
+     * allocating anything.
+     */
+    OtpErlangAtom read_atom_shared() throws OtpErlangDecodeException {
 	int tag;
 	int len = -1;
-	byte[] strbuf;
+	boolean utf8;
 	String atom;
 
 	tag = read1skip_version();
@@ -361,48 +392,17 @@ public class OtpInputStream extends ByteArrayInputStream {
 
 	case OtpExternal.atomTag:
 	    len = read2BE();
-	    strbuf = new byte[len];
-	    this.readN(strbuf);
-	    try {
-		atom = new String(strbuf, "ISO-8859-1");
-	    } catch (final java.io.UnsupportedEncodingException e) {
-		throw new OtpErlangDecodeException(
-		    "Failed to decode ISO-8859-1 atom");
-	    }
-	    if (atom.length() > OtpExternal.maxAtomLength) {
-		/*
-		 * Throwing an exception would be better I think,
-		 * but truncation seems to be the way it has
-		 * been done in other parts of OTP...
-		 */
-		atom = atom.substring(0, OtpExternal.maxAtomLength);
-	    }
+	    utf8 = false;
 	    break;
 
 	case OtpExternal.smallAtomUtf8Tag:
 	    len = read1();
-	    /* fall through */
+	    utf8 = true;
+	    break;
+
 	case OtpExternal.atomUtf8Tag:
-	    if (len < 0) {
-		len = read2BE();
-	    }
-	    strbuf = new byte[len];
-	    this.readN(strbuf);
-	    try {
-		atom = new String(strbuf, "UTF-8");
-	    } catch (final java.io.UnsupportedEncodingException e) {
-		throw new OtpErlangDecodeException(
-		    "Failed to decode UTF-8 atom");
-	    }
-	    if (atom.codePointCount(0, atom.length()) > OtpExternal.maxAtomLength) {
-		/*
-		 * Throwing an exception would be better I think,
-		 * but truncation seems to be the way it has
-		 * been done in other parts of OTP...
-		 */
-		final int[] cps = OtpErlangString.stringToCodePoints(atom);
-		atom = new String(cps, 0, OtpExternal.maxAtomLength);
-	    }
+	    len = read2BE();
+	    utf8 = true;
 	    break;
 
 	default:
@@ -411,7 +411,37 @@ public class OtpInputStream extends ByteArrayInputStream {
 		+ ", or "  + OtpExternal.atomUtf8Tag + ", got " + tag);
 	}
 
-	return atom;
+	if (len > available()) {
+	    throw new OtpErlangDecodeException("Cannot read from input stream");
+	}
+	final OtpErlangAtom cached = OtpAtomCache.lookup(utf8, super.buf,
+		super.pos, len);
+	if (cached != null) {
+	    super.pos += len;
+	    return cached;
+	}
+
+	try {
+	    atom = new String(super.buf, super.pos, len, utf8 ? "UTF-8"
+		    : "ISO-8859-1");
+	} catch (final java.io.UnsupportedEncodingException e) {
+	    throw new OtpErlangDecodeException("Failed to decode "
+		    + (utf8 ? "UTF-8" : "ISO-8859-1") + " atom");
+	}
+	if (atom.codePointCount(0, atom.length()) > OtpExternal.maxAtomLength) {
+	    /*
+	     * Throwing an exception would be better I think,
+	     * but truncation seems to be the way it has
+	     * been done in other parts of OTP...
+	     */
+	    final int[] cps = OtpErlangString.stringToCodePoints(atom);
+	    atom = new String(cps, 0, OtpExternal.maxAtomLength);
+	}
+
+	final OtpErlangAtom result = OtpAtomCache.intern(atom);
+	OtpAtomCache.put(utf8, super.buf, super.pos, len, result);
+	super.pos += len;
+	return result;
     }
 
     /**
@@ -1192,7 +1222,7 @@ public class OtpInputStream extends ByteArrayInputStream {
 	case OtpExternal.atomTag:
 	case OtpExternal.smallAtomUtf8Tag:
 	case OtpExternal.atomUtf8Tag:
-	    return new OtpErlangAtom(this);
+	    return read_atom_shared();
 
 	case OtpExternal.floatTag:
 	case OtpExternal.newFloatTag:
@@ -1248,6 +1278,98 @@ public class OtpInputStream extends ByteArrayInputStream {
 	}
     }
 
+    /**
+     * Move over an Erlang term in the stream. The common types are skipped
+     * without being decoded.
+     * 
+     * @exception OtpErlangDecodeException
+     *                if the stream does not contain a known Erlang type at the
+     *                next position.
+     */
+    public void skip_any() throws OtpErlangDecodeException {
+	final int tag = peek1skip_version();
+
+	switch (tag) {
+	case OtpExternal.smallIntTag:
+	    skipN(2);
+	    break;
+
+	case OtpExternal.intTag:
+	    skipN(5);
+	    break;
+
+	case OtpExternal.smallBigTag:
+	    read1();
+	    skipN(1 + read1());
+	    break;
+
+	case OtpExternal.largeBigTag:
+	    read1();
+	    skipN(1 + read4BE());
+	    break;
+
+	case OtpExternal.atomTag:
+	case OtpExternal.atomUtf8Tag:
+	case OtpExternal.stringTag:
+	    read1();
+	    skipN(read2BE());
+	    break;
+
+	case OtpExternal.smallAtomUtf8Tag:
+	    read1();
+	    skipN(read1());
+	    break;
+
+	case OtpExternal.newFloatTag:
+	    skipN(9);
+	    break;
+
+	case OtpExternal.nilTag:
+	    read1();
+	    break;
+
+	case OtpExternal.binTag:
+	    read1();
+	    skipN(read4BE());
+	    break;
+
+	case OtpExternal.listTag: {
+	    read1();
+	    final int arity = read4BE();
+	    if (arity < 0) {
+		throw new OtpErlangDecodeException("Bad list length " + arity);
+	    }
+	    for (int i = 0; i < arity; i++) {
+		skip_any();
+	    }
+	    skip_any(); // tail
+	    break;
+	}
+
+	case OtpExternal.smallTupleTag:
+	case OtpExternal.largeTupleTag: {
+	    final int arity = read_tuple_head();
+	    if (arity < 0) {
+		throw new OtpErlangDecodeException("Bad tuple arity " + arity);
+	    }
+	    for (int i = 0; i < arity; i++) {
+		skip_any();
+	    }
+	    break;
+	}
+
+	default:
+	    read_any();
+	}
+    }
+
+    private void skipN(final int n) throws OtpErlangDecodeException {
+	if (n < 0 || n > available()) {
+	    throw new OtpErlangDecodeException("Cannot read from input stream");
+	}
+	super.pos += n;
+    }
+
     public int read_map_head() throws OtpErlangDecodeException {
         int arity = 0;
         final int tag = read1skip_version();
@@ -0,0 +1,67 @@
+package com.ericsson.otp.erlang;
+
+import java.util.Arrays;
+
+/**
+ * The encoded elements of a tuple or list read with
+ * {@link OtpInputStream#DECODE_LAZY}. Reading skips over them, checking that
+ * they are well formed, and copies their bytes; each one is decoded when it is
+ * asked for.
+ */
+final class OtpLazyElements {
+    // smaller tuples and lists are decoded at once
+    static final int minArity = 8;
+
+    // only the elements' bytes, not the whole message
+    private final byte[] buf;
+    private final int flags;
+    // start of each element in buf, and the end of the last one
+    private final int[] offsets;
+    private int undecoded;
+
+    /*
+     * Skip over count elements in the stream, remembering where they are.
+     */
+    OtpLazyElements(final OtpInputStream in, final int count)
+            throws OtpErlangDecodeException {
+        final int start = in.getPos();
+        flags = in.getFlags();
+        offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = in.getPos() - start;
+            in.skip_any();
+        }
+        offsets[count] = in.getPos() - start;
+        buf = Arrays.copyOfRange(in.getBuffer(), start, in.getPos());
+        undecoded = count;
+    }
+
+    private OtpErlangObject decode(final int i) {
+        try {
+            return new OtpInputStream(buf, offsets[i], offsets[i + 1] - offsets[i],
+                    flags).read_any();
+        } catch (final OtpErlangDecodeException e) {
+            // skip_any accepted it, so this is a bug
+            throw new IllegalStateException("Cannot decode element " + i, e);
+        }
+    }
+
+    /**
+     * Decode the element into elems, if it isn't there yet.
+     *
+     * @return true if all elements are decoded now
+     */
+    boolean decodeInto(final OtpErlangObject[] elems, final int i) {
+        if (elems[i] == null) {
+            elems[i] = decode(i);
+            undecoded--;
+        }
+        return undecoded == 0;
+    }
+
+    void decodeAll(final OtpErlangObject[] elems) {
+        for (int i = 0; i < elems.length; i++) {
+            decodeInto(elems, i);
+        }
+    }
+}
@@ -18,13 +18,15 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class represents local node types. It is used to group the node types
  * {@link OtpNode OtpNode} and {@link OtpSelf OtpSelf}.
  */
 public class OtpLocalNode extends AbstractNode {
-    private int serial = 0;
-    private int pidCount = 1;
+    // serial (13 bits) and pid count (15 bits) of the next pid
+    private final AtomicInteger pids = new AtomicInteger(1);
     private int portCount = 1;
     private int refId[];
 
@@ -53,8 +55,7 @@ public class OtpLocalNode extends AbstractNode {
     }
 
     private void init() {
-        serial = 0;
-        pidCount = 1;
+        pids.set(1);
         portCount = 1;
         refId = new int[3];
         refId[0] = 1;
@@ -97,20 +98,12 @@ public class OtpLocalNode extends AbstractNode {
      * 
      * @return an Erlang pid.
      */
-    public synchronized OtpErlangPid createPid() {
-        final OtpErlangPid p = new OtpErlangPid(node, pidCount, serial, creation);
-
-        pidCount++;
-        if (pidCount > 0x7fff) {
-            pidCount = 0;
-
-            serial++;
-            if (serial > 0x1fff) { /* 13 bits */
-                serial = 0;
-            }
-        }
+    public OtpErlangPid createPid() {
+        final int n = pids.getAndIncrement();
+        final int pidCount = n & 0x7fff;
+        final int serial = n >>> 15 & 0x1fff; /* 13 bits */
 
-        return p;
+        return new OtpErlangPid(node, pidCount, serial, creation);
     }
 
     /**
@@ -18,6 +18,9 @@
  */
 package com.ericsson.otp.erlang;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * <p>
  * Provides a simple mechanism for exchanging messages with Erlang processes or
@@ -178,7 +181,10 @@ public class OtpMbox {
      *            returning null.
      * 
      * @return an {@link OtpErlangObject OtpErlangObject} representing the body
-     *         of the next message waiting in this mailbox.
+     *         of the next message waiting in this mailbox, or null. If the
+     *         thread is interrupted, null is returned at once and the interrupt
+     *         status is set; loops that receive again after a null must check
+     *         it.
      * 
      * @exception OtpErlangDecodeException
      *                if the message can not be decoded.
@@ -190,19 +196,70 @@ public class OtpMbox {
     public OtpErlangObject receive(final long timeout) throws OtpErlangExit,
             OtpErlangDecodeException {
         try {
-            final OtpMsg m = receiveMsg(timeout);
+            final OtpMsg m = checkExit((OtpMsg) queue.poll(timeout));
             if (m != null) {
                 return m.getMsg();
             }
-        } catch (final OtpErlangExit e) {
-            throw e;
-        } catch (final OtpErlangDecodeException f) {
-            throw f;
-        } catch (final InterruptedException g) {
+        } catch (final InterruptedException e) {
+            // not a timeout, which returns null; let the caller see it
+            Thread.currentThread().interrupt();
         }
         return null;
     }
 
+    /**
+     * Wait for a message to arrive for this mailbox, then take it along with
+     * the messages that are already waiting, up to a maximum.
+     * 
+     * <p>
+     * An exit signal, or a message that can not be decoded, ends the batch. If
+     * it is the first message, the exception is raised like by
+     * {@link #receive(long)}; otherwise it is left in the mailbox for the next
+     * receive.
+     * </p>
+     * 
+     * @param max
+     *            the maximum number of messages to take.
+     * 
+     * @param timeout
+     *            the time, in milliseconds, to wait for the first message. Use
+     *            0 to only take what is waiting.
+     * 
+     * @return the bodies of the messages, in order; empty if none arrived in
+     *         time.
+     * 
+     * @exception OtpErlangDecodeException
+     *                if the first message can not be decoded.
+     * 
+     * @exception OtpErlangExit
+     *                if a linked {@link OtpErlangPid pid} has exited or has
+     *                sent an exit signal to this mailbox.
+     */
+    public List<OtpErlangObject> receiveAll(final int max, final long timeout)
+            throws OtpErlangExit, OtpErlangDecodeException {
+        final List<OtpErlangObject> result = new ArrayList<OtpErlangObject>();
+        final OtpErlangObject first = receive(timeout);
+        if (first == null) {
+            return result;
+        }
+        result.add(first);
+        synchronized (queue) {
+            OtpMsg m;
+            while (result.size() < max && (m = (OtpMsg) queue.peek()) != null) {
+                if (m.type() == OtpMsg.exitTag || m.type() == OtpMsg.exit2Tag) {
+                    break;
+                }
+                try {
+                    result.add(m.getMsg());
+                } catch (final OtpErlangDecodeException e) {
+                    break;
+                }
+                queue.tryGet();
+            }
+        }
+        return result;
+    }
+
     /**
      * Block until a message arrives for this mailbox.
      * 
@@ -258,22 +315,7 @@ public class OtpMbox {
      * 
      */
     public OtpMsg receiveMsg() throws OtpErlangExit {
-
-        final OtpMsg m = (OtpMsg) queue.get();
-
-        switch (m.type()) {
-        case OtpMsg.exitTag:
-        case OtpMsg.exit2Tag:
-            try {
-                final OtpErlangObject o = m.getMsg();
-                throw new OtpErlangExit(o, m.getSenderPid());
-            } catch (final OtpErlangDecodeException e) {
-                throw new OtpErlangExit("unknown", m.getSenderPid());
-            }
-
-        default:
-            return m;
-        }
+        return checkExit((OtpMsg) queue.get());
     }
 
     /**
@@ -295,8 +337,11 @@ public class OtpMbox {
      */
     public OtpMsg receiveMsg(final long timeout) throws InterruptedException,
             OtpErlangExit {
-        final OtpMsg m = (OtpMsg) queue.get(timeout);
+        return checkExit((OtpMsg) queue.get(timeout));
+    }
 
+    // raise an exit signal, pass anything else (or null) on
+    private static OtpMsg checkExit(final OtpMsg m) throws OtpErlangExit {
         if (m == null) {
             return null;
         }
@@ -374,22 +419,38 @@ public class OtpMbox {
      * 
      */
     public void send(final String name, final String node, final OtpErlangObject msg) {
+        sendMeasured(name, node, msg);
+    }
+
+    /**
+     * Send a message to a named mailbox created from another node, like
+     * {@link #send(String, String, OtpErlangObject)}, and tell how large the
+     * message was on the wire.
+     * 
+     * @return the size in bytes of the encoded message, 0 if it was delivered
+     *         locally without encoding, or -1 if it couldn't be sent.
+     */
+    public int sendMeasured(final String name, final String node,
+            final OtpErlangObject msg) {
         try {
             final String currentNode = home.node();
             if (node.equals(currentNode)) {
                 send(name, msg);
+                return 0;
             } else if (node.indexOf('@', 0) < 0
                     && node.equals(currentNode.substring(0, currentNode.indexOf('@', 0)))) {
                 send(name, msg);
+                return 0;
             } else {
                 // other node
                 final OtpCookedConnection conn = home.getConnection(node);
                 if (conn == null) {
-                    return;
+                    return -1;
                 }
-                conn.send(self, name, msg);
+                return conn.send(self, name, msg);
             }
         } catch (final Exception e) {
+            return -1;
         }
     }
 
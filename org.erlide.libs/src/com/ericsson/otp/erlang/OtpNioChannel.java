@@ -0,0 +1,252 @@
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+
+/**
+ * The NIO transport of a connection, used after the handshake when the node
+ * has a {@link OtpSelector}.
+ *
+ * <p>
+ * Incoming packets are read by the selector thread into a pooled direct
+ * buffer and passed to {@link AbstractConnection#receiveFrame(byte[])}.
+ * </p>
+ *
+ * <p>
+ * Header and payload of an outgoing message are written with a single
+ * gathering write by the sending thread. Whatever the socket doesn't take is
+ * copied to pooled buffers and written by the selector thread; messages sent
+ * meanwhile are appended to the same buffers, so they go out together. When
+ * too much is pending, senders wait.
+ * </p>
+ */
+final class OtpNioChannel {
+    private static final int maxPending = 4 * 1024 * 1024;
+    private static final byte[] tock = { 0, 0, 0, 0 };
+
+    private final AbstractConnection conn;
+    private final SocketChannel channel;
+    private final OtpSelector selector;
+
+    // used only by the selector thread
+    private SelectionKey key;
+    private ByteBuffer readBuf;
+    private byte[] frame;
+    private int framePos;
+    private boolean receiveDone = false;
+
+    // guarded by this
+    private final LinkedList<ByteBuffer> pending = new LinkedList<ByteBuffer>();
+    private long pendingBytes = 0;
+    private volatile boolean closed = false;
+
+    OtpNioChannel(final AbstractConnection conn, final SocketChannel channel,
+            final OtpSelector selector) throws IOException {
+        this.conn = conn;
+        this.channel = channel;
+        this.selector = selector;
+        channel.configureBlocking(false);
+    }
+
+    /**
+     * Register with the selector, after which packets will be received.
+     */
+    void start() {
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readBuf = OtpBufferPool.acquire();
+                    key = channel.register(selector.selector(), SelectionKey.OP_READ,
+                            OtpNioChannel.this);
+                } catch (final ClosedChannelException e) {
+                    failed(e);
+                }
+            }
+        });
+    }
+
+    /*
+     * Called by the selector thread when there is something to read.
+     */
+    void read() {
+        if (closed || receiveDone) {
+            return;
+        }
+        try {
+            if (channel.read(readBuf) < 0) {
+                throw new IOException("Remote has closed connection");
+            }
+            readBuf.flip();
+            while (!closed) {
+                if (frame == null) {
+                    if (readBuf.remaining() < 4) {
+                        break;
+                    }
+                    final int len = readBuf.getInt();
+                    if (len == 0) {
+                        // received tick? send tock!
+                        write(new ByteBuffer[] { ByteBuffer.wrap(tock) });
+                        continue;
+                    }
+                    if (len < 0) {
+                        throw new OtpErlangDecodeException("Bad packet length " + len);
+                    }
+                    frame = new byte[len];
+                    framePos = 0;
+                }
+                final int n = Math.min(readBuf.remaining(), frame.length - framePos);
+                readBuf.get(frame, framePos, n);
+                framePos += n;
+                if (framePos < frame.length) {
+                    break;
+                }
+                final byte[] packet = frame;
+                frame = null;
+                if (!conn.receiveFrame(packet)) {
+                    throw new OtpErlangDecodeException("Remote is sending garbage");
+                }
+            }
+            readBuf.compact();
+        } catch (final Exception e) {
+            failed(e);
+        }
+    }
+
+    /*
+     * Called by the selector thread when the pending data can be written.
+     */
+    void flush() {
+        IOException error = null;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                pendingBytes -= channel.write(pending.toArray(new ByteBuffer[pending
+                        .size()]));
+            } catch (final IOException e) {
+                error = e;
+            }
+            while (!pending.isEmpty() && !pending.getFirst().hasRemaining()) {
+                OtpBufferPool.release(pending.removeFirst());
+            }
+            if (pending.isEmpty() && key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            notifyAll();
+        }
+        if (error != null) {
+            failed(error);
+        }
+    }
+
+    /**
+     * Write the buffers, in order, or queue what can't be written now.
+     */
+    void write(final ByteBuffer[] srcs) throws IOException {
+        synchronized (this) {
+            if (!selector.isSelectorThread()) {
+                while (pendingBytes > maxPending && !closed) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            if (closed) {
+                throw new IOException("Not connected");
+            }
+            final boolean wasIdle = pending.isEmpty();
+            if (wasIdle) {
+                channel.write(srcs);
+            }
+            for (final ByteBuffer src : srcs) {
+                append(src);
+            }
+            if (wasIdle && !pending.isEmpty()) {
+                selector.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (key != null && key.isValid()) {
+                            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    // copy the rest of src after the pending data
+    private void append(final ByteBuffer src) {
+        while (src.hasRemaining()) {
+            ByteBuffer last = pending.peekLast();
+            if (last == null || last.limit() == last.capacity()) {
+                last = OtpBufferPool.acquire();
+                last.limit(0);
+                pending.addLast(last);
+            }
+            final int pos = last.position();
+            last.position(last.limit());
+            last.limit(last.capacity());
+            final int n = Math.min(src.remaining(), last.remaining());
+            final int srcLimit = src.limit();
+            src.limit(src.position() + n);
+            last.put(src);
+            src.limit(srcLimit);
+            last.limit(last.position());
+            last.position(pos);
+            pendingBytes += n;
+        }
+    }
+
+    /*
+     * Report the end of receiving to the connection, once.
+     */
+    void failed(final Exception e) {
+        if (receiveDone) {
+            return;
+        }
+        receiveDone = true;
+        conn.receiveFailed(e);
+    }
+
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (final ByteBuffer buf : pending) {
+                OtpBufferPool.release(buf);
+            }
+            pending.clear();
+            pendingBytes = 0;
+            notifyAll();
+        }
+        try {
+            channel.close();
+        } catch (final IOException e) {
+        }
+        selector.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (key != null) {
+                    key.cancel();
+                }
+                if (readBuf != null) {
+                    OtpBufferPool.release(readBuf);
+                    readBuf = null;
+                }
+                failed(new IOException("Connection closed"));
+            }
+        });
+    }
+}
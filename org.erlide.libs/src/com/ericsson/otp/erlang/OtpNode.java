@@ -19,13 +19,16 @@
 package com.ericsson.otp.erlang;
 
 import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -65,7 +68,7 @@ public class OtpNode extends OtpLocalNode {
     private Acceptor acceptor = null;
 
     // keep track of all connections
-    Hashtable<String, OtpCookedConnection> connections = null;
+    ConcurrentHashMap<String, OtpCookedConnection> connections = null;
 
     // keep track of all mailboxes
     Mailboxes mboxes = null;
@@ -76,6 +79,14 @@ public class OtpNode extends OtpLocalNode {
     // flags
     private int flags = 0;
 
+    // use the NIO transport for connections?
+    private static final boolean defaultNio = Boolean.valueOf(System.getProperties()
+            .getProperty("OtpNode.nio"));
+    private final boolean nio;
+
+    // reads from all connections, if using NIO
+    private OtpSelector selector = null;
+
     /**
      * <p>
      * Create a node using the default cookie. The default cookie is found by
@@ -138,15 +149,49 @@ public class OtpNode extends OtpLocalNode {
      */
     public OtpNode(final String node, final String cookie, final int port)
             throws IOException {
+        this(node, cookie, port, defaultNio);
+    }
+
+    /**
+     * Create a node.
+     * 
+     * @param node
+     *            the name of this node.
+     * 
+     * @param cookie
+     *            the authorization cookie that will be used by this node when
+     *            it communicates with other nodes.
+     * 
+     * @param port
+     *            the port number you wish to use for incoming connections.
+     *            Specifying 0 lets the system choose an available port.
+     * 
+     * @param nio
+     *            if true, all connections are served by a single selector
+     *            thread and write header and payload together; otherwise each
+     *            connection has a thread of its own. The default for the other
+     *            constructors is given by the System property OtpNode.nio.
+     * 
+     * @exception IOException
+     *                if communication could not be initialized.
+     * 
+     */
+    public OtpNode(final String node, final String cookie, final int port,
+            final boolean nio) throws IOException {
         super(node, cookie);
+        this.nio = nio;
 
         init(port);
     }
 
     private synchronized void init(final int port) throws IOException {
         if (!initDone) {
-            connections = new Hashtable<String, OtpCookedConnection>(17, (float) 0.95);
+            connections = new ConcurrentHashMap<String, OtpCookedConnection>(17,
+                    (float) 0.95, 16);
             mboxes = new Mailboxes();
+            if (nio) {
+                selector = new OtpSelector("selector " + node);
+            }
             acceptor = new Acceptor(port);
             initDone = true;
         }
@@ -169,6 +214,10 @@ public class OtpNode extends OtpLocalNode {
             it.remove();
             conn.close();
         }
+        if (selector != null) {
+            selector.quit();
+            selector = null;
+        }
         initDone = false;
     }
 
@@ -475,6 +524,13 @@ public class OtpNode extends OtpLocalNode {
         remoteStatus(conn.name, false, e);
     }
 
+    /*
+     * the selector for the NIO transport, null if not using it
+     */
+    OtpSelector selector() {
+        return selector;
+    }
+
     /*
      * find or create a connection to the given node
      */
@@ -482,8 +538,14 @@ public class OtpNode extends OtpLocalNode {
         OtpPeer peer = null;
         OtpCookedConnection conn = null;
 
+        // first just try looking up the name as-is
+        conn = connections.get(node);
+        if (conn != null) {
+            return conn;
+        }
+
+        // connections are only added while holding the lock
         synchronized (connections) {
-            // first just try looking up the name as-is
             conn = connections.get(node);
 
             if (conn == null) {
@@ -558,34 +620,40 @@ public class OtpNode extends OtpLocalNode {
      */
     public class Mailboxes {
         // mbox pids here
-        private final Hashtable<OtpErlangPid, WeakReference<OtpMbox>> byPid;
+        private final ConcurrentHashMap<OtpErlangPid, MboxRef<OtpErlangPid>> byPid;
         // mbox names here
-        private final Hashtable<String, WeakReference<OtpMbox>> byName;
+        private final ConcurrentHashMap<String, MboxRef<String>> byName;
+        // where the collected mboxes' references end up
+        private final ReferenceQueue<OtpMbox> collected;
 
         public Mailboxes() {
-            byPid = new Hashtable<OtpErlangPid, WeakReference<OtpMbox>>(17, (float) 0.95);
-            byName = new Hashtable<String, WeakReference<OtpMbox>>(17, (float) 0.95);
+            byPid = new ConcurrentHashMap<OtpErlangPid, MboxRef<OtpErlangPid>>(17,
+                    (float) 0.95, 16);
+            byName = new ConcurrentHashMap<String, MboxRef<String>>(17, (float) 0.95,
+                    16);
+            collected = new ReferenceQueue<OtpMbox>();
         }
 
         public OtpMbox create(final String name) {
-            OtpMbox m = null;
-
-            synchronized (byName) {
-                if (get(name) != null) {
-                    return null;
-                }
-                final OtpErlangPid pid = createPid();
-                m = new OtpMbox(OtpNode.this, pid, name);
-                byPid.put(pid, new WeakReference<OtpMbox>(m));
-                byName.put(name, new WeakReference<OtpMbox>(m));
+            expunge();
+            if (get(name) != null) {
+                // taken: don't use up a pid. Losing a race for a free name
+                // still does, which is harmless.
+                return null;
             }
+            final OtpMbox m = new OtpMbox(OtpNode.this, createPid(), name);
+            if (!putName(name, m)) {
+                return null;
+            }
+            byPid.put(m.self, new MboxRef<OtpErlangPid>(byPid, m.self, m, collected));
             return m;
         }
 
         public OtpMbox create() {
+            expunge();
             final OtpErlangPid pid = createPid();
             final OtpMbox m = new OtpMbox(OtpNode.this, pid);
-            byPid.put(pid, new WeakReference<OtpMbox>(m));
+            byPid.put(pid, new MboxRef<OtpErlangPid>(byPid, pid, m, collected));
             return m;
         }
 
@@ -595,19 +663,7 @@ public class OtpNode extends OtpLocalNode {
         }
 
         public String[] names() {
-            String allnames[] = null;
-
-            synchronized (byName) {
-                final int n = byName.size();
-                final Enumeration<String> keys = byName.keys();
-                allnames = new String[n];
-
-                int i = 0;
-                while (keys.hasMoreElements()) {
-                    allnames[i++] = keys.nextElement();
-                }
-            }
-            return allnames;
+            return byName.keySet().toArray(new String[0]);
         }
 
         public boolean register(final String name, final OtpMbox mbox) {
@@ -617,24 +673,39 @@ public class OtpNode extends OtpLocalNode {
                     mbox.name = null;
                 }
             } else {
-                synchronized (byName) {
-                    if (get(name) != null) {
-                        return false;
-                    }
-                    byName.put(name, new WeakReference<OtpMbox>(mbox));
-                    mbox.name = name;
+                if (!putName(name, mbox)) {
+                    return false;
                 }
+                mbox.name = name;
             }
             return true;
         }
 
+        // register the name unless a live mbox has it
+        private boolean putName(final String name, final OtpMbox mbox) {
+            final MboxRef<String> ref = new MboxRef<String>(byName, name, mbox,
+                    collected);
+            while (true) {
+                final MboxRef<String> old = byName.putIfAbsent(name, ref);
+                if (old == null) {
+                    return true;
+                }
+                if (old.get() != null) {
+                    return false;
+                }
+                if (byName.replace(name, old, ref)) {
+                    return true;
+                }
+            }
+        }
+
         /*
          * look up a mailbox based on its name. If the mailbox has gone out of
-         * scope we also remove the reference from the hashtable so we don't
-         * find it again.
+         * scope we also remove the reference from the map so we don't find it
+         * again.
          */
         public OtpMbox get(final String name) {
-            final WeakReference<OtpMbox> wr = byName.get(name);
+            final MboxRef<String> wr = byName.get(name);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -642,18 +713,18 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byName.remove(name);
+                byName.remove(name, wr);
             }
             return null;
         }
 
         /*
          * look up a mailbox based on its pid. If the mailbox has gone out of
-         * scope we also remove the reference from the hashtable so we don't
-         * find it again.
+         * scope we also remove the reference from the map so we don't find it
+         * again.
          */
         public OtpMbox get(final OtpErlangPid pid) {
-            final WeakReference<OtpMbox> wr = byPid.get(pid);
+            final MboxRef<OtpErlangPid> wr = byPid.get(pid);
 
             if (wr != null) {
                 final OtpMbox m = wr.get();
@@ -661,19 +732,50 @@ public class OtpNode extends OtpLocalNode {
                 if (m != null) {
                     return m;
                 }
-                byPid.remove(pid);
+                byPid.remove(pid, wr);
             }
             return null;
         }
 
         public void remove(final OtpMbox mbox) {
             byPid.remove(mbox.self);
-            if (mbox.name != null) {
-                byName.remove(mbox.name);
+            final String name = mbox.name;
+            if (name != null) {
+                final MboxRef<String> wr = byName.get(name);
+                if (wr != null && wr.get() == mbox) {
+                    byName.remove(name, wr);
+                }
+            }
+        }
+
+        // drop the entries of the mboxes that were collected without closing
+        private void expunge() {
+            Reference<? extends OtpMbox> ref;
+            while ((ref = collected.poll()) != null) {
+                ((MboxRef<?>) ref).remove();
             }
         }
     }
 
+    /*
+     * A weak reference to a mailbox, that knows where it is registered.
+     */
+    private static final class MboxRef<K> extends WeakReference<OtpMbox> {
+        private final ConcurrentHashMap<K, MboxRef<K>> map;
+        private final K key;
+
+        MboxRef(final ConcurrentHashMap<K, MboxRef<K>> map, final K key,
+                final OtpMbox mbox, final ReferenceQueue<OtpMbox> queue) {
+            super(mbox, queue);
+            this.map = map;
+            this.key = key;
+        }
+
+        void remove() {
+            map.remove(key, this);
+        }
+    }
+
     /*
      * this thread simply listens for incoming connections
      */
@@ -683,7 +785,14 @@ public class OtpNode extends OtpLocalNode {
         private volatile boolean done = false;
 
         Acceptor(final int port) throws IOException {
-            sock = new ServerSocket(port);
+            if (nio) {
+                // accepted sockets have channels then
+                final ServerSocketChannel channel = ServerSocketChannel.open();
+                channel.socket().bind(new InetSocketAddress(port));
+                sock = channel.socket();
+            } else {
+                sock = new ServerSocket(port);
+            }
             this.port = sock.getLocalPort();
             OtpNode.this.port = this.port;
 
@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.DecimalFormat;
 import java.util.Arrays;
 import java.util.zip.Deflater;
@@ -51,6 +52,16 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 
     private int fixedSize = Integer.MAX_VALUE;
 
+    // streams each thread keeps for encoding messages, see acquire()
+    private static final int maxPooledSize = 64 * 1024;
+    private static final ThreadLocal<OtpOutputStream[]> pooled = new ThreadLocal<OtpOutputStream[]>() {
+	@Override
+	protected OtpOutputStream[] initialValue() {
+	    // a header and a payload
+	    return new OtpOutputStream[2];
+	}
+    };
+
     /**
      * Create a stream with the default initial size (2048 bytes).
      */
@@ -73,6 +84,106 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 	write_any(o);
     }
 
+    /**
+     * Create a stream containing the encoded version of the given Erlang term.
+     * With exactSize, the term is measured first (see
+     * {@link #encodedSize(OtpErlangObject)}) and the buffer is allocated once,
+     * at its final size. This takes a second pass over the term, but is
+     * worthwhile for big ones, which would otherwise be copied several times
+     * while the buffer grows.
+     */
+    public OtpOutputStream(final OtpErlangObject o, final boolean exactSize) {
+	this(exactSize ? encodedSize(o) : defaultInitialSize);
+	write_any(o);
+    }
+
+    /**
+     * Compute the size of the encoded version of the given Erlang term, without
+     * storing the encoding.
+     * 
+     * @return the number of bytes {@link #write_any(OtpErlangObject)} writes
+     *         for the term.
+     */
+    public static int encodedSize(final OtpErlangObject o) {
+	final OtpOutputStream counter = new Counter();
+	counter.write_any(o);
+	return counter.size();
+    }
+
+    /*
+     * A stream that only counts what is written to it.
+     */
+    private static final class Counter extends OtpOutputStream {
+	Counter() {
+	    super(0);
+	}
+
+	private void add(final int len) {
+	    if (super.count + len > ((OtpOutputStream) this).fixedSize) {
+		throw new IllegalArgumentException(
+			"Trying to increase fixed-size buffer");
+	    }
+	    super.count += len;
+	}
+
+	@Override
+	public void write(final byte b) {
+	    add(1);
+	}
+
+	@Override
+	public synchronized void write(final int b) {
+	    add(1);
+	}
+
+	@Override
+	public synchronized void write(final byte[] b, final int off, final int len) {
+	    add(len);
+	}
+
+	@Override
+	public void poke4BE(final int offset, final long n) {
+	}
+    }
+
+    // package scope
+    /*
+     * Get an empty stream for encoding a message that is written right away,
+     * and give it back with release() once it is. Each thread keeps a couple
+     * of them, so that sending doesn't allocate and grow new buffers every
+     * time.
+     */
+    static OtpOutputStream acquire() {
+	final OtpOutputStream[] free = pooled.get();
+	for (int i = 0; i < free.length; i++) {
+	    final OtpOutputStream s = free[i];
+	    if (s != null) {
+		free[i] = null;
+		return s;
+	    }
+	}
+	return new OtpOutputStream();
+    }
+
+    // package scope
+    /*
+     * Give back a stream from acquire(); it must not be used afterwards.
+     */
+    void release() {
+	if (super.buf.length > maxPooledSize) {
+	    // don't keep the buffers of big messages
+	    return;
+	}
+	super.count = 0;
+	final OtpOutputStream[] free = pooled.get();
+	for (int i = 0; i < free.length; i++) {
+	    if (free[i] == null) {
+		free[i] = this;
+		return;
+	    }
+	}
+    }
+
     // package scope
     /*
      * Get the contents of the output stream as an input stream instead. This is
@@ -89,6 +200,14 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 	return new OtpInputStream(super.buf, offset, super.count - offset, 0);
     }
 
+    // package scope
+    /*
+     * Wrap the contents, without copying, for writing to a channel.
+     */
+    ByteBuffer asByteBuffer() {
+	return ByteBuffer.wrap(super.buf, 0, super.count);
+    }
+
     /**
      * Get the current position in the stream.
      * 
@@ -130,10 +249,11 @@ public class OtpOutputStream extends ByteArrayOutputStream {
 	}
 	int oldCapacity = super.buf.length;
 	if (minCapacity > oldCapacity) {
-	    int newCapacity = (oldCapacity * 3)/2 + 1;
+	    // doubling keeps the copying linear in the final size
+	    int newCapacity = oldCapacity * 2;
 	    if (newCapacity < oldCapacity + defaultIncrement)
 		newCapacity = oldCapacity + defaultIncrement;
-	    if (newCapacity < minCapacity)
+	    if (newCapacity < minCapacity) // also on overflow
 		newCapacity = minCapacity;
 	    newCapacity = Math.min(fixedSize, newCapacity);
 	    // minCapacity is usually close to size, so this is a win:
@@ -0,0 +1,87 @@
+package com.ericsson.otp.erlang;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The thread that reads from, and finishes the pending writes to, all the NIO
+ * connections of a node. Changes to the selector's keys are made on this
+ * thread, by tasks given to {@link #execute(Runnable)}.
+ */
+final class OtpSelector extends Thread {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private volatile boolean done = false;
+
+    OtpSelector(final String name) throws IOException {
+        selector = Selector.open();
+        setDaemon(true);
+        setName(name);
+        start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Run the task on the selector thread.
+     */
+    void execute(final Runnable task) {
+        tasks.offer(task);
+        selector.wakeup();
+    }
+
+    boolean isSelectorThread() {
+        return Thread.currentThread() == this;
+    }
+
+    public void quit() {
+        done = true;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!done) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    final OtpNioChannel channel = (OtpNioChannel) key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            channel.flush();
+                        }
+                        if (key.isReadable()) {
+                            channel.read();
+                        }
+                    } catch (final CancelledKeyException e) {
+                        // closed while we were busy with it
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            // the selector is broken, the connections are closed below
+        } finally {
+            for (final SelectionKey key : selector.keys()) {
+                ((OtpNioChannel) key.attachment()).failed(new IOException(
+                        "Selector closed"));
+            }
+            try {
+                selector.close();
+            } catch (final IOException e) {
+            }
+        }
+    }
+}
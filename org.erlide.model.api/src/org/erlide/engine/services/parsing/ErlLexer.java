@@ -0,0 +1,361 @@
+package org.erlide.engine.services.parsing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pure Java tokenizer for Erlang source, producing the same token kinds as
+ * erlide_scanner:light_scan_string. It is meant for syntax highlighting, so it
+ * never fails: anything it doesn't recognize becomes a single character token.
+ * <p>
+ * Scanning can be resumed at any position given the {@link State} that was in
+ * effect there, which allows callers to keep the state at line starts and
+ * re-tokenize only the lines that changed.
+ */
+public final class ErlLexer {
+
+    /**
+     * Lexer state between two characters. Only strings and quoted atoms can
+     * span lines, everything else is finished at the end of the line.
+     */
+    public enum State {
+        NORMAL, IN_STRING, IN_QATOM
+    }
+
+    private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(
+            "after", "and", "andalso", "band", "begin", "bnot", "bor", "bsl", "bsr",
+            "bxor", "case", "catch", "cond", "div", "end", "fun", "if", "let", "not",
+            "of", "or", "orelse", "query", "receive", "rem", "try", "when", "xor"));
+
+    private static final String[] OPERATORS = { "=:=", "=/=", "...", "<<", ">>", "<-",
+            "<=", "=>", ":=", "==", "/=", "=<", ">=", "++", "--", "::", "||", ".." };
+
+    private final CharSequence text;
+    private final int end;
+    private final int delta;
+    private final List<ErlToken> tokens;
+    private int pos;
+    private int line;
+
+    private ErlLexer(final CharSequence text, final int start, final int end,
+            final int line, final int delta, final List<ErlToken> tokens) {
+        this.text = text;
+        pos = start;
+        this.end = end;
+        this.line = line;
+        this.delta = delta;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Tokenize a whole string, with the same result as
+     * {@link SimpleScannerService#lightScanString(String, int)}.
+     */
+    public static List<ErlToken> scan(final String text, final int offset) {
+        final List<ErlToken> result = new ArrayList<ErlToken>(text.length() / 4);
+        scan(text, 0, text.length(), State.NORMAL, 0, offset, result);
+        return result;
+    }
+
+    /**
+     * Tokenize text[start, end) starting in the given state. Token offsets are
+     * the position in text plus delta.
+     *
+     * @return the state at end
+     */
+    public static State scan(final CharSequence text, final int start, final int end,
+            final State state, final int line, final int delta,
+            final List<ErlToken> tokens) {
+        return new ErlLexer(text, start, end, line, delta, tokens).run(state);
+    }
+
+    private State run(final State state) {
+        if (state == State.IN_STRING) {
+            if (!quoted(pos, '"', ErlToken.KIND_STRING)) {
+                return State.IN_STRING;
+            }
+        } else if (state == State.IN_QATOM) {
+            if (!quoted(pos, '\'', ErlToken.KIND_ATOM)) {
+                return State.IN_QATOM;
+            }
+        }
+        while (pos < end) {
+            final int start = pos;
+            final char c = text.charAt(pos);
+            if (isWhitespace(c)) {
+                whitespace(start);
+            } else if (c == '%') {
+                while (pos < end && text.charAt(pos) != '\n') {
+                    pos++;
+                }
+                add(ErlToken.KIND_COMMENT, start);
+            } else if (c == '"') {
+                pos++;
+                if (!quoted(start, '"', ErlToken.KIND_STRING)) {
+                    return State.IN_STRING;
+                }
+            } else if (c == '\'') {
+                pos++;
+                if (!quoted(start, '\'', ErlToken.KIND_ATOM)) {
+                    return State.IN_QATOM;
+                }
+            } else if (c == '$') {
+                character(start);
+            } else if (isDigit(c)) {
+                number(start);
+            } else if (isAtomStart(c)) {
+                pos++;
+                skipNameChars();
+                final String word = text.subSequence(start, pos).toString();
+                add(RESERVED.contains(word) ? ErlToken.KIND_KEYWORD
+                        : ErlToken.KIND_ATOM, start);
+            } else if (isVarStart(c)) {
+                pos++;
+                skipNameChars();
+                add(ErlToken.KIND_VAR, start);
+            } else if (c == '?') {
+                macro(start);
+            } else if (c == '-' && peek(1) == '>') {
+                pos += 2;
+                add(ErlToken.KIND_ARROW, start);
+            } else {
+                punctuation(start, c);
+            }
+        }
+        return State.NORMAL;
+    }
+
+    private void whitespace(final int start) {
+        while (pos < end && isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        add(ErlToken.KIND_WHITESPACE, start);
+        // lines are counted at the end, so that the token gets its first line
+        for (int i = start; i < pos; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+    }
+
+    /**
+     * Scan to the closing quote; pos is after the opening quote (or at the
+     * start of a continued line).
+     *
+     * @return false if the end was reached before the closing quote
+     */
+    private boolean quoted(final int start, final char quote, final int kind) {
+        final int startLine = line;
+        boolean closed = false;
+        while (pos < end) {
+            final char c = text.charAt(pos++);
+            if (c == '\\' && pos < end) {
+                if (text.charAt(pos++) == '\n') {
+                    line++;
+                }
+            } else if (c == quote) {
+                closed = true;
+                break;
+            } else if (c == '\n') {
+                line++;
+            }
+        }
+        if (pos > start) {
+            tokens.add(new ErlToken(kind, startLine, start + delta, pos - start));
+        }
+        return closed;
+    }
+
+    private void character(final int start) {
+        pos++;
+        if (pos < end) {
+            if (text.charAt(pos) == '\\') {
+                pos++;
+                escape();
+            } else {
+                pos++;
+            }
+        }
+        add(ErlToken.KIND_CHAR, start);
+    }
+
+    private void escape() {
+        if (pos >= end) {
+            return;
+        }
+        final char c = text.charAt(pos);
+        if (isOctal(c)) {
+            final int max = Math.min(pos + 3, end);
+            while (pos < max && isOctal(text.charAt(pos))) {
+                pos++;
+            }
+        } else if (c == 'x') {
+            pos++;
+            if (peek(0) == '{') {
+                int i = pos + 1;
+                while (i < end && isHex(text.charAt(i))) {
+                    i++;
+                }
+                if (i < end && text.charAt(i) == '}') {
+                    pos = i + 1;
+                }
+            } else {
+                final int max = Math.min(pos + 2, end);
+                while (pos < max && isHex(text.charAt(pos))) {
+                    pos++;
+                }
+            }
+        } else if (c == '^') {
+            pos = Math.min(pos + 2, end);
+        } else {
+            pos++;
+        }
+    }
+
+    private void number(final int start) {
+        skipDigits();
+        if (peek(0) == '#' && isNameChar(peek(1))) {
+            pos++;
+            while (pos < end && isLetterOrDigit(text.charAt(pos))) {
+                pos++;
+            }
+            add(ErlToken.KIND_INTEGER, start);
+            return;
+        }
+        if (peek(0) == '.' && isDigit(peek(1))) {
+            pos++;
+            skipDigits();
+            final char e = peek(0);
+            if (e == 'e' || e == 'E') {
+                final char s = peek(1);
+                if (isDigit(s)) {
+                    pos++;
+                    skipDigits();
+                } else if ((s == '+' || s == '-') && isDigit(peek(2))) {
+                    pos += 2;
+                    skipDigits();
+                }
+            }
+            add(ErlToken.KIND_FLOAT, start);
+            return;
+        }
+        add(ErlToken.KIND_INTEGER, start);
+    }
+
+    private void macro(final int start) {
+        int i = pos + 1;
+        if (i < end && text.charAt(i) == '?') {
+            i++;
+        }
+        if (i < end && (isAtomStart(text.charAt(i)) || isVarStart(text.charAt(i)))) {
+            pos = i + 1;
+            skipNameChars();
+            add(ErlToken.KIND_MACRO, start);
+        } else if (i < end && text.charAt(i) == '\'') {
+            pos = i + 1;
+            while (pos < end && text.charAt(pos) != '\'' && text.charAt(pos) != '\n') {
+                if (text.charAt(pos) == '\\') {
+                    pos++;
+                }
+                pos++;
+            }
+            pos = Math.min(pos + 1, end);
+            add(ErlToken.KIND_MACRO, start);
+        } else {
+            pos++;
+            add('?', start);
+        }
+    }
+
+    private void punctuation(final int start, final char c) {
+        if (c == '.' && (pos + 1 >= end || isWhitespace(peek(1)) || peek(1) == '%')) {
+            // dot
+            pos++;
+            add(ErlToken.KIND_OTHER, start);
+            return;
+        }
+        for (final String op : OPERATORS) {
+            if (lookingAt(op)) {
+                pos += op.length();
+                add(ErlToken.KIND_OTHER, start);
+                return;
+            }
+        }
+        pos++;
+        add(c > ErlToken.KIND_KEYWORD && c < 128 ? c : ErlToken.KIND_OTHER, start);
+    }
+
+    private boolean lookingAt(final String s) {
+        if (pos + s.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(pos + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(final int kind, final int start) {
+        tokens.add(new ErlToken(kind, line, start + delta, pos - start));
+    }
+
+    private char peek(final int n) {
+        final int i = pos + n;
+        return i < end ? text.charAt(i) : 0;
+    }
+
+    private void skipDigits() {
+        while (pos < end && (isDigit(text.charAt(pos)) || text.charAt(pos) == '_'
+                && pos + 1 < end && isDigit(text.charAt(pos + 1)))) {
+            pos++;
+        }
+    }
+
+    private void skipNameChars() {
+        while (pos < end && isNameChar(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c <= ' ' || c >= '\u0080' && c <= '\u00a0';
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isOctal(final char c) {
+        return c >= '0' && c <= '7';
+    }
+
+    private static boolean isHex(final char c) {
+        return isDigit(c) || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+    }
+
+    private static boolean isLetterOrDigit(final char c) {
+        return isDigit(c) || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    // latin-1 rules, as in erl_scan
+
+    private static boolean isAtomStart(final char c) {
+        return c >= 'a' && c <= 'z' || c >= '\u00df' && c <= '\u00ff' && c != '\u00f7';
+    }
+
+    private static boolean isVarStart(final char c) {
+        return c >= 'A' && c <= 'Z' || c == '_' || c >= '\u00c0' && c <= '\u00de'
+                && c != '\u00d7';
+    }
+
+    private static boolean isNameChar(final char c) {
+        return isLetterOrDigit(c) || c == '_' || c == '@' || c >= '\u00c0'
+                && c <= '\u00ff' && c != '\u00d7' && c != '\u00f7';
+    }
+
+}
@@ -53,6 +53,13 @@ public final class ErlToken {
         length = int24(bytes, index + 7);
     }
 
+    public ErlToken(final int kind, final int line, final int offset, final int length) {
+        this.kind = kind;
+        this.line = line;
+        this.offset = offset;
+        this.length = length;
+    }
+
     private int int24(final byte[] bytes, final int index) {
         return (0xff & bytes[index]) << 16 | (0xff & bytes[index + 1]) << 8 | 0xff
                 & bytes[index + 2];
@@ -159,6 +166,10 @@ public final class ErlToken {
         return offset;
     }
 
+    public int getLine() {
+        return line;
+    }
+
     @Override
     public String toString() {
         return "{" + kind + ", " + line + "/" + offset + "+" + length + "}";
@@ -11,4 +11,13 @@ public interface ParserService {
             final boolean initialParse, final String path, String initialText,
             boolean updateSearchServer);
 
+    /**
+     * Build the structure of a module from a stored parse result of the same
+     * text, without involving the backend.
+     * 
+     * @return false if there is no such result; the module must be parsed
+     */
+    public abstract boolean parseFromIndex(final IErlModule module, final String path,
+            String text);
+
 }
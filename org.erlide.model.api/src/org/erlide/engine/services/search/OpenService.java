@@ -59,9 +59,28 @@ public interface OpenService extends ErlangService {
         }
     }
 
+    /**
+     * Gets the entries of an external module tree in chunks, as the backend
+     * sends them.
+     */
+    public interface ExternalTreeHandler {
+        /**
+         * @return false to stop reading the tree
+         */
+        boolean handle(List<ExternalTreeEntry> entries);
+    }
+
     List<ExternalTreeEntry> getExternalModuleTree(IRpcSite backend,
             final String externalModules, final OtpErlangList pathVars);
 
+    /**
+     * @return true if the whole tree was handed to the handler, false if
+     *         reading it failed or the handler stopped it. The entries handled
+     *         so far don't make a whole tree then.
+     */
+    boolean getExternalModuleTree(IRpcSite backend, final String externalModules,
+            final OtpErlangList pathVars, ExternalTreeHandler handler);
+
     String getExternalInclude(final String filePath, final String externalIncludes,
             final OtpErlangList pathVars);
 
@@ -0,0 +1,133 @@
+package org.erlide.engine.model.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.model.IErlModel;
+import org.erlide.engine.model.root.IErlElement;
+import org.erlide.engine.util.TestingSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Measures how many times readers get a module's children, first alone and
+ * then while another module is reparsed all the time. With the children
+ * snapshots the second count shouldn't drop much.
+ * <p>
+ * It isn't part of the unit tests, run it as a JUnit Plug-in Test.
+ * ConcurrentChildrenTest checks that the readers see whole snapshots.
+ */
+public class ConcurrentChildrenBenchmark {
+
+    private static final int READERS = 4;
+    private static final long DURATION_MS = 2000;
+    private static final int SMALL = 10;
+    private static final int LARGE = 50;
+
+    private IErlModule reparsed;
+    private IErlModule read;
+
+    @Before
+    public void setUp() throws Exception {
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        reparsed = model.getModuleFromText(model, "reparsed", "", null);
+        read = model.getModuleFromText(model, "read", "", null);
+        read.setChildren(attributes(read, LARGE));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reparsed.dispose();
+        read.dispose();
+    }
+
+    private static List<IErlElement> attributes(final IErlModule module, final int n) {
+        final List<IErlElement> result = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            result.add(TestingSupport.createErlAttribute(module, "a" + i, null, null,
+                    i * 10, 10));
+        }
+        return result;
+    }
+
+    private long readFor(final long millis, final AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong reads = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READERS);
+        for (int t = 0; t < READERS; t++) {
+            new Thread("reader " + t) {
+                @Override
+                public void run() {
+                    try {
+                        long n = 0;
+                        while (!stop.get()) {
+                            assertEquals(LARGE, read.getChildCount());
+                            assertEquals(LARGE, read.getChildren().size());
+                            final int size = reparsed.getChildren().size();
+                            assertTrue(size == 0 || size == SMALL || size == LARGE);
+                            n++;
+                        }
+                        reads.addAndGet(n);
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        Thread.sleep(millis);
+        stop.set(true);
+        done.await();
+        return reads.get();
+    }
+
+    @Test
+    public void readThroughputDuringReparse() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final long idleReads = readFor(DURATION_MS, failure);
+
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong reparses = new AtomicLong();
+        final Thread writer = new Thread("reparser") {
+            @Override
+            public void run() {
+                try {
+                    while (!stop.get()) {
+                        final int n = reparses.get() % 2 == 0 ? SMALL : LARGE;
+                        reparsed.setChildren(attributes(reparsed, n));
+                        reparses.incrementAndGet();
+                    }
+                } catch (final Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        };
+        writer.start();
+        final long busyReads = readFor(DURATION_MS, failure);
+        stop.set(true);
+        writer.join();
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        System.out.println(String.format(
+                "ConcurrentChildrenBenchmark: %d readers, %d ms: %d reads idle, "
+                        + "%d reads during %d reparses", READERS, DURATION_MS,
+                idleReads, busyReads, reparses.get()));
+        assertTrue(reparses.get() > 0);
+        assertTrue(busyReads > 0);
+    }
+
+}
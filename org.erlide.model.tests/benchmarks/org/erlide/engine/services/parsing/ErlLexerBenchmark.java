@@ -0,0 +1,116 @@
+package org.erlide.engine.services.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.runtime.api.RuntimeCore;
+import org.erlide.runtime.runtimeinfo.IRuntimeInfoCatalog;
+import org.erlide.runtime.runtimeinfo.RuntimeInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Compares the Java lexer with the backend scanner on the largest stdlib
+ * sources of the erlide runtime. Prints timings, checks that the token kinds
+ * agree.
+ * <p>
+ * It isn't part of the unit tests, run it as a JUnit Plug-in Test.
+ */
+public class ErlLexerBenchmark {
+
+    private static final int FILES = 20;
+    private static final int ROUNDS = 5;
+
+    private final List<String> sources = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws IOException {
+        final IRuntimeInfoCatalog catalog = RuntimeCore.getRuntimeInfoCatalog();
+        assumeNotNull(catalog);
+        final RuntimeInfo runtime = catalog.getErlideRuntime();
+        assumeNotNull(runtime);
+        final File dir = new File(runtime.getOtpHome(), "lib");
+        final File[] libs = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File parent, final String name) {
+                return name.startsWith("stdlib-");
+            }
+        });
+        assumeTrue(libs != null && libs.length > 0);
+        final File[] files = new File(libs[0], "src").listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File parent, final String name) {
+                return name.endsWith(".erl");
+            }
+        });
+        assumeTrue(files != null && files.length > 0);
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(final File f1, final File f2) {
+                return Long.valueOf(f2.length()).compareTo(f1.length());
+            }
+        });
+        for (int i = 0; i < Math.min(FILES, files.length); i++) {
+            sources.add(Files.toString(files[i], Charsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void compareWithBackend() throws ScannerException {
+        final SimpleScannerService rpc = ErlangEngine.getInstance()
+                .getSimpleScannerService();
+        long javaTime = 0;
+        long rpcTime = 0;
+        int chars = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (final String text : sources) {
+                long t = System.nanoTime();
+                final List<ErlToken> javaTokens = ErlLexer.scan(text, 0);
+                javaTime += System.nanoTime() - t;
+
+                t = System.nanoTime();
+                final List<ErlToken> rpcTokens = rpc.lightScanString(text, 0);
+                rpcTime += System.nanoTime() - t;
+
+                if (round == 0) {
+                    chars += text.length();
+                    assertEquals(significantKinds(rpcTokens),
+                            significantKinds(javaTokens));
+                }
+            }
+        }
+        System.out.println(String.format(
+                "ErlLexerBenchmark: %d files, %d chars x %d rounds: "
+                        + "java %d ms, rpc %d ms", sources.size(), chars, ROUNDS,
+                javaTime / 1000000, rpcTime / 1000000));
+    }
+
+    /**
+     * Whitespace and dots are split differently by the backend scanner, they
+     * don't matter for highlighting.
+     */
+    private static List<Integer> significantKinds(final List<ErlToken> tokens) {
+        final List<Integer> result = new ArrayList<Integer>(tokens.size());
+        for (final ErlToken tk : tokens) {
+            final int kind = tk.getKind();
+            if (kind != ErlToken.KIND_WHITESPACE && kind != ErlToken.KIND_OTHER) {
+                result.add(kind);
+            }
+        }
+        return result;
+    }
+
+}
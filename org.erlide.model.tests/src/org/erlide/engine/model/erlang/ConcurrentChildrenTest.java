@@ -0,0 +1,101 @@
+package org.erlide.engine.model.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.model.IErlModel;
+import org.erlide.engine.model.root.IErlElement;
+import org.erlide.engine.util.TestingSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Readers of one module must not see half-done updates of a module that is
+ * being reparsed. This only checks what they see;
+ * ConcurrentChildrenBenchmark measures how fast they read.
+ */
+public class ConcurrentChildrenTest {
+
+    private static final int READERS = 4;
+    private static final int REPARSES = 500;
+    private static final int SMALL = 10;
+    private static final int LARGE = 50;
+
+    private IErlModule reparsed;
+    private IErlModule read;
+
+    @Before
+    public void setUp() throws Exception {
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        reparsed = model.getModuleFromText(model, "reparsed", "", null);
+        read = model.getModuleFromText(model, "read", "", null);
+        read.setChildren(attributes(read, LARGE));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reparsed.dispose();
+        read.dispose();
+    }
+
+    private static List<IErlElement> attributes(final IErlModule module, final int n) {
+        final List<IErlElement> result = Lists.newArrayList();
+        for (int i = 0; i < n; i++) {
+            result.add(TestingSupport.createErlAttribute(module, "a" + i, null, null,
+                    i * 10, 10));
+        }
+        return result;
+    }
+
+    @Test
+    public void readersSeeWholeSnapshots() throws Exception {
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicLong reads = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(READERS);
+        for (int t = 0; t < READERS; t++) {
+            new Thread("reader " + t) {
+                @Override
+                public void run() {
+                    try {
+                        do {
+                            assertEquals(LARGE, read.getChildCount());
+                            assertEquals(LARGE, read.getChildren().size());
+                            final int size = reparsed.getChildren().size();
+                            assertTrue(size == 0 || size == SMALL || size == LARGE);
+                            reads.incrementAndGet();
+                        } while (!stop.get());
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        try {
+            for (int i = 0; i < REPARSES; i++) {
+                reparsed.setChildren(attributes(reparsed, i % 2 == 0 ? SMALL : LARGE));
+            }
+        } finally {
+            stop.set(true);
+            done.await();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(reads.get() > 0);
+    }
+
+}
@@ -2,11 +2,15 @@ package org.erlide.engine.model.erlang;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.List;
 
 import org.eclipse.core.runtime.CoreException;
 import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.internal.model.root.ErlProject;
 import org.erlide.engine.model.root.IErlElementLocator;
 import org.erlide.engine.model.root.IErlProject;
@@ -141,4 +145,69 @@ public class ErlModelCacheTest {
         }
     }
 
+    @Test
+    public void checkThatModulesAddedAfterLookupAreFound() throws Exception {
+        IErlProject project = null;
+        try {
+            // given
+            // a project where a lookup has already indexed the modules
+            final String projectName = "testprojectc";
+            project = ErlideTestUtils.createProject(
+                    ErlideTestUtils.getTmpPath(projectName), projectName);
+            ErlideTestUtils.createModule(project, "c1.erl", "-module(c1).\n");
+            final IErlElementLocator model = ErlangEngine.getInstance().getModel();
+            assertNotNull(model.findModuleFromProject(project, "c1", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            // when
+            // adding a module to the project
+            final IErlModule module = ErlideTestUtils.createModule(project, "c2.erl",
+                    "-module(c2).\n");
+            // then
+            // it should be found both by name and by path
+            assertEquals(module, model.findModuleFromProject(project, "c2", null,
+                    IErlElementLocator.Scope.PROJECT_ONLY));
+            assertEquals(module, model.findModuleFromProject(project, null,
+                    module.getFilePath(), IErlElementLocator.Scope.PROJECT_ONLY));
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
+    @Test
+    public void checkThatCachedModuleListsAreSharedAndCounted() throws Exception {
+        IErlProject project = null;
+        try {
+            // given
+            // a project with a module, whose module list has been cached
+            final String projectName = "testprojectd";
+            project = ErlideTestUtils.createProject(
+                    ErlideTestUtils.getTmpPath(projectName), projectName);
+            ErlideTestUtils.createModule(project, "d.erl", "-module(d).\n");
+            project.getModules();
+            final ErlModelCache cache = ErlModelCache.getDefault();
+            final long hits = cache.getStats().get("projectModule").hitCount();
+            // when
+            // asking for the module list again
+            final List<IErlModule> modules = cache.getModulesForProject(project);
+            final List<IErlModule> modules2 = cache.getModulesForProject(project);
+            // then
+            // the same unmodifiable list is returned, and the hits are counted
+            assertSame(modules, modules2);
+            assertEquals(1, modules.size());
+            assertEquals(hits + 2, cache.getStats().get("projectModule").hitCount());
+            try {
+                modules.clear();
+                fail("cached list should be unmodifiable");
+            } catch (final UnsupportedOperationException e) {
+                // expected
+            }
+        } finally {
+            if (project != null && project.exists()) {
+                ErlideTestUtils.deleteProject(project);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,136 @@
+package org.erlide.engine.model.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.erlide.engine.internal.model.cache.PersistentModelIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+
+public class PersistentModelIndexTest {
+
+    private static final String TEXT = "-module(a).\nf() -> ok.\n";
+
+    private File dir;
+    private File indexFile;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("modelindex", "");
+        dir.delete();
+        dir.mkdirs();
+        indexFile = new File(dir, "index/modules.idx");
+        source = new File(dir, "a.erl");
+        final FileWriter w = new FileWriter(source);
+        w.write(TEXT);
+        w.close();
+    }
+
+    @After
+    public void tearDown() {
+        indexFile.delete();
+        indexFile.getParentFile().delete();
+        source.delete();
+        dir.delete();
+    }
+
+    private static OtpErlangList forms() {
+        return new OtpErlangList(new OtpErlangObject[] {
+                new OtpErlangTuple(new OtpErlangObject[] {
+                        new OtpErlangAtom("attribute"), new OtpErlangAtom("module") }),
+                new OtpErlangAtom("function") });
+    }
+
+    @Test
+    public void entriesSurviveSaveAndLoad() {
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.put(source.getPath(), TEXT, forms(), new OtpErlangList());
+        index.save();
+        assertTrue(indexFile.exists());
+
+        final PersistentModelIndex loaded = new PersistentModelIndex(indexFile);
+        loaded.load();
+        assertEquals(1, loaded.size());
+        final OtpErlangTuple t = loaded.get(source.getPath(), TEXT);
+        assertEquals(forms(), t.elementAt(0));
+        assertEquals(new OtpErlangList(), t.elementAt(1));
+        assertTrue(loaded.getStalePaths().isEmpty());
+    }
+
+    @Test
+    public void changedTextIsNotFound() {
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.put(source.getPath(), TEXT, forms(), new OtpErlangList());
+        assertNull(index.get(source.getPath(), TEXT + "g() -> ok.\n"));
+        assertNull(index.get(new File(dir, "b.erl").getPath(), TEXT));
+    }
+
+    @Test
+    public void changedFilesAreStale() {
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.put(source.getPath(), TEXT, forms(), new OtpErlangList());
+        source.setLastModified(source.lastModified() - 10000);
+        assertEquals(1, index.getStalePaths().size());
+        source.delete();
+        assertEquals(source.getPath(), index.getStalePaths().get(0));
+    }
+
+    @Test
+    public void unknownFileFormatGivesEmptyIndex() throws IOException {
+        indexFile.getParentFile().mkdirs();
+        final FileWriter w = new FileWriter(indexFile);
+        w.write("not an index");
+        w.close();
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.load();
+        assertEquals(0, index.size());
+    }
+
+    private void saveOneEntry() {
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.put(source.getPath(), TEXT, forms(), new OtpErlangList());
+        index.save();
+    }
+
+    private void assertLoadsEmptyAndIsDeleted() {
+        final PersistentModelIndex index = new PersistentModelIndex(indexFile);
+        index.load();
+        assertEquals(0, index.size());
+        assertFalse(indexFile.exists());
+    }
+
+    @Test
+    public void truncatedFileIsDeleted() throws IOException {
+        saveOneEntry();
+        final RandomAccessFile f = new RandomAccessFile(indexFile, "rw");
+        f.setLength(f.length() - 3);
+        f.close();
+        assertLoadsEmptyAndIsDeleted();
+    }
+
+    @Test
+    public void badLengthIsDeleted() throws IOException {
+        saveOneEntry();
+        // the length of the first path, after magic, version and count
+        final RandomAccessFile f = new RandomAccessFile(indexFile, "rw");
+        f.seek(12);
+        f.writeInt(-1);
+        f.close();
+        assertLoadsEmptyAndIsDeleted();
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.erlide.engine.services.parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.erlide.engine.services.parsing.ErlLexer.State;
+import org.junit.Test;
+
+public class ErlLexerTest {
+
+    private static String kinds(final String text) {
+        final StringBuilder sb = new StringBuilder();
+        for (final ErlToken tk : ErlLexer.scan(text, 0)) {
+            if (tk.getKind() == ErlToken.KIND_WHITESPACE) {
+                continue;
+            }
+            final int offset = tk.getOffset();
+            sb.append(tk.getKind()).append(':')
+                    .append(text.substring(offset, offset + tk.getLength())).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void atomsAndKeywords() {
+        assertEquals("3:foo 11:case 3:'a b' 11:end", kinds("foo case 'a b' end"));
+    }
+
+    @Test
+    public void variables() {
+        assertEquals("4:X 4:_ 4:_Foo@1", kinds("X _ _Foo@1"));
+    }
+
+    @Test
+    public void numbers() {
+        assertEquals("8:12 8:16#fF 9:1.5 9:2.0e-3 8:3", kinds("12 16#fF 1.5 2.0e-3 3"));
+    }
+
+    @Test
+    public void chars() {
+        assertEquals("5:$a 5:$\\n 5:$\\123 5:$\\x{1F}", kinds("$a $\\n $\\123 $\\x{1F}"));
+    }
+
+    @Test
+    public void stringWithEscapedQuote() {
+        assertEquals("2:\"a\\\"b\" 44:,", kinds("\"a\\\"b\","));
+    }
+
+    @Test
+    public void macros() {
+        assertEquals("6:?MODULE 58:: 3:f 6:??X 63:?", kinds("?MODULE:f ??X ?"));
+    }
+
+    @Test
+    public void comment() {
+        assertEquals("3:a 10:% hello 3:b", kinds("a % hello\nb"));
+    }
+
+    @Test
+    public void operators() {
+        assertEquals("4:X 7:-> 4:A 0:=:= 4:B 0:.", kinds("X -> A =:= B. "));
+    }
+
+    @Test
+    public void offsetIsAdded() {
+        final List<ErlToken> tokens = ErlLexer.scan("a b", 10);
+        assertEquals(3, tokens.size());
+        assertEquals(12, tokens.get(2).getOffset());
+    }
+
+    @Test
+    public void stringStateAcrossLines() {
+        final List<ErlToken> tokens = new ArrayList<ErlToken>();
+        final String line1 = "x = \"abc\n";
+        final String line2 = "def\" ++ y\n";
+        State state = ErlLexer.scan(line1, 0, line1.length(), State.NORMAL, 0, 0,
+                tokens);
+        assertEquals(State.IN_STRING, state);
+        tokens.clear();
+        state = ErlLexer.scan(line2, 0, line2.length(), state, 1, 0, tokens);
+        assertEquals(State.NORMAL, state);
+        assertEquals(ErlToken.KIND_STRING, tokens.get(0).getKind());
+        assertEquals(4, tokens.get(0).getLength());
+    }
+
+    @Test
+    public void wholeTextMatchesLineByLine() {
+        final String text = "-module(m).\nf(X) ->\n    \"a\nb\", 'c\nd', X.\n";
+        final List<ErlToken> whole = ErlLexer.scan(text, 0);
+        final List<ErlToken> byLine = new ArrayList<ErlToken>();
+        State state = State.NORMAL;
+        int start = 0;
+        while (start < text.length()) {
+            final int end = text.indexOf('\n', start) + 1;
+            state = ErlLexer.scan(text, start, end, state, 0, 0, byLine);
+            start = end;
+        }
+        final StringBuilder sw = new StringBuilder();
+        for (final ErlToken tk : whole) {
+            for (int i = 0; i < tk.getLength(); i++) {
+                sw.append((char) ('A' + tk.getKind()));
+            }
+        }
+        final StringBuilder sl = new StringBuilder();
+        for (final ErlToken tk : byLine) {
+            for (int i = 0; i < tk.getLength(); i++) {
+                sl.append((char) ('A' + tk.getKind()));
+            }
+        }
+        assertEquals(sw.toString(), sl.toString());
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.erlide.engine.internal;
 
 import org.eclipse.core.runtime.Plugin;
+import org.erlide.engine.internal.model.cache.PersistentModelIndex;
 import org.erlide.util.ErlLogger;
 import org.osgi.framework.BundleContext;
 
@@ -40,6 +41,7 @@ public class ModelPlugin extends Plugin {
 
     @Override
     public void stop(final BundleContext bundleContext) throws Exception {
+        PersistentModelIndex.saveDefault();
         ModelPlugin.context = null;
         super.stop(bundleContext);
     }
@@ -43,6 +43,7 @@ import org.eclipse.core.runtime.SafeRunner;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.ModelPlugin;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
+import org.erlide.engine.internal.model.cache.ModuleIndex;
 import org.erlide.engine.internal.model.erlang.ErlModule;
 import org.erlide.engine.internal.model.root.ErlElementDelta;
 import org.erlide.engine.internal.model.root.ErlFolder;
@@ -70,15 +71,14 @@ import org.erlide.engine.model.root.IErlProject;
 import org.erlide.engine.model.root.ProjectConfigurationChangeListener;
 import org.erlide.engine.util.CommonUtils;
 import org.erlide.engine.util.NatureUtil;
-import org.erlide.engine.util.ResourceUtil;
 import org.erlide.util.ErlLogger;
-import org.erlide.util.SystemConfiguration;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangString;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -921,11 +921,33 @@ public class ErlModel extends Openable implements IErlModel {
                 remove(rsrc);
             }
 
+            // files or folders came or went, the projects' module lists
+            // change
+            final Set<IProject> restructured = Sets.newHashSet();
+            for (final IResource rsrc : Iterables.concat(added, removed)) {
+                if (rsrc.getType() != IResource.PROJECT) {
+                    restructured.add(rsrc.getProject());
+                }
+            }
+            for (final IProject prj : restructured) {
+                notifyStructureChange(prj);
+            }
+
             for (final IProject prj : prjs) {
                 notifyProject(prj);
             }
         }
 
+        private void notifyStructureChange(final IProject prj0) {
+            if (!prj0.exists()) {
+                return;
+            }
+            final IErlProject prj = findProject(prj0);
+            if (prj != null) {
+                notifyChange(prj);
+            }
+        }
+
         private void notifyProject(final IProject prj0) {
             if (!prj0.exists()) {
                 return;
@@ -952,48 +974,6 @@ public class ErlModel extends Openable implements IErlModel {
         return null;
     }
 
-    private Collection<IErlModule> getAllIncludes(final IErlProject project,
-            final boolean checkExternals, final IErlElementLocator.Scope scope)
-            throws ErlModelException {
-        final List<IErlProject> projects = Lists.newArrayList();
-        final List<IErlModule> result = Lists.newArrayList();
-        final Set<String> paths = Sets.newHashSet();
-        if (project != null) {
-            projects.add(project);
-            if (scope == IErlElementLocator.Scope.REFERENCED_PROJECTS) {
-                projects.addAll(project.getReferencedProjects());
-            }
-        }
-        if (scope == IErlElementLocator.Scope.ALL_PROJECTS) {
-            for (final IErlProject project2 : getErlangProjects()) {
-                if (!projects.contains(project2)) {
-                    projects.add(project2);
-                }
-            }
-        }
-        for (final IErlProject project2 : projects) {
-            getAllModulesAux(project2.getIncludes(), result, paths);
-        }
-        if (checkExternals && project != null) {
-            getAllModulesAux(project.getExternalIncludes(), result, paths);
-        }
-        return result;
-    }
-
-    static void getAllModulesAux(final Collection<IErlModule> modules,
-            final Collection<IErlModule> result, final Set<String> paths) {
-        for (final IErlModule module : modules) {
-            final String path = module.getFilePath();
-            if (path != null) {
-                if (paths.contains(path)) {
-                    continue;
-                }
-                paths.add(path);
-            }
-            result.add(module);
-        }
-    }
-
     private IErlModule findIncludeFromProject(final IErlProject project,
             final String includeName, final String includePath,
             final boolean checkExternals, final IErlElementLocator.Scope scope)
@@ -1005,31 +985,48 @@ public class ErlModel extends Openable implements IErlModel {
                 return module;
             }
         }
-        final Collection<IErlModule> includes = getAllIncludes(project,
-                checkExternals, scope);
-        ErlModelCache.getDefault().putModules(includes);
+        final List<ModuleIndex.Entry> entries = Lists.newArrayList();
+        final ModuleIndex index = ErlModelCache.getDefault().getModuleIndex();
+        for (final IErlProject project2 : getProjectsInScope(project, scope)) {
+            entries.add(index.get(project2, ModuleIndex.Kind.INCLUDES));
+        }
+        if (checkExternals && project != null) {
+            entries.add(index.get(project, ModuleIndex.Kind.EXTERNAL_INCLUDES));
+        }
         if (includePath != null) {
-            for (final IErlModule module2 : includes) {
-                final String path2 = module2.getFilePath();
-                if (path2 != null && includePath.equals(path2)) {
-                    return module2;
+            for (final ModuleIndex.Entry entry : entries) {
+                final IErlModule module = entry.findByPath(includePath);
+                if (module != null) {
+                    return module;
                 }
             }
         }
         if (includeName != null) {
-            final boolean hasExtension = SystemConfiguration
-                    .hasExtension(includeName);
-            for (final IErlModule module2 : includes) {
-                final String name = hasExtension ? module2.getName() : module2
-                        .getModuleName();
-                if (ResourceUtil.samePath(includeName, name)) {
-                    return module2;
+            for (final ModuleIndex.Entry entry : entries) {
+                final IErlModule module = entry.findByFileName(includeName);
+                if (module != null) {
+                    return module;
                 }
             }
         }
         return null;
     }
 
+    private Collection<IErlProject> getProjectsInScope(final IErlProject project,
+            final IErlElementLocator.Scope scope) throws ErlModelException {
+        final Set<IErlProject> projects = Sets.newLinkedHashSet();
+        if (project != null) {
+            projects.add(project);
+            if (scope == IErlElementLocator.Scope.REFERENCED_PROJECTS) {
+                projects.addAll(project.getReferencedProjects());
+            }
+        }
+        if (scope == IErlElementLocator.Scope.ALL_PROJECTS) {
+            projects.addAll(getErlangProjects());
+        }
+        return projects;
+    }
+
     @Override
     public IErlModule findModuleFromProject(final IErlProject project,
             final String moduleName, final String modulePath,
@@ -1058,88 +1055,60 @@ public class ErlModel extends Openable implements IErlModel {
                 return module;
             }
         }
-        final List<IErlModule> allModules = Lists.newArrayList();
-        final Set<String> paths = Sets.newHashSet();
-        try {
-            for (int i = 0; i < 2; ++i) {
-                final boolean externalModules = i > 0;
-                if (externalModules && !checkExternals) {
-                    break;
-                }
-                if (project != null) {
-                    final IErlModule module = tryFindModule(
-                            Sets.newHashSet(project), moduleName, modulePath,
-                            allModules, paths, externalModules);
-                    if (module != null) {
-                        return module;
-                    }
+        for (int i = 0; i < 2; ++i) {
+            final boolean externalModules = i > 0;
+            if (externalModules && !checkExternals) {
+                break;
+            }
+            if (project != null) {
+                final IErlModule module = tryFindModule(
+                        Collections.singleton(project), moduleName, modulePath,
+                        externalModules);
+                if (module != null) {
+                    return module;
                 }
-                if ((scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS)
-                        && project != null) {
-                    final Collection<IErlProject> projects = project
-                            .getReferencedProjects();
-                    final IErlModule module = tryFindModule(projects,
-                            moduleName, modulePath, allModules, paths,
-                            externalModules);
-                    if (module != null) {
-                        return module;
-                    }
+            }
+            if ((scope == Scope.REFERENCED_PROJECTS || scope == Scope.ALL_PROJECTS)
+                    && project != null) {
+                final Collection<IErlProject> projects = project
+                        .getReferencedProjects();
+                final IErlModule module = tryFindModule(projects, moduleName,
+                        modulePath, externalModules);
+                if (module != null) {
+                    return module;
                 }
+            }
 
-                if (scope == Scope.ALL_PROJECTS) {
-                    final Collection<IErlProject> projects = getErlangProjects();
-                    final IErlModule module = tryFindModule(projects,
-                            moduleName, modulePath, allModules, paths,
-                            externalModules);
-                    if (module != null) {
-                        return module;
-                    }
+            if (scope == Scope.ALL_PROJECTS) {
+                final Collection<IErlProject> projects = getErlangProjects();
+                final IErlModule module = tryFindModule(projects, moduleName,
+                        modulePath, externalModules);
+                if (module != null) {
+                    return module;
                 }
             }
-            return null;
-        } finally {
-            ErlModelCache.getDefault().putModules(allModules);
         }
+        return null;
     }
 
     private IErlModule tryFindModule(final Collection<IErlProject> projects,
             final String moduleName, final String modulePath,
-            final List<IErlModule> allModules, final Set<String> paths,
             final boolean externalModules) throws ErlModelException {
-        IErlModule module;
+        final ErlModelCache cache = ErlModelCache.getDefault();
+        final ModuleIndex.Kind kind = externalModules
+                ? ModuleIndex.Kind.EXTERNAL_MODULES : ModuleIndex.Kind.MODULES;
         for (final IErlProject project : projects) {
-            final Collection<IErlModule> modules = Lists.newArrayList();
-            final Collection<IErlModule> modulesOrExternals = externalModules ? project
-                    .getExternalModules() : project.getModules();
-            getAllModulesAux(modulesOrExternals, modules, paths);
-            allModules.addAll(modules);
-            module = findModule(modules, moduleName, modulePath);
-            if (module != null) {
-                return module;
+            final ModuleIndex.Entry entry = cache.getModuleIndex().get(project, kind);
+            IErlModule module = null;
+            if (modulePath != null) {
+                module = entry.findByPath(modulePath);
             }
-        }
-        return null;
-    }
-
-    private IErlModule findModule(final Collection<IErlModule> modules,
-            final String moduleName, final String modulePath) {
-        if (modulePath != null) {
-            for (final IErlModule module : modules) {
-                final String path = module.getFilePath();
-                if (path != null && ResourceUtil.samePath(modulePath, path)) {
-                    return module;
-                }
+            if (module == null && moduleName != null) {
+                module = entry.findByName(moduleName);
             }
-        }
-        if (moduleName != null) {
-            final boolean hasExtension = SystemConfiguration
-                    .hasExtension(moduleName);
-            for (final IErlModule module : modules) {
-                final String name = hasExtension ? module.getName() : module
-                        .getModuleName();
-                if (moduleName.equals(name)) {
-                    return module;
-                }
+            if (module != null) {
+                cache.putModule(module);
+                return module;
             }
         }
         return null;
@@ -1164,13 +1133,6 @@ public class ErlModel extends Openable implements IErlModel {
                 includePath, true, scope);
     }
 
-    private final Object fModelLock = new Object();
-
-    @Override
-    public Object getModelLock() {
-        return fModelLock;
-    }
-
     @Override
     public IErlElementDelta createElementDelta(final int kind, final int flags,
             final IErlElement element) {
@@ -10,22 +10,45 @@ import java.util.concurrent.TimeUnit;
 import org.eclipse.xtext.xbase.lib.Pair;
 import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.model.IErlModelChangeListener;
+import org.erlide.engine.model.IParent;
 import org.erlide.engine.model.erlang.IErlModule;
 import org.erlide.engine.model.root.IErlElement;
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.engine.services.search.OpenService.ExternalTreeEntry;
+import org.erlide.util.ErlLogger;
 import org.erlide.util.IDisposable;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Lists;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class ErlModelCache implements IDisposable {
 
-    private static final int CACHE_SIZE = 200;
-    private static final int CACHE_TIME_MINUTES = 15;
+    private static final int CACHE_TIME_MINUTES = Integer.getInteger(
+            "erlide.modelCache.expire", 15);
+
+    /**
+     * Caches are limited by the number of elements they hold: a list counts
+     * for its size (plus one), anything else for one. The limit of each cache
+     * can be set with the system property
+     * <code>erlide.modelCache.&lt;name&gt;.size</code>.
+     */
+    private static final Weigher<Object, Object> ELEMENT_COUNT = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(final Object key, final Object value) {
+            if (value instanceof Pair) {
+                return weigh(key, ((Pair<?, ?>) value).getValue());
+            }
+            if (value instanceof Collection) {
+                return 1 + ((Collection<?>) value).size();
+            }
+            return 1;
+        }
+    };
 
     private static final boolean disabled = Boolean.valueOf(System
             .getProperty("erlide.noModelCache"));
@@ -40,6 +63,8 @@ public class ErlModelCache implements IDisposable {
     private final ModelChangeListener modelChangeListener;
     private final Cache<IErlProject, List<IErlModule>> projectModuleCache;
     private final Cache<IErlProject, List<IErlModule>> projectIncludeCache;
+    private final ModuleIndex moduleIndex;
+    private final Map<String, Cache<?, ?>> caches = Maps.newLinkedHashMap();
 
     public static ErlModelCache getDefault() {
         return fgInstance;
@@ -54,26 +79,38 @@ public class ErlModelCache implements IDisposable {
             if (element instanceof IErlModule) {
                 final IErlModule module = (IErlModule) element;
                 moduleIncludeCache.invalidate(module);
+            } else if (element instanceof IParent) {
+                // the model notifies a project when files or folders in it
+                // were added or removed, its module lists may change
+                final IErlProject project = ErlangEngine.getInstance()
+                        .getModelUtilService().getProject(element);
+                if (project != null) {
+                    moduleIndex.removeProject(project);
+                }
             }
         }
     }
 
-    private static <K, V> Cache<K, V> newCache() {
-        final Cache<K, V> cache = CacheBuilder.newBuilder()
-                .maximumSize(CACHE_SIZE)
+    private <K, V> Cache<K, V> newCache(final String name, final long defaultSize) {
+        final long size = Long.getLong("erlide.modelCache." + name + ".size",
+                defaultSize);
+        final Cache<K, V> cache = CacheBuilder.newBuilder().maximumWeight(size)
+                .<K, V> weigher(ELEMENT_COUNT)
                 .expireAfterAccess(CACHE_TIME_MINUTES, TimeUnit.MINUTES)
-                .initialCapacity(16).build();
+                .initialCapacity(16).recordStats().build();
+        caches.put(name, cache);
         return cache;
     }
 
     private ErlModelCache() {
-        pathToModuleCache = newCache();
+        pathToModuleCache = newCache("pathToModule", 10000);
         editedModulesMap = Maps.newHashMap();
         // nameToModuleCache = newCache();
-        moduleIncludeCache = newCache();
-        externalTreeCache = newCache();
-        projectModuleCache = newCache();
-        projectIncludeCache = newCache();
+        moduleIncludeCache = newCache("moduleInclude", 20000);
+        externalTreeCache = newCache("externalTree", 100000);
+        projectModuleCache = newCache("projectModule", 50000);
+        projectIncludeCache = newCache("projectInclude", 20000);
+        moduleIndex = new ModuleIndex(!disabled);
 
         modelChangeListener = new ModelChangeListener();
         ErlangEngine.getInstance().getModel()
@@ -132,22 +169,29 @@ public class ErlModelCache implements IDisposable {
         return pathToModuleCache.getIfPresent(path);
     }
 
+    public ModuleIndex getModuleIndex() {
+        return moduleIndex;
+    }
+
     public void putIncludedFilesForModule(final IErlModule module,
             final Collection<IErlModule> result) {
         if (result == null) {
             moduleIncludeCache.invalidate(module);
         } else {
-            moduleIncludeCache.put(module, Lists.newArrayList(result));
+            moduleIncludeCache.put(module, ImmutableList.copyOf(result));
         }
     }
 
+    /**
+     * @return an unmodifiable list, empty if nothing is cached for the module
+     */
     public List<IErlModule> getIncludedFilesForModule(final IErlModule module) {
         final List<IErlModule> modules = moduleIncludeCache
                 .getIfPresent(module);
         if (modules == null) {
-            return Lists.newArrayList();
+            return ImmutableList.of();
         }
-        return Lists.newArrayList(modules);
+        return modules;
     }
 
     @Override
@@ -164,61 +208,46 @@ public class ErlModelCache implements IDisposable {
         } else {
             externalTreeCache.put(externalPath,
                     new Pair<IErlProject, List<ExternalTreeEntry>>(project,
-                            Lists.newArrayList(externalTree)));
+                            ImmutableList.copyOf(externalTree)));
         }
     }
 
+    /**
+     * @return an unmodifiable list, or null if nothing is cached for the path
+     */
     public List<ExternalTreeEntry> getExternalTree(final String externalPath) {
         final Pair<IErlProject, List<ExternalTreeEntry>> tuple = externalTreeCache
                 .getIfPresent(externalPath);
         if (tuple == null) {
             return null;
         }
-        final List<ExternalTreeEntry> entries = tuple.getValue();
-        if (entries == null) {
-            return null;
-        }
-        return Lists.newArrayList(entries);
+        return tuple.getValue();
     }
 
+    /**
+     * @return an unmodifiable list, or null if nothing is cached for the
+     *         project
+     */
     public List<IErlModule> getModulesForProject(final IErlProject project) {
-        final List<IErlModule> modules = projectModuleCache
-                .getIfPresent(project);
-        if (modules == null) {
-            return null;
-        }
-        return Lists.newArrayList(modules);
+        return projectModuleCache.getIfPresent(project);
     }
 
+    /**
+     * @return an unmodifiable list, or null if nothing is cached for the
+     *         project
+     */
     public List<IErlModule> getIncludesForProject(final IErlProject project) {
-        final List<IErlModule> includes = projectIncludeCache
-                .getIfPresent(project);
-        if (includes == null) {
-            return null;
-        }
-        return Lists.newArrayList(includes);
+        return projectIncludeCache.getIfPresent(project);
     }
 
     public void putModulesForProject(final IErlProject project,
             final List<IErlModule> modules) {
-        final List<String> moduleNames = Lists.newArrayList();
-        for (final IErlModule module : modules) {
-            moduleNames.add(module.getName());
-        }
-        // ErlLogger.debug("setModulesForProject %s %s", project.getName(),
-        // moduleNames);
-        projectModuleCache.put(project, Lists.newArrayList(modules));
+        projectModuleCache.put(project, ImmutableList.copyOf(modules));
     }
 
     public void putIncludesForProject(final IErlProject project,
             final List<IErlModule> includes) {
-        final List<String> moduleNames = Lists.newArrayList();
-        for (final IErlModule module : includes) {
-            moduleNames.add(module.getName());
-        }
-        // ErlLogger.debug("setIncludesForProject %s %s", project.getName(),
-        // moduleNames);
-        projectIncludeCache.put(project, Lists.newArrayList(includes));
+        projectIncludeCache.put(project, ImmutableList.copyOf(includes));
     }
 
     public void removeProject(final IErlProject project) {
@@ -239,6 +268,7 @@ public class ErlModelCache implements IDisposable {
         }
         projectIncludeCache.invalidate(project);
         projectModuleCache.invalidate(project);
+        moduleIndex.removeProject(project);
         final Set<String> keysToRemove = Sets.newHashSet();
         final Set<Entry<String, Pair<IErlProject, List<ExternalTreeEntry>>>> entrySet = externalTreeCache
                 .asMap().entrySet();
@@ -254,6 +284,7 @@ public class ErlModelCache implements IDisposable {
 
     public void pathVarsChanged() {
         // FIXME we need to clear some stuff here...
+        moduleIndex.clear();
     }
 
     public void newProjectCreated() {
@@ -275,6 +306,39 @@ public class ErlModelCache implements IDisposable {
         // nameToModuleCache.clear();
         projectModuleCache.invalidateAll();
         projectIncludeCache.invalidateAll();
+        moduleIndex.clear();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of each cache, by cache name
+     */
+    public Map<String, CacheStats> getStats() {
+        final Map<String, CacheStats> result = Maps.newLinkedHashMap();
+        for (final Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stats());
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of entries in each cache, by cache name
+     */
+    public Map<String, Long> getSizes() {
+        final Map<String, Long> result = Maps.newLinkedHashMap();
+        for (final Entry<String, Cache<?, ?>> entry : caches.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().size());
+        }
+        return result;
+    }
+
+    public void logStats() {
+        final Map<String, Long> sizes = getSizes();
+        for (final Entry<String, CacheStats> entry : getStats().entrySet()) {
+            final CacheStats stats = entry.getValue();
+            ErlLogger.info("model cache %s: %d entries, %d hits, %d misses, "
+                    + "%d evictions", entry.getKey(), sizes.get(entry.getKey()),
+                    stats.hitCount(), stats.missCount(), stats.evictionCount());
+        }
     }
 
     private static class DisabledErlModelCache extends ErlModelCache {
@@ -0,0 +1,69 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.io.File;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.erlang.IErlModule;
+import org.erlide.util.ErlLogger;
+
+/**
+ * Reparse the modules whose entries in the persistent model index are stale,
+ * and drop the entries of files that don't exist anymore.
+ */
+public class ModelIndexRefreshJob extends Job {
+
+    private final PersistentModelIndex index;
+    private final List<String> paths;
+
+    public ModelIndexRefreshJob(final PersistentModelIndex index,
+            final List<String> paths) {
+        super("Refreshing Erlang model index");
+        this.index = index;
+        this.paths = paths;
+        setSystem(true);
+        setPriority(DECORATE);
+    }
+
+    @Override
+    protected IStatus run(final IProgressMonitor monitor) {
+        for (final String path : paths) {
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+            if (!new File(path).exists()) {
+                index.remove(path);
+                continue;
+            }
+            final IFile file = ResourcesPlugin.getWorkspace().getRoot()
+                    .getFileForLocation(new Path(path));
+            if (file == null) {
+                continue;
+            }
+            final IErlModule module = ErlangEngine.getInstance().getModel()
+                    .findModule(file);
+            if (module == null) {
+                continue;
+            }
+            try {
+                if (!module.isStructureKnown()) {
+                    // the stale entry won't match, so this parses and updates it
+                    module.open(monitor);
+                }
+            } catch (final ErlModelException e) {
+                ErlLogger.warn(e);
+            }
+        }
+        index.save();
+        return Status.OK_STATUS;
+    }
+
+}
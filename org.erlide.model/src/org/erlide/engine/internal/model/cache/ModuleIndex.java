@@ -0,0 +1,183 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.filesystem.EFS;
+import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.erlang.IErlModule;
+import org.erlide.engine.model.root.IErlProject;
+import org.erlide.util.SystemConfiguration;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+
+/**
+ * Index of the modules of each project by path and by name, so that
+ * ErlModel.findModuleFromProject and findIncludeFromProject don't have to walk
+ * and compare all modules on every lookup.
+ * <p>
+ * The index of a project is built lazily from the project's module lists and
+ * is dropped whenever those lists are invalidated (see
+ * {@link ErlModelCache#removeProject(IErlProject)}), so only projects that
+ * actually changed are re-indexed.
+ */
+public class ModuleIndex {
+
+    public enum Kind {
+        MODULES, EXTERNAL_MODULES, INCLUDES, EXTERNAL_INCLUDES
+    }
+
+    /**
+     * Lookup tables for one module list. When several modules share a key, the
+     * first one in list order wins, as with a linear search.
+     */
+    public static class Entry {
+        private final Map<String, IErlModule> byPath = Maps.newHashMap();
+        private final Map<String, IErlModule> byName = Maps.newHashMap();
+        private final Map<String, IErlModule> byModuleName = Maps.newHashMap();
+        private final Map<String, IErlModule> byNameIgnoreCase = Maps.newHashMap();
+        private final Map<String, IErlModule> byModuleNameIgnoreCase = Maps
+                .newHashMap();
+
+        Entry(final Collection<IErlModule> modules) {
+            for (final IErlModule module : modules) {
+                final String path = module.getFilePath();
+                if (path != null) {
+                    putFirst(byPath, canonicalPath(path), module);
+                }
+                final String name = module.getName();
+                putFirst(byName, name, module);
+                putFirst(byNameIgnoreCase, canonicalPath(name), module);
+                final String moduleName = module.getModuleName();
+                putFirst(byModuleName, moduleName, module);
+                putFirst(byModuleNameIgnoreCase, canonicalPath(moduleName), module);
+            }
+        }
+
+        private static void putFirst(final Map<String, IErlModule> map,
+                final String key, final IErlModule module) {
+            if (key != null && !map.containsKey(key)) {
+                map.put(key, module);
+            }
+        }
+
+        /**
+         * Find by path, as with ResourceUtil.samePath.
+         */
+        public IErlModule findByPath(final String path) {
+            return byPath.get(canonicalPath(path));
+        }
+
+        /**
+         * Find by name, with extension if the given name has one. Names are
+         * compared exactly.
+         */
+        public IErlModule findByName(final String name) {
+            if (SystemConfiguration.hasExtension(name)) {
+                return byName.get(name);
+            }
+            return byModuleName.get(name);
+        }
+
+        /**
+         * Find by name, with extension if the given name has one. Names are
+         * compared as with ResourceUtil.samePath.
+         */
+        public IErlModule findByFileName(final String name) {
+            final String key = canonicalPath(name);
+            if (SystemConfiguration.hasExtension(name)) {
+                return byNameIgnoreCase.get(key);
+            }
+            return byModuleNameIgnoreCase.get(key);
+        }
+    }
+
+    private static final class Key {
+        final IErlProject project;
+        final Kind kind;
+
+        Key(final IErlProject project, final Kind kind) {
+            this.project = project;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return kind == other.kind && project.equals(other.project);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(project, kind);
+        }
+    }
+
+    private static final boolean CASE_SENSITIVE = EFS.getLocalFileSystem()
+            .isCaseSensitive();
+
+    private final ConcurrentMap<Key, Entry> entries = Maps.newConcurrentMap();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final boolean enabled;
+
+    public ModuleIndex(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    static String canonicalPath(final String path) {
+        return CASE_SENSITIVE ? path : path.toLowerCase();
+    }
+
+    public Entry get(final IErlProject project, final Kind kind)
+            throws ErlModelException {
+        final Key key = new Key(project, kind);
+        final Entry cached = entries.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final int before = generation.get();
+        final Entry entry = new Entry(getModules(project, kind));
+        if (enabled) {
+            entries.put(key, entry);
+            // the lists we indexed may have been invalidated meanwhile
+            if (generation.get() != before) {
+                entries.remove(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    private static Collection<IErlModule> getModules(final IErlProject project,
+            final Kind kind) throws ErlModelException {
+        switch (kind) {
+        case MODULES:
+            return project.getModules();
+        case EXTERNAL_MODULES:
+            return project.getExternalModules();
+        case INCLUDES:
+            return project.getIncludes();
+        case EXTERNAL_INCLUDES:
+        default:
+            return project.getExternalIncludes();
+        }
+    }
+
+    public void removeProject(final IErlProject project) {
+        generation.incrementAndGet();
+        for (final Kind kind : Kind.values()) {
+            entries.remove(new Key(project, kind));
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+}
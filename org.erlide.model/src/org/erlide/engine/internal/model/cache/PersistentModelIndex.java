@@ -0,0 +1,301 @@
+package org.erlide.engine.internal.model.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.erlide.engine.ErlangEngine;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+/**
+ * Parse results of the modules in the workspace, kept on disk between
+ * sessions, so that the structure of a module that didn't change can be built
+ * without asking the backend to parse it again.
+ * <p>
+ * Each module's entry holds the <code>{Forms, Comments}</code> returned by
+ * noparse (functions, exports, records, macros, includes and the rest, with
+ * their source ranges), the file's timestamp and a hash of the parsed text.
+ * An entry is only used for a text with the same hash; the timestamps are used
+ * to find the stale entries when the index is loaded, so that those can be
+ * refreshed in the background.
+ * <p>
+ * The index file is memory mapped when loaded; entries are decoded when they
+ * are asked for.
+ */
+public class PersistentModelIndex {
+
+    private static final int MAGIC = 0x45524c49;
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "index/modules.idx";
+
+    private static final boolean disabled = Boolean.valueOf(System
+            .getProperty("erlide.noModelIndex"));
+
+    private static PersistentModelIndex fgInstance;
+
+    private static final class Entry {
+        final long timestamp;
+        final byte[] hash;
+        // either the encoded term, or its position in the mapped file
+        final byte[] term;
+        final int offset;
+        final int length;
+
+        Entry(final long timestamp, final byte[] hash, final byte[] term) {
+            this.timestamp = timestamp;
+            this.hash = hash;
+            this.term = term;
+            offset = 0;
+            length = term.length;
+        }
+
+        Entry(final long timestamp, final byte[] hash, final int offset,
+                final int length) {
+            this.timestamp = timestamp;
+            this.hash = hash;
+            term = null;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final Map<String, Entry> entries = Maps.newHashMap();
+    private MappedByteBuffer mapped;
+    private boolean dirty;
+
+    /**
+     * @return the index of the workspace, loaded on first use; null if it is
+     *         disabled
+     */
+    public static synchronized PersistentModelIndex getDefault() {
+        if (disabled) {
+            return null;
+        }
+        if (fgInstance == null) {
+            final File file = new File(ErlangEngine.getInstance().getStateDir(),
+                    FILE_NAME);
+            fgInstance = new PersistentModelIndex(file);
+            fgInstance.load();
+            final List<String> stale = fgInstance.getStalePaths();
+            if (!stale.isEmpty()) {
+                new ModelIndexRefreshJob(fgInstance, stale).schedule(5000);
+            }
+        }
+        return fgInstance;
+    }
+
+    /**
+     * Save the index of the workspace, if it was used.
+     */
+    public static synchronized void saveDefault() {
+        if (fgInstance != null) {
+            fgInstance.save();
+        }
+    }
+
+    public PersistentModelIndex(final File file) {
+        this.file = file;
+    }
+
+    static byte[] hash(final String text) {
+        return Hashing.md5().hashString(text, Charsets.UTF_8).asBytes();
+    }
+
+    /**
+     * @return the parse result <code>{Forms, Comments}</code> stored for the
+     *         file, if it was stored for the same text; null otherwise
+     */
+    public synchronized OtpErlangTuple get(final String path, final String text) {
+        final Entry entry = entries.get(path);
+        if (entry == null || !Arrays.equals(entry.hash, hash(text))) {
+            return null;
+        }
+        try {
+            final OtpErlangObject term = new OtpInputStream(getTerm(entry), 0)
+                    .read_any();
+            if (term instanceof OtpErlangTuple && ((OtpErlangTuple) term).arity() == 2) {
+                return (OtpErlangTuple) term;
+            }
+        } catch (final OtpErlangDecodeException e) {
+            ErlLogger.warn("bad model index entry for %s", path);
+        }
+        remove(path);
+        return null;
+    }
+
+    private byte[] getTerm(final Entry entry) {
+        if (entry.term != null) {
+            return entry.term;
+        }
+        final byte[] result = new byte[entry.length];
+        final ByteBuffer buffer = mapped.duplicate();
+        buffer.position(entry.offset);
+        buffer.get(result);
+        return result;
+    }
+
+    /**
+     * Store the parse result of a file's text.
+     */
+    public synchronized void put(final String path, final String text,
+            final OtpErlangObject forms, final OtpErlangObject comments) {
+        final OtpErlangTuple term = new OtpErlangTuple(new OtpErlangObject[] {
+                forms, comments });
+        final long timestamp = new File(path).lastModified();
+        entries.put(path, new Entry(timestamp, hash(text), new OtpOutputStream(term)
+                .toByteArray()));
+        dirty = true;
+    }
+
+    public synchronized void remove(final String path) {
+        if (entries.remove(path) != null) {
+            dirty = true;
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the paths whose file was changed or removed since their entry
+     *         was stored
+     */
+    public synchronized List<String> getStalePaths() {
+        final List<String> result = Lists.newArrayList();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (new File(entry.getKey()).lastModified() != entry.getValue().timestamp) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        mapped = null;
+        dirty = true;
+    }
+
+    /**
+     * Read the index file, replacing the current entries. A missing or
+     * unreadable file leaves the index empty; a corrupt one is deleted.
+     */
+    public synchronized void load() {
+        entries.clear();
+        mapped = null;
+        dirty = false;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final FileChannel channel = in.getChannel();
+                mapped = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                in.close();
+            }
+            readEntries(mapped.duplicate());
+        } catch (final IOException e) {
+            ErlLogger.warn("could not read model index %s: %s", file, e.getMessage());
+            entries.clear();
+            mapped = null;
+        } catch (final RuntimeException e) {
+            // truncated or corrupt: bad lengths show up as any of
+            // BufferUnderflowException, IllegalArgumentException,
+            // NegativeArraySizeException...
+            ErlLogger.warn("model index %s is corrupt, deleting it: %s", file, e);
+            entries.clear();
+            mapped = null;
+            file.delete();
+        }
+    }
+
+    private void readEntries(final ByteBuffer buffer) {
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC
+                || buffer.getInt() != VERSION) {
+            return;
+        }
+        final int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            final byte[] pathBytes = new byte[buffer.getInt()];
+            buffer.get(pathBytes);
+            final long timestamp = buffer.getLong();
+            final byte[] hash = new byte[buffer.getInt()];
+            buffer.get(hash);
+            final int length = buffer.getInt();
+            final int offset = buffer.position();
+            buffer.position(offset + length);
+            entries.put(new String(pathBytes, Charsets.UTF_8), new Entry(timestamp,
+                    hash, offset, length));
+        }
+    }
+
+    /**
+     * Write the index file, if anything changed since it was loaded.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        final File tmp = new File(file.getPath() + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                    final Entry entry = e.getValue();
+                    final byte[] pathBytes = e.getKey().getBytes(Charsets.UTF_8);
+                    out.writeInt(pathBytes.length);
+                    out.write(pathBytes);
+                    out.writeLong(entry.timestamp);
+                    out.writeInt(entry.hash.length);
+                    out.write(entry.hash);
+                    out.writeInt(entry.length);
+                    out.write(getTerm(entry));
+                }
+            } finally {
+                out.close();
+            }
+            // on some platforms, a mapped file can't be replaced; we keep the
+            // current entries then and try again next time
+            if (!(file.delete() || !file.exists()) || !tmp.renameTo(file)) {
+                ErlLogger.warn("could not replace model index %s", file);
+                tmp.delete();
+                return;
+            }
+        } catch (final IOException e) {
+            ErlLogger.warn("could not write model index %s: %s", file, e.getMessage());
+            tmp.delete();
+            return;
+        }
+        load();
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.erlide.engine.internal.model.erlang;
 
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -11,11 +12,14 @@ import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.root.Openable;
 import org.erlide.engine.internal.util.BackendUtil;
 import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
+import org.erlide.engine.model.IErlModel;
 import org.erlide.engine.model.IParent;
 import org.erlide.engine.model.erlang.IErlModule;
 import org.erlide.engine.model.root.ErlElementKind;
 import org.erlide.engine.model.root.IErlExternal;
 import org.erlide.engine.services.search.OpenService;
+import org.erlide.engine.services.search.OpenService.ExternalTreeEntry;
 import org.erlide.engine.util.CommonUtils;
 import org.erlide.runtime.api.IRpcSite;
 
@@ -26,14 +30,53 @@ public class ErlExternalReferenceEntry extends Openable implements IErlExternal
     private final String entry;
     private final boolean prebuilt;
     private final boolean hasHeaders;
+    // the external tree, by parent path
+    private final Map<String, List<ExternalTreeEntry>> tree;
 
     protected ErlExternalReferenceEntry(final IParent parent,
             final String name, final String entry, final boolean prebuilt,
             final boolean hasHeaders) {
+        this(parent, name, entry, prebuilt, hasHeaders, null);
+    }
+
+    private ErlExternalReferenceEntry(final IParent parent, final String name,
+            final String entry, final boolean prebuilt,
+            final boolean hasHeaders,
+            final Map<String, List<ExternalTreeEntry>> tree) {
         super(parent, name);
         this.entry = entry;
         this.prebuilt = prebuilt;
         this.hasHeaders = hasHeaders;
+        this.tree = tree;
+    }
+
+    /**
+     * Creates the elements for the tree entries below parentPath. Their own
+     * children are only created when they are opened.
+     */
+    static List<IErlElement> createChildren(final IParent parent,
+            final String parentPath,
+            final Map<String, List<ExternalTreeEntry>> tree,
+            final boolean hasHeaders) {
+        final List<ExternalTreeEntry> entries = tree.get(parentPath);
+        if (entries == null) {
+            return Lists.newArrayList();
+        }
+        final IErlModel model = ErlangEngine.getInstance().getModel();
+        final List<IErlElement> children = Lists
+                .newArrayListWithCapacity(entries.size());
+        for (final ExternalTreeEntry e : entries) {
+            final String path = e.getPath();
+            if (e.isModule()) {
+                children.add(model.getModuleFromFile(parent, getName(path),
+                        path, null, path));
+            } else {
+                children.add(new ErlExternalReferenceEntry(parent,
+                        getNameFromExternalPath(path), path, true, hasHeaders,
+                        tree));
+            }
+        }
+        return children;
     }
 
     @Override
@@ -45,7 +88,9 @@ public class ErlExternalReferenceEntry extends Openable implements IErlExternal
     public boolean buildStructure(final IProgressMonitor pm)
             throws ErlModelException {
         if (prebuilt) {
-            // already done
+            if (tree != null) {
+                setChildren(createChildren(this, entry, tree, hasHeaders));
+            }
             return true;
         }
         final IProject workspaceProject = ErlangEngine.getInstance()
@@ -68,11 +113,25 @@ public class ErlExternalReferenceEntry extends Openable implements IErlExternal
         return false;
     }
 
-    private String getName(final String file) {
+    private static String getName(final String file) {
         final IPath p = new Path(file);
         return p.lastSegment();
     }
 
+    private static String getNameFromExternalPath(final String path0) {
+        String path = path0;
+        int i = path.indexOf(".settings");
+        if (i > 2) {
+            path = path.substring(0, i - 1);
+        }
+        i = path.lastIndexOf('/');
+        path = path.substring(i + 1);
+        if (path.endsWith(".erlidex")) {
+            path = path.substring(0, path.length() - 8);
+        }
+        return path;
+    }
+
     @Override
     public String getFilePath() {
         return null;
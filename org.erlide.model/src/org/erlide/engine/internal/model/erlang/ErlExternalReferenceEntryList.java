@@ -12,6 +12,7 @@ import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.internal.model.root.Openable;
 import org.erlide.engine.internal.util.BackendUtil;
 import org.erlide.engine.model.ErlModelException;
+import org.erlide.engine.model.IErlElement;
 import org.erlide.engine.model.IErlModel;
 import org.erlide.engine.model.IParent;
 import org.erlide.engine.model.erlang.IErlModule;
@@ -21,11 +22,13 @@ import org.erlide.engine.model.root.IErlExternalRoot;
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.engine.services.search.OpenService;
 import org.erlide.engine.services.search.OpenService.ExternalTreeEntry;
+import org.erlide.engine.services.search.OpenService.ExternalTreeHandler;
 import org.erlide.runtime.api.IRpcSite;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 public class ErlExternalReferenceEntryList extends Openable implements
@@ -73,33 +76,27 @@ public class ErlExternalReferenceEntryList extends Openable implements
                 if (pm != null) {
                     pm.worked(1);
                 }
-                externalModuleTree = ErlangEngine
-                        .getInstance()
-                        .getService(OpenService.class)
-                        .getExternalModuleTree(backend, externalModules,
-                                pathVars);
+                externalModuleTree = getExternalTree(backend, externalModules,
+                        pathVars, pm);
             }
             if (externalIncludeTree == null && externalIncludes.length() > 0) {
                 if (pm != null) {
                     pm.worked(1);
                 }
-                externalIncludeTree = ErlangEngine
-                        .getInstance()
-                        .getService(OpenService.class)
-                        .getExternalModuleTree(backend, externalIncludes,
-                                pathVars);
+                externalIncludeTree = getExternalTree(backend, externalIncludes,
+                        pathVars, pm);
             }
         }
         setChildren(null);
         final IErlModel model = ErlangEngine.getInstance().getModel();
         if (externalModuleTree != null && !externalModuleTree.isEmpty()) {
-            addExternalEntries(pm, externalModuleTree, model, "modules", null,
+            addExternalEntries(externalModuleTree, model, "modules", null,
                     false);
             cache.putExternalTree(externalModules, project, externalModuleTree);
         }
         if (externalIncludeTree != null && !externalIncludeTree.isEmpty()
                 || !projectIncludes.isEmpty()) {
-            addExternalEntries(pm, externalIncludeTree, model, "includes",
+            addExternalEntries(externalIncludeTree, model, "includes",
                     projectIncludes, true);
             if (externalIncludeTree != null) {
                 cache.putExternalTree(externalIncludes, project,
@@ -112,43 +109,71 @@ public class ErlExternalReferenceEntryList extends Openable implements
         return true;
     }
 
-    private void addExternalEntries(final IProgressMonitor pm,
-            final List<ExternalTreeEntry> externalTree, final IErlModel model,
-            final String rootName, final List<String> otherItems,
-            final boolean includeDir) throws ErlModelException {
-        final Map<String, IErlExternal> pathToEntryMap = Maps.newHashMap();
-        pathToEntryMap.put("root", this);
-        IErlExternal parent = null;
-        if (externalTree != null && !externalTree.isEmpty()) {
+    /**
+     * @return the tree, or null if it couldn't be read or reading it was
+     *         canceled
+     */
+    private static List<ExternalTreeEntry> getExternalTree(final IRpcSite backend,
+            final String externalPath, final OtpErlangList pathVars,
+            final IProgressMonitor pm) {
+        final List<ExternalTreeEntry> result = Lists.newArrayList();
+        final boolean complete = ErlangEngine.getInstance()
+                .getService(OpenService.class)
+                .getExternalModuleTree(backend, externalPath, pathVars,
+                        new ExternalTreeHandler() {
+                            @Override
+                            public boolean handle(final List<ExternalTreeEntry> entries) {
+                                result.addAll(entries);
+                                if (pm == null) {
+                                    return true;
+                                }
+                                pm.subTask(externalPath + ": " + result.size()
+                                        + " entries");
+                                return !pm.isCanceled();
+                            }
+                        });
+        return complete ? result : null;
+    }
+
+    private void addExternalEntries(final List<ExternalTreeEntry> externalTree,
+            final IErlModel model, final String rootName,
+            final List<String> otherItems, final boolean includeDir) {
+        // only our own children are created now, the others when their
+        // parents are opened
+        final Map<String, List<ExternalTreeEntry>> tree = Maps.newHashMap();
+        String lastParentPath = null;
+        if (externalTree != null) {
             for (final ExternalTreeEntry entry : externalTree) {
-                final String path = entry.getPath();
-                // final String name = entry.getName();
-                parent = pathToEntryMap.get(entry.getParentPath());
-                if (entry.isModule()) {
-                    final IErlModule module = model.getModuleFromFile(parent,
-                            getNameFromPath(path), path, null, path);
-                    parent.addChild(module);
-                } else {
-                    final String name = getNameFromExternalPath(path);
-                    final ErlExternalReferenceEntry externalReferenceEntry = new ErlExternalReferenceEntry(
-                            parent, name, path, true, includeDir);
-                    pathToEntryMap.put(path, externalReferenceEntry);
-                    externalReferenceEntry.open(pm);
-                    parent.addChild(externalReferenceEntry);
+                lastParentPath = entry.getParentPath();
+                List<ExternalTreeEntry> siblings = tree.get(lastParentPath);
+                if (siblings == null) {
+                    siblings = Lists.newArrayList();
+                    tree.put(lastParentPath, siblings);
                 }
+                siblings.add(entry);
             }
         }
         if (otherItems != null) {
-            if (parent == null) {
-                parent = new ErlExternalReferenceEntry(this, rootName, "."
-                        + rootName + ".", true, includeDir);
+            if (lastParentPath == null) {
+                final IErlExternal parent = new ErlExternalReferenceEntry(this,
+                        rootName, "." + rootName + ".", true, includeDir);
                 addChild(parent);
+                for (final String path : otherItems) {
+                    final IErlModule module = model.getModuleFromFile(parent,
+                            getNameFromPath(path), path, null, path);
+                    parent.addChild(module);
+                }
+            } else {
+                // they go with the last entry's siblings
+                for (final String path : otherItems) {
+                    tree.get(lastParentPath).add(
+                            new ExternalTreeEntry(lastParentPath, path, true));
+                }
             }
-            for (final String path : otherItems) {
-                final IErlModule module = model.getModuleFromFile(parent,
-                        getNameFromPath(path), path, null, path);
-                parent.addChild(module);
-            }
+        }
+        for (final IErlElement child : ErlExternalReferenceEntry.createChildren(
+                this, "root", tree, includeDir)) {
+            addChild(child);
         }
     }
 
@@ -158,20 +183,6 @@ public class ErlExternalReferenceEntryList extends Openable implements
         return name;
     }
 
-    private static String getNameFromExternalPath(final String path0) {
-        String path = path0;
-        int i = path.indexOf(".settings");
-        if (i > 2) {
-            path = path.substring(0, i - 1);
-        }
-        i = path.lastIndexOf('/');
-        path = path.substring(i + 1);
-        if (path.endsWith(".erlidex")) {
-            path = path.substring(0, path.length() - 8);
-        }
-        return path;
-    }
-
     @Override
     public String getFilePath() {
         return null;
@@ -75,7 +75,7 @@ public class ErlModule extends Openable implements IErlModule {
     private String initialText;
     private boolean parsed;
     private final String scannerName;
-    private final Collection<IErlComment> comments;
+    private volatile Collection<IErlComment> comments;
     private ScannerService scanner;
     private final String encoding;
 
@@ -102,7 +102,7 @@ public class ErlModule extends Openable implements IErlModule {
         moduleKind = ModuleKind.nameToModuleKind(name);
         parsed = false;
         scannerName = createScannerName();
-        comments = Lists.newArrayList();
+        comments = Collections.emptyList();
         if (ModelConfig.verbose) {
             final IErlElement element = (IErlElement) parent;
             final String parentName = element.getName();
@@ -117,6 +117,13 @@ public class ErlModule extends Openable implements IErlModule {
         if (text != null) {
             final ParserService parser = ErlangEngine.getInstance()
                     .getParserService();
+            // without a scanner, the backend has no state for this module
+            // and an unchanged file can be taken from the index; it is then
+            // still parsed the first time the scanner is needed
+            if (!parsed && scanner == null
+                    && parser.parseFromIndex(this, getFilePath(), text)) {
+                return true;
+            }
             parsed = parser.parse(this, scannerName, !parsed, getFilePath(),
                     text, true);
             return parsed;
@@ -255,19 +262,16 @@ public class ErlModule extends Openable implements IErlModule {
 
     @Override
     public void setComments(final Collection<? extends IErlComment> comments) {
-        synchronized (getModelLock()) {
-            this.comments.clear();
-            if (comments != null) {
-                this.comments.addAll(comments);
-            }
+        final List<IErlComment> newComments = Lists.newArrayList();
+        if (comments != null) {
+            newComments.addAll(comments);
         }
+        this.comments = Collections.unmodifiableList(newComments);
     }
 
     @Override
     public Collection<IErlComment> getComments() {
-        synchronized (getModelLock()) {
-            return Collections.unmodifiableCollection(comments);
-        }
+        return comments;
     }
 
     @Override
@@ -342,14 +346,12 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public IErlPreprocessorDef findPreprocessorDef(final String definedName,
             final ErlElementKind kind) {
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
-                    if (pd.getKind() == kind
-                            && pd.getDefinedName().equals(definedName)) {
-                        return pd;
-                    }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) m;
+                if (pd.getKind() == kind
+                        && pd.getDefinedName().equals(definedName)) {
+                    return pd;
                 }
             }
         }
@@ -363,18 +365,16 @@ public class ErlModule extends Openable implements IErlModule {
             open(null);
         }
         final List<ErlangIncludeFile> r = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement m : internalGetChildren()) {
-                if (m instanceof IErlAttribute) {
-                    final IErlAttribute a = (IErlAttribute) m;
-                    final OtpErlangObject v = a.getValue();
-                    if (v instanceof OtpErlangString) {
-                        final String s = ((OtpErlangString) v).stringValue();
-                        if ("include".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(false, s));
-                        } else if ("include_lib".equals(a.getName())) {
-                            r.add(new ErlangIncludeFile(true, s));
-                        }
+        for (final IErlElement m : internalGetChildren()) {
+            if (m instanceof IErlAttribute) {
+                final IErlAttribute a = (IErlAttribute) m;
+                final OtpErlangObject v = a.getValue();
+                if (v instanceof OtpErlangString) {
+                    final String s = ((OtpErlangString) v).stringValue();
+                    if ("include".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(false, s));
+                    } else if ("include_lib".equals(a.getName())) {
+                        r.add(new ErlangIncludeFile(true, s));
                     }
                 }
             }
@@ -385,12 +385,10 @@ public class ErlModule extends Openable implements IErlModule {
     @Override
     public Collection<IErlImport> getImports() {
         final List<IErlImport> result = new ArrayList<IErlImport>();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlImport) {
-                    final IErlImport ei = (IErlImport) e;
-                    result.add(ei);
-                }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlImport) {
+                final IErlImport ei = (IErlImport) e;
+                result.add(ei);
             }
         }
         return result;
@@ -542,13 +540,11 @@ public class ErlModule extends Openable implements IErlModule {
     public Collection<IErlPreprocessorDef> getPreprocessorDefs(
             final ErlElementKind kind) {
         final List<IErlPreprocessorDef> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement e : internalGetChildren()) {
-                if (e instanceof IErlPreprocessorDef) {
-                    final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
-                    if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
-                        result.add(pd);
-                    }
+        for (final IErlElement e : internalGetChildren()) {
+            if (e instanceof IErlPreprocessorDef) {
+                final IErlPreprocessorDef pd = (IErlPreprocessorDef) e;
+                if (pd.getKind() == kind || kind == ErlElementKind.PROBLEM) {
+                    result.add(pd);
                 }
             }
         }
@@ -26,7 +26,6 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.PlatformObject;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
-import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.internal.model.cache.ErlModelCache;
 import org.erlide.engine.model.ErlModelException;
 import org.erlide.engine.model.IOpenable;
@@ -53,7 +52,13 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
      */
     private final IParent fParent;
 
-    private final List<IErlElement> fChildren = Lists.newArrayList();
+    /**
+     * Immutable snapshot of the children. Readers never lock, writers replace
+     * the whole list while holding fChildrenLock, so that a reparse of one
+     * element doesn't block readers of any element.
+     */
+    private volatile List<IErlElement> fChildren = Collections.emptyList();
+    private final Object fChildrenLock = new Object();
 
     /**
      * This element's name, or an empty <code>String</code> if this element does
@@ -229,18 +234,14 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
      */
     @Override
     public boolean hasChildren() {
-        synchronized (getModelLock()) {
-            return !internalGetChildren().isEmpty();
-        }
+        return !internalGetChildren().isEmpty();
     }
 
     @Override
     public boolean hasChildrenOfKind(final ErlElementKind kind) {
-        synchronized (getModelLock()) {
-            for (final IErlElement child : internalGetChildren()) {
-                if (child.getKind() == kind) {
-                    return true;
-                }
+        for (final IErlElement child : internalGetChildren()) {
+            if (child.getKind() == kind) {
+                return true;
             }
         }
         return false;
@@ -401,21 +402,20 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
 
     @Override
     public List<IErlElement> getChildren() throws ErlModelException {
-        synchronized (getModelLock()) {
-            return Collections.unmodifiableList(Lists
-                    .newArrayList(internalGetChildren()));
-        }
+        return internalGetChildren();
     }
 
+    /**
+     * Returns the current snapshot of the children; it is immutable and is
+     * not affected by later changes.
+     */
     public List<IErlElement> internalGetChildren() {
         return fChildren;
     }
 
     @Override
     public int getChildCount() {
-        synchronized (getModelLock()) {
-            return internalGetChildren().size();
-        }
+        return internalGetChildren().size();
     }
 
     /**
@@ -429,11 +429,9 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
     public List<IErlElement> getChildrenOfKind(final ErlElementKind kind)
             throws ErlModelException {
         final List<IErlElement> result = Lists.newArrayList();
-        synchronized (getModelLock()) {
-            for (final IErlElement element : internalGetChildren()) {
-                if (element.getKind() == kind) {
-                    result.add(element);
-                }
+        for (final IErlElement element : internalGetChildren()) {
+            if (element.getKind() == kind) {
+                result.add(element);
             }
         }
         return result;
@@ -453,9 +451,7 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
      * Returns <code>true</code> if this child is in my children collection
      */
     protected boolean includesChild(final IErlElement child) {
-        synchronized (getModelLock()) {
-            return internalGetChildren().contains(child);
-        }
+        return internalGetChildren().contains(child);
     }
 
     /**
@@ -468,28 +464,33 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
 
     @Override
     public void removeChild(final IErlElement child) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.remove(child);
+            final List<IErlElement> newChildren = Lists.newArrayList(fChildren);
+            newChildren.remove(child);
+            fChildren = Collections.unmodifiableList(newChildren);
         }
     }
 
     @Override
     public void addChild(final IErlElement child) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.add(child);
+            final List<IErlElement> newChildren = Lists.newArrayList(fChildren);
+            newChildren.add(child);
+            fChildren = Collections.unmodifiableList(newChildren);
         }
     }
 
     @Override
     public void setChildren(final Collection<? extends IErlElement> children) {
-        synchronized (getModelLock()) {
+        synchronized (fChildrenLock) {
             clearCaches();
-            fChildren.clear();
+            final List<IErlElement> newChildren = Lists.newArrayList();
             if (children != null) {
-                fChildren.addAll(children);
+                newChildren.addAll(children);
             }
+            fChildren = Collections.unmodifiableList(newChildren);
         }
     }
 
@@ -514,27 +515,19 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
 
     private static IErlElement getChildNamed(final ErlElement parent,
             final String name) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (child.getName().equals(name)) {
-                    return child;
-                }
+        for (final IErlElement child : parent.internalGetChildren()) {
+            if (child.getName().equals(name)) {
+                return child;
             }
         }
         return null;
     }
 
-    protected Object getModelLock() {
-        return ErlangEngine.getInstance().getModel().getModelLock();
-    }
-
     private static IErlElement getChildWithResource(final ErlElement parent,
             final IResource rsrc) {
-        synchronized (parent.getModelLock()) {
-            for (final IErlElement child : parent.internalGetChildren()) {
-                if (rsrc.equals(child.getResource())) {
-                    return child;
-                }
+        for (final IErlElement child : parent.internalGetChildren()) {
+            if (rsrc.equals(child.getResource())) {
+                return child;
             }
         }
         return null;
@@ -544,9 +537,7 @@ public abstract class ErlElement extends PlatformObject implements IErlElement,
     public final void accept(final IErlElementVisitor visitor,
             final Set<AcceptFlags> flags, final ErlElementKind leafKind)
             throws ErlModelException {
-        synchronized (getModelLock()) {
-            internalAccept(visitor, flags, leafKind);
-        }
+        internalAccept(visitor, flags, leafKind);
     }
 
     private final void internalAccept(final IErlElementVisitor visitor,
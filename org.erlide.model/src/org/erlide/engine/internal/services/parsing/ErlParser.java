@@ -18,6 +18,7 @@ import java.util.LinkedList;
 import java.util.List;
 
 import org.erlide.engine.ErlangEngine;
+import org.erlide.engine.internal.model.cache.PersistentModelIndex;
 import org.erlide.engine.internal.model.erlang.ErlAttribute;
 import org.erlide.engine.internal.model.erlang.ErlComment;
 import org.erlide.engine.internal.model.erlang.ErlExport;
@@ -112,23 +113,14 @@ public final class ErlParser implements ParserService {
             final OtpErlangTuple t = (OtpErlangTuple) res.elementAt(1);
             forms = (OtpErlangList) t.elementAt(1);
             comments = (OtpErlangList) t.elementAt(2);
+            final PersistentModelIndex index = PersistentModelIndex.getDefault();
+            if (initialParse && index != null && path != null && initialText != null) {
+                index.put(path, initialText, forms, comments);
+            }
         } else {
             ErlLogger.error("error when parsing %s: %s", path, res);
         }
-        if (forms == null) {
-            module.setChildren(null);
-        } else {
-            final List<IErlElement> children = createForms(module, forms);
-            module.setChildren(children);
-        }
-        if (comments == null) {
-            module.setComments(null);
-        } else {
-            final List<IErlComment> moduleComments = createComments(module,
-                    comments);
-            module.setComments(moduleComments);
-        }
-        fixFunctionComments(module);
+        setStructure(module, forms, comments);
         String cached = "reparsed";
         if (res != null && res.arity() > 2) {
             final OtpErlangObject res2 = res.elementAt(2);
@@ -145,6 +137,41 @@ public final class ErlParser implements ParserService {
         return forms != null && comments != null;
     }
 
+    @Override
+    public boolean parseFromIndex(final IErlModule module, final String path,
+            final String text) {
+        final PersistentModelIndex index = PersistentModelIndex.getDefault();
+        if (module == null || index == null || path == null || text == null) {
+            return false;
+        }
+        final OtpErlangTuple t = index.get(path, text);
+        if (t == null || !(t.elementAt(0) instanceof OtpErlangList)
+                || !(t.elementAt(1) instanceof OtpErlangList)) {
+            return false;
+        }
+        setStructure(module, (OtpErlangList) t.elementAt(0),
+                (OtpErlangList) t.elementAt(1));
+        return true;
+    }
+
+    private void setStructure(final IErlModule module, final OtpErlangList forms,
+            final OtpErlangList comments) {
+        if (forms == null) {
+            module.setChildren(null);
+        } else {
+            final List<IErlElement> children = createForms(module, forms);
+            module.setChildren(children);
+        }
+        if (comments == null) {
+            module.setComments(null);
+        } else {
+            final List<IErlComment> moduleComments = createComments(module,
+                    comments);
+            module.setComments(moduleComments);
+        }
+        fixFunctionComments(module);
+    }
+
     private List<IErlComment> createComments(final IErlModule module,
             final OtpErlangList comments) {
         final List<IErlComment> moduleComments = Lists
@@ -10,6 +10,7 @@ import org.erlide.engine.services.search.OpenResult;
 import org.erlide.engine.services.search.OpenService;
 import org.erlide.engine.util.SourcePathUtils;
 import org.erlide.runtime.api.IRpcSite;
+import org.erlide.runtime.rpc.IRpcStream;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.Util;
@@ -27,6 +28,8 @@ import com.google.common.collect.Maps;
 public class ErlideOpen implements OpenService {
 
     private static final String ERLIDE_OPEN = "erlide_open";
+    // the tree comes in chunks, this is how long we wait for each one
+    private static final int TREE_CHUNK_TIMEOUT = 10000;
 
     private final IRpcSite ideBackend;
 
@@ -109,42 +112,93 @@ public class ErlideOpen implements OpenService {
     public List<ExternalTreeEntry> getExternalModuleTree(
             final IRpcSite backend, final String externalModules,
             final OtpErlangList pathVars) {
+        final List<ExternalTreeEntry> result = Lists.newArrayList();
+        final boolean complete = getExternalModuleTree(backend, externalModules,
+                pathVars, new ExternalTreeHandler() {
+                    @Override
+                    public boolean handle(final List<ExternalTreeEntry> entries) {
+                        result.addAll(entries);
+                        return true;
+                    }
+                });
+        // what we got so far would look like a whole tree
+        return complete ? result : Lists.<ExternalTreeEntry> newArrayList();
+    }
+
+    @Override
+    public boolean getExternalModuleTree(final IRpcSite backend,
+            final String externalModules, final OtpErlangList pathVars,
+            final ExternalTreeHandler handler) {
         ErlLogger.debug("open:external_module_tree -> " + externalModules);
         final Stopwatch stopwatch = Stopwatch.createStarted();
+        IRpcStream stream = null;
         try {
-            final OtpErlangObject res = backend.call(ERLIDE_OPEN,
-                    "get_external_module_tree", "x",
-                    mkContext(externalModules, null, pathVars, null, null));
-            if (Util.isOk(res)) {
-                OtpErlangTuple t = (OtpErlangTuple) res;
-                final OtpErlangList l = (OtpErlangList) t.elementAt(1);
-                final List<ExternalTreeEntry> result = Lists
-                        .newArrayListWithCapacity(l.arity());
-                for (final OtpErlangObject i : l) {
-                    t = (OtpErlangTuple) i;
-                    final String parentPath = Util.stringValue(t.elementAt(0));
-                    final String path = Util.stringValue(t.elementAt(1));
-                    // final String name = Util.stringValue(t.elementAt(2));
-                    // final OtpErlangAtom isModuleA = (OtpErlangAtom) t
-                    // .elementAt(3);
-                    final OtpErlangAtom isModuleA = (OtpErlangAtom) t
-                            .elementAt(2);
-                    result.add(new ExternalTreeEntry(parentPath, path,// name,
-                            isModuleA.atomValue().equals("module")));
+            stream = backend.async_call_stream(ERLIDE_OPEN,
+                    "stream_external_module_tree", "xs",
+                    mkContext(externalModules, null, pathVars, null, null),
+                    stateDir);
+            int count = 0;
+            List<OtpErlangObject> chunk;
+            while ((chunk = stream.nextChunk(TREE_CHUNK_TIMEOUT)) != null) {
+                final List<ExternalTreeEntry> entries = Lists
+                        .newArrayListWithCapacity(chunk.size());
+                for (final OtpErlangObject item : chunk) {
+                    final ExternalTreeEntry entry = toExternalTreeEntry(item);
+                    if (entry == null) {
+                        ErlLogger.error("open:external_module_tree: bad entry %s",
+                                item);
+                        return false;
+                    }
+                    entries.add(entry);
                 }
-                final String msg = "open:external_module_tree <- " + stopwatch;
-                if (stopwatch.elapsed(TimeUnit.SECONDS) > 5) {
-                    ErlLogger.warn("WARNING " + msg);
-                } else {
-                    ErlLogger.debug(msg);
+                count += entries.size();
+                if (!handler.handle(entries)) {
+                    return false;
                 }
-                return result;
             }
+            if (!Util.isOk(stream.getResult())) {
+                ErlLogger.warn("open:external_module_tree returned "
+                        + stream.getResult() + ", ignoring " + count + " entries");
+                return false;
+            }
+            final String msg = "open:external_module_tree <- " + stopwatch;
+            if (stopwatch.elapsed(TimeUnit.SECONDS) > 5) {
+                ErlLogger.warn("WARNING " + msg);
+            } else {
+                ErlLogger.debug(msg);
+            }
+            return true;
         } catch (final RpcException e) {
-            ErlLogger.warn("open:external_module_tree TIMEOUT <- " + stopwatch);
+            ErlLogger.warn("open:external_module_tree FAILED <- " + stopwatch);
             ErlLogger.warn(e);
+        } finally {
+            if (stream != null) {
+                stream.cancel();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the entry for {ParentPath, Path, module | dir}, or null if the
+     *         item doesn't look like that
+     */
+    private static ExternalTreeEntry toExternalTreeEntry(final OtpErlangObject item) {
+        if (!(item instanceof OtpErlangTuple)) {
+            return null;
+        }
+        final OtpErlangTuple t = (OtpErlangTuple) item;
+        if (t.arity() != 3 || !(t.elementAt(2) instanceof OtpErlangAtom)) {
+            return null;
+        }
+        final String parentPath = Util.stringValue(t.elementAt(0));
+        final String path = Util.stringValue(t.elementAt(1));
+        if (parentPath == null || path == null) {
+            return null;
         }
-        return Lists.newArrayList();
+        final OtpErlangAtom isModuleA = (OtpErlangAtom) t.elementAt(2);
+        return new ExternalTreeEntry(parentPath, path, isModuleA.atomValue().equals(
+                "module"));
     }
 
     @Override
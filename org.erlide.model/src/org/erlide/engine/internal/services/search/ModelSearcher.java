@@ -63,7 +63,8 @@ public class ModelSearcher implements ModelSearcherService {
         if (project == null) {
             return result;
         }
-        final Collection<IErlModule> includes = project.getIncludes();
+        final Collection<IErlModule> includes = Lists.newArrayList(project
+                .getIncludes());
         includes.addAll(getLocalIncludes(module));
         Collection<IErlModule> externalIncludes = null;
         Collection<IErlModule> referencedIncludes = null;
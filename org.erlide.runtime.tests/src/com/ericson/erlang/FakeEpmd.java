@@ -0,0 +1,108 @@
+package com.ericson.erlang;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ericsson.otp.erlang.OtpEpmd;
+
+/**
+ * Just enough of epmd for nodes to publish their names and find each other,
+ * on an ephemeral port, so that the tests need no Erlang installation.
+ * ALIVE2_REQ registers a name until its socket closes, PORT_PLEASE2_REQ looks
+ * it up.
+ */
+public final class FakeEpmd {
+
+    private final ServerSocket socket;
+    private final Map<String, Integer> ports = new ConcurrentHashMap<String, Integer>();
+
+    private FakeEpmd() throws IOException {
+        socket = new ServerSocket(0);
+    }
+
+    /**
+     * Start serving, and make new nodes use it.
+     */
+    public static FakeEpmd start() throws IOException {
+        final FakeEpmd epmd = new FakeEpmd();
+        OtpEpmd.useEpmdPort(epmd.socket.getLocalPort());
+        final Thread t = new Thread("fake epmd") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        epmd.serve(epmd.socket.accept());
+                    }
+                } catch (final IOException e) {
+                    // closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+        return epmd;
+    }
+
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private void serve(final Socket s) {
+        final Thread t = new Thread("fake epmd connection") {
+            @Override
+            public void run() {
+                String registered = null;
+                try {
+                    final DataInputStream in = new DataInputStream(s.getInputStream());
+                    final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                    final byte[] req = new byte[in.readUnsignedShort()];
+                    in.readFully(req);
+                    final DataInputStream r = new DataInputStream(
+                            new ByteArrayInputStream(req));
+                    final int tag = r.readUnsignedByte();
+                    if (tag == 120) {
+                        final int port = r.readUnsignedShort();
+                        r.skipBytes(6);
+                        final byte[] name = new byte[r.readUnsignedShort()];
+                        r.readFully(name);
+                        registered = new String(name, "ISO-8859-1");
+                        ports.put(registered, port);
+                        out.write(new byte[] { 121, 0, 0, 1 });
+                        out.flush();
+                        while (in.read() >= 0) {
+                            // registered until closed
+                        }
+                    } else if (tag == 122) {
+                        final Integer port = ports.get(new String(req, 1, req.length - 1,
+                                "ISO-8859-1"));
+                        if (port == null) {
+                            out.write(new byte[] { 119, 1 });
+                        } else {
+                            out.write(new byte[] { 119, 0, (byte) (port >> 8),
+                                    (byte) (int) port, 72, 0, 0, 5, 0, 5 });
+                        }
+                        out.flush();
+                    }
+                } catch (final IOException e) {
+                    // done with this one
+                } finally {
+                    if (registered != null) {
+                        ports.remove(registered);
+                    }
+                    try {
+                        s.close();
+                    } catch (final IOException e) {
+                    }
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+}
@@ -0,0 +1,177 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * The registry of a node's mailboxes, by pid and by name.
+ */
+public class OtpMailboxesTest {
+
+    private static FakeEpmd epmd;
+    private OtpNode node;
+
+    @BeforeClass
+    public static void startEpmd() throws IOException {
+        epmd = FakeEpmd.start();
+    }
+
+    @AfterClass
+    public static void stopEpmd() throws IOException {
+        epmd.close();
+    }
+
+    @Before
+    public void createNode() throws IOException {
+        node = new OtpNode("mailboxes_test@localhost", "mailboxes_test", 0, false);
+    }
+
+    @After
+    public void closeNode() {
+        node.close();
+    }
+
+    @Test
+    public void namesAreUnique() {
+        final OtpMbox a = node.createMbox("a");
+        assertNotNull(a);
+        assertNull(node.createMbox("a"));
+        assertEquals(a.self(), node.whereis("a"));
+
+        final OtpMbox b = node.createMbox();
+        assertFalse(node.registerName("a", b));
+        assertTrue(node.registerName("b", b));
+        assertEquals(b.self(), node.whereis("b"));
+
+        a.close();
+        assertNull(node.whereis("a"));
+        assertTrue(node.registerName("a", b));
+        assertEquals(b.self(), node.whereis("a"));
+    }
+
+    @Test
+    public void takenNameDoesntUseAPid() {
+        final OtpMbox a = node.createMbox("a");
+        final OtpErlangPid before = node.createMbox().self();
+        for (int i = 0; i < 10; i++) {
+            assertNull(node.createMbox("a"));
+        }
+        final OtpErlangPid after = node.createMbox().self();
+        assertEquals(before.id() + 1, after.id());
+        a.close();
+    }
+
+    @Test
+    public void closingOldOwnerKeepsNewName() {
+        final OtpMbox a = node.createMbox("a");
+        assertTrue(node.registerName(null, a));
+        final OtpMbox b = node.createMbox("a");
+        assertNotNull(b);
+        a.close();
+        assertEquals(b.self(), node.whereis("a"));
+    }
+
+    @Test
+    public void collectedMailboxesAreDropped() throws Exception {
+        createAndForget("gone");
+        assertNotNull(node.whereis("gone"));
+        OtpMbox again = null;
+        for (int i = 0; i < 100 && again == null; i++) {
+            System.gc();
+            Thread.sleep(10);
+            again = node.createMbox("gone");
+        }
+        assertNotNull("name of collected mailbox not freed", again);
+        assertEquals(again.self(), node.whereis("gone"));
+
+        for (int i = 0; i < 1000; i++) {
+            createAndForget("many" + i);
+        }
+        List<String> names = Arrays.asList(node.getNames());
+        for (int i = 0; i < 100 && names.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+            // creating a mailbox drops the collected ones
+            node.createMbox().close();
+            names = Arrays.asList(node.getNames());
+        }
+        assertEquals(Arrays.asList("gone"), names);
+    }
+
+    private void createAndForget(final String name) {
+        assertNotNull(node.createMbox(name));
+    }
+
+    @Test
+    public void concurrentUse() throws Exception {
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        final AtomicInteger sharedOwners = new AtomicInteger();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            final String name = "t" + id + "_" + i;
+                            final OtpMbox m = node.createMbox(name);
+                            assertSame(m.self(), node.whereis(name));
+                            m.send(name, node.node(), new OtpErlangAtom("ping"));
+                            assertEquals(new OtpErlangAtom("ping"), m.receive(1000));
+                            m.close();
+                            assertNull(node.whereis(name));
+
+                            final OtpMbox unnamed = node.createMbox();
+                            assertTrue(node.registerName(name, unnamed));
+                            assertSame(unnamed.self(), node.whereis(name));
+                            assertTrue(node.registerName(null, unnamed));
+                            assertNull(node.whereis(name));
+                            unnamed.close();
+
+                            // all threads want this one
+                            final OtpMbox shared = node.createMbox("shared");
+                            if (shared != null) {
+                                if (sharedOwners.incrementAndGet() != 1) {
+                                    throw new AssertionError("two owners");
+                                }
+                                assertEquals(shared.self(), node.whereis("shared"));
+                                sharedOwners.decrementAndGet();
+                                shared.close();
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(Arrays.asList(), errors);
+        assertEquals(0, node.getNames().length);
+    }
+}
@@ -0,0 +1,91 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+public class OtpMboxTest {
+
+    private static FakeEpmd epmd;
+    private OtpNode node;
+    private OtpMbox mbox;
+
+    @BeforeClass
+    public static void startEpmd() throws IOException {
+        epmd = FakeEpmd.start();
+    }
+
+    @AfterClass
+    public static void stopEpmd() throws IOException {
+        epmd.close();
+    }
+
+    @Before
+    public void createMbox() throws IOException {
+        node = new OtpNode("mbox_test@localhost", "mbox_test", 0, false);
+        mbox = node.createMbox();
+    }
+
+    @After
+    public void closeNode() {
+        // don't leave an interrupt for the next test
+        Thread.interrupted();
+        node.close();
+    }
+
+    @Test
+    public void timedReceiveKeepsTheInterrupt() throws Exception {
+        Thread.currentThread().interrupt();
+        assertNull(mbox.receive(5000));
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void timeoutIsNotAnInterrupt() throws Exception {
+        assertNull(mbox.receive(10));
+        assertFalse(Thread.interrupted());
+        assertTrue(mbox.receiveAll(10, 10).isEmpty());
+        assertFalse(Thread.interrupted());
+    }
+
+    @Test
+    public void receiveAllKeepsTheInterrupt() throws Exception {
+        Thread.currentThread().interrupt();
+        assertTrue(mbox.receiveAll(10, 5000).isEmpty());
+        assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void untimedReceiveKeepsTheInterrupt() throws Exception {
+        final Thread receiver = Thread.currentThread();
+        final Thread sender = new Thread() {
+            @Override
+            public void run() {
+                receiver.interrupt();
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                }
+                mbox.send(mbox.self(), new OtpErlangAtom("hello"));
+            }
+        };
+        sender.start();
+        assertEquals(new OtpErlangAtom("hello"), mbox.receive());
+        assertTrue(Thread.interrupted());
+        sender.join();
+    }
+
+}
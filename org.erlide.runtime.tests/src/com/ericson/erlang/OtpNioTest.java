@@ -0,0 +1,359 @@
+package com.ericson.erlang;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.ericsson.otp.erlang.OtpNodeStatus;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Two nodes talking over loopback, with and without NIO, and a hand written
+ * peer for what a real Erlang node may do to a connection: split frames, send
+ * ticks and go away. Node names are looked up in a {@link FakeEpmd}.
+ */
+public class OtpNioTest {
+
+    private static final String COOKIE = "nio_test";
+    private static final boolean[][] MODES = { { false, false }, { true, true },
+            { true, false }, { false, true } };
+
+    private static FakeEpmd epmd;
+    private static final AtomicInteger nodeCount = new AtomicInteger();
+
+    @BeforeClass
+    public static void startEpmd() throws IOException {
+        epmd = FakeEpmd.start();
+    }
+
+    @AfterClass
+    public static void stopEpmd() throws IOException {
+        epmd.close();
+    }
+
+    @Test
+    public void roundTripsInOrder() throws Exception {
+        for (final boolean[] mode : MODES) {
+            final OtpNode a = newNode(mode[0]);
+            final OtpNode b = newNode(mode[1]);
+            try {
+                startEcho(b);
+                final OtpMbox me = a.createMbox();
+                final int n = 2000;
+                int received = 0;
+                for (int sent = 0; sent < n; sent++) {
+                    me.send("echo", b.node(), request(me.self(), new OtpErlangLong(sent)));
+                    if (sent - received >= 100) {
+                        assertEquals(modeText(mode), new OtpErlangLong(received++),
+                                me.receive(5000));
+                    }
+                }
+                while (received < n) {
+                    assertEquals(modeText(mode), new OtpErlangLong(received++),
+                            me.receive(5000));
+                }
+            } finally {
+                a.close();
+                b.close();
+            }
+        }
+    }
+
+    @Test
+    public void largeMessagesArrive() throws Exception {
+        final byte[] big = new byte[10 * 1024 * 1024];
+        new Random(42).nextBytes(big);
+        for (final boolean[] mode : MODES) {
+            final OtpNode a = newNode(mode[0]);
+            final OtpNode b = newNode(mode[1]);
+            try {
+                startEcho(b);
+                final OtpMbox me = a.createMbox();
+                for (int i = 0; i < 3; i++) {
+                    me.send("echo", b.node(), request(me.self(), new OtpErlangBinary(big)));
+                }
+                for (int i = 0; i < 3; i++) {
+                    final OtpErlangObject reply = me.receive(20000);
+                    assertTrue(modeText(mode), reply instanceof OtpErlangBinary);
+                    assertArrayEquals(big, ((OtpErlangBinary) reply).binaryValue());
+                }
+            } finally {
+                a.close();
+                b.close();
+            }
+        }
+    }
+
+    @Test
+    public void fragmentedFramesAreReassembled() throws Exception {
+        for (final boolean nio : new boolean[] { true, false }) {
+            final OtpNode b = newNode(nio);
+            final RawPeer peer = new RawPeer(b);
+            try {
+                startEcho(b);
+                final byte[] frame1 = peer.regSend("echo", new OtpErlangLong(1));
+                final byte[] frame2 = peer.regSend("echo", new OtpErlangBinary(
+                        new byte[100000]));
+                final byte[] frame3 = peer.regSend("echo", new OtpErlangLong(3));
+                // a byte at a time, then the last frames glued together
+                for (final byte element : frame1) {
+                    peer.out.write(element);
+                    peer.out.flush();
+                }
+                final byte[] both = new byte[frame2.length + frame3.length];
+                System.arraycopy(frame2, 0, both, 0, frame2.length);
+                System.arraycopy(frame3, 0, both, frame2.length, frame3.length);
+                for (int pos = 0; pos < both.length; pos += 777) {
+                    peer.out.write(both, pos, Math.min(777, both.length - pos));
+                    peer.out.flush();
+                    Thread.sleep(0, 100000);
+                }
+                assertEquals(new OtpErlangLong(1), peer.receive());
+                assertEquals(new OtpErlangBinary(new byte[100000]), peer.receive());
+                assertEquals(new OtpErlangLong(3), peer.receive());
+            } finally {
+                peer.close();
+                b.close();
+            }
+        }
+    }
+
+    @Test
+    public void ticksAreAnswered() throws Exception {
+        for (final boolean nio : new boolean[] { true, false }) {
+            final OtpNode b = newNode(nio);
+            final RawPeer peer = new RawPeer(b);
+            try {
+                startEcho(b);
+                for (int i = 0; i < 3; i++) {
+                    peer.out.write(new byte[4]);
+                    peer.out.flush();
+                    assertEquals("tock", 0, peer.in.readInt());
+                }
+                peer.out.write(peer.regSend("echo", new OtpErlangAtom("alive")));
+                peer.out.flush();
+                assertEquals(new OtpErlangAtom("alive"), peer.receive());
+            } finally {
+                peer.close();
+                b.close();
+            }
+        }
+    }
+
+    @Test
+    public void closedPeerIsReported() throws Exception {
+        for (final boolean nio : new boolean[] { true, false }) {
+            final OtpNode b = newNode(nio);
+            final CountDownLatch down = new CountDownLatch(1);
+            final RawPeer peer = new RawPeer(b);
+            b.registerStatusHandler(new OtpNodeStatus() {
+                @Override
+                public void remoteStatus(final String node, final boolean up,
+                        final Object info) {
+                    if (!up && node.equals(peer.name)) {
+                        down.countDown();
+                    }
+                }
+            });
+            try {
+                startEcho(b);
+                peer.out.write(peer.regSend("echo", new OtpErlangLong(1)));
+                peer.out.flush();
+                assertEquals(new OtpErlangLong(1), peer.receive());
+                peer.close();
+                assertTrue("nio " + nio, down.await(5, TimeUnit.SECONDS));
+            } finally {
+                b.close();
+            }
+        }
+    }
+
+    @Test
+    public void linkBreaksWhenNodeCloses() throws Exception {
+        for (final boolean[] mode : MODES) {
+            final OtpNode a = newNode(mode[0]);
+            final OtpNode b = newNode(mode[1]);
+            try {
+                final OtpMbox other = b.createMbox();
+                final OtpMbox me = a.createMbox();
+                me.link(other.self());
+                b.close();
+                try {
+                    me.receive(5000);
+                    throw new AssertionError(modeText(mode) + ": no exit");
+                } catch (final OtpErlangExit e) {
+                    assertEquals(other.self(), e.pid());
+                }
+            } finally {
+                a.close();
+                b.close();
+            }
+        }
+    }
+
+    private static OtpNode newNode(final boolean nio) throws IOException {
+        return new OtpNode("nio_test" + nodeCount.incrementAndGet() + "@localhost",
+                COOKIE, 0, nio);
+    }
+
+    private static String modeText(final boolean[] mode) {
+        return "nio " + mode[0] + "/" + mode[1];
+    }
+
+    private static OtpErlangTuple request(final OtpErlangPid from,
+            final OtpErlangObject payload) {
+        return new OtpErlangTuple(new OtpErlangObject[] { from, payload });
+    }
+
+    /*
+     * A mailbox "echo" that sends {From, Msg}'s Msg back to From.
+     */
+    private static void startEcho(final OtpNode node) {
+        final OtpMbox echo = node.createMbox("echo");
+        final Thread t = new Thread("echo") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final OtpErlangTuple msg = (OtpErlangTuple) echo.receive();
+                        echo.send((OtpErlangPid) msg.elementAt(0), msg.elementAt(1));
+                    }
+                } catch (final Exception e) {
+                    // node closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /*
+     * The connecting side of the distribution protocol, written out by hand so
+     * the test decides how the bytes hit the socket.
+     */
+    private static final class RawPeer {
+        final String name = "raw" + nodeCount.incrementAndGet() + "@localhost";
+        final OtpErlangPid self = new OtpErlangPid(name, 1, 0, 1);
+        final Socket socket;
+        final DataInputStream in;
+        final OutputStream out;
+
+        RawPeer(final OtpNode node) throws Exception {
+            socket = new Socket("localhost", node.port());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(socket.getInputStream());
+            final DataOutputStream dout = new DataOutputStream(socket.getOutputStream());
+            out = dout;
+
+            // send_name: 'n', version 5, extended references and pids/ports
+            dout.writeShort(7 + name.length());
+            dout.writeByte('n');
+            dout.writeShort(5);
+            dout.writeInt(0x4 | 0x100 | 0x400);
+            dout.writeBytes(name);
+            dout.flush();
+
+            final byte[] status = handshakePacket();
+            assertEquals("sok", new String(status, "ISO-8859-1"));
+
+            final DataInputStream challenge = new DataInputStream(
+                    new ByteArrayInputStream(handshakePacket()));
+            assertEquals('n', challenge.readUnsignedByte());
+            challenge.skipBytes(6);
+            final int herChallenge = challenge.readInt();
+
+            dout.writeShort(21);
+            dout.writeByte('r');
+            dout.writeInt(17);
+            dout.write(digest(herChallenge));
+            dout.flush();
+
+            final byte[] ack = handshakePacket();
+            assertEquals('a', ack[0]);
+            assertArrayEquals(digest(17), Arrays.copyOfRange(ack, 1, ack.length));
+        }
+
+        private byte[] handshakePacket() throws IOException {
+            final byte[] packet = new byte[in.readUnsignedShort()];
+            in.readFully(packet);
+            return packet;
+        }
+
+        private byte[] digest(final int challenge) throws Exception {
+            final MessageDigest md5 = MessageDigest.getInstance("MD5");
+            md5.update(COOKIE.getBytes("ISO-8859-1"));
+            md5.update(String.valueOf(challenge & 0xFFFFFFFFL).getBytes("ISO-8859-1"));
+            return md5.digest();
+        }
+
+        /*
+         * A whole frame, length included, sending {self, msg} to the name.
+         */
+        byte[] regSend(final String to, final OtpErlangObject msg) {
+            final OtpOutputStream frame = new OtpOutputStream();
+            frame.write4BE(0);
+            frame.write1(112);
+            frame.write1(131);
+            frame.write_any(new OtpErlangTuple(new OtpErlangObject[] {
+                    new OtpErlangLong(6), self, new OtpErlangAtom(""),
+                    new OtpErlangAtom(to) }));
+            frame.write1(131);
+            frame.write_any(request(self, msg));
+            final byte[] bytes = frame.toByteArray();
+            final int len = bytes.length - 4;
+            bytes[0] = (byte) (len >>> 24);
+            bytes[1] = (byte) (len >>> 16);
+            bytes[2] = (byte) (len >>> 8);
+            bytes[3] = (byte) len;
+            return bytes;
+        }
+
+        /*
+         * The message of the next frame, skipping ticks.
+         */
+        OtpErlangObject receive() throws Exception {
+            socket.setSoTimeout(10000);
+            int len;
+            do {
+                len = in.readInt();
+            } while (len == 0);
+            final byte[] frame = new byte[len];
+            in.readFully(frame);
+            final OtpInputStream ibuf = new OtpInputStream(frame, 0);
+            assertEquals(112, ibuf.read1());
+            ibuf.read_any();
+            return ibuf.read_any();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+    }
+}
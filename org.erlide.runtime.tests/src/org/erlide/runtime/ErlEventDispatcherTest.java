@@ -0,0 +1,137 @@
+package org.erlide.runtime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlangEventHandler;
+import org.erlide.runtime.internal.ErlEventDispatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.google.common.eventbus.Subscribe;
+
+public class ErlEventDispatcherTest {
+
+    private static class Handler extends ErlangEventHandler {
+        final AtomicInteger received = new AtomicInteger();
+        final CountDownLatch release;
+        final CountDownLatch arrived = new CountDownLatch(1);
+
+        Handler(final String topic, final CountDownLatch release) {
+            super(topic, "test");
+            this.release = release;
+        }
+
+        @Subscribe
+        public void handleEvent(final ErlEvent event) throws InterruptedException {
+            if (!event.getTopic().equals(getTopic())) {
+                return;
+            }
+            received.incrementAndGet();
+            arrived.countDown();
+            release.await();
+        }
+    }
+
+    private ErlEventDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ErlEventDispatcher("test", 2);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.close();
+        System.clearProperty("erlide.event.policy.flood");
+    }
+
+    private static ErlEvent event(final String topic) {
+        return new ErlEvent(topic, null, new OtpErlangAtom("x"), null);
+    }
+
+    @Test
+    public void slowTopicDoesntHoldUpOthers() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        final Handler slow = new Handler("slow", never);
+        final Handler fast = new Handler("fast", new CountDownLatch(0));
+        dispatcher.register(slow);
+        dispatcher.register(fast);
+
+        dispatcher.post(event("slow"));
+        dispatcher.post(event("fast"));
+
+        assertThat(fast.arrived.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(slow.arrived.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(fast.received.get(), is(1));
+        assertThat(slow.received.get(), is(1));
+        never.countDown();
+    }
+
+    @Test
+    public void fullQueueDropsWhenAsked() throws InterruptedException {
+        System.setProperty("erlide.event.policy.flood", "drop");
+        final CountDownLatch release = new CountDownLatch(1);
+        final Handler handler = new Handler("flood", release);
+        dispatcher.register(handler);
+
+        dispatcher.post(event("flood"));
+        assertThat(handler.arrived.await(5, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 10; i++) {
+            dispatcher.post(event("flood"));
+        }
+        assertThat(dispatcher.getDroppedCount("flood"), is(8L));
+        release.countDown();
+    }
+
+    @Test
+    public void blockedPostReturnsOnClose() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Handler handler = new Handler("full", release);
+        dispatcher.register(handler);
+        dispatcher.post(event("full"));
+        assertThat(handler.arrived.await(5, TimeUnit.SECONDS), is(true));
+        dispatcher.post(event("full"));
+        dispatcher.post(event("full"));
+
+        final CountDownLatch posted = new CountDownLatch(1);
+        final Thread poster = new Thread() {
+            @Override
+            public void run() {
+                dispatcher.post(event("full"));
+                posted.countDown();
+            }
+        };
+        poster.start();
+        assertThat(posted.await(200, TimeUnit.MILLISECONDS), is(false));
+        dispatcher.close();
+        assertThat(posted.await(5, TimeUnit.SECONDS), is(true));
+        release.countDown();
+    }
+
+    @Test
+    public void generalListenersSeeAllTopics() throws InterruptedException {
+        final AtomicInteger received = new AtomicInteger();
+        dispatcher.register(new Handler("one", new CountDownLatch(0)));
+        dispatcher.register(new Object() {
+            @Subscribe
+            public void handleEvent(final ErlEvent event) {
+                received.incrementAndGet();
+            }
+        });
+
+        dispatcher.post(event("one"));
+        dispatcher.post(event("two"));
+
+        assertThat(received.get(), is(2));
+        assertThat(dispatcher.getDroppedCount("one"), is(0L));
+    }
+
+}
@@ -5,10 +5,14 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.util.concurrent.TimeUnit;
+
 import org.erlide.runtime.api.IRpcSite;
 import org.erlide.runtime.api.RuntimeData;
 import org.erlide.runtime.internal.ErlRuntime;
 import org.erlide.runtime.internal.ManagedErlRuntime;
+import org.erlide.runtime.rpc.RpcCompletionQueue;
+import org.erlide.runtime.rpc.RpcCompletionQueue.Completion;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.runtimeinfo.RuntimeInfo;
 import org.erlide.runtime.runtimeinfo.RuntimeInfoCatalog;
@@ -76,6 +80,22 @@ public class ErlRuntimeTest {
         expect(runtime, process, 0, State.TERMINATED);
     }
 
+    @Test
+    public void asyncResultsAreHandedOutAsTheyArrive() throws Exception {
+        final IRpcSite site = runtime.getRpcSite();
+        final RpcCompletionQueue<String> queue = new RpcCompletionQueue<String>();
+        queue.add("slow", site.async_call("timer", "sleep", "i", 500));
+        queue.add("fast", site.async_call("erlang", "now", ""));
+        assertThat("pending", queue.size(), is(2));
+        final Completion<String> first = queue.poll(5, TimeUnit.SECONDS);
+        assertThat("first", first.getKey(), is("fast"));
+        assertThat("done", first.getFuture().isDone(), is(true));
+        final Completion<String> second = queue.poll(5, TimeUnit.SECONDS);
+        assertThat("second", second.getKey(), is("slow"));
+        assertThat("result", second.getFuture().checkedGet().toString(), is("ok"));
+        assertThat("empty", queue.isEmpty(), is(true));
+    }
+
     @Test
     public void shutdownIsDetected() {
         final IRpcSite site = runtime.getRpcSite();
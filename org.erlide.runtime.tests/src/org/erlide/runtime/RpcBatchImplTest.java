@@ -0,0 +1,201 @@
+package org.erlide.runtime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.erlide.runtime.internal.rpc.RpcSite;
+import org.erlide.runtime.rpc.IRpcBatch;
+import org.erlide.runtime.rpc.RpcResult;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.erlang.OtpErlang;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericson.erlang.FakeEpmd;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Lists;
+
+/**
+ * A mailbox plays rex. Its functions return their first argument, except
+ * f:fail, which fails, and f:hang, which never returns.
+ */
+public class RpcBatchImplTest {
+
+    private static FakeEpmd epmd;
+    private OtpNode node;
+    private RpcSite site;
+    private volatile boolean batchLoaded;
+    private final List<String> received = new CopyOnWriteArrayList<String>();
+
+    @BeforeClass
+    public static void startEpmd() throws IOException {
+        epmd = FakeEpmd.start();
+    }
+
+    @AfterClass
+    public static void stopEpmd() throws IOException {
+        epmd.close();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        node = new OtpNode("batch_test@localhost", "batch_test", 0, false);
+        startRex(node.createMbox("rex"));
+        site = new RpcSite(null, node, node.node());
+        site.setConnected(true);
+    }
+
+    @After
+    public void tearDown() {
+        site.setConnected(false);
+        node.close();
+    }
+
+    @Test
+    public void resultsComeInOrder() throws Exception {
+        batchLoaded = true;
+        final List<RpcResult> results = newBatch(1, 2, 3).execute();
+
+        assertThat(values(results), contains(1L, 2L, 3L));
+        assertThat(received, contains("erlide_rpc_batch:call"));
+    }
+
+    @Test
+    public void failedCallsGetTheirOwnResult() throws Exception {
+        batchLoaded = true;
+        final IRpcBatch batch = newBatch(1);
+        batch.add("f", "fail", "i", 2);
+        batch.add("f", "id", "i", 3);
+        final List<RpcResult> results = batch.execute();
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).isOk(), is(true));
+        assertThat(results.get(1).isOk(), is(false));
+        assertThat(results.get(2).getValue(), is((OtpErlangObject) new OtpErlangLong(3)));
+    }
+
+    @Test
+    public void callsAreSentSeparatelyWithoutTheBatchModule() throws Exception {
+        batchLoaded = false;
+        final List<RpcResult> results = newBatch(1, 2, 3).execute();
+
+        assertThat(values(results), contains(1L, 2L, 3L));
+        assertThat(received, contains("erlide_rpc_batch:call", "f:id", "f:id", "f:id"));
+    }
+
+    @Test
+    public void emptyBatchSendsNothing() throws Exception {
+        assertThat(site.batch().execute().isEmpty(), is(true));
+        assertThat(received.isEmpty(), is(true));
+    }
+
+    @Test
+    public void hangingCallTimesOutTheBatch() throws Exception {
+        batchLoaded = false;
+        final IRpcBatch batch = newBatch(1);
+        batch.add("f", "hang", "i", 2);
+        batch.add("f", "id", "i", 3);
+        final long start = System.currentTimeMillis();
+        try {
+            batch.execute(200);
+            throw new AssertionError("no timeout");
+        } catch (final RpcTimeoutException e) {
+            assertThat(System.currentTimeMillis() - start, is(lessThan(2000L)));
+        }
+    }
+
+    private IRpcBatch newBatch(final int... args) throws Exception {
+        final IRpcBatch batch = site.batch();
+        for (final int arg : args) {
+            batch.add("f", "id", "i", arg);
+        }
+        return batch;
+    }
+
+    private static List<Long> values(final List<RpcResult> results) throws Exception {
+        final List<Long> values = Lists.newArrayList();
+        for (final RpcResult result : results) {
+            assertThat(result.toString(), result.isOk(), is(true));
+            values.add(((OtpErlangLong) result.getValue()).longValue());
+        }
+        return values;
+    }
+
+    /*
+     * Answers {'$gen_call', {Pid, Tag}, {call, M, F, A, GroupLeader}} with
+     * {Tag, Result}.
+     */
+    private void startRex(final OtpMbox rex) {
+        final Thread t = new Thread("rex") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        final OtpErlangTuple msg = (OtpErlangTuple) rex.receive();
+                        final OtpErlangTuple from = (OtpErlangTuple) msg.elementAt(1);
+                        final OtpErlangTuple call = (OtpErlangTuple) msg.elementAt(2);
+                        received.add(call.elementAt(1) + ":" + call.elementAt(2));
+                        final OtpErlangObject result = apply(call.elementAt(1),
+                                call.elementAt(2), call.elementAt(3));
+                        if (result != null) {
+                            rex.send((OtpErlangPid) from.elementAt(0),
+                                    OtpErlang.mkTuple(from.elementAt(1), result));
+                        }
+                    }
+                } catch (final Exception e) {
+                    // node closed
+                }
+            }
+        };
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private OtpErlangObject apply(final OtpErlangObject m, final OtpErlangObject f,
+            final OtpErlangObject a) {
+        final String mf = ((OtpErlangAtom) m).atomValue() + ":"
+                + ((OtpErlangAtom) f).atomValue();
+        final OtpErlangList args = (OtpErlangList) a;
+        if ("erlide_rpc_batch:call".equals(mf)) {
+            if (!batchLoaded) {
+                return OtpErlang.mkTuple(new OtpErlangAtom("badrpc"), OtpErlang.mkTuple(
+                        new OtpErlangAtom("EXIT"), OtpErlang.mkTuple(new OtpErlangAtom(
+                                "undef"), new OtpErlangList(OtpErlang.mkTuple(
+                                new OtpErlangAtom("erlide_rpc_batch"), new OtpErlangAtom(
+                                        "call"), args, new OtpErlangList())))));
+            }
+            final List<OtpErlangObject> results = Lists.newArrayList();
+            for (final OtpErlangObject c : (OtpErlangList) args.elementAt(0)) {
+                final OtpErlangTuple t = (OtpErlangTuple) c;
+                results.add(apply(t.elementAt(0), t.elementAt(1), t.elementAt(2)));
+            }
+            return new OtpErlangList(results.toArray(new OtpErlangObject[results.size()]));
+        }
+        if ("f:fail".equals(mf)) {
+            return OtpErlang.mkTuple(new OtpErlangAtom("badrpc"), OtpErlang.mkTuple(
+                    new OtpErlangAtom("EXIT"), OtpErlang.mkTuple(new OtpErlangAtom(
+                            "badarg"), new OtpErlangList())));
+        }
+        if ("f:hang".equals(mf)) {
+            return null;
+        }
+        return args.elementAt(0);
+    }
+
+}
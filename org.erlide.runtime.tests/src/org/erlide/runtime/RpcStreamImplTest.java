@@ -0,0 +1,194 @@
+package org.erlide.runtime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.erlide.runtime.internal.rpc.RpcStreamImpl;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.erlang.OtpErlang;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ericson.erlang.FakeEpmd;
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+
+/**
+ * A mailbox plays erlide_stream's producer.
+ */
+public class RpcStreamImplTest {
+
+    private static FakeEpmd epmd;
+    private OtpNode node;
+    private OtpMbox producer;
+    private OtpMbox consumer;
+    private OtpErlangRef ref;
+    private RpcStreamImpl stream;
+
+    @BeforeClass
+    public static void startEpmd() throws IOException {
+        epmd = FakeEpmd.start();
+    }
+
+    @AfterClass
+    public static void stopEpmd() throws IOException {
+        epmd.close();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        node = new OtpNode("stream_test@localhost", "stream_test", 0, false);
+        producer = node.createMbox();
+        consumer = node.createMbox();
+        ref = node.createRef();
+        stream = new RpcStreamImpl(consumer, ref, "m:f");
+    }
+
+    @After
+    public void tearDown() {
+        node.close();
+    }
+
+    private void send(final String tag, final OtpErlangObject... args) {
+        final OtpErlangObject[] msg = new OtpErlangObject[args.length + 2];
+        msg[0] = ref;
+        msg[1] = new OtpErlangAtom(tag);
+        System.arraycopy(args, 0, msg, 2, args.length);
+        producer.send(consumer.self(), OtpErlang.mkTuple(msg));
+    }
+
+    private void sendChunk(final long... items) {
+        final OtpErlangObject[] list = new OtpErlangObject[items.length];
+        for (int i = 0; i < items.length; i++) {
+            list[i] = new OtpErlangLong(items[i]);
+        }
+        send("chunk", producer.self(), new OtpErlangList(list));
+    }
+
+    private OtpErlangObject producerGot() throws Exception {
+        return producer.receive(1000);
+    }
+
+    @Test
+    public void itemsArriveInOrderAndChunksAreAcked() throws Exception {
+        send("start", producer.self());
+        sendChunk(1, 2, 3);
+        sendChunk(4);
+        send("done", new OtpErlangAtom("ok"));
+
+        for (int i = 1; i <= 4; i++) {
+            assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong(i)));
+        }
+        assertThat(stream.next(1000), is(nullValue()));
+        assertThat(stream.getResult(), is((OtpErlangObject) new OtpErlangAtom("ok")));
+
+        final OtpErlangObject ack = OtpErlang.mkTuple(ref, new OtpErlangAtom("ack"));
+        assertThat(producerGot(), is(ack));
+        assertThat(producerGot(), is(ack));
+        assertThat(producerGot(), is(nullValue()));
+    }
+
+    @Test
+    public void nextChunkTakesTheRestOfAChunk() throws Exception {
+        sendChunk(1, 2, 3);
+        sendChunk(4, 5);
+        send("done", new OtpErlangAtom("ok"));
+
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong(1)));
+        final List<OtpErlangObject> rest = stream.nextChunk(1000);
+        assertThat(rest, contains((OtpErlangObject) new OtpErlangLong(2),
+                new OtpErlangLong(3)));
+        assertThat(stream.nextChunk(1000), contains(
+                (OtpErlangObject) new OtpErlangLong(4), new OtpErlangLong(5)));
+        assertThat(stream.nextChunk(1000), is(nullValue()));
+    }
+
+    @Test
+    public void smallIntegersSentAsAString() throws Exception {
+        send("chunk", producer.self(), new OtpErlangString("ab"));
+        send("done", new OtpErlangAtom("ok"));
+
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong('a')));
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong('b')));
+        assertThat(stream.next(1000), is(nullValue()));
+    }
+
+    @Test
+    public void otherMessagesAreIgnored() throws Exception {
+        producer.send(consumer.self(), OtpErlang.mkTuple(node.createRef(),
+                new OtpErlangAtom("chunk"), producer.self(), new OtpErlangList()));
+        producer.send(consumer.self(), new OtpErlangAtom("junk"));
+        sendChunk(1);
+        send("done", new OtpErlangAtom("ok"));
+
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong(1)));
+        assertThat(stream.next(1000), is(nullValue()));
+    }
+
+    @Test(expected = RpcException.class)
+    public void remoteErrorIsThrown() throws Exception {
+        sendChunk(1);
+        send("error", new OtpErlangAtom("badarg"));
+
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong(1)));
+        stream.next(1000);
+    }
+
+    @Test(expected = RpcException.class)
+    public void producerGivingUpIsThrown() throws Exception {
+        send("cancelled");
+        stream.next(1000);
+    }
+
+    @Test(expected = RpcTimeoutException.class)
+    public void silenceTimesOut() throws Exception {
+        send("start", producer.self());
+        stream.next(50);
+    }
+
+    @Test
+    public void interruptStopsTheStream() throws Exception {
+        send("start", producer.self());
+        Thread.currentThread().interrupt();
+        try {
+            stream.next(1000);
+            throw new AssertionError("no exception");
+        } catch (final RpcTimeoutException e) {
+            throw new AssertionError("interrupt taken for a timeout");
+        } catch (final RpcException e) {
+            assertThat(Thread.interrupted(), is(true));
+        }
+        assertThat(producerGot(),
+                is(OtpErlang.mkTuple(ref, new OtpErlangAtom("cancel"))));
+    }
+
+    @Test
+    public void cancelStopsTheProducer() throws Exception {
+        send("start", producer.self());
+        sendChunk(1, 2);
+        assertThat(stream.next(1000), is((OtpErlangObject) new OtpErlangLong(1)));
+        stream.cancel();
+
+        assertThat(producerGot(),
+                is(OtpErlang.mkTuple(ref, new OtpErlangAtom("ack"))));
+        assertThat(producerGot(),
+                is(OtpErlang.mkTuple(ref, new OtpErlangAtom("cancel"))));
+        assertThat(stream.next(1000), is(nullValue()));
+    }
+
+}
@@ -1,15 +1,27 @@
 package org.erlide.runtime.api;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.erlide.runtime.rpc.IRpcBatch;
+import org.erlide.runtime.rpc.IRpcFuture;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.OtpErlang;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangBinary;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 public class BeamLoader {
 
@@ -42,6 +54,178 @@ public class BeamLoader {
         return false;
     }
 
+    private static final String LOADER_MODULE = "erlide_code_loader";
+
+    /**
+     * The beams are sent in messages of about this size.
+     */
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final long LOAD_TIMEOUT = 60000;
+
+    /**
+     * Like loadBeam, for many modules at once. The beams are sent to
+     * erlide_code_loader in a few calls that are all sent before waiting for
+     * any reply. Modules whose code is already loaded are left alone. Until
+     * erlide_code_loader is loaded, the modules are loaded with a batch of
+     * RPCs instead.
+     * 
+     * @return the modules that couldn't be loaded
+     */
+    public static Collection<String> loadBeams(final IRpcSite backend,
+            final Map<String, OtpErlangBinary> beams) {
+        final Map<String, OtpErlangBinary> toLoad = Maps.newLinkedHashMap(beams);
+        final List<String> failed = Lists.newArrayList();
+        // the loader can't load itself
+        final OtpErlangBinary loader = toLoad.remove(LOADER_MODULE);
+        if (loader != null && !loadBeam(backend, LOADER_MODULE, loader)) {
+            failed.add(LOADER_MODULE);
+        }
+        final List<Map<String, OtpErlangBinary>> chunks = split(toLoad);
+        final List<IRpcFuture> futures = Lists.newArrayList();
+        try {
+            for (final Map<String, OtpErlangBinary> chunk : chunks) {
+                futures.add(backend.async_call(LOADER_MODULE, "load_binaries", "x",
+                        asList(chunk)));
+            }
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+            failed.addAll(toLoad.keySet());
+            return failed;
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            final OtpErlangObject reply = get(futures.get(i));
+            if (reply == null) {
+                failed.addAll(chunks.get(i).keySet());
+            } else if (reply instanceof OtpErlangList) {
+                failed.addAll(getFailed((OtpErlangList) reply));
+            } else {
+                // most likely there's no erlide_code_loader
+                failed.addAll(loadSeparately(backend, chunks.get(i)));
+            }
+        }
+        return failed;
+    }
+
+    private static List<Map<String, OtpErlangBinary>> split(
+            final Map<String, OtpErlangBinary> beams) {
+        final List<Map<String, OtpErlangBinary>> result = Lists.newArrayList();
+        Map<String, OtpErlangBinary> chunk = null;
+        int size = 0;
+        for (final Entry<String, OtpErlangBinary> beam : beams.entrySet()) {
+            if (chunk == null || size >= CHUNK_SIZE) {
+                chunk = Maps.newLinkedHashMap();
+                result.add(chunk);
+                size = 0;
+            }
+            chunk.put(beam.getKey(), beam.getValue());
+            size += beam.getValue().size();
+        }
+        return result;
+    }
+
+    private static OtpErlangList asList(final Map<String, OtpErlangBinary> beams) {
+        final List<OtpErlangObject> result = Lists.newArrayList();
+        for (final Entry<String, OtpErlangBinary> beam : beams.entrySet()) {
+            result.add(OtpErlang.mkTuple(OtpErlangAtom.intern(beam.getKey()),
+                    beam.getValue()));
+        }
+        return new OtpErlangList(result.toArray(new OtpErlangObject[result.size()]));
+    }
+
+    /**
+     * @return the reply, or null if it didn't come
+     */
+    private static OtpErlangObject get(final IRpcFuture future) {
+        try {
+            return future.checkedGet(LOAD_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(false);
+            ErlLogger.warn(e);
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+        }
+        return null;
+    }
+
+    /**
+     * @param results
+     *            {Module, ok | unchanged | {error, Reason}} for each module
+     */
+    private static List<String> getFailed(final OtpErlangList results) {
+        final List<String> failed = Lists.newArrayList();
+        for (final OtpErlangObject elem : results) {
+            try {
+                final OtpErlangTuple t = (OtpErlangTuple) elem;
+                final OtpErlangObject result = t.elementAt(1);
+                if (result instanceof OtpErlangTuple) {
+                    final String moduleName = ((OtpErlangAtom) t.elementAt(0))
+                            .atomValue();
+                    ErlLogger.debug("Could not load %s: %s", moduleName,
+                            ((OtpErlangTuple) result).elementAt(1));
+                    failed.add(moduleName);
+                }
+            } catch (final ClassCastException e) {
+                ErlLogger.warn("Unexpected load result %s", elem);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * All modules are checked with a single batch of RPCs, then loaded with
+     * another one.
+     */
+    private static Collection<String> loadSeparately(final IRpcSite backend,
+            final Map<String, OtpErlangBinary> beams) {
+        final List<String> failed = Lists.newArrayList();
+        try {
+            final IRpcBatch checks = backend.batch();
+            for (final String moduleName : beams.keySet()) {
+                checks.add("code", "is_sticky", "a", moduleName);
+            }
+            final List<RpcResult> sticky = checks.execute();
+
+            final IRpcBatch loads = backend.batch();
+            final List<String> loading = Lists.newArrayList();
+            int i = 0;
+            for (final Entry<String, OtpErlangBinary> beam : beams.entrySet()) {
+                final String moduleName = beam.getKey();
+                final RpcResult r = sticky.get(i++);
+                // TODO handle sticky directories
+                if (!r.isOk() || !(r.getValue() instanceof OtpErlangAtom)) {
+                    ErlLogger.warn("Could not check %s: %s", moduleName, r.getValue());
+                    failed.add(moduleName);
+                } else if (((OtpErlangAtom) r.getValue()).booleanValue()) {
+                    ErlLogger.warn("sticky:: %s", moduleName);
+                    failed.add(moduleName);
+                } else {
+                    loads.add("code", "load_binary", "asb", moduleName, moduleName
+                            + ".erl", beam.getValue());
+                    loading.add(moduleName);
+                }
+            }
+            final List<RpcResult> loaded = loads.execute();
+            for (i = 0; i < loading.size(); i++) {
+                if (!isLoaded(loaded.get(i))) {
+                    failed.add(loading.get(i));
+                }
+            }
+        } catch (final RpcException e) {
+            ErlLogger.warn(e);
+            return beams.keySet();
+        }
+        return failed;
+    }
+
+    private static boolean isLoaded(final RpcResult r) {
+        if (r.isOk() && r.getValue() instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) r.getValue();
+            return new OtpErlangAtom("module").equals(t.elementAt(0));
+        }
+        return false;
+    }
+
     public static void reloadAllCode(final IRpcSite backend) {
         try {
             final OtpErlangList loaded = (OtpErlangList) backend.call("code",
@@ -56,10 +240,12 @@ public class BeamLoader {
                     mine.add(mod);
                 }
             }
+            final IRpcBatch reloads = backend.batch();
             for (final OtpErlangAtom mod : mine) {
                 // ErlLogger.debug(">>> reload " + mod);
-                backend.call("c", "l", "x", mod);
+                reloads.add("c", "l", "x", mod);
             }
+            reloads.execute();
         } catch (final Exception e) {
             ErlLogger.error(e);
         }
@@ -13,12 +13,22 @@ package org.erlide.runtime.api;
 import org.erlide.util.IDisposable;
 
 import com.ericsson.otp.erlang.OtpMbox;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service;
 
 public interface IErlRuntime extends IDisposable {
 
     Service.State startAndWait();
 
+    /**
+     * Doesn't start the runtime.
+     * 
+     * @return a future that gets the rpc site when the node is up and its
+     *         code server is running, or fails if the node exited or
+     *         couldn't be started
+     */
+    ListenableFuture<IRpcSite> whenReady();
+
     boolean isRunning();
 
     String getNodeName();
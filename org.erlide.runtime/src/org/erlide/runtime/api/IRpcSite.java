@@ -1,14 +1,15 @@
 package org.erlide.runtime.api;
 
+import org.erlide.runtime.rpc.IRpcBatch;
 import org.erlide.runtime.rpc.IRpcCallback;
 import org.erlide.runtime.rpc.IRpcFuture;
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.IRpcStream;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcResult;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
-import com.ericsson.otp.erlang.OtpMbox;
 
 public interface IRpcSite {
 
@@ -82,6 +83,19 @@ public interface IRpcSite {
     void async_call_result(final IRpcResultCallback cb, final String m, final String f,
             final String signature, final Object... args) throws RpcException;
 
+    /**
+     * Calls a function that sends its result in chunks, with erlide_stream. The
+     * first argument is implicit and is the sink where the chunks are to be
+     * sent.
+     */
+    IRpcStream async_call_stream(final String m, final String f,
+            final String signature, final Object... args) throws RpcException;
+
+    /**
+     * Start a batch of calls that are made in a single round trip.
+     */
+    IRpcBatch batch();
+
     /**
      * Convenience method to send a remote message.
      */
@@ -97,9 +111,6 @@ public interface IRpcSite {
      */
     void send(final String fullNodeName, final String name, final Object msg);
 
-    OtpErlangObject getRpcResult(OtpMbox mbox, long timeout, String env)
-            throws RpcException;
-
     void setConnected(boolean b);
 
 }
@@ -0,0 +1,210 @@
+package org.erlide.runtime.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.erlide.runtime.events.ErlEvent;
+import org.erlide.runtime.events.ErlangEventHandler;
+import org.erlide.util.ErlLogger;
+
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Delivers the events of a runtime to their handlers. Handlers for a topic (
+ * {@link ErlangEventHandler}s) get their own bus, fed by a dedicated thread
+ * through a bounded queue, so that a flood of events on one topic (trace,
+ * console) doesn't hold up the runtime's receive loop or the other topics.
+ * <p>
+ * Any other listener is registered on a general bus that sees all events,
+ * like before. When a topic's queue is full, the event is either waited for
+ * (the default) or dropped, as set by the system property
+ * <code>erlide.event.policy</code> or <code>erlide.event.policy.&lt;topic&gt;</code>
+ * (<code>block</code> or <code>drop</code>).
+ */
+public class ErlEventDispatcher {
+
+    public enum Policy {
+        BLOCK, DROP
+    }
+
+    private static final int QUEUE_SIZE = Integer.getInteger("erlide.event.queue", 1000);
+
+    static Policy getPolicy(final String topic) {
+        final String value = System.getProperty("erlide.event.policy." + topic,
+                System.getProperty("erlide.event.policy", "block"));
+        return "drop".equalsIgnoreCase(value) ? Policy.DROP : Policy.BLOCK;
+    }
+
+    private final class Topic {
+        final EventBus bus;
+        final ThreadPoolExecutor executor;
+        final AtomicLong dropped = new AtomicLong();
+
+        Topic(final String topic, final Policy policy, final int queueSize) {
+            bus = new EventBus(name + ":" + topic);
+            final RejectedExecutionHandler rejected = policy == Policy.DROP ? new Drop(
+                    topic, dropped) : new Block();
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "events " + name + " "
+                                    + topic);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, rejected);
+        }
+
+        void post(final ErlEvent event) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    bus.post(event);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for room in the queue. The task is put there directly, so the
+     * executor state has to be checked again after that: a task queued after
+     * shutdown would never run.
+     */
+    private static final class Block implements RejectedExecutionHandler {
+        private static final long RETRY_MS = 100;
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            try {
+                while (!executor.isShutdown()) {
+                    if (executor.getQueue().offer(r, RETRY_MS, TimeUnit.MILLISECONDS)) {
+                        if (executor.isShutdown()) {
+                            executor.remove(r);
+                        }
+                        return;
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Drop implements RejectedExecutionHandler {
+        private final String topic;
+        private final AtomicLong dropped;
+
+        Drop(final String topic, final AtomicLong dropped) {
+            this.topic = topic;
+            this.dropped = dropped;
+        }
+
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+            final long n = dropped.incrementAndGet();
+            if (n == 1 || n % 1000 == 0) {
+                ErlLogger.warn("event queue for '%s' is full, %d events dropped", topic,
+                        n);
+            }
+        }
+    }
+
+    private final String name;
+    private final int queueSize;
+    private final EventBus general;
+    private final AtomicInteger generalListeners = new AtomicInteger();
+    private final ConcurrentMap<String, Topic> topics = Maps.newConcurrentMap();
+    private volatile boolean closed;
+
+    public ErlEventDispatcher(final String name) {
+        this(name, QUEUE_SIZE);
+    }
+
+    public ErlEventDispatcher(final String name, final int queueSize) {
+        this.name = name;
+        this.queueSize = queueSize;
+        general = new EventBus(name);
+        general.register(this);
+    }
+
+    /**
+     * Register a listener. {@link ErlangEventHandler}s with a topic receive
+     * only that topic's events, on the topic's thread; other listeners get
+     * all events, on the posting thread.
+     */
+    public void register(final Object listener) {
+        if (listener instanceof ErlangEventHandler) {
+            final String topic = ((ErlangEventHandler) listener).getTopic();
+            if (topic != null) {
+                getTopic(topic).bus.register(listener);
+                return;
+            }
+        }
+        general.register(listener);
+        generalListeners.incrementAndGet();
+    }
+
+    public void post(final ErlEvent event) {
+        if (closed) {
+            return;
+        }
+        final Topic topic = topics.get(event.getTopic());
+        if (topic != null) {
+            topic.post(event);
+        }
+        // with no listener at all, let the general bus report a DeadEvent
+        if (topic == null || generalListeners.get() > 0) {
+            general.post(event);
+        }
+    }
+
+    /**
+     * @return the number of events dropped for the topic because its queue
+     *         was full
+     */
+    public long getDroppedCount(final String topic) {
+        final Topic t = topics.get(topic);
+        return t == null ? 0 : t.dropped.get();
+    }
+
+    /**
+     * Stop the topic threads. Queued events are still delivered, new ones are
+     * ignored.
+     */
+    public void close() {
+        closed = true;
+        for (final Topic topic : topics.values()) {
+            topic.executor.shutdown();
+        }
+    }
+
+    @Subscribe
+    public void deadEventHandler(final DeadEvent dead) {
+        ErlLogger.warn("Dead event: " + dead + " in runtime " + name);
+    }
+
+    private Topic getTopic(final String topic) {
+        Topic result = topics.get(topic);
+        if (result == null) {
+            final Topic newTopic = new Topic(topic, getPolicy(topic), queueSize);
+            result = topics.putIfAbsent(topic, newTopic);
+            if (result == null) {
+                result = newTopic;
+            } else {
+                newTopic.executor.shutdown();
+            }
+        }
+        return result;
+    }
+
+}
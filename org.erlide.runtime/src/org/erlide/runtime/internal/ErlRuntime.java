@@ -12,8 +12,10 @@ package org.erlide.runtime.internal;
 
 import java.io.IOException;
 import java.net.Socket;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.erlide.runtime.api.ErlSystemStatus;
 import org.erlide.runtime.api.IErlRuntime;
@@ -27,27 +29,38 @@ import org.erlide.runtime.internal.rpc.RpcSite;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.HostnameUtils;
 
+import com.ericsson.otp.erlang.OtpErlangAtom;
 import com.ericsson.otp.erlang.OtpErlangDecodeException;
 import com.ericsson.otp.erlang.OtpErlangExit;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
 import com.ericsson.otp.erlang.OtpNodeStatus;
 import com.google.common.base.Strings;
-import com.google.common.eventbus.DeadEvent;
-import com.google.common.eventbus.EventBus;
-import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 public class ErlRuntime extends AbstractExecutionThreadService implements IErlRuntime {
     private static final String COULD_NOT_CONNECT = "Could not connect to %s! Please check runtime settings.";
     private static final int EPMD_PORT = Integer.parseInt(System.getProperty(
             "erlide.epmd.port", "4369"));
 
+    private static final boolean LAZY_DECODING = !Boolean.parseBoolean(System
+            .getProperty("erlide.noLazyDecoding"));
+
     private static final int MAX_RETRIES = 15;
     public static final int RETRY_DELAY = Integer.parseInt(System.getProperty(
             "erlide.connect.delay", "400"));
+    // how long a node we started has to tell us it is ready
+    private static final int READY_TIMEOUT = Integer.getInteger("erlide.ready.timeout",
+            15000);
+    private static final String READY_MBOX = "erlide_ready";
+    private static final long EPMD_POLL_INTERVAL = 50;
+    private static final AtomicInteger javaNodeCount = new AtomicInteger();
 
     protected final RuntimeData data;
     private OtpNode localNode;
@@ -56,22 +69,27 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
     private IShutdownCallback callback;
     private ErlSystemStatus lastSystemMessage;
     private IRpcSite rpcSite;
-    private final EventBus eventBus;
+    private final ErlEventDispatcher eventDispatcher;
     protected volatile boolean stopped;
-    private EventParser eventHelper;
+    private final EventParser eventHelper = new EventParser();
     boolean crashed;
+    private final String javaNodeName;
+    private final SettableFuture<IRpcSite> ready = SettableFuture.create();
 
     static final boolean DEBUG = Boolean.parseBoolean(System
             .getProperty("erlide.event.daemon"));
     public static final long POLL_INTERVAL = 200;
+    // events taken from the mailbox at once
+    private static final int EVENT_BATCH = 100;
 
     public ErlRuntime(final RuntimeData data) {
         this.data = data;
         reporter = new ErlRuntimeReporter(data.isInternal());
+        javaNodeName = createJavaNodeName(HostnameUtils.getErlangHostName(data
+                .hasLongName()));
 
         final String nodeName = getNodeName();
-        eventBus = new EventBus(nodeName);
-        eventBus.register(this);
+        eventDispatcher = new ErlEventDispatcher(nodeName);
         registerEventListener(new LogEventHandler(nodeName));
         registerEventListener(new ErlangLogEventHandler(nodeName));
 
@@ -83,12 +101,20 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         localNode = startLocalNode();
         eventMBox = createMbox("rex");
         rpcSite = new RpcSite(this, localNode, getNodeName());
-        connect();
-        rpcSite.setConnected(true);
-
-        if (!waitForCodeServer()) {
-            triggerShutdown();
-            ErlLogger.error(COULD_NOT_CONNECT, getNodeName());
+        if (announcesReady()) {
+            new ReadyListener(localNode.createMbox(READY_MBOX)).start();
+        }
+        if (!waitForReady()) {
+            connect();
+            rpcSite.setConnected(true);
+            if (waitForCodeServer()) {
+                ready.set(rpcSite);
+            } else {
+                triggerShutdown();
+                ErlLogger.error(COULD_NOT_CONNECT, getNodeName());
+                ready.setException(new ErlRuntimeException(String.format(
+                        COULD_NOT_CONNECT, getNodeName())));
+            }
         }
         stopped = false;
         crashed = false;
@@ -103,6 +129,7 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         }
         callback = null;
         rpcSite.setConnected(false);
+        eventDispatcher.close();
     }
 
     @Override
@@ -115,24 +142,25 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         final OtpMbox eventBox = getEventMbox();
         do {
             receiveEventMessage(eventBox);
-        } while (!stopped && !crashed);
+        } while (!stopped && !crashed && !Thread.currentThread().isInterrupted());
         if (crashed && !stopped) {
             waitForExit();
         }
     }
 
     private void receiveEventMessage(final OtpMbox eventBox) throws OtpErlangExit {
-        OtpErlangObject msg = null;
-        eventHelper = new EventParser();
         try {
-            msg = eventBox.receive(POLL_INTERVAL);
-            final ErlEvent busEvent = eventHelper.parse(msg, this);
-            if (busEvent != null) {
-                if (DEBUG) {
-                    ErlLogger.debug("MSG: %s", "[" + busEvent.getSender() + "::"
-                            + busEvent.getTopic() + ": " + busEvent.getEvent() + "]");
+            for (final OtpErlangObject msg : eventBox.receiveAll(EVENT_BATCH,
+                    POLL_INTERVAL)) {
+                final ErlEvent busEvent = eventHelper.parse(msg, this);
+                if (busEvent != null) {
+                    if (DEBUG) {
+                        ErlLogger.debug("MSG: %s", "[" + busEvent.getSender() + "::"
+                                + busEvent.getTopic() + ": " + busEvent.getEvent()
+                                + "]");
+                    }
+                    eventDispatcher.post(busEvent);
                 }
-                eventBus.post(busEvent);
             }
         } catch (final OtpErlangExit e) {
             ErlLogger.error(e);
@@ -194,6 +222,11 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
     protected void waitForExit() throws ErlRuntimeException {
     }
 
+    @Override
+    public ListenableFuture<IRpcSite> whenReady() {
+        return ready;
+    }
+
     @Override
     public IRpcSite getRpcSite() {
         try {
@@ -212,7 +245,7 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
 
     @Override
     public void registerEventListener(final Object handler) {
-        eventBus.register(handler);
+        eventDispatcher.register(handler);
     }
 
     @Override
@@ -222,9 +255,13 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
 
     private OtpNode startLocalNode() throws IOException {
         wait_for_epmd();
-        final OtpNode lNode = createOtpNode(data.getCookie(), data.hasLongName());
+        final OtpNode lNode = createOtpNode(data.getCookie());
         final OtpNodeStatus statusWatcher = new ErlideNodeStatus();
         lNode.registerStatusHandler(statusWatcher);
+        if (LAZY_DECODING) {
+            // big replies are mostly walked once, or only partly
+            lNode.setFlags(OtpInputStream.DECODE_LAZY);
+        }
         return lNode;
     }
 
@@ -251,17 +288,16 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
     private String getTimeSuffix() {
         String fUniqueId;
         fUniqueId = Long.toHexString(System.currentTimeMillis() & 0xFFFFFFF);
-        return fUniqueId;
+        // runtimes may be started at the same time
+        return fUniqueId + "_" + javaNodeCount.incrementAndGet();
     }
 
-    private OtpNode createOtpNode(final String cookie, final boolean longName)
-            throws IOException {
+    private OtpNode createOtpNode(final String cookie) throws IOException {
         OtpNode node;
-        final String hostName = HostnameUtils.getErlangHostName(longName);
         if (Strings.isNullOrEmpty(cookie)) {
-            node = new OtpNode(createJavaNodeName(hostName));
+            node = new OtpNode(javaNodeName);
         } else {
-            node = new OtpNode(createJavaNodeName(hostName), cookie);
+            node = new OtpNode(javaNodeName, cookie);
         }
         debugPrintCookie(node.cookie());
         return node;
@@ -273,18 +309,100 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         ErlLogger.debug("using cookie '%s...'%d (info: '%s')", trimmed, len, cookie);
     }
 
+    /**
+     * Waits for the node we started to announce itself.
+     * 
+     * @return false if the node doesn't announce itself, or didn't in time
+     * @throws ErlRuntimeException
+     *             if the node exited first
+     */
+    private boolean waitForReady() throws ErlRuntimeException, InterruptedException {
+        if (!announcesReady()) {
+            return false;
+        }
+        try {
+            ready.get(READY_TIMEOUT, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (final TimeoutException e) {
+            ErlLogger.warn("%s didn't tell it was ready, trying to connect",
+                    getNodeName());
+            return false;
+        } catch (final ExecutionException e) {
+            throw new ErlRuntimeException(e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * A node started with getReadyAnnouncement() connects to us when it's up
+     * and sends {ready, Pid} until we answer. By then its code server is
+     * running.
+     */
+    private class ReadyListener extends Thread {
+        private final OtpMbox mbox;
+
+        ReadyListener(final OtpMbox mbox) {
+            super("ready " + getNodeName());
+            setDaemon(true);
+            this.mbox = mbox;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final OtpErlangObject msg = mbox.receive(READY_TIMEOUT);
+                if (msg instanceof OtpErlangTuple && ((OtpErlangTuple) msg).arity() == 2) {
+                    final OtpErlangPid pid = (OtpErlangPid) ((OtpErlangTuple) msg)
+                            .elementAt(1);
+                    mbox.send(pid, OtpErlangAtom.intern("ack"));
+                    rpcSite.setConnected(true);
+                    ready.set(rpcSite);
+                }
+            } catch (final OtpErlangExit e) {
+                ErlLogger.warn(e);
+            } catch (final OtpErlangDecodeException e) {
+                ErlLogger.warn(e);
+            } finally {
+                mbox.close();
+            }
+        }
+    }
+
+    /**
+     * Called when the node we started has exited. Startup fails if it didn't
+     * announce itself before.
+     */
+    protected void nodeExited(final int exitCode) {
+        ready.setException(new ErlRuntimeException(String.format(
+                "Runtime %s exited while starting, exit code: %d", getNodeName(),
+                exitCode)));
+    }
+
+    /**
+     * @return true if the node is started with getReadyAnnouncement()
+     */
+    protected boolean announcesReady() {
+        return false;
+    }
+
+    /**
+     * An expression to -eval when starting a node, it tells us when the node
+     * is up.
+     */
+    protected String getReadyAnnouncement() {
+        final String node = "'" + javaNodeName + "'";
+        return "spawn(fun() -> L = fun(_, 0) -> ok; (F, N) -> "
+                + "case net_kernel:connect_node(" + node + ") of "
+                + "true -> {" + READY_MBOX + ", " + node + "} ! {ready, self()}, "
+                + "receive ack -> ok after 100 -> F(F, N - 1) end; "
+                + "false -> timer:sleep(50), F(F, N - 1) end end, "
+                + "L(L, 300) end)";
+    }
+
     private void connect() throws Exception {
         final String label = getNodeName();
         ErlLogger.debug(label + ": waiting connection to peer...");
         try {
             pingPeer();
-            int i = 0;
-            while (state() == State.NEW && i++ < 20) {
-                try {
-                    Thread.sleep(POLL_INTERVAL);
-                } catch (final InterruptedException e) {
-                }
-            }
         } catch (final Exception e) {
             ErlLogger.error(COULD_NOT_CONNECT, getNodeName());
             throw e;
@@ -298,7 +416,7 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
     private void wait_for_epmd(final String host) {
         // If anyone has a better solution for waiting for epmd to be up, please
         // let me know
-        int tries = 30;
+        int tries = (int) (30 * POLL_INTERVAL / EPMD_POLL_INTERVAL);
         boolean ok = false;
         do {
             Socket s;
@@ -307,10 +425,10 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
                 s.close();
                 ok = true;
             } catch (final IOException e) {
-            }
-            try {
-                Thread.sleep(POLL_INTERVAL);
-            } catch (final InterruptedException e1) {
+                try {
+                    Thread.sleep(EPMD_POLL_INTERVAL);
+                } catch (final InterruptedException e1) {
+                }
             }
             tries--;
         } while (!ok && tries > 0);
@@ -363,11 +481,6 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         }
     }
 
-    @Subscribe
-    public void deadEventHandler(final DeadEvent dead) {
-        ErlLogger.warn("Dead event: " + dead + " in runtime " + getNodeName());
-    }
-
     protected void triggerCrashed() {
         rpcSite.setConnected(false);
         crashed = true;
@@ -380,6 +493,8 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         @Override
         public void terminated(final State from) {
             ErlLogger.debug(String.format("Runtime %s terminated", getNodeName()));
+            ready.setException(new ErlRuntimeException(String.format(
+                    "Runtime %s terminated", getNodeName())));
             reportDown();
         }
 
@@ -387,6 +502,7 @@ public class ErlRuntime extends AbstractExecutionThreadService implements IErlRu
         public void failed(final State from, final Throwable failure) {
             final String nodeName = getNodeName();
             final int exitCode = getExitCode();
+            ready.setException(failure);
             ErlLogger.warn(String.format("Runtime %s crashed, exit code: %d.", nodeName,
                     exitCode));
             reportDown();
@@ -70,7 +70,7 @@ public class IOServer implements Runnable {
             } catch (final Exception e) {
                 ErlLogger.error(e);
             }
-        } while (!stopped || !done || !Thread.interrupted());
+        } while (!stopped && !done && !Thread.currentThread().isInterrupted());
         if (stopped) {
             mbox.close();
         }
@@ -13,12 +13,15 @@ package org.erlide.runtime.internal;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import org.erlide.runtime.api.RuntimeData;
 import org.erlide.util.ErlLogger;
 import org.erlide.util.SystemConfiguration;
 
+import com.google.common.collect.Lists;
+
 public class ManagedErlRuntime extends ErlRuntime {
 
     private Process process;
@@ -32,6 +35,9 @@ public class ManagedErlRuntime extends ErlRuntime {
     protected void startUp() throws Exception {
         exitCode = -1;
         process = startRuntimeProcess(data);
+        if (process != null) {
+            watchExit(process);
+        }
         super.startUp();
     }
 
@@ -48,8 +54,29 @@ public class ManagedErlRuntime extends ErlRuntime {
         return process;
     }
 
+    @Override
+    protected boolean announcesReady() {
+        return process != null;
+    }
+
+    private void watchExit(final Process aProcess) {
+        final Thread watcher = new Thread("exit " + getNodeName()) {
+            @Override
+            public void run() {
+                try {
+                    nodeExited(aProcess.waitFor());
+                } catch (final InterruptedException e) {
+                    // nobody waits for it any more
+                }
+            }
+        };
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
     private Process startRuntimeProcess(final RuntimeData rtData) {
-        final String[] cmds = rtData.getCmdLine();
+        final String[] cmds = addArgs(rtData.getCmdLine(), "-eval",
+                getReadyAnnouncement());
         final File workingDirectory = new File(rtData.getWorkingDir());
 
         try {
@@ -72,6 +99,17 @@ public class ManagedErlRuntime extends ErlRuntime {
         }
     }
 
+    private static String[] addArgs(final String[] cmds, final String... args) {
+        final List<String> result = Lists.newArrayList(cmds);
+        // what comes after -extra isn't for erl
+        int i = result.indexOf("-extra");
+        if (i < 0) {
+            i = result.size();
+        }
+        result.addAll(i, Arrays.asList(args));
+        return result.toArray(new String[result.size()]);
+    }
+
     private void setEnvironment(final RuntimeData data, final ProcessBuilder builder) {
         final Map<String, String> env = builder.environment();
         if (!SystemConfiguration.getInstance().isOnWindows()
@@ -9,6 +9,8 @@ import org.erlide.runtime.api.RuntimeData;
 import org.erlide.util.ErlideEventBus;
 
 import com.ericsson.otp.erlang.OtpMbox;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.Service.State;
 
 public class NullErlRuntime implements IErlRuntime {
@@ -79,6 +81,12 @@ public class NullErlRuntime implements IErlRuntime {
         return null;
     }
 
+    @Override
+    public ListenableFuture<IRpcSite> whenReady() {
+        reportNoBackend();
+        return Futures.immediateFailedFuture(new ErlRuntimeException("no runtime"));
+    }
+
     @Override
     public void registerEventListener(final Object handler) {
         reportNoBackend();
@@ -0,0 +1,165 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.erlide.runtime.rpc.IRpcBatch;
+import org.erlide.runtime.rpc.IRpcFuture;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcResult;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.erlang.MarshallingPlan;
+import org.erlide.util.erlang.OtpErlang;
+import org.erlide.util.erlang.SignatureException;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.collect.Lists;
+
+/**
+ * Sends the calls as one RPC to erlide_rpc_batch. While that module isn't
+ * loaded yet (i.e. while the erlide code is being loaded), the calls are sent
+ * all at once as separate RPCs and their replies collected afterwards; they
+ * still take a single round trip, but may then run in any order.
+ */
+public class RpcBatchImpl implements IRpcBatch {
+
+    private static final String BATCH_MODULE = "erlide_rpc_batch";
+
+    private final RpcSite site;
+    private final List<OtpErlangTuple> calls = Lists.newArrayList();
+
+    public RpcBatchImpl(final RpcSite site) {
+        this.site = site;
+    }
+
+    @Override
+    public int add(final String m, final String f, final String signature,
+            final Object... args) throws RpcException {
+        try {
+            final OtpErlangObject[] args1 = MarshallingPlan.get(signature).convert(args);
+            calls.add(OtpErlang.mkTuple(OtpErlangAtom.intern(m), OtpErlangAtom.intern(f),
+                    new OtpErlangList(args1)));
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+        return calls.size() - 1;
+    }
+
+    @Override
+    public int size() {
+        return calls.size();
+    }
+
+    @Override
+    public List<RpcResult> execute() throws RpcException {
+        return execute(getDefaultTimeout(calls.size()));
+    }
+
+    /**
+     * As long as the calls would have had if they were made one by one.
+     */
+    static long getDefaultTimeout(final int size) {
+        final long timeout = RpcSite.DEFAULT_TIMEOUT;
+        if (timeout == RpcSite.INFINITY || size <= 1) {
+            return timeout;
+        }
+        return timeout > RpcSite.INFINITY / size ? RpcSite.INFINITY : timeout * size;
+    }
+
+    @Override
+    public List<RpcResult> execute(final long timeout) throws RpcException {
+        final List<RpcResult> results = Lists.newArrayListWithCapacity(calls.size());
+        if (calls.isEmpty()) {
+            return results;
+        }
+        final long deadline = timeout == RpcSite.INFINITY ? RpcSite.INFINITY : System
+                .currentTimeMillis() + timeout;
+        final OtpErlangObject reply = get(
+                site.async_call(BATCH_MODULE, "call",
+                        new OtpErlangObject[] { new OtpErlangList(
+                                calls.toArray(new OtpErlangObject[calls.size()])) }),
+                deadline);
+        if (isBatchUndefined(reply)) {
+            return executeSeparately(deadline);
+        }
+        if (!(reply instanceof OtpErlangList)) {
+            throw new RpcException(reply.toString());
+        }
+        for (final OtpErlangObject result : (OtpErlangList) reply) {
+            results.add(new RpcResult(result));
+        }
+        return results;
+    }
+
+    private List<RpcResult> executeSeparately(final long deadline) throws RpcException {
+        final List<IRpcFuture> futures = Lists.newArrayListWithCapacity(calls.size());
+        for (final OtpErlangTuple call : calls) {
+            futures.add(site.async_call(((OtpErlangAtom) call.elementAt(0)).atomValue(),
+                    ((OtpErlangAtom) call.elementAt(1)).atomValue(),
+                    ((OtpErlangList) call.elementAt(2)).elements()));
+        }
+        final List<RpcResult> results = Lists.newArrayListWithCapacity(calls.size());
+        try {
+            for (final IRpcFuture future : futures) {
+                results.add(new RpcResult(get(future, deadline)));
+            }
+        } finally {
+            // nobody will wait for the rest any more
+            for (final IRpcFuture future : futures.subList(results.size(),
+                    futures.size())) {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+
+    private static OtpErlangObject get(final IRpcFuture future, final long deadline)
+            throws RpcException {
+        final long timeout = deadline == RpcSite.INFINITY ? RpcSite.INFINITY : Math
+                .max(0, deadline - System.currentTimeMillis());
+        try {
+            return future.checkedGet(timeout, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(false);
+            throw new RpcTimeoutException(e.getMessage());
+        } catch (final RpcTimeoutException e) {
+            future.cancel(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Matches <code>{badrpc, {'EXIT', {undef, [{erlide_rpc_batch, ...}
+     * | _]}}}</code>.
+     */
+    private static boolean isBatchUndefined(final OtpErlangObject reply) {
+        final OtpErlangObject exit = element(reply, "badrpc");
+        final OtpErlangObject error = element(exit, "EXIT");
+        final OtpErlangObject stack = element(error, "undef");
+        if (stack instanceof OtpErlangList && ((OtpErlangList) stack).arity() > 0) {
+            final OtpErlangObject frame = ((OtpErlangList) stack).elementAt(0);
+            return frame instanceof OtpErlangTuple
+                    && new OtpErlangAtom(BATCH_MODULE).equals(((OtpErlangTuple) frame)
+                            .elementAt(0));
+        }
+        return false;
+    }
+
+    /**
+     * @return X if term is {tag, X}, otherwise null
+     */
+    private static OtpErlangObject element(final OtpErlangObject term, final String tag) {
+        if (term instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) term;
+            if (t.arity() == 2 && new OtpErlangAtom(tag).equals(t.elementAt(0))) {
+                return t.elementAt(1);
+            }
+        }
+        return null;
+    }
+
+}
@@ -10,77 +10,106 @@
  *******************************************************************************/
 package org.erlide.runtime.internal.rpc;
 
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import org.erlide.runtime.api.IRpcSite;
 import org.erlide.runtime.rpc.IRpcFuture;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcMonitor;
+import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
 
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangRef;
-import com.ericsson.otp.erlang.OtpMbox;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 
+/**
+ * The pending result of a RPC. The reply is delivered by the
+ * {@link RpcReplyDispatcher} as soon as it arrives.
+ */
 public class RpcFutureImpl implements IRpcFuture {
 
-    private final OtpMbox mbox;
-    private OtpErlangObject result = null;
+    private final SettableFuture<OtpErlangObject> reply;
+    private final OtpErlangRef tag;
+    private final RpcReplyDispatcher dispatcher;
     private final String env;
-    private final boolean logCalls;
 
-    private final IRpcSite rpcSite;
-    private final OtpErlangRef ref;
-
-    public RpcFutureImpl(final OtpErlangRef ref, final OtpMbox mbox, final String env,
-            final boolean logCalls, final IRpcSite rpcSite) {
-        this.ref = ref;
-
-        this.mbox = mbox;
+    public RpcFutureImpl(final OtpErlangRef ref, final OtpErlangRef tag,
+            final SettableFuture<OtpErlangObject> reply,
+            final RpcReplyDispatcher dispatcher, final String env,
+            final boolean logCalls) {
+        this.tag = tag;
+        this.reply = reply;
+        this.dispatcher = dispatcher;
         this.env = env;
-        this.logCalls = logCalls;
-        this.rpcSite = rpcSite;
+        if (RpcMonitor.isEnabled() || logCalls) {
+            reply.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    final OtpErlangObject result;
+                    try {
+                        result = checkedGet();
+                    } catch (final RpcException e) {
+                        return;
+                    }
+                    if (RpcMonitor.isEnabled()) {
+                        RpcMonitor.recordResponse(ref, result);
+                    }
+                    if (logCalls) {
+                        final Object[] args0 = { result };
+                        ErlLogger.debug("call <- %s", args0);
+                    }
+                }
+            }, MoreExecutors.sameThreadExecutor());
+        }
     }
 
+    /**
+     * @throws ExecutionException
+     *             with the {@link RpcException} as cause, if the call failed
+     */
     @Override
-    public OtpErlangObject get() {
-        try {
-            return checkedGet();
-        } catch (final RpcException e) {
-            return null;
-        }
+    public OtpErlangObject get() throws InterruptedException, ExecutionException {
+        return reply.get();
     }
 
+    /**
+     * @throws ExecutionException
+     *             with the {@link RpcException} as cause, if the call failed
+     */
     @Override
-    public OtpErlangObject get(final long timeout, final TimeUnit unit) {
-        try {
-            return checkedGet(timeout, unit);
-        } catch (final TimeoutException e) {
-            return null;
-        } catch (final RpcException e) {
-            return null;
-        }
+    public OtpErlangObject get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return reply.get(timeout, unit);
     }
 
     @Override
     public boolean isDone() {
-        return result != null;
+        return reply.isDone();
     }
 
     @Override
     public void addListener(final Runnable listener, final Executor executor) {
+        reply.addListener(listener, executor);
     }
 
+    /**
+     * The call can't be stopped on the backend, but its reply will be
+     * ignored.
+     */
     @Override
     public boolean cancel(final boolean mayInterruptIfRunning) {
-        return false;
+        dispatcher.forget(tag);
+        return reply.cancel(false);
     }
 
     @Override
     public boolean isCancelled() {
-        return false;
+        return reply.isCancelled();
     }
 
     @Override
@@ -95,16 +124,25 @@ public class RpcFutureImpl implements IRpcFuture {
     @Override
     public OtpErlangObject checkedGet(final long timeout, final TimeUnit unit)
             throws TimeoutException, RpcException {
-        result = rpcSite.getRpcResult(mbox, TimeUnit.MILLISECONDS.convert(timeout, unit),
-                env);
-        if (isDone()) {
-            RpcMonitor.recordResponse(ref, result);
-            if (logCalls) {
-                final Object[] args0 = { result };
-                ErlLogger.debug("call <- %s", args0);
+        try {
+            if (timeout == RpcSite.INFINITY) {
+                return reply.get();
+            }
+            return reply.get(timeout, unit);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(e);
+        } catch (final TimeoutException e) {
+            throw new RpcTimeoutException(env != null ? env : "??");
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RpcException) {
+                throw (RpcException) cause;
             }
+            throw new RpcException(cause.toString());
+        } catch (final CancellationException e) {
+            throw new RpcException("cancelled: " + env);
         }
-        return result;
     }
 
 }
@@ -0,0 +1,134 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.util.ErlLogger;
+
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Correlates RPC replies with their requests. Requests are sent to rex as
+ * gen_server calls tagged with a fresh ref, from one of a few long-lived
+ * mailboxes; the replies, <code>{Ref, Result}</code>, are read by one thread per
+ * mailbox and complete the future registered for that ref.
+ */
+public class RpcReplyDispatcher {
+
+    private static final int MAILBOXES = 2;
+    private static final long POLL_INTERVAL = 500;
+
+    private final OtpNode node;
+    private final OtpMbox[] mailboxes;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ConcurrentMap<OtpErlangRef, SettableFuture<OtpErlangObject>> pending;
+    private volatile boolean closed = false;
+
+    public RpcReplyDispatcher(final OtpNode node, final String name) {
+        this.node = node;
+        pending = Maps.newConcurrentMap();
+        mailboxes = new OtpMbox[MAILBOXES];
+        for (int i = 0; i < MAILBOXES; i++) {
+            final OtpMbox mbox = node.createMbox();
+            mailboxes[i] = mbox;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    receiveReplies(mbox);
+                }
+            }, "rpc replies " + name + " " + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * @return a mailbox to send from; replies to it will be dispatched here
+     */
+    public OtpMbox getMailbox() {
+        final int i = next.getAndIncrement() & Integer.MAX_VALUE;
+        return mailboxes[i % mailboxes.length];
+    }
+
+    /**
+     * Register interest in the reply tagged with the given ref. Must be called
+     * before the request is sent.
+     */
+    public SettableFuture<OtpErlangObject> expect(final OtpErlangRef ref) {
+        final SettableFuture<OtpErlangObject> reply = SettableFuture.create();
+        pending.put(ref, reply);
+        if (closed && pending.remove(ref, reply)) {
+            reply.setException(new RpcException("backend down"));
+        }
+        return reply;
+    }
+
+    /**
+     * Stop waiting for a reply, for example after a timeout.
+     */
+    public void forget(final OtpErlangRef ref) {
+        pending.remove(ref);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Fail all pending calls and release the mailboxes.
+     */
+    public void close() {
+        closed = true;
+        for (final OtpErlangRef ref : pending.keySet()) {
+            final SettableFuture<OtpErlangObject> reply = pending.remove(ref);
+            if (reply != null) {
+                reply.setException(new RpcException("backend down"));
+            }
+        }
+        for (final OtpMbox mbox : mailboxes) {
+            node.closeMbox(mbox);
+        }
+    }
+
+    private void receiveReplies(final OtpMbox mbox) {
+        // an interrupted receive returns null at once
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            try {
+                final OtpErlangObject msg = mbox.receive(POLL_INTERVAL);
+                if (msg != null) {
+                    dispatch(msg);
+                }
+            } catch (final OtpErlangExit e) {
+                ErlLogger.warn(e);
+            } catch (final Exception e) {
+                ErlLogger.error(e);
+            }
+        }
+    }
+
+    private void dispatch(final OtpErlangObject msg) {
+        if (msg instanceof OtpErlangTuple) {
+            final OtpErlangTuple t = (OtpErlangTuple) msg;
+            if (t.arity() == 2 && t.elementAt(0) instanceof OtpErlangRef) {
+                final SettableFuture<OtpErlangObject> reply = pending.remove(t
+                        .elementAt(0));
+                if (reply != null) {
+                    reply.set(t.elementAt(1));
+                }
+                return;
+            }
+        }
+        if (RpcSite.CHECK_RPC) {
+            ErlLogger.debug("RPC unexpected message: " + msg);
+        }
+    }
+
+}
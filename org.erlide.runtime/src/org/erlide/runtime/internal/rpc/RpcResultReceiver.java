@@ -67,6 +67,6 @@ public class RpcResultReceiver implements Runnable {
             } catch (final Exception e) {
                 ErlLogger.error(e);
             }
-        } while (!done || Thread.interrupted());
+        } while (!done && !Thread.currentThread().isInterrupted());
     }
 }
@@ -1,29 +1,31 @@
 package org.erlide.runtime.internal.rpc;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.erlide.runtime.api.IErlRuntime;
 import org.erlide.runtime.api.IRpcSite;
+import org.erlide.runtime.rpc.IRpcBatch;
 import org.erlide.runtime.rpc.IRpcCallback;
 import org.erlide.runtime.rpc.IRpcFuture;
 import org.erlide.runtime.rpc.IRpcResultCallback;
+import org.erlide.runtime.rpc.IRpcStream;
 import org.erlide.runtime.rpc.RpcException;
 import org.erlide.runtime.rpc.RpcMonitor;
 import org.erlide.runtime.rpc.RpcResult;
 import org.erlide.runtime.rpc.RpcTimeoutException;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.erlang.MarshallingPlan;
 import org.erlide.util.erlang.OtpErlang;
-import org.erlide.util.erlang.Signature;
 import org.erlide.util.erlang.SignatureException;
 import org.erlide.util.erlang.TypeConverter;
 
 import com.ericsson.otp.erlang.OtpErlangAtom;
-import com.ericsson.otp.erlang.OtpErlangDecodeException;
-import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangInt;
 import com.ericsson.otp.erlang.OtpErlangList;
 import com.ericsson.otp.erlang.OtpErlangObject;
 import com.ericsson.otp.erlang.OtpErlangPid;
@@ -31,11 +33,17 @@ import com.ericsson.otp.erlang.OtpErlangRef;
 import com.ericsson.otp.erlang.OtpErlangTuple;
 import com.ericsson.otp.erlang.OtpMbox;
 import com.ericsson.otp.erlang.OtpNode;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class RpcSite implements IRpcSite {
 
-    private static final OtpErlangAtom USER_ATOM = new OtpErlangAtom("user");
+    private static final OtpErlangAtom USER_ATOM = OtpErlangAtom.intern("user");
+    private static final OtpErlangAtom GEN_CALL_ATOM = OtpErlangAtom.intern("$gen_call");
+    private static final OtpErlangAtom GEN_CAST_ATOM = OtpErlangAtom.intern("$gen_cast");
+    private static final OtpErlangAtom CALL_ATOM = OtpErlangAtom.intern("call");
+    private static final OtpErlangAtom CAST_ATOM = OtpErlangAtom.intern("cast");
 
     public static final long INFINITY = Long.MAX_VALUE;
 
@@ -48,13 +56,14 @@ public class RpcSite implements IRpcSite {
     }
 
     private static final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-            .setDaemon(true).setNameFormat("rpc-%d").build();
-    private static final ExecutorService threadPool = Executors
-            .newCachedThreadPool(threadFactory);
+            .setDaemon(true).setNameFormat("rpc-timeouts-%d").build();
+    private static final ScheduledExecutorService timeouts = Executors
+            .newSingleThreadScheduledExecutor(threadFactory);
 
     private final IErlRuntime runtime;
     private final String nodeName;
     private final OtpNode localNode;
+    private final RpcReplyDispatcher replies;
     private volatile boolean connected;
 
     public RpcSite(final IErlRuntime runtime, final OtpNode localNode,
@@ -62,12 +71,16 @@ public class RpcSite implements IRpcSite {
         this.runtime = runtime;
         this.localNode = localNode;
         this.nodeName = nodeName;
+        replies = new RpcReplyDispatcher(localNode, nodeName);
         connected = false;
     }
 
     @Override
     public void setConnected(final boolean connected) {
         this.connected = connected;
+        if (!connected) {
+            replies.close();
+        }
     }
 
     @Override
@@ -87,6 +100,30 @@ public class RpcSite implements IRpcSite {
         }
     }
 
+    @Override
+    public IRpcStream async_call_stream(final String m, final String f,
+            final String signature, final Object... args) throws RpcException {
+        checkConnected();
+        try {
+            final OtpMbox mbox = localNode.createMbox();
+            final OtpErlangRef ref = localNode.createRef();
+            final OtpErlangObject[] args1 = { mbox.self(), ref,
+                    new OtpErlangInt(RpcStreamImpl.WINDOW), OtpErlangAtom.intern(m),
+                    OtpErlangAtom.intern(f),
+                    new OtpErlangList(convertArgs(signature, args)) };
+            rpcCast(localNode, nodeName, false, USER_ATOM, "erlide_stream", "start",
+                    args1);
+            return new RpcStreamImpl(mbox, ref, m + ":" + f + "/" + (args.length + 1));
+        } catch (final SignatureException e) {
+            throw new RpcException(e);
+        }
+    }
+
+    @Override
+    public IRpcBatch batch() {
+        return new RpcBatchImpl(this);
+    }
+
     @Override
     public IRpcFuture async_call(final OtpErlangObject gleader, final String module,
             final String fun, final String signature, final Object... args0)
@@ -121,23 +158,37 @@ public class RpcSite implements IRpcSite {
         try {
             final IRpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
                     module, fun, signature, args);
-            final Runnable target = new Runnable() {
+            // no thread waits for the reply: the callback is called by the
+            // thread that receives it, or by the timer if it doesn't come
+            final ScheduledFuture<?> timer = timeout == INFINITY ? null : timeouts
+                    .schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (future.cancel(false)) {
+                                ErlLogger.error("Could not execute RPC " + module + ":"
+                                        + fun + " : timeout");
+                                cb.onFailure(new RpcTimeoutException(module + ":" + fun));
+                            }
+                        }
+                    }, timeout, TimeUnit.MILLISECONDS);
+            future.addListener(new Runnable() {
                 @Override
                 public void run() {
-                    OtpErlangObject result;
+                    if (future.isCancelled()) {
+                        return;
+                    }
+                    if (timer != null) {
+                        timer.cancel(false);
+                    }
                     try {
-                        result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
-                        cb.onSuccess(result);
-                    } catch (final Exception e) {
-                        // TODO do we want to treat a timeout differently?
+                        cb.onSuccess(future.checkedGet());
+                    } catch (final RpcException e) {
                         ErlLogger.error("Could not execute RPC " + module + ":" + fun
                                 + " : " + e.getMessage());
                         cb.onFailure(e);
                     }
                 }
-            };
-            // We can't use jobs here, it's an Eclipse dependency
-            threadPool.execute(target);
+            }, MoreExecutors.sameThreadExecutor());
         } catch (final SignatureException e) {
             throw new RpcException(e);
         }
@@ -148,23 +199,28 @@ public class RpcSite implements IRpcSite {
             final String module, final String fun, final String signature,
             final Object... args0) throws RpcException {
         checkConnected();
-        OtpErlangObject result;
+        final IRpcFuture future;
         try {
-            final IRpcFuture future = sendRpcCall(localNode, nodeName, false, gleader,
-                    module, fun, signature, args0);
-            OtpErlangObject result1;
-            result1 = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
-            if (CHECK_RPC) {
-                ErlLogger.debug("RPC result:: " + result1);
-            }
-            if (isBadRpc(result1)) {
-                throw new RpcException(result1.toString());
-            }
-            result = result1;
+            future = sendRpcCall(localNode, nodeName, false, gleader, module, fun,
+                    signature, args0);
         } catch (final SignatureException e) {
             throw new RpcException(e);
+        }
+        OtpErlangObject result;
+        try {
+            result = future.checkedGet(timeout, TimeUnit.MILLISECONDS);
         } catch (final TimeoutException e) {
+            future.cancel(false);
             throw new RpcTimeoutException(e.getMessage());
+        } catch (final RpcTimeoutException e) {
+            future.cancel(false);
+            throw e;
+        }
+        if (CHECK_RPC) {
+            ErlLogger.debug("RPC result:: " + result);
+        }
+        if (isBadRpc(result)) {
+            throw new RpcException(result.toString());
         }
         return result;
     }
@@ -198,17 +254,10 @@ public class RpcSite implements IRpcSite {
     public void send(final OtpErlangPid pid, final Object msg) {
         try {
             checkConnected();
-            final OtpMbox mbox = localNode.createMbox();
-            try {
-                if (mbox != null) {
-                    if (CHECK_RPC) {
-                        ErlLogger.debug("SEND " + pid + "-> " + msg);
-                    }
-                    mbox.send(pid, TypeConverter.java2erlang(msg, "x"));
-                }
-            } finally {
-                localNode.closeMbox(mbox);
+            if (CHECK_RPC) {
+                ErlLogger.debug("SEND " + pid + "-> " + msg);
             }
+            replies.getMailbox().send(pid, TypeConverter.java2erlang(msg, "x"));
         } catch (final Exception e) {
         }
     }
@@ -286,17 +335,10 @@ public class RpcSite implements IRpcSite {
 
     private void send(final OtpNode node, final String peer, final String name,
             final Object msg) throws SignatureException {
-        final OtpMbox mbox = node.createMbox();
-        try {
-            if (mbox != null) {
-                if (CHECK_RPC) {
-                    ErlLogger.debug("SEND " + name + "-> " + msg);
-                }
-                mbox.send(name, peer, TypeConverter.java2erlang(msg, "x"));
-            }
-        } finally {
-            node.closeMbox(mbox);
+        if (CHECK_RPC) {
+            ErlLogger.debug("SEND " + name + "-> " + msg);
         }
+        replies.getMailbox().send(name, peer, TypeConverter.java2erlang(msg, "x"));
     }
 
     private boolean isBadRpc(final OtpErlangObject result) {
@@ -310,29 +352,50 @@ public class RpcSite implements IRpcSite {
         return false;
     }
 
-    private synchronized IRpcFuture sendRpcCall(final OtpNode node, final String peer,
+    private IRpcFuture sendRpcCall(final OtpNode node, final String peer,
             final boolean logCalls, final OtpErlangObject gleader, final String module,
             final String fun, final String signature, final Object... args0)
             throws SignatureException {
-        final OtpErlangObject[] args = convertArgs(signature, args0);
+        return sendRpcCall(node, peer, logCalls, gleader, module, fun,
+                convertArgs(signature, args0));
+    }
 
-        OtpErlangObject res = null;
-        final OtpMbox mbox = node.createMbox();
-        res = buildRpcCall(mbox.self(), gleader, module, fun, args);
+    /**
+     * Make a RPC with arguments that are already converted.
+     */
+    IRpcFuture async_call(final String module, final String fun,
+            final OtpErlangObject[] args) throws RpcException {
+        checkConnected();
+        return sendRpcCall(localNode, nodeName, false, USER_ATOM, module, fun, args);
+    }
+
+    private IRpcFuture sendRpcCall(final OtpNode node, final String peer,
+            final boolean logCalls, final OtpErlangObject gleader, final String module,
+            final String fun, final OtpErlangObject[] args) {
+        final OtpMbox mbox = replies.getMailbox();
+        final OtpErlangRef tag = node.createRef();
+        final OtpErlangObject res = buildRpcCall(mbox.self(), tag, gleader, module, fun,
+                args);
         if (logCalls) {
             final Object[] args01 = { module, fun, argString(args) };
             ErlLogger.debug("call -> %s:%s(%s)", args01);
         }
-        //
-        final OtpErlangRef ref = RpcMonitor.recordRequest(node, peer, module, fun, args,
-                OtpErlang.sizeOf(res));
-        //
-        mbox.send("rex", peer, res);
+        final SettableFuture<OtpErlangObject> reply = replies.expect(tag);
+        final OtpErlangRef ref;
+        if (RpcMonitor.isEnabled()) {
+            final long start = System.currentTimeMillis();
+            final int size = mbox.sendMeasured("rex", peer, res);
+            ref = RpcMonitor.recordRequest(node, peer, module, fun, args, start, size);
+        } else {
+            RpcMonitor.countRequest();
+            mbox.send("rex", peer, res);
+            ref = null;
+        }
         if (CHECK_RPC) {
             ErlLogger.debug("RPC " + mbox.hashCode() + "=> " + res);
         }
-        return new RpcFutureImpl(ref, mbox, module + ":" + fun + "/" + args0.length,
-                logCalls, this);
+        return new RpcFutureImpl(ref, tag, reply, replies, module + ":" + fun + "/"
+                + args.length, logCalls);
     }
 
     private static final String SEP = ", ";
@@ -349,71 +412,29 @@ public class RpcSite implements IRpcSite {
     }
 
     /**
-     * Retrieve the result of a RPC.
-     * 
-     * @param mbox
-     * @param timeout
-     * @param env
-     * @return
-     * @throws RpcException
+     * A gen_server call to rex, so that the reply comes back tagged:
+     * <code>{'$gen_call', {Pid, Tag}, {call, M, F, A, GroupLeader}}</code>
      */
-    @Override
-    public OtpErlangObject getRpcResult(final OtpMbox mbox, final long timeout,
-            final String env) throws RpcException {
-        assert mbox != null;
-
-        OtpErlangObject res = null;
-        try {
-            try {
-                if (timeout == INFINITY) {
-                    res = mbox.receive();
-                } else {
-                    res = mbox.receive(timeout);
-                }
-                if (CHECK_RPC) {
-                    ErlLogger.debug("RPC " + mbox.hashCode() + "<= " + res);
-                }
-            } finally {
-                if (res != null) {
-                    mbox.close();
-                }
-            }
-            if (res == null) {
-                final String msg = env != null ? env : "??";
-                throw new RpcTimeoutException(msg);
-            }
-            if (!(res instanceof OtpErlangTuple)) {
-                throw new RpcException(res.toString());
-            }
-            final OtpErlangTuple t = (OtpErlangTuple) res;
-            if (t.arity() != 2) {
-                throw new RpcException(res.toString());
-            }
-            res = t.elementAt(1);
-
-        } catch (final OtpErlangExit e) {
-            throw new RpcException(e);
-        } catch (final OtpErlangDecodeException e) {
-            throw new RpcException(e);
-        }
-        return res;
-    }
-
-    private OtpErlangObject buildRpcCall(final OtpErlangPid pid,
+    private OtpErlangObject buildRpcCall(final OtpErlangPid pid, final OtpErlangRef tag,
             final OtpErlangObject gleader, final String module, final String fun,
             final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
+        final OtpErlangObject m = OtpErlangAtom.intern(module);
+        final OtpErlangObject f = OtpErlangAtom.intern(fun);
         final OtpErlangObject a = new OtpErlangList(args);
-        return OtpErlang.mkTuple(pid,
-                OtpErlang.mkTuple(new OtpErlangAtom("call"), m, f, a, gleader));
+        return OtpErlang.mkTuple(GEN_CALL_ATOM, OtpErlang.mkTuple(pid, tag),
+                OtpErlang.mkTuple(CALL_ATOM, m, f, a, gleader));
     }
 
     private void rpcCast(final OtpNode node, final String peer, final boolean logCalls,
             final OtpErlangObject gleader, final String module, final String fun,
             final String signature, final Object... args0) throws SignatureException {
-        final OtpErlangObject[] args = convertArgs(signature, args0);
+        rpcCast(node, peer, logCalls, gleader, module, fun,
+                convertArgs(signature, args0));
+    }
 
+    private void rpcCast(final OtpNode node, final String peer, final boolean logCalls,
+            final OtpErlangObject gleader, final String module, final String fun,
+            final OtpErlangObject[] args) throws SignatureException {
         OtpErlangObject msg = null;
         msg = buildRpcCastMsg(gleader, module, fun, args);
         if (logCalls) {
@@ -428,35 +449,16 @@ public class RpcSite implements IRpcSite {
 
     private OtpErlangObject[] convertArgs(final String signature, final Object... args)
             throws SignatureException {
-        final Object[] args0 = args == null ? new OtpErlangObject[] {} : args;
-
-        Signature[] type;
-        type = Signature.parse(signature);
-        if (type == null) {
-            type = new Signature[args0.length];
-            for (int i = 0; i < args0.length; i++) {
-                type[i] = new Signature('x');
-            }
-        }
-        if (type.length != args0.length) {
-            throw new SignatureException("Signature doesn't match parameter number: "
-                    + type.length + "/" + args0.length);
-        }
-        final OtpErlangObject[] args1 = new OtpErlangObject[args0.length];
-        for (int i = 0; i < args1.length; i++) {
-            args1[i] = TypeConverter.java2erlang(args0[i], type[i]);
-        }
-        return args1;
+        return MarshallingPlan.get(signature).convert(args);
     }
 
     private OtpErlangObject buildRpcCastMsg(final OtpErlangObject gleader,
             final String module, final String fun, final OtpErlangObject[] args) {
-        final OtpErlangObject m = new OtpErlangAtom(module);
-        final OtpErlangObject f = new OtpErlangAtom(fun);
+        final OtpErlangObject m = OtpErlangAtom.intern(module);
+        final OtpErlangObject f = OtpErlangAtom.intern(fun);
         final OtpErlangObject a = new OtpErlangList(args);
-        final OtpErlangAtom castTag = new OtpErlangAtom("$gen_cast");
-        return OtpErlang.mkTuple(castTag,
-                OtpErlang.mkTuple(new OtpErlangAtom("cast"), m, f, a, gleader));
+        return OtpErlang.mkTuple(GEN_CAST_ATOM,
+                OtpErlang.mkTuple(CAST_ATOM, m, f, a, gleader));
     }
 
 }
@@ -0,0 +1,162 @@
+package org.erlide.runtime.internal.rpc;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.erlide.runtime.rpc.IRpcStream;
+import org.erlide.runtime.rpc.RpcException;
+import org.erlide.runtime.rpc.RpcTimeoutException;
+import org.erlide.util.erlang.OtpErlang;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangExit;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpMbox;
+
+/**
+ * Receives the chunks sent by erlide_stream to a mailbox of its own. Each
+ * chunk is acknowledged when it is taken from the mailbox, which lets the
+ * producer send another one.
+ */
+public class RpcStreamImpl implements IRpcStream {
+
+    /**
+     * How many chunks the producer may send before it has to wait for the
+     * consumer.
+     */
+    public static final int WINDOW = 4;
+
+    private static final OtpErlangAtom ACK_ATOM = OtpErlangAtom.intern("ack");
+    private static final OtpErlangAtom CANCEL_ATOM = OtpErlangAtom.intern("cancel");
+
+    private final OtpMbox mbox;
+    private final OtpErlangRef ref;
+    private final String env;
+    private OtpErlangPid producer;
+    private OtpErlangList chunk;
+    private int index;
+    private OtpErlangObject result;
+    private boolean done;
+
+    public RpcStreamImpl(final OtpMbox mbox, final OtpErlangRef ref, final String env) {
+        this.mbox = mbox;
+        this.ref = ref;
+        this.env = env;
+    }
+
+    @Override
+    public OtpErlangObject next(final long timeout) throws RpcException {
+        if (!fill(timeout)) {
+            return null;
+        }
+        return chunk.elementAt(index++);
+    }
+
+    @Override
+    public List<OtpErlangObject> nextChunk(final long timeout) throws RpcException {
+        if (!fill(timeout)) {
+            return null;
+        }
+        final List<OtpErlangObject> result = Arrays.asList(chunk.elements()).subList(
+                index, chunk.arity());
+        index = chunk.arity();
+        return result;
+    }
+
+    @Override
+    public OtpErlangObject getResult() {
+        return result;
+    }
+
+    @Override
+    public void cancel() {
+        if (done) {
+            return;
+        }
+        if (producer != null) {
+            mbox.send(producer, OtpErlang.mkTuple(ref, CANCEL_ATOM));
+        }
+        chunk = null;
+        close();
+    }
+
+    /**
+     * Wait until there are items to take, return false at the end of the
+     * stream.
+     */
+    private boolean fill(final long timeout) throws RpcException {
+        while (chunk == null || index >= chunk.arity()) {
+            if (done) {
+                return false;
+            }
+            receive(timeout);
+        }
+        return true;
+    }
+
+    private void receive(final long timeout) throws RpcException {
+        final OtpErlangObject msg;
+        try {
+            msg = mbox.receive(timeout);
+        } catch (final OtpErlangExit e) {
+            close();
+            throw new RpcException(e);
+        } catch (final OtpErlangDecodeException e) {
+            close();
+            throw new RpcException(e);
+        }
+        if (msg == null && Thread.currentThread().isInterrupted()) {
+            cancel();
+            throw new RpcException("interrupted: " + env);
+        }
+        if (msg == null) {
+            throw new RpcTimeoutException(env);
+        }
+        if (!(msg instanceof OtpErlangTuple)) {
+            return;
+        }
+        final OtpErlangTuple t = (OtpErlangTuple) msg;
+        if (t.arity() < 2 || !ref.equals(t.elementAt(0))) {
+            return;
+        }
+        final String tag = ((OtpErlangAtom) t.elementAt(1)).atomValue();
+        if ("start".equals(tag)) {
+            producer = (OtpErlangPid) t.elementAt(2);
+        } else if ("chunk".equals(tag)) {
+            producer = (OtpErlangPid) t.elementAt(2);
+            mbox.send(producer, OtpErlang.mkTuple(ref, ACK_ATOM));
+            chunk = asList(t.elementAt(3));
+            index = 0;
+        } else if ("done".equals(tag)) {
+            result = t.elementAt(2);
+            close();
+        } else if ("error".equals(tag)) {
+            close();
+            throw new RpcException(env + ": " + t.elementAt(2));
+        } else if ("cancelled".equals(tag)) {
+            // the producer gave up waiting for us
+            close();
+            throw new RpcException(env + ": cancelled");
+        }
+    }
+
+    private static OtpErlangList asList(final OtpErlangObject items) {
+        // a list of small integers comes as a string
+        if (items instanceof OtpErlangString) {
+            return new OtpErlangList(((OtpErlangString) items).stringValue());
+        }
+        return (OtpErlangList) items;
+    }
+
+    private void close() {
+        done = true;
+        mbox.close();
+    }
+
+}
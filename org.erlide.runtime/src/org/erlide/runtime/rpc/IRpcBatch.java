@@ -0,0 +1,34 @@
+package org.erlide.runtime.rpc;
+
+import java.util.List;
+
+/**
+ * Collects calls that are sent to the backend together and run there one after
+ * the other, in the order they were added. A call that fails doesn't stop the
+ * ones after it; each gets its own result.
+ */
+public interface IRpcBatch {
+
+    /**
+     * @return the index of the call's result
+     */
+    int add(final String m, final String f, final String signature,
+            final Object... args) throws RpcException;
+
+    int size();
+
+    /**
+     * Run the calls and wait for all of them to finish.
+     * 
+     * @return a result for each call, in the order they were added
+     * @throws RpcException
+     *             if the batch as a whole couldn't be run
+     */
+    List<RpcResult> execute(final long timeout) throws RpcException;
+
+    /**
+     * Like {@link #execute(long)}, with the default RPC timeout for each call.
+     */
+    List<RpcResult> execute() throws RpcException;
+
+}
@@ -0,0 +1,42 @@
+package org.erlide.runtime.rpc;
+
+import java.util.List;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+
+/**
+ * The items sent by a streaming RPC, in the order they were sent. The backend
+ * can only run a few chunks ahead of the consumer, so items should be taken
+ * as they come. Not thread safe.
+ */
+public interface IRpcStream {
+
+    /**
+     * @return the next item, or null when there are no more items
+     * @throws RpcTimeoutException
+     *             if nothing arrived within the timeout
+     * @throws RpcException
+     *             if the remote function failed
+     */
+    OtpErlangObject next(long timeout) throws RpcException;
+
+    /**
+     * Like next(), but returns all the items that were sent together.
+     * 
+     * @return the items left in the current chunk or those in the next one, or
+     *         null when there are no more items
+     */
+    List<OtpErlangObject> nextChunk(long timeout) throws RpcException;
+
+    /**
+     * @return the value returned by the remote function, after next() returned
+     *         null
+     */
+    OtpErlangObject getResult();
+
+    /**
+     * Stop the remote function, no more items will be returned.
+     */
+    void cancel();
+
+}
@@ -0,0 +1,80 @@
+package org.erlide.runtime.rpc;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Hands out asynchronous RPCs in the order their results arrive, like a
+ * CompletionService. Each call is tagged with a key, so that the caller knows
+ * what the result belongs to.
+ */
+public class RpcCompletionQueue<K> {
+
+    public static final class Completion<K> {
+        private final K key;
+        private final IRpcFuture future;
+
+        Completion(final K key, final IRpcFuture future) {
+            this.key = key;
+            this.future = future;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        /**
+         * The future is done, its result can be retrieved without blocking.
+         */
+        public IRpcFuture getFuture() {
+            return future;
+        }
+    }
+
+    private final BlockingQueue<Completion<K>> completed = Queues
+            .newLinkedBlockingQueue();
+    private int pending = 0;
+
+    public void add(final K key, final IRpcFuture future) {
+        synchronized (this) {
+            pending++;
+        }
+        final Completion<K> completion = new Completion<K>(key, future);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                completed.add(completion);
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    /**
+     * @return the next completed call, or null if none completed within the
+     *         timeout
+     */
+    public Completion<K> poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final Completion<K> result = completed.poll(timeout, unit);
+        if (result != null) {
+            synchronized (this) {
+                pending--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of calls added and not yet returned by poll
+     */
+    public synchronized int size() {
+        return pending;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+}
@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.erlide.util.ErlLogger;
 import org.erlide.util.erlang.OtpErlang;
@@ -92,7 +93,7 @@ public class RpcMonitor {
         }
     }
 
-    private static int callCount = 0;
+    private static final AtomicInteger callCount = new AtomicInteger();
     private static final Map<OtpErlangRef, RpcData> ongoing = Maps.newHashMap();
     private static Comparator<RpcInfo> timeComparator = new Comparator<RpcInfo>() {
         @Override
@@ -135,15 +136,32 @@ public class RpcMonitor {
         }
     }
 
-    public static OtpErlangRef recordRequest(final OtpNode node, final String peer,
-            final String module, final String fun, final OtpErlangObject[] args,
-            final long callSize) {
-        callCount++;
+    /**
+     * Callers should check this before collecting any data for the monitor, so
+     * that monitoring costs nothing when it is off.
+     */
+    public static boolean isEnabled() {
+        return !DISABLED;
+    }
+
+    public static void countRequest() {
+        callCount.incrementAndGet();
+    }
+
+    /**
+     * @param startTime
+     *            when the request was sent
+     * @param callSize
+     *            the encoded size of the request, as sent
+     */
+    public static synchronized OtpErlangRef recordRequest(final OtpNode node,
+            final String peer, final String module, final String fun,
+            final OtpErlangObject[] args, final long startTime, final long callSize) {
+        callCount.incrementAndGet();
         if (DISABLED) {
             return null;
         }
-        final RpcData data = new RpcData(System.currentTimeMillis(), peer, module, fun,
-                args, callSize);
+        final RpcData data = new RpcData(startTime, peer, module, fun, args, callSize);
         final OtpErlangRef ref = node.createRef();
         ongoing.put(ref, data);
         return ref;
@@ -175,7 +193,7 @@ public class RpcMonitor {
 
     public static synchronized void dump(final PrintStream out, final int n,
             final boolean full) {
-        out.format("*** RpcMonitor statistics%n - %d calls%n", callCount);
+        out.format("*** RpcMonitor statistics%n - %d calls%n", callCount.get());
         if (DISABLED) {
             out.println("\nRpcMonitor was not enabled.\n\nUse -Derlide.rpcmonitor to enable it.");
             return;
@@ -0,0 +1,87 @@
+package org.erlide.ui.editors.erl.scanner;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.erlide.engine.services.parsing.ErlLexer;
+import org.erlide.engine.services.parsing.ErlToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ErlLineTokenCacheTest {
+
+    private Document document;
+    private ErlLineTokenCache cache;
+
+    @Before
+    public void setUp() {
+        document = new Document("-module(m).\nf(X) ->\n    \"a\nb\", X.\n");
+        cache = new ErlLineTokenCache();
+        cache.connect(document);
+    }
+
+    @After
+    public void tearDown() {
+        cache.disconnect();
+    }
+
+    private void assertSameAsFullScan() throws BadLocationException {
+        final List<ErlToken> expected = ErlLexer.scan(document.get(), 0);
+        final List<ErlToken> actual = cache.getTokens(0, document.getLength());
+        assertEquals(render(expected), render(actual));
+    }
+
+    // tokens spanning lines are split by the cache, so compare kinds per
+    // character
+    private String render(final List<ErlToken> tokens) {
+        final char[] kinds = new char[document.getLength()];
+        for (final ErlToken tk : tokens) {
+            for (int i = 0; i < tk.getLength(); i++) {
+                kinds[tk.getOffset() + i] = (char) ('A' + tk.getKind());
+            }
+        }
+        return new String(kinds);
+    }
+
+    @Test
+    public void initialScan() throws BadLocationException {
+        assertSameAsFullScan();
+    }
+
+    @Test
+    public void regionIsClipped() throws BadLocationException {
+        final List<ErlToken> tokens = cache.getTokens(1, 3);
+        assertEquals(1, tokens.size());
+        assertEquals(ErlToken.KIND_ATOM, tokens.get(0).getKind());
+        assertEquals(1, tokens.get(0).getOffset());
+        assertEquals(3, tokens.get(0).getLength());
+    }
+
+    @Test
+    public void insertLines() throws BadLocationException {
+        assertSameAsFullScan();
+        document.replace(12, 0, "-export([f/1]).\n\n");
+        assertSameAsFullScan();
+    }
+
+    @Test
+    public void removeLines() throws BadLocationException {
+        assertSameAsFullScan();
+        document.replace(0, 12, "");
+        assertSameAsFullScan();
+    }
+
+    @Test
+    public void openString() throws BadLocationException {
+        assertSameAsFullScan();
+        document.replace(12, 0, "\"");
+        assertSameAsFullScan();
+        document.replace(12, 1, "");
+        assertSameAsFullScan();
+    }
+
+}
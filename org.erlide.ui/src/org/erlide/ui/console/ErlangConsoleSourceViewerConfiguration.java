@@ -25,6 +25,7 @@ import org.erlide.engine.ErlangEngine;
 import org.erlide.engine.model.root.IErlProject;
 import org.erlide.runtime.shell.IoRequest.IoRequestKind;
 import org.erlide.ui.editors.erl.EditorConfiguration;
+import org.erlide.ui.editors.erl.ErlangPresentationReconciler;
 import org.erlide.ui.editors.erl.scanner.ErlCodeScanner;
 import org.erlide.ui.editors.erl.scanner.ErlDamagerRepairer;
 import org.erlide.ui.util.IColorManager;
@@ -47,7 +48,7 @@ final public class ErlangConsoleSourceViewerConfiguration extends EditorConfigur
     @Override
     public IPresentationReconciler getPresentationReconciler(
             final ISourceViewer sourceViewer) {
-        final PresentationReconciler reconciler = new PresentationReconciler();
+        final PresentationReconciler reconciler = new ErlangPresentationReconciler();
         DefaultDamagerRepairer dr;
 
         final ITokenScanner scan = new ErlCodeScanner(colorManager);
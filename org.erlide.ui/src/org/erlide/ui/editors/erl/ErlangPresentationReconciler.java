@@ -48,4 +48,16 @@ public class ErlangPresentationReconciler extends PresentationReconciler {
         }
         return createPresentation(damage, document);
     }
+
+    /**
+     * The damagers and repairers let go of the document too, so that they
+     * stop listening to it.
+     */
+    @Override
+    public void uninstall() {
+        super.uninstall();
+        setDocumentToDamagers(null);
+        setDocumentToRepairers(null);
+        fLastDocument = null;
+    }
 }
@@ -20,9 +20,18 @@ import org.erlide.engine.services.parsing.ErlToken;
 import org.erlide.engine.services.parsing.ScannerException;
 import org.erlide.ui.util.IColorManager;
 import org.erlide.util.ErlLogger;
+import org.erlide.util.SystemConfiguration;
 
 public class ErlCodeScanner extends ErlTokenScanner {
 
+    /**
+     * Use the backend scanner instead of the Java lexer. The backend is also
+     * used as a fallback if the Java lexer fails.
+     */
+    private static final boolean USE_RPC = SystemConfiguration
+            .hasFeatureEnabled("erlide.scanner.rpc");
+
+    private final ErlLineTokenCache lineCache = new ErlLineTokenCache();
     protected List<ErlToken> fTokens;
     protected int fCrtToken;
     private int rangeLength;
@@ -41,6 +50,9 @@ public class ErlCodeScanner extends ErlTokenScanner {
             rangeOffset = offset;
             rangeLength = length;
 
+            if (!USE_RPC && handleDocument(document)) {
+                return;
+            }
             // ErlLogger.debug("setRange %s %d:%d (%d:%d)", document,
             // rangeOffset, rangeLength, offset, length);
             final String str = document.get(rangeOffset, rangeLength);
@@ -52,6 +64,27 @@ public class ErlCodeScanner extends ErlTokenScanner {
 
     }
 
+    private boolean handleDocument(final IDocument document)
+            throws BadLocationException {
+        try {
+            lineCache.connect(document);
+            fCrtToken = -1;
+            fTokens = lineCache.getTokens(rangeOffset, rangeLength);
+            return true;
+        } catch (final RuntimeException e) {
+            ErlLogger.warn(e);
+            lineCache.disconnect();
+            return false;
+        }
+    }
+
+    /**
+     * Stops listening to the document the line cache was filled from.
+     */
+    public void disconnect() {
+        lineCache.disconnect();
+    }
+
     private void handleText(final String text) {
         if (text == null) {
             return;
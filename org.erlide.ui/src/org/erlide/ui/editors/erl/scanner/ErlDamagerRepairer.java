@@ -11,6 +11,7 @@
 package org.erlide.ui.editors.erl.scanner;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.TextAttribute;
 import org.eclipse.jface.text.TextPresentation;
@@ -26,6 +27,15 @@ public class ErlDamagerRepairer extends DefaultDamagerRepairer {
         super(scanner);
     }
 
+    @Override
+    public void setDocument(final IDocument document) {
+        if (document != fDocument && fScanner instanceof ErlCodeScanner) {
+            // its line cache listens to the old document
+            ((ErlCodeScanner) fScanner).disconnect();
+        }
+        super.setDocument(document);
+    }
+
     /*
      * @see IPresentationRepairer#createPresentation(TextPresentation,
      * ITypedRegion)
@@ -0,0 +1,166 @@
+package org.erlide.ui.editors.erl.scanner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension;
+import org.eclipse.jface.text.IDocumentListener;
+import org.erlide.engine.services.parsing.ErlLexer;
+import org.erlide.engine.services.parsing.ErlLexer.State;
+import org.erlide.engine.services.parsing.ErlToken;
+
+/**
+ * Keeps the tokens of each line of a document, together with the lexer state
+ * at the line start. Edits only invalidate the lines they touch, so repairing
+ * a damaged region re-tokenizes just those lines (and the following ones, as
+ * long as their start state differs from what was cached).
+ */
+public class ErlLineTokenCache implements IDocumentListener {
+
+    private static class Line {
+        final State start;
+        final State end;
+        // offsets are relative to the line start
+        final List<ErlToken> tokens;
+
+        Line(final State start, final State end, final List<ErlToken> tokens) {
+            this.start = start;
+            this.end = end;
+            this.tokens = tokens;
+        }
+    }
+
+    private final List<Line> lines = new ArrayList<Line>();
+    private IDocument document;
+    private int changeFirstLine;
+    private int changeLastLine;
+
+    public void connect(final IDocument aDocument) {
+        if (aDocument == document) {
+            return;
+        }
+        disconnect();
+        document = aDocument;
+        // we must see the change before the presentation reconciler does
+        if (document instanceof IDocumentExtension) {
+            ((IDocumentExtension) document).addPrenotifiedDocumentListener(this);
+        } else {
+            document.addDocumentListener(this);
+        }
+    }
+
+    public void disconnect() {
+        if (document == null) {
+            return;
+        }
+        if (document instanceof IDocumentExtension) {
+            ((IDocumentExtension) document).removePrenotifiedDocumentListener(this);
+        } else {
+            document.removeDocumentListener(this);
+        }
+        document = null;
+        lines.clear();
+    }
+
+    public IDocument getDocument() {
+        return document;
+    }
+
+    @Override
+    public void documentAboutToBeChanged(final DocumentEvent event) {
+        try {
+            changeFirstLine = document.getLineOfOffset(event.getOffset());
+            changeLastLine = document.getLineOfOffset(event.getOffset()
+                    + event.getLength());
+        } catch (final BadLocationException e) {
+            changeFirstLine = 0;
+            changeLastLine = Integer.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public void documentChanged(final DocumentEvent event) {
+        if (changeFirstLine >= lines.size()) {
+            return;
+        }
+        final String text = event.getText();
+        int newLastLine;
+        try {
+            newLastLine = document.getLineOfOffset(event.getOffset()
+                    + (text == null ? 0 : text.length()));
+        } catch (final BadLocationException e) {
+            lines.clear();
+            return;
+        }
+        final int removed = Math.min(changeLastLine, lines.size() - 1)
+                - changeFirstLine + 1;
+        final List<Line> affected = lines.subList(changeFirstLine, changeFirstLine
+                + removed);
+        affected.clear();
+        affected.addAll(Collections.<Line> nCopies(newLastLine - changeFirstLine + 1,
+                null));
+    }
+
+    /**
+     * Return the tokens in the region, with absolute offsets. Tokens crossing
+     * the region borders are clipped.
+     */
+    public List<ErlToken> getTokens(final int offset, final int length)
+            throws BadLocationException {
+        final int rangeEnd = offset + length;
+        final int first = document.getLineOfOffset(offset);
+        final int last = document.getLineOfOffset(rangeEnd);
+        while (lines.size() < document.getNumberOfLines()) {
+            lines.add(null);
+        }
+
+        State state = getStartState(first);
+        final List<ErlToken> result = new ArrayList<ErlToken>();
+        for (int i = first; i <= last; i++) {
+            final Line line = getLine(i, state);
+            final int lineOffset = document.getLineOffset(i);
+            for (final ErlToken tk : line.tokens) {
+                final int start = Math.max(lineOffset + tk.getOffset(), offset);
+                final int end = Math.min(lineOffset + tk.getOffset() + tk.getLength(),
+                        rangeEnd);
+                if (end > start) {
+                    result.add(new ErlToken(tk.getKind(), i, start, end - start));
+                }
+            }
+            state = line.end;
+        }
+        return result;
+    }
+
+    private State getStartState(final int lineIndex) throws BadLocationException {
+        int known = lineIndex - 1;
+        while (known >= 0 && lines.get(known) == null) {
+            known--;
+        }
+        State state = known < 0 ? State.NORMAL : lines.get(known).end;
+        for (int i = known + 1; i < lineIndex; i++) {
+            state = getLine(i, state).end;
+        }
+        return state;
+    }
+
+    private Line getLine(final int index, final State start)
+            throws BadLocationException {
+        Line line = lines.get(index);
+        if (line == null || line.start != start) {
+            final String text = document.get(document.getLineOffset(index),
+                    document.getLineLength(index));
+            final List<ErlToken> tokens = new ArrayList<ErlToken>();
+            final State end = ErlLexer.scan(text, 0, text.length(), start, index, 0,
+                    tokens);
+            line = new Line(start, end, tokens);
+            lines.set(index, line);
+        }
+        return line;
+    }
+
+}
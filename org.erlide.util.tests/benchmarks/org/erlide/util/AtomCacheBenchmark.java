@@ -0,0 +1,121 @@
+package org.erlide.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangRef;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+/**
+ * Measures time and allocated bytes for decoding a typical RPC reply, whose
+ * atoms come from the shared atom cache, and for encoding an RPC call with new
+ * and with shared atoms. Allocation is only measured where the JVM supports
+ * it.
+ * <p>
+ * It isn't part of the unit tests, run it as a Java application.
+ */
+public class AtomCacheBenchmark {
+
+    private static final int MESSAGES = 200000;
+
+    private static OtpErlangObject reply() {
+        final OtpErlangObject[] refs = new OtpErlangObject[20];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = tuple(new OtpErlangAtom("ref"), new OtpErlangAtom("function"),
+                    new OtpErlangAtom("erlide_open"), new OtpErlangAtom("find"),
+                    new OtpErlangLong(i), new OtpErlangString("/x/erlide_open.erl"),
+                    new OtpErlangAtom("false"));
+        }
+        return tuple(new OtpErlangRef("n@h", 1, 2),
+                tuple(new OtpErlangAtom("ok"), new OtpErlangList(refs)));
+    }
+
+    private static OtpErlangTuple tuple(final OtpErlangObject... elements) {
+        return new OtpErlangTuple(elements);
+    }
+
+    private static OtpErlangObject call(final boolean shared) {
+        final String[] atoms = { "$gen_call", "call", "erlide_open", "find", "user" };
+        final OtpErlangAtom[] a = new OtpErlangAtom[atoms.length];
+        for (int i = 0; i < atoms.length; i++) {
+            a[i] = shared ? OtpErlangAtom.intern(atoms[i]) : new OtpErlangAtom(
+                    atoms[i]);
+        }
+        return tuple(a[0], tuple(new OtpErlangPid("n@h", 1, 2, 3), new OtpErlangRef(
+                "n@h", 1, 2)), tuple(a[1], a[2], a[3], new OtpErlangList(), a[4]));
+    }
+
+    // com.sun.management.ThreadMXBean.getThreadAllocatedBytes, if there is one
+    private static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+
+    private static Method allocatedBytesMethod() {
+        try {
+            return Class.forName("com.sun.management.ThreadMXBean").getMethod(
+                    "getThreadAllocatedBytes", long.class);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (ALLOCATED_BYTES == null
+                || !ALLOCATED_BYTES.getDeclaringClass().isInstance(bean)) {
+            return 0;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(bean, Thread.currentThread().getId());
+        } catch (final Exception e) {
+            return 0;
+        }
+    }
+
+    private static void report(final String what, final long time, final long bytes) {
+        System.out.println(String.format(
+                "AtomCacheBenchmark: %s, %d messages: %d ms, %d bytes/message", what,
+                MESSAGES, time / 1000000, bytes / MESSAGES));
+    }
+
+    private static void decode(final byte[] bytes) throws Exception {
+        final long bytes0 = allocatedBytes();
+        final long t = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            new OtpInputStream(bytes, 0).read_any();
+        }
+        report("decode reply", System.nanoTime() - t, allocatedBytes() - bytes0);
+    }
+
+    private static void encode(final boolean shared) {
+        final long bytes0 = allocatedBytes();
+        final long t = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            new OtpOutputStream(call(shared));
+        }
+        report(shared ? "encode call, shared atoms" : "encode call, new atoms",
+                System.nanoTime() - t, allocatedBytes() - bytes0);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] bytes = new OtpOutputStream(reply()).toByteArray();
+        // warm up
+        decode(bytes);
+        decode(bytes);
+
+        // warm up
+        encode(false);
+        encode(true);
+
+        encode(false);
+        encode(true);
+    }
+
+}
@@ -0,0 +1,102 @@
+package org.erlide.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.erlide.util.erlang.MarshallingPlan;
+import org.erlide.util.erlang.Signature;
+import org.erlide.util.erlang.SignatureException;
+import org.erlide.util.erlang.TypeConverter;
+
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares converting RPC arguments with {@link MarshallingPlan} and with
+ * {@link TypeConverter}, from several threads at once, for some typical
+ * signatures. Prints timings, checks that the results agree.
+ * <p>
+ * It isn't part of the unit tests, run it as a Java application.
+ */
+public class MarshallingBenchmark {
+
+    private static final int THREADS = 4;
+    private static final int CALLS = 200000;
+
+    private static final List<String> PATHS = Arrays.asList("/a/include",
+            "/b/include", "/c/include");
+
+    @SuppressWarnings("boxing")
+    private static final Object[][] CASES = {
+            { "asssoa", "erlide_open", "get_external_include", "a.hrl", "/x/a.erl",
+                    true, "ok" },
+            { "xxxso", 3, "x", new OtpErlangPid("n@h", 1, 2, 3), "/x/a.erl", false },
+            { "lslslsoo", PATHS, PATHS.toArray(new String[0]), PATHS, true, false } };
+
+    private static OtpErlangObject[] convertWithTypeConverter(final String signature,
+            final Object[] args) throws SignatureException {
+        final Signature[] type = Signature.parse(signature);
+        final OtpErlangObject[] result = new OtpErlangObject[args.length];
+        for (int i = 0; i < args.length; i++) {
+            result[i] = TypeConverter.java2erlang(args[i], type[i]);
+        }
+        return result;
+    }
+
+    private static long run(final String signature, final Object[] args,
+            final boolean plan) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = Lists.newArrayList();
+            final long t = System.nanoTime();
+            for (int n = 0; n < THREADS; n++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws SignatureException {
+                        for (int i = 0; i < CALLS; i++) {
+                            if (plan) {
+                                MarshallingPlan.get(signature).convert(args);
+                            } else {
+                                convertWithTypeConverter(signature, args);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+            return System.nanoTime() - t;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public static void main(final String[] arguments) throws Exception {
+        for (final Object[] c : CASES) {
+            final String signature = (String) c[0];
+            final Object[] args = Arrays.copyOfRange(c, 1, c.length);
+            if (!Arrays.equals(convertWithTypeConverter(signature, args),
+                    MarshallingPlan.get(signature).convert(args))) {
+                throw new AssertionError("results differ for " + signature);
+            }
+            // warm up
+            run(signature, args, false);
+            run(signature, args, true);
+
+            final long converterTime = run(signature, args, false);
+            final long planTime = run(signature, args, true);
+            System.out.println(String.format(
+                    "MarshallingBenchmark: %s, %d threads x %d calls: "
+                            + "TypeConverter %d ms, plan %d ms", signature, THREADS,
+                    CALLS, converterTime / 1000000, planTime / 1000000));
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.erlide.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class AtomCacheTest {
+
+    private static OtpErlangObject decode(final OtpErlangObject term) throws Exception {
+        return new OtpInputStream(new OtpOutputStream(term).toByteArray(), 0)
+                .read_any();
+    }
+
+    @Test
+    public void internedAtomsAreShared() {
+        final OtpErlangAtom a = OtpErlangAtom.intern("erlide_open");
+        assertSame(a, OtpErlangAtom.intern("erlide_open"));
+        assertEquals(new OtpErlangAtom("erlide_open"), a);
+        assertEquals(a, new OtpErlangAtom("erlide_open"));
+        assertEquals(new OtpErlangAtom("erlide_open").hashCode(), a.hashCode());
+    }
+
+    @Test
+    public void decodedAtomsAreShared() throws Exception {
+        final OtpErlangObject term = new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("ok"), new OtpErlangAtom("ok") });
+        final OtpErlangTuple t1 = (OtpErlangTuple) decode(term);
+        final OtpErlangTuple t2 = (OtpErlangTuple) decode(term);
+        assertEquals(term, t1);
+        assertSame(t1.elementAt(0), t1.elementAt(1));
+        assertSame(t1.elementAt(0), t2.elementAt(0));
+        assertSame(OtpErlangAtom.intern("ok"), t1.elementAt(0));
+    }
+
+    @Test
+    public void sharedAtomsEncodeTheSame() throws Exception {
+        for (final String s : new String[] { "ok", "'quoted atom'", "\u00e5\u00e4\u00f6",
+                "\u0444\u0443", "" }) {
+            final OtpErlangAtom a = new OtpErlangAtom(s);
+            final OtpErlangAtom shared = OtpErlangAtom.intern(s);
+            assertArrayEquals(new OtpOutputStream(a).toByteArray(),
+                    new OtpOutputStream(shared).toByteArray());
+            assertEquals(a, decode(shared));
+            assertEquals(s, ((OtpErlangAtom) decode(shared)).atomValue());
+        }
+    }
+
+    @Test
+    public void evictedAtomsDecodeCorrectly() throws Exception {
+        // many more atoms than the cache has slots, so they collide
+        final OtpErlangObject[] atoms = new OtpErlangObject[5000];
+        for (int i = 0; i < atoms.length; i++) {
+            atoms[i] = new OtpErlangAtom("atom_" + i);
+        }
+        final OtpErlangList list = new OtpErlangList(atoms);
+        assertEquals(list, decode(list));
+        assertEquals(list, decode(list));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(atoms[i], OtpErlangAtom.intern("atom_" + i));
+        }
+    }
+
+    @Test
+    public void sharedAtomsInAReply() throws Exception {
+        final OtpErlangObject[] refs = new OtpErlangObject[20];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = new OtpErlangTuple(new OtpErlangObject[] {
+                    new OtpErlangAtom("ref"), new OtpErlangAtom("erlide_open"),
+                    new OtpErlangLong(i), new OtpErlangString("/x/erlide_open.erl") });
+        }
+        final OtpErlangObject reply = new OtpErlangTuple(new OtpErlangObject[] {
+                new OtpErlangAtom("ok"), new OtpErlangList(refs) });
+        final OtpErlangTuple decoded = (OtpErlangTuple) decode(reply);
+        assertEquals(reply, decoded);
+        final OtpErlangList list = (OtpErlangList) decoded.elementAt(1);
+        final OtpErlangTuple first = (OtpErlangTuple) list.elementAt(0);
+        for (final OtpErlangObject ref : list) {
+            assertSame(first.elementAt(0), ((OtpErlangTuple) ref).elementAt(0));
+            assertSame(first.elementAt(1), ((OtpErlangTuple) ref).elementAt(1));
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.erlide.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.GenericQueue;
+import com.google.common.collect.Lists;
+
+public class GenericQueueTest {
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void itemsComeOutInOrder() throws Exception {
+        final GenericQueue queue = new GenericQueue();
+        assertNull(queue.tryGet());
+        for (int i = 0; i < 5; i++) {
+            queue.put(i);
+        }
+        assertEquals(5, queue.getCount());
+        assertEquals(0, queue.peek());
+        assertEquals(0, queue.tryGet());
+        assertEquals(1, queue.get());
+        assertEquals(2, queue.get(0));
+        assertEquals(2, queue.getCount());
+        queue.flush();
+        assertEquals(0, queue.getCount());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void getTimesOut() {
+        final GenericQueue queue = new GenericQueue();
+        final long t = System.nanoTime();
+        try {
+            queue.get(50);
+            fail("no timeout");
+        } catch (final InterruptedException e) {
+        }
+        assertTrue(System.nanoTime() - t >= 50000000L);
+    }
+
+    @Test
+    public void getWaitsForPut() throws Exception {
+        final GenericQueue queue = new GenericQueue();
+        final Thread putter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                }
+                queue.put("x");
+            }
+        };
+        putter.start();
+        assertEquals("x", queue.get(5000));
+        putter.join();
+    }
+
+    @Test
+    public void interruptEndsTheWait() throws Exception {
+        final GenericQueue queue = new GenericQueue();
+        final Thread getter = Thread.currentThread();
+        final Thread interrupter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (final InterruptedException e) {
+                }
+                getter.interrupt();
+            }
+        };
+        interrupter.start();
+        final long t = System.nanoTime();
+        try {
+            queue.get(5000);
+            fail("not interrupted");
+        } catch (final InterruptedException e) {
+        }
+        assertTrue(System.nanoTime() - t < 4000000000L);
+        interrupter.join();
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void itemsFromManyThreadsArriveInOrder() throws Exception {
+        final GenericQueue queue = new GenericQueue();
+        final int producers = 4;
+        final int count = 100000;
+        final List<Thread> threads = Lists.newArrayList();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < count; i++) {
+                        queue.put(new int[] { producer, i });
+                    }
+                }
+            });
+        }
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+        final int[] next = new int[producers];
+        for (int n = 0; n < producers * count; n++) {
+            final int[] item = (int[]) queue.get(5000);
+            assertEquals(next[item[0]]++, item[1]);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(queue.tryGet());
+        assertEquals(0, queue.getCount());
+    }
+
+}
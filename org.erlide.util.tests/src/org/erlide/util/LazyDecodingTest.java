@@ -0,0 +1,137 @@
+package org.erlide.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import org.erlide.util.erlang.TermParser;
+import org.erlide.util.erlang.TermParserException;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+import com.google.common.collect.Lists;
+
+public class LazyDecodingTest {
+
+    private static final String TERM = "{refs, [{m1, f, 1, \"f(X)\", false, 10, 3, true},"
+            + " {m2, g, 2, \"g(X, Y)\", false, 20, 3, false},"
+            + " {m3, bin, big, float, [a|b], {}, [], x},"
+            + " 1, 2, 3, 4, 5, 6, 7, 8, 9], a, b, c, d, e, f, g}";
+
+    private static OtpErlangObject decode(final OtpErlangObject term, final int flags)
+            throws OtpErlangDecodeException {
+        final byte[] bytes = new OtpOutputStream(term).toByteArray();
+        return new OtpInputStream(bytes, flags).read_any();
+    }
+
+    private static OtpErlangObject term() throws TermParserException {
+        final OtpErlangTuple t = (OtpErlangTuple) TermParser.getParser().parse(TERM);
+        // the parser doesn't know binaries, bignums and floats
+        final OtpErlangObject[] refs = ((OtpErlangList) t.elementAt(1)).elements();
+        final OtpErlangObject[] m3 = ((OtpErlangTuple) refs[2]).elements();
+        m3[1] = new OtpErlangBinary("bin".getBytes());
+        m3[2] = new OtpErlangLong(new BigInteger("123456789012345678901234567890"));
+        m3[3] = new OtpErlangDouble(3.5);
+        refs[2] = new OtpErlangTuple(m3);
+        final OtpErlangObject[] elems = t.elements();
+        elems[1] = new OtpErlangList(refs);
+        return new OtpErlangTuple(elems);
+    }
+
+    @Test
+    public void lazyTermsEqualEagerOnes() throws Exception {
+        final OtpErlangObject eager = decode(term(), 0);
+        final OtpErlangObject lazy = decode(term(), OtpInputStream.DECODE_LAZY);
+        assertEquals(eager, lazy);
+        assertEquals(lazy, eager);
+        assertEquals(eager.hashCode(), lazy.hashCode());
+        assertEquals(eager.toString(), lazy.toString());
+        assertEquals(eager, decode(lazy, 0));
+    }
+
+    @Test
+    public void elementsAreDecodedOnDemand() throws Exception {
+        final OtpErlangTuple eager = (OtpErlangTuple) decode(term(), 0);
+        final OtpErlangTuple lazy = (OtpErlangTuple) decode(term(),
+                OtpInputStream.DECODE_LAZY);
+        assertEquals(eager.arity(), lazy.arity());
+        assertEquals(new OtpErlangAtom("g"), lazy.elementAt(8));
+        final OtpErlangList refs = (OtpErlangList) lazy.elementAt(1);
+        assertEquals(eager.elementAt(1), refs);
+        assertEquals(((OtpErlangList) eager.elementAt(1)).elementAt(2),
+                refs.elementAt(2));
+        assertTrue(refs.getNthTail(10) instanceof OtpErlangList);
+        assertEquals(null, lazy.elementAt(9));
+    }
+
+    @Test
+    public void iterationWalksTheList() throws Exception {
+        final OtpErlangList eager = (OtpErlangList) ((OtpErlangTuple) decode(term(), 0))
+                .elementAt(1);
+        final OtpErlangList lazy = (OtpErlangList) ((OtpErlangTuple) decode(term(),
+                OtpInputStream.DECODE_LAZY)).elementAt(1);
+        final List<OtpErlangObject> walked = Lists.newArrayList();
+        for (final OtpErlangObject o : lazy) {
+            walked.add(o);
+        }
+        assertEquals(Lists.newArrayList(eager), walked);
+        assertEquals(Lists.newArrayList(eager), Lists.newArrayList(lazy));
+    }
+
+    @Test
+    public void iterationKeepsDecodedElements() throws Exception {
+        final OtpErlangList lazy = (OtpErlangList) ((OtpErlangTuple) decode(term(),
+                OtpInputStream.DECODE_LAZY)).elementAt(1);
+        final List<OtpErlangObject> first = Lists.newArrayList(lazy);
+        final List<OtpErlangObject> second = Lists.newArrayList(lazy);
+        for (int i = 0; i < first.size(); i++) {
+            assertSame(first.get(i), second.get(i));
+            assertSame(first.get(i), lazy.elementAt(i));
+        }
+    }
+
+    @Test
+    public void elementsDontNeedTheReceivedBuffer() throws Exception {
+        final OtpErlangObject eager = decode(term(), 0);
+        final byte[] bytes = new OtpOutputStream(term()).toByteArray();
+        final OtpErlangObject lazy = new OtpInputStream(bytes,
+                OtpInputStream.DECODE_LAZY).read_any();
+        Arrays.fill(bytes, (byte) 0);
+        assertEquals(eager, lazy);
+    }
+
+    @Test(expected = OtpErlangDecodeException.class)
+    public void badElementsFailWhenRead() throws Exception {
+        final OtpErlangObject[] elems = new OtpErlangObject[10];
+        for (int i = 0; i < elems.length; i++) {
+            elems[i] = new OtpErlangTuple(new OtpErlangObject[0]);
+        }
+        final byte[] bytes = new OtpOutputStream(new OtpErlangTuple(elems))
+                .toByteArray();
+        // version, small tuple of 10, then make the last element
+        // {} a large tuple with a negative arity
+        final int last = bytes.length - 2;
+        assertEquals(104, bytes[last]);
+        final byte[] bad = Arrays.copyOf(bytes, bytes.length + 3);
+        bad[last] = 105;
+        bad[last + 1] = (byte) 0xff;
+        bad[last + 2] = (byte) 0xff;
+        bad[last + 3] = (byte) 0xff;
+        bad[last + 4] = (byte) 0xff;
+        new OtpInputStream(bad, OtpInputStream.DECODE_LAZY).read_any();
+    }
+
+}
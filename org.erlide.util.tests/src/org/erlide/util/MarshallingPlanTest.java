@@ -0,0 +1,87 @@
+package org.erlide.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.erlide.util.erlang.MarshallingPlan;
+import org.erlide.util.erlang.SignatureException;
+import org.erlide.util.erlang.TypeConverter;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+
+public class MarshallingPlanTest {
+
+    private void test(final String sig, final Object... args) throws SignatureException {
+        final OtpErlangObject[] expect = new OtpErlangObject[args.length];
+        for (int i = 0; i < args.length; i++) {
+            expect[i] = TypeConverter.java2erlang(args[i], sig.substring(i, i + 1));
+        }
+        assertArrayEquals(expect, MarshallingPlan.get(sig).convert(args));
+    }
+
+    @Test
+    public void plansAreShared() throws SignatureException {
+        assertSame(MarshallingPlan.get("asssoa"), MarshallingPlan.get("asssoa"));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void simpleTypes() throws SignatureException {
+        test("asssoa", "mod", "a", "b", "c", true, "fun");
+        test("xxxso", 3, "x", new OtpErlangPid("n@h", 1, 2, 3), "s", false);
+        test("ibd", 7L, "bin", 2.5);
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void fallbackTypes() throws SignatureException {
+        test("iao", 'c', new OtpErlangAtom("x"), new OtpErlangAtom("false"));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void listsAndTuples() throws SignatureException {
+        final OtpErlangObject[] result = MarshallingPlan.get("lslslsoo").convert(
+                Arrays.asList("a", "b"), new String[] { "c" }, Arrays.asList(), true,
+                false);
+        assertArrayEquals(new OtpErlangObject[] {
+                TypeConverter.java2erlang(Arrays.asList("a", "b"), "ls"),
+                TypeConverter.java2erlang(new String[] { "c" }, "ls"),
+                TypeConverter.java2erlang(Arrays.asList(), "ls"),
+                new OtpErlangAtom("true"), new OtpErlangAtom("false") }, result);
+        assertArrayEquals(
+                new OtpErlangObject[] { TypeConverter.java2erlang(new Object[] { "a",
+                        1 }, "2ai") },
+                MarshallingPlan.get("2ai").convert(new Object[] { new Object[] { "a", 1 } }));
+        assertArrayEquals(
+                new OtpErlangObject[] { TypeConverter.java2erlang(new int[] { 1, 2 }, "li") },
+                MarshallingPlan.get("li").convert(new int[] { 1, 2 }));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test
+    public void noSignatureMeansUntyped() throws SignatureException {
+        assertArrayEquals(new OtpErlangObject[] { new OtpErlangLong(3),
+                new OtpErlangAtom("a") },
+                MarshallingPlan.get(null).convert(3, new OtpErlangAtom("a")));
+    }
+
+    @SuppressWarnings("boxing")
+    @Test(expected = SignatureException.class)
+    public void wrongArity() throws SignatureException {
+        MarshallingPlan.get("ia").convert(3);
+    }
+
+    @SuppressWarnings("boxing")
+    @Test(expected = SignatureException.class)
+    public void wrongType() throws SignatureException {
+        MarshallingPlan.get("sa").convert(3, "a");
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.erlide.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.erlide.util.erlang.TermParser;
+import org.junit.Test;
+
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangPid;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+public class OutputStreamTest {
+
+    private static OtpErlangObject[] terms() throws Exception {
+        final char[] text = new char[100000];
+        Arrays.fill(text, 'x');
+        return new OtpErlangObject[] {
+                TermParser.getParser().parse("{ok, [a, \"b\", 1, 300, 70000, {}, [c|d]]}"),
+                new OtpErlangLong(new BigInteger("123456789012345678901234567890")),
+                new OtpErlangDouble(3.5),
+                new OtpErlangPid("n@h", 1, 2, 3),
+                new OtpErlangBinary(new byte[300000]),
+                // too long for a string, goes as a list
+                new OtpErlangString(new String(text)),
+                new OtpErlangTuple(new OtpErlangObject[] { new OtpErlangString("\u0444"),
+                        new OtpErlangList() }) };
+    }
+
+    @Test
+    public void encodedSizeIsExact() throws Exception {
+        for (final OtpErlangObject term : terms()) {
+            final byte[] bytes = new OtpOutputStream(term).toByteArray();
+            assertEquals(term.getClass().getSimpleName(), bytes.length,
+                    OtpOutputStream.encodedSize(term));
+
+            final OtpOutputStream exact = new OtpOutputStream(term, true);
+            assertEquals(exact.size(), exact.length());
+            assertArrayEquals(bytes, exact.toByteArray());
+        }
+    }
+
+}
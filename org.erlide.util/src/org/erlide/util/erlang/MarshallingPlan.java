@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Vlad Dumitrescu and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     Vlad Dumitrescu
+ *******************************************************************************/
+package org.erlide.util.erlang;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangString;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.google.common.collect.Maps;
+
+/**
+ * The conversion of RPC arguments for one signature, compiled once into a
+ * converter per argument and shared by all threads.
+ * <p>
+ * Converters handle the common cases (strings, atoms, integers, booleans,
+ * lists and tuples of those) directly; anything else goes through
+ * {@link TypeConverter#java2erlang(Object, Signature)}, so the results and
+ * errors are the same as with it.
+ */
+public final class MarshallingPlan {
+
+    private static final ConcurrentMap<String, MarshallingPlan> CACHE = Maps
+            .newConcurrentMap();
+    private static final MarshallingPlan UNTYPED = new MarshallingPlan(null, null);
+
+    private static final OtpErlangAtom TRUE = OtpErlangAtom.intern("true");
+    private static final OtpErlangAtom FALSE = OtpErlangAtom.intern("false");
+
+    private abstract static class Converter {
+        final Signature type;
+
+        Converter(final Signature type) {
+            this.type = type;
+        }
+
+        abstract OtpErlangObject convert(Object obj) throws SignatureException;
+
+        final OtpErlangObject fallback(final Object obj) throws SignatureException {
+            return TypeConverter.java2erlang(obj, type);
+        }
+    }
+
+    private static final Converter UNTYPED_CONVERTER = new Converter(new Signature('x')) {
+        @Override
+        OtpErlangObject convert(final Object obj) throws SignatureException {
+            return fallback(obj);
+        }
+    };
+
+    private final String signature;
+    private final Converter[] converters;
+
+    /**
+     * @return the plan for the signature; a null signature means that all
+     *         arguments are converted as 'x'
+     */
+    public static MarshallingPlan get(final String signature) throws SignatureException {
+        if (signature == null) {
+            return UNTYPED;
+        }
+        MarshallingPlan plan = CACHE.get(signature);
+        if (plan == null) {
+            plan = compile(signature);
+            final MarshallingPlan old = CACHE.putIfAbsent(signature, plan);
+            if (old != null) {
+                plan = old;
+            }
+        }
+        return plan;
+    }
+
+    static MarshallingPlan compile(final String signature) throws SignatureException {
+        final Signature[] types = Signature.parse(signature);
+        final Converter[] converters = new Converter[types.length];
+        for (int i = 0; i < types.length; i++) {
+            converters[i] = compile(types[i]);
+        }
+        return new MarshallingPlan(signature, converters);
+    }
+
+    private MarshallingPlan(final String signature, final Converter[] converters) {
+        this.signature = signature;
+        this.converters = converters;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    /**
+     * Convert the arguments of a call.
+     */
+    public OtpErlangObject[] convert(final Object... args) throws SignatureException {
+        final Object[] args0 = args == null ? new Object[0] : args;
+        if (converters == null) {
+            final OtpErlangObject[] result = new OtpErlangObject[args0.length];
+            for (int i = 0; i < args0.length; i++) {
+                result[i] = UNTYPED_CONVERTER.convert(args0[i]);
+            }
+            return result;
+        }
+        if (converters.length != args0.length) {
+            throw new SignatureException("Signature doesn't match parameter number: "
+                    + converters.length + "/" + args0.length);
+        }
+        final OtpErlangObject[] result = new OtpErlangObject[args0.length];
+        for (int i = 0; i < args0.length; i++) {
+            result[i] = converters[i].convert(args0[i]);
+        }
+        return result;
+    }
+
+    private static Converter compile(final Signature type) {
+        switch (type.kind) {
+        case 's':
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    if (obj instanceof String) {
+                        return new OtpErlangString((String) obj);
+                    }
+                    return fallback(obj);
+                }
+            };
+        case 'a':
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    if (obj instanceof String) {
+                        return OtpErlangAtom.intern((String) obj);
+                    }
+                    return fallback(obj);
+                }
+            };
+        case 'b':
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    if (obj instanceof String) {
+                        return new OtpErlangBinary(((String) obj).getBytes());
+                    }
+                    return fallback(obj);
+                }
+            };
+        case 'i':
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    if (obj instanceof Integer || obj instanceof Long) {
+                        return new OtpErlangLong(((Number) obj).longValue());
+                    }
+                    return fallback(obj);
+                }
+            };
+        case 'o':
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    if (obj instanceof Boolean) {
+                        return ((Boolean) obj).booleanValue() ? TRUE : FALSE;
+                    }
+                    return fallback(obj);
+                }
+            };
+        case 'l':
+            return listConverter(type);
+        case 't':
+            return tupleConverter(type);
+        default:
+            return new Converter(type) {
+                @Override
+                OtpErlangObject convert(final Object obj) throws SignatureException {
+                    return fallback(obj);
+                }
+            };
+        }
+    }
+
+    private static Converter listConverter(final Signature type) {
+        final Converter element = compile(type.content[0]);
+        return new Converter(type) {
+            @Override
+            OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (obj instanceof Collection<?>) {
+                    final Collection<?> c = (Collection<?>) obj;
+                    final OtpErlangObject[] items = new OtpErlangObject[c.size()];
+                    int i = 0;
+                    for (final Object item : c) {
+                        items[i++] = element.convert(item);
+                    }
+                    return new OtpErlangList(items);
+                }
+                if (obj instanceof Object[]) {
+                    final Object[] array = (Object[]) obj;
+                    final OtpErlangObject[] items = new OtpErlangObject[array.length];
+                    for (int i = 0; i < array.length; i++) {
+                        items[i] = element.convert(array[i]);
+                    }
+                    return new OtpErlangList(items);
+                }
+                return fallback(obj);
+            }
+        };
+    }
+
+    private static Converter tupleConverter(final Signature type) {
+        final Converter[] elements = new Converter[type.content.length];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = compile(type.content[i]);
+        }
+        return new Converter(type) {
+            @Override
+            OtpErlangObject convert(final Object obj) throws SignatureException {
+                if (obj instanceof Object[] && ((Object[]) obj).length <= elements.length) {
+                    final Object[] array = (Object[]) obj;
+                    final OtpErlangObject[] items = new OtpErlangObject[array.length];
+                    for (int i = 0; i < array.length; i++) {
+                        items[i] = elements[i].convert(array[i]);
+                    }
+                    return new OtpErlangTuple(items);
+                }
+                return fallback(obj);
+            }
+        };
+    }
+
+}
@@ -11,13 +11,15 @@
 package org.erlide.util.erlang;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
 
 public class Signature {
-    private static final Map<String, Signature[]> CACHE = new HashMap<String, Signature[]>();
-    private static boolean useCache = true;
+    private static final ConcurrentMap<String, Signature[]> CACHE = Maps
+            .newConcurrentMap();
+    private static volatile boolean useCache = true;
 
     public char kind = 'x';
     public Signature[] content = null;
@@ -50,7 +52,7 @@ public class Signature {
         return kind + res.toString();
     }
 
-    public static synchronized Signature[] parse(final String signature)
+    public static Signature[] parse(final String signature)
             throws SignatureException {
         if (signature == null) {
             return null;
@@ -71,7 +73,10 @@ public class Signature {
         }
         result = type.toArray(new Signature[type.size()]);
         if (useCache) {
-            CACHE.put(signature, result);
+            final Signature[] old = CACHE.putIfAbsent(signature, result);
+            if (old != null) {
+                return old;
+            }
         }
         return result;
     }